@@ -0,0 +1,18 @@
+package cp2023.base;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Performs transfers to one device together, e.g. as one sequential write,
+ * in place of their own perform() (it may call them itself). Every transfer
+ * of a batch has been allowed to perform. A transfer is done once passed to
+ * done (which may be called from any thread) or, at the latest, once
+ * performBatch() returns; if it throws, the executions of the transfers not
+ * done by then throw the same exception.
+ */
+public interface BatchablePerformer {
+
+    public void performBatch(DeviceId device, List<ComponentTransfer> transfers,
+                             Consumer<ComponentTransfer> done);
+}
@@ -7,14 +7,39 @@
  */
 package cp2023.base;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 public final class ComponentId implements Comparable<ComponentId> {
 
-    private int id;
+    // ids returned by of() for 0 <= id < CACHED_IDS are canonical
+    private static final int CACHED_IDS = 1 << 16;
+    private static final AtomicReferenceArray<ComponentId> cache =
+            new AtomicReferenceArray<>(CACHED_IDS);
+
+    private final int id;
+    // racy, but strings are immutable, so at worst it is built twice
+    private String name;
     
     public ComponentId(int id) {
         this.id = id;
     }
 
+    // returns the same instance for every call with a small non-negative id
+    public static ComponentId of(int id) {
+        if (id < 0 || id >= CACHED_IDS)
+            return new ComponentId(id);
+        ComponentId cached = cache.get(id);
+        if (cached == null) {
+            cache.compareAndSet(id, null, new ComponentId(id));
+            cached = cache.get(id);
+        }
+        return cached;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (! (obj instanceof ComponentId)) {
@@ -30,7 +55,12 @@ public final class ComponentId implements Comparable<ComponentId> {
 
     @Override
     public String toString() {
-        return "COMP-" + this.id;
+        String name = this.name;
+        if (name == null) {
+            name = "COMP-" + this.id;
+            this.name = name;
+        }
+        return name;
     }
 
     @Override
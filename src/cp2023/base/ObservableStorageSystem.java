@@ -0,0 +1,12 @@
+package cp2023.base;
+
+/**
+ * A storage system which publishes the events of its transfers to
+ * {@link TransferListener}s.
+ */
+public interface ObservableStorageSystem extends StorageSystem {
+
+    public void addTransferListener(TransferListener listener);
+
+    public void removeTransferListener(TransferListener listener);
+}
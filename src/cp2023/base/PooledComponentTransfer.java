@@ -0,0 +1,14 @@
+package cp2023.base;
+
+/**
+ * A transfer to any device of a named pool (defined in the storage system)
+ * instead of a single destination device.
+ */
+public interface PooledComponentTransfer extends ComponentTransfer {
+
+    public String getDestinationPool();
+
+    // called by the system before the transfer is allowed to prepare;
+    // from then on getDestinationDeviceId() has to return the given device
+    public void bindDestination(DeviceId destination);
+}
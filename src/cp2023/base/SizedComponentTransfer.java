@@ -0,0 +1,11 @@
+package cp2023.base;
+
+/**
+ * A transfer that declares how many bytes it moves, so that it can be
+ * throttled by bandwidth limits of its devices. Systems with capacities in
+ * bytes take the size of a component being added from its transfer.
+ */
+public interface SizedComponentTransfer extends ComponentTransfer {
+
+    public long getSize();
+}
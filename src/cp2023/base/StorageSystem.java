@@ -12,5 +12,14 @@ import cp2023.exceptions.TransferException;
 public interface StorageSystem {
 
     void execute(ComponentTransfer transfer) throws TransferException;
-    
+
+    // like execute(), but returns the reason of a rejection instead of throwing
+    default TransferResult tryExecute(ComponentTransfer transfer) {
+        try {
+            execute(transfer);
+            return TransferResult.EXECUTED;
+        } catch (TransferException e) {
+            return TransferResult.of(e, transfer);
+        }
+    }
 }
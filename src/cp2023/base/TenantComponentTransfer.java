@@ -0,0 +1,11 @@
+package cp2023.base;
+
+/**
+ * A transfer on behalf of a tenant, whose quotas and share of freed slots it
+ * is subject to (see the tenant settings of the storage system). Transfers
+ * with a null tenant are treated as ordinary ones.
+ */
+public interface TenantComponentTransfer extends ComponentTransfer {
+
+    public String getTenant();
+}
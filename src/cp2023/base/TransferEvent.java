@@ -0,0 +1,50 @@
+package cp2023.base;
+
+/**
+ * A step in the life of a transfer, passed to {@link TransferListener}s.
+ * Event objects are reused by the system, so they must not be used after
+ * the listener returns.
+ */
+public interface TransferEvent {
+
+    public enum Type {
+        SUBMITTED,
+        // has to wait for a slot on its destination
+        QUEUED,
+        // allowed to prepare
+        ADMITTED,
+        PREPARED,
+        PERFORMED,
+        // failed with a TransferException
+        REJECTED,
+        // withdrawn without being executed, because another transfer
+        // it was submitted with has been rejected or its prepare() has thrown
+        CANCELLED
+    }
+
+    // how the transfer got its slot on the destination
+    public enum AdmissionPath {
+        // a free slot, reserved without the lock of the waiting graph
+        FAST,
+        FREE_SLOT,
+        // a slot of a transfer leaving the destination
+        VACATED_SLOT,
+        CYCLE,
+        // a free slot, reserved while the previous transfer of the component performed
+        CHAINED
+    }
+
+    public Type getType();
+
+    public ComponentId getComponentId();
+
+    public DeviceId getSourceDeviceId();
+
+    public DeviceId getDestinationDeviceId();
+
+    // System.nanoTime() at the moment of the event
+    public long getTimestamp();
+
+    // null unless the type is ADMITTED
+    public AdmissionPath getAdmissionPath();
+}
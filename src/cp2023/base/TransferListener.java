@@ -0,0 +1,11 @@
+package cp2023.base;
+
+/**
+ * Receives the events of all transfers of a storage system. It is called by
+ * a single thread of the system, in the order the events were published, and
+ * should not throw.
+ */
+public interface TransferListener {
+
+    public void transferEvent(TransferEvent event);
+}
@@ -0,0 +1,90 @@
+package cp2023.base;
+
+import cp2023.exceptions.ComponentAlreadyExists;
+import cp2023.exceptions.ComponentDoesNotExist;
+import cp2023.exceptions.ComponentDoesNotNeedTransfer;
+import cp2023.exceptions.ComponentIsBeingOperatedOn;
+import cp2023.exceptions.DeviceDoesNotExist;
+import cp2023.exceptions.DevicePoolDoesNotExist;
+import cp2023.exceptions.IllegalComponentSize;
+import cp2023.exceptions.IllegalTransferType;
+import cp2023.exceptions.TenantQuotaExceeded;
+import cp2023.exceptions.TransferException;
+
+/**
+ * Outcome of {@link StorageSystem#tryExecute}: either the transfer has been
+ * executed or the reason (one per subclass of TransferException) why it has
+ * been rejected without being executed.
+ */
+public enum TransferResult {
+    EXECUTED,
+    ILLEGAL_TRANSFER_TYPE,
+    SOURCE_DEVICE_DOES_NOT_EXIST,
+    DESTINATION_DEVICE_DOES_NOT_EXIST,
+    DEVICE_POOL_DOES_NOT_EXIST,
+    COMPONENT_ALREADY_EXISTS,
+    COMPONENT_DOES_NOT_EXIST,
+    COMPONENT_DOES_NOT_NEED_TRANSFER,
+    COMPONENT_IS_BEING_OPERATED_ON,
+    TENANT_QUOTA_EXCEEDED,
+    ILLEGAL_COMPONENT_SIZE;
+
+    public static TransferResult of(TransferException e, ComponentTransfer transfer) {
+        if (e instanceof IllegalTransferType)
+            return ILLEGAL_TRANSFER_TYPE;
+        if (e instanceof DeviceDoesNotExist)
+            return ((DeviceDoesNotExist) e).getDeviceId().equals(transfer.getSourceDeviceId())
+                    ? SOURCE_DEVICE_DOES_NOT_EXIST : DESTINATION_DEVICE_DOES_NOT_EXIST;
+        if (e instanceof DevicePoolDoesNotExist)
+            return DEVICE_POOL_DOES_NOT_EXIST;
+        if (e instanceof ComponentAlreadyExists)
+            return COMPONENT_ALREADY_EXISTS;
+        if (e instanceof ComponentDoesNotExist)
+            return COMPONENT_DOES_NOT_EXIST;
+        if (e instanceof ComponentDoesNotNeedTransfer)
+            return COMPONENT_DOES_NOT_NEED_TRANSFER;
+        if (e instanceof ComponentIsBeingOperatedOn)
+            return COMPONENT_IS_BEING_OPERATED_ON;
+        if (e instanceof TenantQuotaExceeded)
+            return TENANT_QUOTA_EXCEEDED;
+        if (e instanceof IllegalComponentSize)
+            return ILLEGAL_COMPONENT_SIZE;
+        throw new IllegalArgumentException("Unknown transfer exception " + e, e);
+    }
+
+    /**
+     * Exception of a rejected transfer; placement is the device the component
+     * was found on, reported by ComponentAlreadyExists (null if it is being
+     * added by someone else).
+     */
+    public TransferException toException(ComponentTransfer transfer, DeviceId placement) {
+        ComponentId component = transfer.getComponentId();
+        switch (this) {
+            case ILLEGAL_TRANSFER_TYPE:
+                return new IllegalTransferType(component);
+            case SOURCE_DEVICE_DOES_NOT_EXIST:
+                return new DeviceDoesNotExist(transfer.getSourceDeviceId());
+            case DESTINATION_DEVICE_DOES_NOT_EXIST:
+                return new DeviceDoesNotExist(transfer.getDestinationDeviceId());
+            case DEVICE_POOL_DOES_NOT_EXIST:
+                return new DevicePoolDoesNotExist(
+                        ((PooledComponentTransfer) transfer).getDestinationPool());
+            case COMPONENT_ALREADY_EXISTS:
+                return placement == null ? new ComponentAlreadyExists(component)
+                        : new ComponentAlreadyExists(component, placement);
+            case COMPONENT_DOES_NOT_EXIST:
+                return new ComponentDoesNotExist(component, transfer.getSourceDeviceId());
+            case COMPONENT_DOES_NOT_NEED_TRANSFER:
+                return new ComponentDoesNotNeedTransfer(component, transfer.getSourceDeviceId());
+            case COMPONENT_IS_BEING_OPERATED_ON:
+                return new ComponentIsBeingOperatedOn(component);
+            case TENANT_QUOTA_EXCEEDED:
+                return new TenantQuotaExceeded(((TenantComponentTransfer) transfer).getTenant(),
+                        transfer.getDestinationDeviceId());
+            case ILLEGAL_COMPONENT_SIZE:
+                return new IllegalComponentSize(component, transfer.getDestinationDeviceId());
+            default:
+                throw new IllegalArgumentException("Transfer was not rejected");
+        }
+    }
+}
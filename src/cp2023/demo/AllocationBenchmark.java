@@ -0,0 +1,101 @@
+package cp2023.demo;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Measures how many bytes the system allocates per transfer in the steady
+ * state, when a component is moved back and forth between two devices that
+ * are not full (the transfers themselves are reused). With fast admission
+ * nothing is allocated. On the default path about 120 bytes are: the gate
+ * of the transfer, its entry in the map of gates, and a node of the list of
+ * transfers leaving the source.
+ * <p>
+ * The engine keys its maps by the interned id objects rather than raw ints,
+ * which costs hash lookups but no allocations. The default path keeps its
+ * allocations, as it is the one that may park the thread; transfers that
+ * must not allocate should use fast admission.
+ * Usage: AllocationBenchmark [transfers]
+ */
+public final class AllocationBenchmark {
+
+    public static void main(String[] args) {
+        int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        DeviceId dev1 = DeviceId.of(1);
+        DeviceId dev2 = DeviceId.of(2);
+        ComponentId component = ComponentId.of(1);
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 2);
+        deviceCapacities.put(dev2, 2);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(1);
+        initialComponentMapping.put(component, dev1);
+        ComponentTransfer there = new NopTransfer(component, dev1, dev2);
+        ComponentTransfer back = new NopTransfer(component, dev2, dev1);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (boolean fastAdmission : new boolean[] {false, true}) {
+            StorageSystemInstance system =
+                    new StorageSystemInstance(deviceCapacities, initialComponentMapping);
+            system.setFastAdmission(fastAdmission);
+            // warm-up, then measure
+            for (int repetition = 0; repetition < 2; repetition++) {
+                long allocated = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                for (int i = 0; i < transfers; i++) {
+                    if (system.tryExecute(i % 2 == 0 ? there : back) != TransferResult.EXECUTED)
+                        throw new RuntimeException("Transfer " + i + " was rejected");
+                }
+                long nanos = System.nanoTime() - start;
+                allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+                if (repetition == 1)
+                    System.out.printf("%-17s %.1f bytes and %.0f ns per transfer%n",
+                            fastAdmission ? "fast admission" : "default",
+                            allocated / (double) transfers, nanos / (double) transfers);
+            }
+        }
+    }
+
+    private static final class NopTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+
+        NopTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+}
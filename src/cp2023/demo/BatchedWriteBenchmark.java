@@ -0,0 +1,158 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Moves components back and forth between two simulated devices, which
+ * execute one write at a time with a high fixed cost per write, with every
+ * perform() writing on its own and with performs coalesced into batches.
+ * Usage: BatchedWriteBenchmark [components] [moves per component]
+ *        [write overhead in us] [window in us] [max batch size]
+ */
+public final class BatchedWriteBenchmark {
+    // cost of writing one component, on top of the overhead of a write
+    private static final long COMPONENT_NANOS = 5_000;
+
+    public static void main(String[] args) {
+        int components = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long overheadNanos = (args.length > 2 ? Long.parseLong(args[2]) : 200) * 1000;
+        long windowNanos = (args.length > 3 ? Long.parseLong(args[3]) : 50) * 1000;
+        int maxBatchSize = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+
+        // warm-up, then measure
+        for (int repetition = 0; repetition < 2; repetition++) {
+            for (boolean batched : new boolean[] {false, true}) {
+                double[] result = run(components, moves, overheadNanos, batched,
+                        windowNanos, maxBatchSize);
+                if (repetition == 1)
+                    System.out.printf("%-10s %10.0f moves per second, %5.1f transfers per write%n",
+                            batched ? "batched" : "one by one",
+                            components * (double) moves / result[0] * 1e9, result[1]);
+            }
+        }
+    }
+
+    // returns the duration and the mean number of transfers per write
+    private static double[] run(int components, int moves, long overheadNanos, boolean batched,
+                                long windowNanos, int maxBatchSize) {
+        DeviceId dev1 = DeviceId.of(1);
+        DeviceId dev2 = DeviceId.of(2);
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, components);
+        deviceCapacities.put(dev2, components);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(components);
+        for (int i = 0; i < components; i++)
+            initialComponentMapping.put(ComponentId.of(i), dev1);
+        StorageSystemInstance system =
+                new StorageSystemInstance(deviceCapacities, initialComponentMapping);
+        SimulatedDevice device1 = new SimulatedDevice(overheadNanos);
+        SimulatedDevice device2 = new SimulatedDevice(overheadNanos);
+        if (batched) {
+            system.setBatchablePerformer(dev1, (device, transfers, done) ->
+                    device1.write(transfers.size()), windowNanos, TimeUnit.NANOSECONDS,
+                    maxBatchSize);
+            system.setBatchablePerformer(dev2, (device, transfers, done) ->
+                    device2.write(transfers.size()), windowNanos, TimeUnit.NANOSECONDS,
+                    maxBatchSize);
+        }
+
+        List<Thread> threads = new ArrayList<>(components);
+        for (int i = 0; i < components; i++) {
+            ComponentId component = ComponentId.of(i);
+            threads.add(new Thread(() -> {
+                for (int move = 0; move < moves; move++) {
+                    boolean there = move % 2 == 0;
+                    try {
+                        system.execute(new SimulatedTransfer(component,
+                                there ? dev1 : dev2, there ? dev2 : dev1,
+                                there ? device2 : device1));
+                    } catch (TransferException e) {
+                        throw new RuntimeException("Unexpected transfer exception: " + e, e);
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+        long duration = System.nanoTime() - start;
+        long writes = device1.writes + device2.writes;
+        return new double[] {duration, components * (double) moves / writes};
+    }
+
+    private static final class SimulatedDevice {
+        private final long overheadNanos;
+        private final Semaphore head;
+        // guarded by head
+        private long writes;
+
+        SimulatedDevice(long overheadNanos) {
+            this.overheadNanos = overheadNanos;
+            this.head = new Semaphore(1, true);
+        }
+
+        void write(int components) {
+            head.acquireUninterruptibly();
+            writes++;
+            LockSupport.parkNanos(overheadNanos + components * COMPONENT_NANOS);
+            head.release();
+        }
+    }
+
+    private static final class SimulatedTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final SimulatedDevice destination;
+
+        SimulatedTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+                          SimulatedDevice destination) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.destination = destination;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            destination.write(1);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Moves components back and forth between two simulated devices, whose writes
+ * slow down quadratically with the number of writers active at once, with and
+ * without a limit on concurrent writers.
+ * Usage: DeviceConcurrencyBenchmark [components] [moves per component] [write duration in us]
+ */
+public final class DeviceConcurrencyBenchmark {
+
+    // a write with n writers active takes (1 + SLOWDOWN * (n - 1)^2) times longer
+    private static final double SLOWDOWN = 0.25;
+
+    public static void main(String[] args) {
+        int components = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        long writeNanos = (args.length > 2 ? Long.parseLong(args[2]) : 200) * 1000;
+
+        int[] writerLimits = {0, 1, 2, 4, 8};
+        // warm-up, then measure
+        for (int repetition = 0; repetition < 2; repetition++) {
+            for (int writers : writerLimits) {
+                long nanos = run(components, moves, writeNanos, writers);
+                if (repetition == 1)
+                    System.out.printf("%-16s %10.0f moves per second%n",
+                            writers == 0 ? "no limit" : writers + " writers",
+                            components * (double) moves / nanos * 1e9);
+            }
+        }
+    }
+
+    private static long run(int components, int moves, long writeNanos, int writers) {
+        DeviceId dev1 = DeviceId.of(1);
+        DeviceId dev2 = DeviceId.of(2);
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, components);
+        deviceCapacities.put(dev2, components);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(components);
+        for (int i = 0; i < components; i++)
+            initialComponentMapping.put(ComponentId.of(i), dev1);
+        StorageSystemInstance system =
+                new StorageSystemInstance(deviceCapacities, initialComponentMapping);
+        if (writers > 0) {
+            system.setDeviceConcurrencyLimit(dev1, Integer.MAX_VALUE, writers);
+            system.setDeviceConcurrencyLimit(dev2, Integer.MAX_VALUE, writers);
+        }
+        Map<DeviceId, SimulatedDevice> devices = new HashMap<>(2);
+        devices.put(dev1, new SimulatedDevice(writeNanos));
+        devices.put(dev2, new SimulatedDevice(writeNanos));
+
+        List<Thread> threads = new ArrayList<>(components);
+        for (int i = 0; i < components; i++) {
+            ComponentId component = ComponentId.of(i);
+            threads.add(new Thread(() -> {
+                for (int move = 0; move < moves; move++) {
+                    DeviceId source = move % 2 == 0 ? dev1 : dev2;
+                    DeviceId destination = move % 2 == 0 ? dev2 : dev1;
+                    try {
+                        system.execute(new SimulatedTransfer(component, source, destination,
+                                devices.get(destination)));
+                    } catch (TransferException e) {
+                        throw new RuntimeException("Unexpected transfer exception: " + e, e);
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static final class SimulatedDevice {
+        private final long writeNanos;
+        private final AtomicInteger writers;
+
+        SimulatedDevice(long writeNanos) {
+            this.writeNanos = writeNanos;
+            this.writers = new AtomicInteger();
+        }
+
+        void write() {
+            int active = writers.incrementAndGet();
+            LockSupport.parkNanos((long) (writeNanos
+                    * (1 + SLOWDOWN * (active - 1) * (active - 1))));
+            writers.decrementAndGet();
+        }
+    }
+
+    private static final class SimulatedTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final SimulatedDevice destination;
+
+        SimulatedTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+                          SimulatedDevice destination) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.destination = destination;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            destination.write();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.base.TransferResult;
+import cp2023.solution.Engine;
+import cp2023.solution.EventLoopStorageSystem;
+import cp2023.solution.StorageSystemFactory;
+
+/**
+ * Compares the throughput of the engines when many threads move their
+ * components around a ring of devices with instantaneous prepare() and
+ * perform(), so that the scheduling itself is the bottleneck. Devices have
+ * one free slot each, hence most transfers wait for another one.
+ * Usage: EngineBenchmark [threads] [devices] [moves per thread]
+ */
+public final class EngineBenchmark {
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int devices = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int moves = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+        // warm-up, then measure
+        for (int repetition = 0; repetition < 2; repetition++) {
+            for (Engine engine : Engine.values()) {
+                StorageSystem system = newSystem(engine, threads, devices);
+                long nanos = run(system, threads, devices, moves);
+                if (repetition == 1) {
+                    System.out.printf("%-12s %10.0f transfers per second", engine,
+                            threads * (double) moves / nanos * 1e9);
+                    if (system instanceof EventLoopStorageSystem)
+                        System.out.printf(", %.1f requests per batch",
+                                ((EventLoopStorageSystem) system).getAverageBatchSize());
+                    System.out.println();
+                }
+                if (system instanceof EventLoopStorageSystem)
+                    ((EventLoopStorageSystem) system).shutdown();
+            }
+        }
+    }
+
+    private static StorageSystem newSystem(Engine engine, int threads, int devices) {
+        // one slot of every device is left free
+        int capacity = (threads + devices - 1) / devices + 1;
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(devices);
+        for (int i = 0; i < devices; i++)
+            deviceCapacities.put(DeviceId.of(i), capacity);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(threads);
+        for (int i = 0; i < threads; i++)
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i % devices));
+        return StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping, engine);
+    }
+
+    private static long run(StorageSystem system, int threads, int devices, int moves) {
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            ComponentId component = ComponentId.of(i);
+            int first = i % devices;
+            workers.add(new Thread(() -> {
+                for (int move = 0; move < moves; move++) {
+                    ComponentTransfer transfer = new NopTransfer(component,
+                            DeviceId.of((first + move) % devices),
+                            DeviceId.of((first + move + 1) % devices));
+                    if (system.tryExecute(transfer) != TransferResult.EXECUTED)
+                        throw new RuntimeException("Transfer " + move + " of " + component
+                                + " was rejected");
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static final class NopTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+
+        NopTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.AccessTracker;
+import cp2023.solution.EvictionPolicy;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Clients access components with Zipf-distributed popularity and move each
+ * component they access onto a small cache device unless it is there.
+ * Without eviction the cache fills up and the clients wait for it forever;
+ * with eviction the least recently or least frequently used components are
+ * moved back to the large device. Prints the share of accesses served by
+ * the cache and how long moves onto it waited to be admitted.
+ * Usage: EvictionBenchmark [components] [cache slots] [threads] [seconds]
+ */
+public final class EvictionBenchmark {
+    private static final int CACHE = 0;
+    private static final int STORE = 1;
+    private static final double ZIPF_EXPONENT = 0.9;
+    private static final long PERFORM_NANOS = 50_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int components = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int cacheSlots = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        double[] cdf = new double[components];
+        double sum = 0;
+        for (int r = 0; r < components; r++) {
+            sum += 1 / Math.pow(r + 1, ZIPF_EXPONENT);
+            cdf[r] = sum;
+        }
+        for (String policy : new String[] {"none", "LRU", "LFU"})
+            run(policy, components, cacheSlots, threads, seconds, cdf);
+    }
+
+    private static void run(String policy, int components, int cacheSlots, int threads,
+                            int seconds, double[] cdf) throws InterruptedException {
+        HashMap<DeviceId, Integer> capacities = new HashMap<>();
+        capacities.put(DeviceId.of(CACHE), cacheSlots);
+        capacities.put(DeviceId.of(STORE), components);
+        HashMap<ComponentId, DeviceId> placement = new HashMap<>(2 * components);
+        AtomicIntegerArray placedOn = new AtomicIntegerArray(components);
+        for (int j = 0; j < components; j++) {
+            placement.put(ComponentId.of(j), DeviceId.of(STORE));
+            placedOn.set(j, STORE);
+        }
+        StorageSystemInstance system = new StorageSystemInstance(capacities, placement);
+        if (!policy.equals("none")) {
+            AccessTracker tracker = new AccessTracker(16 * cacheSlots, 10L * cacheSlots);
+            system.setAccessTracker(tracker);
+            system.setEviction(DeviceId.of(CACHE), DeviceId.of(STORE),
+                    policy.equals("LRU") ? EvictionPolicy.leastRecentlyUsed()
+                            : EvictionPolicy.leastFrequentlyUsed(tracker),
+                    (component, source, destination) ->
+                            new Move(component, source, destination, placedOn));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong accesses = new AtomicLong();
+        AtomicLong hits = new AtomicLong();
+        List<long[]> waits = new ArrayList<>();
+        List<int[]> waitCounts = new ArrayList<>();
+        List<Thread> clients = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            long[] threadWaits = new long[1 << 20];
+            int[] threadWaitCount = new int[1];
+            waits.add(threadWaits);
+            waitCounts.add(threadWaitCount);
+            Thread client = new Thread(() -> {
+                while (running.get()) {
+                    int component = search(cdf, random.nextDouble() * cdf[cdf.length - 1]);
+                    system.recordAccess(ComponentId.of(component));
+                    accesses.incrementAndGet();
+                    if (placedOn.get(component) == CACHE) {
+                        hits.incrementAndGet();
+                        continue;
+                    }
+                    Move move = new Move(ComponentId.of(component), DeviceId.of(STORE),
+                            DeviceId.of(CACHE), placedOn);
+                    // rejected if another client or an eviction is moving it
+                    if (system.tryExecute(move) == TransferResult.EXECUTED
+                            && threadWaitCount[0] < threadWaits.length)
+                        threadWaits[threadWaitCount[0]++] = move.admittedAt - move.submittedAt;
+                }
+            });
+            // without eviction the clients end up waiting forever
+            client.setDaemon(true);
+            client.start();
+            clients.add(client);
+        }
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        // lets the clients that can finish do so
+        Thread.sleep(100);
+
+        int stuck = 0;
+        for (Thread client : clients)
+            stuck += client.isAlive() ? 1 : 0;
+        int count = 0;
+        for (int[] threadWaitCount : waitCounts)
+            count += threadWaitCount[0];
+        long[] all = new long[count];
+        int filled = 0;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(waits.get(t), 0, all, filled, waitCounts.get(t)[0]);
+            filled += waitCounts.get(t)[0];
+        }
+        Arrays.sort(all);
+        System.out.printf("%-5s %9d accesses, %5.1f%% from the cache, %7d moves in, waiting "
+                        + "p50 %7.1f us, p99 %7.1f us, max %8.1f us, %d clients stuck%n",
+                policy, accesses.get(), 100.0 * hits.get() / Math.max(1, accesses.get()),
+                count, percentile(all, 0.5), percentile(all, 0.99),
+                count == 0 ? 0 : all[count - 1] / 1e3, stuck);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[(int) (p * (sorted.length - 1))] / 1e3;
+    }
+
+    // first index whose value is at least the given one
+    private static int search(double[] cdf, double value) {
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cdf[middle] < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static final class Move implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final AtomicIntegerArray placedOn;
+        private final long submittedAt;
+        private long admittedAt;
+
+        Move(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+             AtomicIntegerArray placedOn) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.placedOn = placedOn;
+            this.submittedAt = System.nanoTime();
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            admittedAt = System.nanoTime();
+        }
+
+        @Override
+        public void perform() {
+            LockSupport.parkNanos(PERFORM_NANOS);
+            placedOn.set(compId.getId(), dstDevId.getId());
+        }
+    }
+}
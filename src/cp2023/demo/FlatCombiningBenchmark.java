@@ -0,0 +1,124 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Moves components of many threads around a ring of devices with one free
+ * slot each, so that most transfers take the graph lock, with and without
+ * flat combining. Each operation applied by a combiner would otherwise take
+ * the lock itself, so operations per pass is the number of lock handoffs
+ * saved per one made.
+ * Usage: FlatCombiningBenchmark [devices] [moves per thread]
+ */
+public final class FlatCombiningBenchmark {
+
+    public static void main(String[] args) {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+
+        int[] threadCounts = {8, 32, 64};
+        // warm-up, then measure
+        for (int repetition = 0; repetition < 2; repetition++) {
+            for (int threads : threadCounts) {
+                for (boolean combining : new boolean[] {false, true}) {
+                    StorageSystemInstance system = newSystem(threads, devices);
+                    system.setFlatCombining(combining);
+                    long nanos = run(system, threads, devices, moves);
+                    if (repetition == 1) {
+                        System.out.printf("%2d threads, %-13s %10.0f transfers per second",
+                                threads, combining ? "combining" : "no combining",
+                                threads * (double) moves / nanos * 1e9);
+                        if (combining)
+                            System.out.printf(", %.1f operations per pass",
+                                    system.getCombinedOperationCount()
+                                            / (double) system.getCombinerPassCount());
+                        System.out.println();
+                    }
+                }
+            }
+        }
+    }
+
+    private static StorageSystemInstance newSystem(int threads, int devices) {
+        // one slot of every device is left free
+        int capacity = (threads + devices - 1) / devices + 1;
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(devices);
+        for (int i = 0; i < devices; i++)
+            deviceCapacities.put(DeviceId.of(i), capacity);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(threads);
+        for (int i = 0; i < threads; i++)
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i % devices));
+        return new StorageSystemInstance(deviceCapacities, initialComponentMapping);
+    }
+
+    private static long run(StorageSystemInstance system, int threads, int devices, int moves) {
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            ComponentId component = ComponentId.of(i);
+            int first = i % devices;
+            workers.add(new Thread(() -> {
+                for (int move = 0; move < moves; move++) {
+                    ComponentTransfer transfer = new NopTransfer(component,
+                            DeviceId.of((first + move) % devices),
+                            DeviceId.of((first + move + 1) % devices));
+                    if (system.tryExecute(transfer) != TransferResult.EXECUTED)
+                        throw new RuntimeException("Transfer " + move + " of " + component
+                                + " was rejected");
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static final class NopTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+
+        NopTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Moves a group of components back and forth between two devices, either
+ * with independent execute() calls or with a single executeGroup() call.
+ * Usage: GroupTransferBenchmark [group size] [rounds] [phase duration in us]
+ */
+public final class GroupTransferBenchmark {
+
+    public static void main(String[] args) {
+        int groupSize = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long phaseNanos = (args.length > 2 ? Long.parseLong(args[2]) : 20) * 1000;
+
+        // warm-up, then measure
+        for (int repetition = 0; repetition < 2; repetition++) {
+            long sequential = run(groupSize, rounds, phaseNanos, Mode.SEQUENTIAL);
+            long threaded = run(groupSize, rounds, phaseNanos, Mode.THREAD_PER_TRANSFER);
+            long grouped = run(groupSize, rounds, phaseNanos, Mode.GROUP);
+            if (repetition == 1) {
+                System.out.println("group of " + groupSize + ", " + rounds + " rounds, "
+                        + phaseNanos / 1000 + " us per phase");
+                print("sequential execute()", sequential, rounds);
+                print("execute() per thread", threaded, rounds);
+                print("executeGroup()", grouped, rounds);
+            }
+        }
+    }
+
+    private enum Mode { SEQUENTIAL, THREAD_PER_TRANSFER, GROUP }
+
+    private static long run(int groupSize, int rounds, long phaseNanos, Mode mode) {
+        DeviceId dev1 = DeviceId.of(1);
+        DeviceId dev2 = DeviceId.of(2);
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, groupSize);
+        deviceCapacities.put(dev2, groupSize);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(groupSize);
+        for (int i = 0; i < groupSize; i++)
+            initialComponentMapping.put(ComponentId.of(i), dev1);
+        StorageSystemInstance system =
+                new StorageSystemInstance(deviceCapacities, initialComponentMapping);
+
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            DeviceId source = round % 2 == 0 ? dev1 : dev2;
+            DeviceId destination = round % 2 == 0 ? dev2 : dev1;
+            List<ComponentTransfer> group = new ArrayList<>(groupSize);
+            for (int i = 0; i < groupSize; i++)
+                group.add(new SleepingTransfer(ComponentId.of(i), source, destination, phaseNanos));
+            switch (mode) {
+                case SEQUENTIAL:
+                    for (ComponentTransfer transfer : group)
+                        execute(system, transfer);
+                    break;
+                case THREAD_PER_TRANSFER:
+                    List<Thread> threads = new ArrayList<>(groupSize);
+                    for (ComponentTransfer transfer : group)
+                        threads.add(new Thread(() -> execute(system, transfer)));
+                    threads.forEach(Thread::start);
+                    for (Thread thread : threads) {
+                        try {
+                            thread.join();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException("panic: unexpected thread interruption", e);
+                        }
+                    }
+                    break;
+                case GROUP:
+                    try {
+                        system.executeGroup(group);
+                    } catch (TransferException e) {
+                        throw new RuntimeException("Unexpected transfer exception: " + e, e);
+                    }
+                    break;
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void execute(StorageSystemInstance system, ComponentTransfer transfer) {
+        try {
+            system.execute(transfer);
+        } catch (TransferException e) {
+            throw new RuntimeException("Unexpected transfer exception: " + e, e);
+        }
+    }
+
+    private static void print(String name, long nanos, int rounds) {
+        System.out.printf("%-24s %10.1f us per group%n", name, nanos / 1000.0 / rounds);
+    }
+
+    private static final class SleepingTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long phaseNanos;
+
+        SleepingTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+                         long phaseNanos) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.phaseNanos = phaseNanos;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            LockSupport.parkNanos(phaseNanos);
+        }
+
+        @Override
+        public void perform() {
+            LockSupport.parkNanos(phaseNanos);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.WaitStrategy;
+
+/**
+ * Pairs of threads keep swapping two components between two full devices,
+ * so every transfer is admitted as a part of a cycle and then waits for
+ * the other one to prepare before it performs. Those handoffs take
+ * microseconds, which is where spinning before parking pays off; waiting
+ * to be admitted takes as long as the other thread needs to come back.
+ * Usage: HandoffBenchmark [pairs] [swaps per pair]
+ */
+public final class HandoffBenchmark {
+
+    public static void main(String[] args) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int swaps = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        // warm-up, then measure
+        for (int repetition = 0; repetition < 2; repetition++) {
+            for (WaitStrategy strategy : WaitStrategy.values()) {
+                long[] latencies = new long[2 * pairs * swaps];
+                long nanos = run(newSystem(pairs, strategy), pairs, swaps, latencies);
+                if (repetition == 1) {
+                    Arrays.sort(latencies);
+                    System.out.printf("%-14s %9.0f swaps per second, transfer p50 %6.1f us,"
+                                    + " p99 %7.1f us%n", strategy,
+                            pairs * (double) swaps / nanos * 1e9,
+                            latencies[latencies.length / 2] / 1e3,
+                            latencies[(int) (latencies.length * 0.99)] / 1e3);
+                }
+            }
+        }
+    }
+
+    private static StorageSystem newSystem(int pairs, WaitStrategy strategy) {
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2 * pairs);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2 * pairs);
+        for (int i = 0; i < 2 * pairs; i++) {
+            deviceCapacities.put(DeviceId.of(i), 1);
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i));
+        }
+        return StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping,
+                strategy);
+    }
+
+    private static long run(StorageSystem system, int pairs, int swaps, long[] latencies) {
+        List<Thread> workers = new ArrayList<>(2 * pairs);
+        for (int i = 0; i < 2 * pairs; i++) {
+            ComponentId component = ComponentId.of(i);
+            int here = i;
+            // the device of the other component of the pair
+            int there = i ^ 1;
+            int offset = i * swaps;
+            workers.add(new Thread(() -> {
+                for (int swap = 0; swap < swaps; swap++) {
+                    boolean back = swap % 2 == 1;
+                    ComponentTransfer transfer = new NopTransfer(component,
+                            DeviceId.of(back ? there : here), DeviceId.of(back ? here : there));
+                    long start = System.nanoTime();
+                    if (system.tryExecute(transfer) != TransferResult.EXECUTED)
+                        throw new RuntimeException("Swap " + swap + " of " + component
+                                + " was rejected");
+                    latencies[offset + swap] = System.nanoTime() - start;
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static final class NopTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+
+        NopTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package cp2023.demo;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.net.StorageClient;
+import cp2023.net.StorageServer;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Executes transfers with instantaneous prepare() and perform() over
+ * a single loopback connection from a growing number of threads, each moving
+ * its own component around a ring of devices with free slots.
+ * Usage: NetworkBenchmark [devices] [moves per thread]
+ */
+public final class NetworkBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        int[] threadCounts = {1, 16, 64};
+        // warm-up, then measure
+        for (int repetition = 0; repetition < 2; repetition++) {
+            for (int threads : threadCounts) {
+                try (StorageServer server = new StorageServer(newSystem(threads, devices),
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                     StorageClient client = new StorageClient(server.getAddress())) {
+                    long nanos = run(client, threads, devices, moves);
+                    if (repetition == 1)
+                        System.out.printf("%2d threads %10.0f transfers per second, "
+                                        + "%.1f frames per write%n", threads,
+                                threads * (double) moves / nanos * 1e9,
+                                client.getAverageBatchSize());
+                }
+            }
+        }
+    }
+
+    private static StorageSystemInstance newSystem(int threads, int devices) {
+        int capacity = (threads + devices - 1) / devices + 1;
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(devices);
+        for (int i = 0; i < devices; i++)
+            deviceCapacities.put(DeviceId.of(i), capacity);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(threads);
+        for (int i = 0; i < threads; i++)
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i % devices));
+        return new StorageSystemInstance(deviceCapacities, initialComponentMapping);
+    }
+
+    private static long run(StorageClient client, int threads, int devices, int moves) {
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            ComponentId component = ComponentId.of(i);
+            int first = i % devices;
+            workers.add(new Thread(() -> {
+                for (int move = 0; move < moves; move++) {
+                    ComponentTransfer transfer = new NopTransfer(component,
+                            DeviceId.of((first + move) % devices),
+                            DeviceId.of((first + move + 1) % devices));
+                    if (client.tryExecute(transfer) != TransferResult.EXECUTED)
+                        throw new RuntimeException("Transfer " + move + " of " + component
+                                + " was rejected");
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static final class NopTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+
+        NopTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cp2023.demo;
+
+import java.util.HashMap;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.solution.SimulationReport;
+import cp2023.solution.Simulator;
+
+/**
+ * Simulates components moving at random between devices on a virtual clock
+ * and prints the sampled curves as CSV followed by a summary.
+ * Usage: SimulationDemo [devices] [slots per device] [components] [transfers] [seed]
+ */
+public final class SimulationDemo {
+
+    public static void main(String[] args) {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int slots = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int components = args.length > 2 ? Integer.parseInt(args[2]) : 112;
+        long transfers = args.length > 3 ? Long.parseLong(args[3]) : 1_000_000;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(devices);
+        for (int i = 0; i < devices; i++)
+            deviceCapacities.put(DeviceId.of(i), slots);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(components);
+        for (int i = 0; i < components; i++)
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i % devices));
+        // 1 ms think time, 2 ms prepare, 5 ms perform on average
+        Simulator simulator = new Simulator(deviceCapacities, initialComponentMapping,
+                1_000_000_000L);
+        SimulationReport report = simulator.runClosedLoop(transfers, 1_000_000, 2_000_000,
+                5_000_000, seed);
+
+        System.out.print(report.toCsv());
+        System.out.printf("%d executed, %d rejected, %d stuck in %.1f virtual seconds%n",
+                report.getExecuted(), report.getRejected(), report.getStuck(),
+                report.getVirtualNanos() / 1e9);
+        System.out.printf("latency p50 %.2f ms, p99 %.2f ms%n",
+                report.getMedianLatencyNanos() / 1e6, report.getP99LatencyNanos() / 1e6);
+        System.out.printf("%.0f transfers simulated per second%n",
+                report.getExecuted() / (report.getWallNanos() / 1e9));
+    }
+}
@@ -0,0 +1,240 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.SizedComponentTransfer;
+import cp2023.base.StorageSystem;
+import cp2023.base.TransferResult;
+import cp2023.solution.DeadlockSweeper;
+import cp2023.solution.SizedStorageSystem;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Moves components of sizes from a few megabytes to a few hundred gigabytes
+ * between devices and compares how much of the devices is used, and how full
+ * the fullest device ever gets, when admission counts slots sized for the
+ * largest component, slots sized for the mean component, and bytes.
+ * Usage: SizeAwareBenchmark [devices] [threads] [seconds] [seed]
+ */
+public final class SizeAwareBenchmark {
+    private static final long CAPACITY = 1L << 40;
+    private static final long MIN_SIZE = 4L << 20;
+    private static final long MAX_SIZE = 200L << 30;
+    // share of the bytes (or slots) filled, the rest is left for moving
+    private static final double FILL = 0.75;
+
+    public static void main(String[] args) throws InterruptedException {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        // sizes are log-uniform, so most components are small
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Long> sizes = new ArrayList<>();
+        double logRange = Math.log((double) MAX_SIZE / MIN_SIZE);
+        long total = 0;
+        while (total < FILL * CAPACITY * devices) {
+            long size = (long) (MIN_SIZE * Math.exp(random.nextDouble() * logRange));
+            sizes.add(size);
+            total += size;
+        }
+        long mean = total / sizes.size();
+
+        run("slots for the largest", devices, threads, seconds, seed, sizes,
+                (int) (CAPACITY / MAX_SIZE));
+        run("slots for the mean", devices, threads, seconds, seed, sizes,
+                (int) (CAPACITY / mean));
+        run("bytes", devices, threads, seconds, seed, sizes, 0);
+    }
+
+    // slots == 0 means the size-aware system
+    private static void run(String name, int devices, int threads, int seconds, long seed,
+                            List<Long> sizes, int slots) throws InterruptedException {
+        // space of the devices in the units of the system: slots or bytes
+        long capacity = slots == 0 ? CAPACITY : slots;
+        long[] used = new long[devices];
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        Map<ComponentId, Long> componentSizes = new HashMap<>();
+        // every component is placed on the least used device, those that
+        // would exceed the filled share are left out
+        for (int j = 0; j < sizes.size(); j++) {
+            int device = 0;
+            for (int i = 1; i < devices; i++) {
+                if (used[i] < used[device])
+                    device = i;
+            }
+            long size = slots == 0 ? sizes.get(j) : 1;
+            if (used[device] + size > FILL * capacity)
+                continue;
+            used[device] += size;
+            placement.put(ComponentId.of(j), DeviceId.of(device));
+            componentSizes.put(ComponentId.of(j), sizes.get(j));
+        }
+
+        StorageSystem system;
+        DeadlockSweeper sweeper = null;
+        if (slots == 0) {
+            Map<DeviceId, Long> capacities = new HashMap<>();
+            for (int i = 0; i < devices; i++)
+                capacities.put(DeviceId.of(i), CAPACITY);
+            SizedStorageSystem sized = new SizedStorageSystem(capacities, placement,
+                    componentSizes);
+            // closes cycles made possible by bytes freed after they formed
+            sweeper = sized.startDeadlockSweeper(10, TimeUnit.MILLISECONDS, null);
+            system = sized;
+        }
+        else {
+            Map<DeviceId, Integer> capacities = new HashMap<>();
+            for (int i = 0; i < devices; i++)
+                capacities.put(DeviceId.of(i), slots);
+            system = new StorageSystemInstance(capacities, placement);
+        }
+
+        Disks disks = new Disks(devices);
+        placement.forEach((component, device) ->
+                disks.write(device, componentSizes.get(component)));
+        // used space as seen by the workers, to pick destinations
+        AtomicLongArray seen = new AtomicLongArray(used);
+        AtomicLong moves = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            // every worker moves its own components, so it knows where they are
+            Map<ComponentId, DeviceId> owned = new HashMap<>();
+            for (Map.Entry<ComponentId, DeviceId> entry : placement.entrySet()) {
+                if (entry.getKey().getId() % threads == t)
+                    owned.put(entry.getKey(), entry.getValue());
+            }
+            List<ComponentId> components = new ArrayList<>(owned.keySet());
+            SplittableRandom random = new SplittableRandom(seed * 31 + t);
+            Thread worker = new Thread(() -> {
+                while (!components.isEmpty()) {
+                    ComponentId component = components.get(random.nextInt(components.size()));
+                    DeviceId source = owned.get(component);
+                    long size = slots == 0 ? componentSizes.get(component) : 1;
+                    // the better of two random devices with enough space, so
+                    // that workers rarely wait for devices nobody is leaving
+                    int destination = randomDeviceOtherThan(random, devices, source);
+                    int other = randomDeviceOtherThan(random, devices, source);
+                    boolean fits = seen.get(destination) + size <= capacity;
+                    boolean otherFits = seen.get(other) + size <= capacity;
+                    if (!fits && !otherFits)
+                        continue;
+                    if (otherFits && (!fits || seen.get(other) < seen.get(destination)))
+                        destination = other;
+                    DeviceId target = DeviceId.of(destination);
+                    // counted before the move, so others do not follow it
+                    // onto a device it is filling up
+                    seen.addAndGet(destination, size);
+                    if (system.tryExecute(new SizedMove(component, source, target,
+                            componentSizes.get(component), disks)) != TransferResult.EXECUTED)
+                        throw new IllegalStateException("Move of " + component + " rejected");
+                    seen.addAndGet(source.getId(), -size);
+                    owned.put(component, target);
+                    moves.incrementAndGet();
+                }
+            });
+            // a run may end with workers waiting for space that never frees
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        if (sweeper != null)
+            sweeper.shutdown();
+
+        long storedTotal = 0;
+        for (long size : componentSizes.values())
+            storedTotal += size;
+        System.out.printf("%-22s %5d components, %5.1f%% of bytes used, "
+                        + "fullest device at %6.1f%%, %8.0f moves per second%n",
+                name, placement.size(), 100.0 * storedTotal / (CAPACITY * devices),
+                100.0 * disks.fullest() / CAPACITY, moves.get() / (double) seconds);
+    }
+
+    private static int randomDeviceOtherThan(SplittableRandom random, int devices,
+                                             DeviceId device) {
+        int chosen = random.nextInt(devices - 1);
+        return chosen >= device.getId() ? chosen + 1 : chosen;
+    }
+
+    // bytes physically on the devices: a component is written to its
+    // destination when perform() starts and is gone from its source once
+    // prepare() has returned
+    private static final class Disks {
+        private final AtomicLongArray stored;
+        private final AtomicLong fullest;
+
+        Disks(int devices) {
+            this.stored = new AtomicLongArray(devices);
+            this.fullest = new AtomicLong();
+        }
+
+        void write(DeviceId device, long size) {
+            fullest.accumulateAndGet(stored.addAndGet(device.getId(), size), Math::max);
+        }
+
+        void erase(DeviceId device, long size) {
+            stored.addAndGet(device.getId(), -size);
+        }
+
+        long fullest() {
+            return fullest.get();
+        }
+    }
+
+    private static final class SizedMove implements SizedComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long size;
+        private final Disks disks;
+
+        SizedMove(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long size,
+                  Disks disks) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.size = size;
+            this.disks = disks;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public void prepare() {
+            // the component is read out (and its copy kept by the transfer)
+            disks.erase(srcDevId, size);
+        }
+
+        @Override
+        public void perform() {
+            disks.write(dstDevId, size);
+        }
+    }
+}
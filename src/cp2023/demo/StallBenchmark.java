@@ -0,0 +1,204 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.StallDetector;
+import cp2023.solution.StorageSystemInstance;
+
+/**
+ * Workers move components between nearly full devices while one prepare(),
+ * a second into the run, hangs for a while. Compares the throughput without
+ * a stall detector, with one, and with one steering admissions away from the
+ * slot of the hanging transfer, and prints how long the hang took to be
+ * noticed and how many transfers were at most blocked behind it.
+ * Usage: StallBenchmark [devices] [slots per device] [threads] [seconds] [hang ms]
+ */
+public final class StallBenchmark {
+    private static final double FILL = 0.9;
+    private static final long PREPARE_NANOS = 20_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int slots = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        long hangMillis = args.length > 4 ? Long.parseLong(args[4]) : 1000;
+
+        run("no detector", devices, slots, threads, seconds, hangMillis, false, false);
+        run("detector", devices, slots, threads, seconds, hangMillis, true, false);
+        run("detector, steering", devices, slots, threads, seconds, hangMillis, true, true);
+    }
+
+    private static void run(String name, int devices, int slots, int threads, int seconds,
+                            long hangMillis, boolean detect, boolean steer)
+            throws InterruptedException {
+        Map<DeviceId, Integer> capacities = new HashMap<>();
+        for (int i = 0; i < devices; i++)
+            capacities.put(DeviceId.of(i), slots);
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        int components = (int) (FILL * slots * devices);
+        for (int j = 0; j < components; j++)
+            placement.put(ComponentId.of(j), DeviceId.of(j % devices));
+        StorageSystemInstance system = new StorageSystemInstance(capacities, placement);
+
+        long start = System.nanoTime();
+        Hang hang = new Hang(start + 1_000_000_000L, hangMillis * 1_000_000);
+        AtomicLong detectedAt = new AtomicLong();
+        AtomicInteger maxBlocked = new AtomicInteger();
+        // transfers flagged only for being slow, e.g. descheduled ones
+        AtomicLong others = new AtomicLong();
+        StallDetector detector = null;
+        if (detect) {
+            detector = system.startStallDetector(1, TimeUnit.MILLISECONDS, 10, 10,
+                    stalls -> {
+                        for (StallDetector.Stall stall : stalls) {
+                            if (!stall.getTransfer().getComponentId().equals(hang.component())) {
+                                others.incrementAndGet();
+                                continue;
+                            }
+                            detectedAt.compareAndSet(0, System.nanoTime());
+                            maxBlocked.accumulateAndGet(stall.getBlockedCount(), Math::max);
+                        }
+                    });
+            detector.setAdmissionSteering(steer);
+        }
+
+        // slots taken or reserved, a slot counts as free once a move out of it starts
+        AtomicIntegerArray used = new AtomicIntegerArray(devices);
+        placement.values().forEach(device -> used.incrementAndGet(device.getId()));
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong moves = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            // every worker moves its own components, so it knows where they are
+            Map<ComponentId, DeviceId> owned = new HashMap<>();
+            for (Map.Entry<ComponentId, DeviceId> entry : placement.entrySet()) {
+                if (entry.getKey().getId() % threads == t)
+                    owned.put(entry.getKey(), entry.getValue());
+            }
+            List<ComponentId> mine = new ArrayList<>(owned.keySet());
+            SplittableRandom random = new SplittableRandom(t);
+            Thread worker = new Thread(() -> {
+                while (!stop.get() && !mine.isEmpty()) {
+                    ComponentId component = mine.get(random.nextInt(mine.size()));
+                    DeviceId source = owned.get(component);
+                    int chosen = random.nextInt(devices - 1);
+                    DeviceId destination = DeviceId.of(
+                            chosen >= source.getId() ? chosen + 1 : chosen);
+                    // only onto devices with a slot free or being vacated, so
+                    // that workers never wait for devices nobody is leaving
+                    if (used.incrementAndGet(destination.getId()) > slots) {
+                        used.decrementAndGet(destination.getId());
+                        continue;
+                    }
+                    used.decrementAndGet(source.getId());
+                    if (system.tryExecute(new Move(component, source, destination, hang))
+                            != TransferResult.EXECUTED)
+                        throw new IllegalStateException("Move of " + component + " rejected");
+                    owned.put(component, destination);
+                    moves.incrementAndGet();
+                }
+            });
+            // a run ends with workers waiting for slots of those already stopped
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        long moved = moves.get();
+        if (detector != null)
+            detector.shutdown();
+
+        String detection = !detect ? "-"
+                : detectedAt.get() == 0 ? "never"
+                : String.format("%.1f ms", (detectedAt.get() - hang.startedAt()) / 1e6);
+        System.out.printf("%-20s %8.0f moves per second, hang noticed after %9s, "
+                        + "at most %3d transfers blocked behind it, %4d other flags%n",
+                name, moved / (double) seconds, detection, maxBlocked.get(), others.get());
+    }
+
+    // the first prepare() after the given time hangs for the given duration
+    private static final class Hang {
+        private final long after;
+        private final long duration;
+        private final AtomicLong startedAt;
+        private volatile ComponentId component;
+
+        Hang(long after, long duration) {
+            this.after = after;
+            this.duration = duration;
+            this.startedAt = new AtomicLong();
+        }
+
+        void maybeHang(ComponentId moved) {
+            long now = System.nanoTime();
+            if (now < after || startedAt.get() != 0 || !startedAt.compareAndSet(0, now))
+                return;
+            component = moved;
+            long end = now + duration;
+            while (System.nanoTime() < end)
+                LockSupport.parkNanos(end - System.nanoTime());
+        }
+
+        long startedAt() {
+            return startedAt.get();
+        }
+
+        // component of the hanging transfer, null before it hangs
+        ComponentId component() {
+            return component;
+        }
+    }
+
+    private static final class Move implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final Hang hang;
+
+        Move(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, Hang hang) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.hang = hang;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            hang.maybeHang(compId);
+            LockSupport.parkNanos(PREPARE_NANOS);
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+}
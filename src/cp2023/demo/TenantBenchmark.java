@@ -0,0 +1,154 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.TenantComponentTransfer;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.TenantMetrics;
+
+/**
+ * A bulk migration moves many components back and forth between two devices
+ * as fast as it can while an interactive tenant moves a few components now
+ * and then. Compares how long interactive moves wait to be admitted without
+ * tenants, with tenants but no quotas, and with the bulk tenant limited.
+ * Usage: TenantBenchmark [slots per device] [bulk components] [seconds]
+ *        [bulk reserved slots quota] [bulk queued transfers quota]
+ */
+public final class TenantBenchmark {
+    private static final int INTERACTIVE_COMPONENTS = 2;
+    private static final long PERFORM_NANOS = 200_000;
+    private static final long INTERACTIVE_PAUSE_NANOS = 5_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int slots = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int bulk = args.length > 1 ? Integer.parseInt(args[1]) : 28;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int maxReserved = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int maxQueued = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+        run("no tenants", slots, bulk, seconds, false, 0, 0);
+        run("tenants, no quotas", slots, bulk, seconds, true, 0, 0);
+        run("bulk quota", slots, bulk, seconds, true, maxReserved, maxQueued);
+    }
+
+    private static void run(String name, int slots, int bulk, int seconds, boolean tenants,
+                            int maxReserved, int maxQueued) throws InterruptedException {
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>();
+        deviceCapacities.put(DeviceId.of(0), slots);
+        deviceCapacities.put(DeviceId.of(1), slots);
+        // components alternate between the devices, interactive ones last
+        int components = bulk + INTERACTIVE_COMPONENTS;
+        HashMap<ComponentId, DeviceId> placement = new HashMap<>();
+        for (int i = 0; i < components; i++)
+            placement.put(ComponentId.of(i), DeviceId.of(i % 2));
+        StorageSystemInstance system = new StorageSystemInstance(deviceCapacities, placement);
+        if (maxReserved > 0)
+            system.setTenantQuota("bulk", 1, maxReserved, maxQueued);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong bulkMoves = new AtomicLong();
+        AtomicLong interactiveMoves = new AtomicLong();
+        // without tenants the interactive waits are measured by the workers
+        AtomicLong interactiveWait = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < components; i++) {
+            boolean interactive = i >= bulk;
+            String tenant = tenants ? (interactive ? "interactive" : "bulk") : null;
+            ComponentId component = ComponentId.of(i);
+            int start = i % 2;
+            threads.add(new Thread(() -> {
+                int at = start;
+                while (running.get()) {
+                    if (interactive)
+                        LockSupport.parkNanos(INTERACTIVE_PAUSE_NANOS);
+                    Move move = new Move(tenant, component, at, 1 - at);
+                    TransferResult result = system.tryExecute(move);
+                    if (result == TransferResult.TENANT_QUOTA_EXCEEDED) {
+                        // the migration backs off instead of queueing more
+                        LockSupport.parkNanos(PERFORM_NANOS);
+                        continue;
+                    }
+                    if (result != TransferResult.EXECUTED)
+                        throw new IllegalStateException("Move of " + component + ": " + result);
+                    at = 1 - at;
+                    if (interactive) {
+                        interactiveMoves.incrementAndGet();
+                        interactiveWait.addAndGet(move.admittedAt - move.submittedAt);
+                    }
+                    else {
+                        bulkMoves.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads)
+            thread.join();
+
+        TenantMetrics bulkMetrics = system.getTenantMetrics().get("bulk");
+        System.out.printf("%-20s bulk %7.0f moves per second%s, interactive %5d moves "
+                        + "admitted after %8.1f us on average%n", name,
+                bulkMoves.get() / (double) seconds,
+                bulkMetrics == null ? "" : String.format(" (%d rejected)",
+                        bulkMetrics.getQuotaRejectionCount()),
+                interactiveMoves.get(),
+                interactiveWait.get() / 1e3 / Math.max(1, interactiveMoves.get()));
+    }
+
+    private static final class Move implements TenantComponentTransfer {
+        private final String tenant;
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long submittedAt;
+        private long admittedAt;
+
+        Move(String tenant, ComponentId compId, int source, int destination) {
+            this.tenant = tenant;
+            this.compId = compId;
+            this.srcDevId = DeviceId.of(source);
+            this.dstDevId = DeviceId.of(destination);
+            this.submittedAt = System.nanoTime();
+        }
+
+        @Override
+        public String getTenant() {
+            return tenant;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            admittedAt = System.nanoTime();
+        }
+
+        @Override
+        public void perform() {
+            LockSupport.parkNanos(PERFORM_NANOS);
+        }
+    }
+}
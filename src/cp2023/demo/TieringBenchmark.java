@@ -0,0 +1,180 @@
+package cp2023.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.solution.AccessTracker;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.TieringController;
+
+/**
+ * Accesses components with Zipf-distributed popularity while a tiering
+ * controller moves the hot ones onto a fast device. Every device is full,
+ * so all tiering is done by swaps. Halfway through, the popularity is
+ * reshuffled. Prints the share of accesses served by the fast device.
+ * Usage: TieringBenchmark [components] [slow devices] [seconds] [threads]
+ */
+public final class TieringBenchmark {
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final int FAST = 0;
+    private static final long REPORT_NANOS = 500_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int components = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int slowDevices = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+        int perDevice = components / (slowDevices + 1);
+        components = perDevice * (slowDevices + 1);
+        HashMap<DeviceId, Integer> capacities = new HashMap<>();
+        for (int i = 0; i <= slowDevices; i++)
+            capacities.put(DeviceId.of(i), perDevice);
+        // devices of the components as known to the clients
+        AtomicIntegerArray placedOn = new AtomicIntegerArray(components);
+        HashMap<ComponentId, DeviceId> placement = new HashMap<>(2 * components);
+        for (int j = 0; j < components; j++) {
+            placedOn.set(j, j / perDevice);
+            placement.put(ComponentId.of(j), DeviceId.of(j / perDevice));
+        }
+        StorageSystemInstance system = new StorageSystemInstance(capacities, placement);
+        // about ten counters per component accessed within a sample
+        AccessTracker tracker = new AccessTracker(1 << 20, 10L * components);
+        system.setAccessTracker(tracker);
+        TieringController tiering = new TieringController(system,
+                (component, source, destination) -> new Move(component, source, destination,
+                        placedOn), List.of(DeviceId.of(FAST)), 20_000, 2);
+
+        // rank r is accessed with probability proportional to 1 / (r + 1) ^ s;
+        // popularity maps ranks to components, most popular ones spread
+        // over the slow devices at first
+        double[] cdf = new double[components];
+        double sum = 0;
+        for (int r = 0; r < components; r++) {
+            sum += 1 / Math.pow(r + 1, ZIPF_EXPONENT);
+            cdf[r] = sum;
+        }
+        int[] popularity = new int[components];
+        for (int r = 0; r < components; r++)
+            popularity[r] = components - 1 - r;
+        AtomicBoolean reshuffled = new AtomicBoolean();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong accesses = new AtomicLong();
+        AtomicLong fastHits = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            double total = sum;
+            int count = components;
+            workers.add(new Thread(() -> {
+                long local = 0;
+                long hits = 0;
+                while (running.get()) {
+                    int rank = search(cdf, random.nextDouble() * total);
+                    int component = reshuffled.get()
+                            ? popularity[(int) ((rank * 7919L + 1) % count)] : popularity[rank];
+                    system.recordAccess(ComponentId.of(component));
+                    if (placedOn.get(component) == FAST)
+                        hits++;
+                    if (++local == 1000) {
+                        accesses.addAndGet(local);
+                        fastHits.addAndGet(hits);
+                        local = 0;
+                        hits = 0;
+                    }
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        tiering.start(200, TimeUnit.MILLISECONDS);
+
+        System.out.printf("%d components, %d per device, sketch of %d KB%n",
+                components, perDevice, tracker.getFootprint() >> 10);
+        long start = System.nanoTime();
+        long lastAccesses = 0;
+        long lastHits = 0;
+        for (int report = 1; report <= seconds * 1_000_000_000L / REPORT_NANOS; report++) {
+            Thread.sleep(REPORT_NANOS / 1_000_000);
+            if (report == seconds * 1_000_000_000L / REPORT_NANOS / 2) {
+                reshuffled.set(true);
+                System.out.println("popularity reshuffled");
+            }
+            long a = accesses.get();
+            long h = fastHits.get();
+            System.out.printf("%5.1f s: %9.0f accesses per second, %5.1f%% on the fast device, "
+                            + "%d swaps%n", (System.nanoTime() - start) / 1e9,
+                    (a - lastAccesses) * 1e9 / REPORT_NANOS,
+                    100.0 * (h - lastHits) / Math.max(1, a - lastAccesses),
+                    tiering.getSwapCount());
+            lastAccesses = a;
+            lastHits = h;
+        }
+        running.set(false);
+        tiering.shutdown();
+        for (Thread worker : workers)
+            worker.join();
+    }
+
+    // first index whose value is at least the given one
+    private static int search(double[] cdf, double value) {
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cdf[middle] < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static final class Move implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final AtomicIntegerArray placedOn;
+
+        Move(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+             AtomicIntegerArray placedOn) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.placedOn = placedOn;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            placedOn.set(compId.getId(), dstDevId.getId());
+        }
+    }
+}
@@ -28,19 +28,19 @@ public final class TransferBurst {
     }
 
     private final static StorageSystem setupSystem() {
-        DeviceId dev1 = new DeviceId(1);
-        DeviceId dev2 = new DeviceId(2);
-        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev1 = DeviceId.of(1);
+        DeviceId dev2 = DeviceId.of(2);
+        DeviceId dev3 = DeviceId.of(3);
         
-        ComponentId comp1 = new ComponentId(101);
-        ComponentId comp2 = new ComponentId(102);
-        ComponentId comp3 = new ComponentId(103);
-        ComponentId comp4 = new ComponentId(104);
-        ComponentId comp5 = new ComponentId(105);
-        ComponentId comp6 = new ComponentId(106);
-        ComponentId comp7 = new ComponentId(107);
-        ComponentId comp8 = new ComponentId(108);
-        ComponentId comp9 = new ComponentId(109);
+        ComponentId comp1 = ComponentId.of(101);
+        ComponentId comp2 = ComponentId.of(102);
+        ComponentId comp3 = ComponentId.of(103);
+        ComponentId comp4 = ComponentId.of(104);
+        ComponentId comp5 = ComponentId.of(105);
+        ComponentId comp6 = ComponentId.of(106);
+        ComponentId comp7 = ComponentId.of(107);
+        ComponentId comp8 = ComponentId.of(108);
+        ComponentId comp9 = ComponentId.of(109);
         
         HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
         deviceCapacities.put(dev1, 3);
@@ -131,9 +131,9 @@ public final class TransferBurst {
     ) {
         CompTransfImpl transfer =
                 new CompTransfImpl(
-                        new ComponentId(compId),
-                        srcDevId > 0 ? new DeviceId(srcDevId) : null,
-                        dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                        ComponentId.of(compId),
+                        srcDevId > 0 ? DeviceId.of(srcDevId) : null,
+                        dstDevId > 0 ? DeviceId.of(dstDevId) : null,
                         duration
                 );
         try {
@@ -0,0 +1,17 @@
+package cp2023.exceptions;
+
+public final class DevicePoolDoesNotExist extends TransferException {
+
+    private static final long serialVersionUID = 2967130442781502314L;
+
+    private final String pool;
+
+    public DevicePoolDoesNotExist(String pool) {
+        super("device pool " + pool + " does not exist or has no usable device");
+        this.pool = pool;
+    }
+
+    public String getPool() {
+        return this.pool;
+    }
+}
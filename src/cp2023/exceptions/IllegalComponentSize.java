@@ -0,0 +1,28 @@
+package cp2023.exceptions;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+public final class IllegalComponentSize extends TransferException {
+
+    private static final long serialVersionUID = 4418237650921876315L;
+
+    private final ComponentId compId;
+    private final DeviceId deviceId;
+
+    // the component is added without a size or is larger than the device
+    public IllegalComponentSize(ComponentId compId, DeviceId deviceId) {
+        super("component " + compId + " has no size or does not fit into the capacity "
+                + "of device " + deviceId);
+        this.compId = compId;
+        this.deviceId = deviceId;
+    }
+
+    public ComponentId getComponentId() {
+        return this.compId;
+    }
+
+    public DeviceId getDeviceId() {
+        return this.deviceId;
+    }
+}
@@ -0,0 +1,27 @@
+package cp2023.exceptions;
+
+import cp2023.base.DeviceId;
+
+public final class TenantQuotaExceeded extends TransferException {
+
+    private static final long serialVersionUID = -6213870148524390187L;
+
+    private final String tenant;
+    private final DeviceId deviceId;
+
+    // the device is null if the transfer is to a device pool
+    public TenantQuotaExceeded(String tenant, DeviceId deviceId) {
+        super("tenant " + tenant + " has too many transfers waiting for "
+                + (deviceId == null ? "the device pool" : "device " + deviceId));
+        this.tenant = tenant;
+        this.deviceId = deviceId;
+    }
+
+    public String getTenant() {
+        return this.tenant;
+    }
+
+    public DeviceId getDeviceId() {
+        return this.deviceId;
+    }
+}
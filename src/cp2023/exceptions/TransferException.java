@@ -11,7 +11,18 @@ public abstract class TransferException extends Exception {
 
     private static final long serialVersionUID = -4456854647932628439L;
 
+    private static volatile boolean stackTraces = true;
+
     public TransferException(String message) {
-        super(message);
+        super(message, null, true, stackTraces);
+    }
+
+    // filling in the stack trace costs more than anything else when a
+    // transfer is rejected; rejections are expected results, not bugs,
+    // so the trace can be turned off for all of them; the setting is
+    // process-wide, it applies to exceptions thrown afterwards by every
+    // storage system in the JVM
+    public static void setStackTraces(boolean enabled) {
+        stackTraces = enabled;
     }
 }
@@ -0,0 +1,160 @@
+package cp2023.net;
+
+import java.nio.ByteBuffer;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+
+// every frame is: int length of the rest, byte type, long request id, and
+// the payload of the type; all numbers are big-endian; requests of one
+// connection are independent, so any number of them can be outstanding
+final class Protocol {
+    // client -> server: byte flags, int component, [int source], [int destination]
+    static final byte SUBMIT = 1;
+    // client -> server, after prepare() / perform() of the transfer has returned
+    static final byte PREPARED = 2;
+    static final byte PERFORMED = 3;
+    // server -> client: the transfer is allowed to call prepare() / perform()
+    static final byte PREPARE = 11;
+    static final byte PERFORM = 12;
+    // server -> client: execute() on the server has returned
+    static final byte COMPLETED = 13;
+    // server -> client: byte result code, [int device the component was found on]
+    static final byte REJECTED = 14;
+    // server -> client: no worker was free, so the transfer was not executed
+    static final byte BUSY = 15;
+
+    static final byte HAS_SOURCE = 1;
+    static final byte HAS_DESTINATION = 2;
+    static final byte HAS_PLACEMENT = 1;
+
+    static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Long.BYTES;
+    static final int MAX_FRAME_SIZE = HEADER_SIZE + Byte.BYTES + 3 * Integer.BYTES;
+
+    private Protocol() {
+    }
+
+    static ByteBuffer submit(long request, ComponentTransfer transfer) {
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+        int size = HEADER_SIZE + Byte.BYTES + Integer.BYTES
+                + (source == null ? 0 : Integer.BYTES)
+                + (destination == null ? 0 : Integer.BYTES);
+        ByteBuffer frame = header(size, SUBMIT, request);
+        frame.put((byte) ((source == null ? 0 : HAS_SOURCE)
+                | (destination == null ? 0 : HAS_DESTINATION)));
+        frame.putInt(transfer.getComponentId().getId());
+        if (source != null)
+            frame.putInt(source.getId());
+        if (destination != null)
+            frame.putInt(destination.getId());
+        return frame.flip();
+    }
+
+    static ByteBuffer signal(byte type, long request) {
+        return header(HEADER_SIZE, type, request).flip();
+    }
+
+    static ByteBuffer rejected(long request, TransferResult result, DeviceId placement) {
+        int size = HEADER_SIZE + Byte.BYTES + Byte.BYTES
+                + (placement == null ? 0 : Integer.BYTES);
+        ByteBuffer frame = header(size, REJECTED, request);
+        frame.put(resultCode(result));
+        frame.put(placement == null ? 0 : HAS_PLACEMENT);
+        if (placement != null)
+            frame.putInt(placement.getId());
+        return frame.flip();
+    }
+
+    // codes of the results on the wire, which must never change, unlike
+    // the order of TransferResult
+    static byte resultCode(TransferResult result) {
+        switch (result) {
+            case ILLEGAL_TRANSFER_TYPE:
+                return 1;
+            case SOURCE_DEVICE_DOES_NOT_EXIST:
+                return 2;
+            case DESTINATION_DEVICE_DOES_NOT_EXIST:
+                return 3;
+            case DEVICE_POOL_DOES_NOT_EXIST:
+                return 4;
+            case COMPONENT_ALREADY_EXISTS:
+                return 5;
+            case COMPONENT_DOES_NOT_EXIST:
+                return 6;
+            case COMPONENT_DOES_NOT_NEED_TRANSFER:
+                return 7;
+            case COMPONENT_IS_BEING_OPERATED_ON:
+                return 8;
+            case TENANT_QUOTA_EXCEEDED:
+                return 9;
+            case ILLEGAL_COMPONENT_SIZE:
+                return 10;
+            default:
+                throw new IllegalArgumentException("Result " + result + " is not a rejection");
+        }
+    }
+
+    static TransferResult result(byte code) {
+        switch (code) {
+            case 1:
+                return TransferResult.ILLEGAL_TRANSFER_TYPE;
+            case 2:
+                return TransferResult.SOURCE_DEVICE_DOES_NOT_EXIST;
+            case 3:
+                return TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST;
+            case 4:
+                return TransferResult.DEVICE_POOL_DOES_NOT_EXIST;
+            case 5:
+                return TransferResult.COMPONENT_ALREADY_EXISTS;
+            case 6:
+                return TransferResult.COMPONENT_DOES_NOT_EXIST;
+            case 7:
+                return TransferResult.COMPONENT_DOES_NOT_NEED_TRANSFER;
+            case 8:
+                return TransferResult.COMPONENT_IS_BEING_OPERATED_ON;
+            case 9:
+                return TransferResult.TENANT_QUOTA_EXCEEDED;
+            case 10:
+                return TransferResult.ILLEGAL_COMPONENT_SIZE;
+            default:
+                throw new IllegalStateException("Malformed frame with result code " + code);
+        }
+    }
+
+    private static ByteBuffer header(int size, byte type, long request) {
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        frame.putInt(size - Integer.BYTES);
+        frame.put(type);
+        frame.putLong(request);
+        return frame;
+    }
+
+    // returns the length of the frame at the position of the buffer, or -1
+    // if the buffer does not contain the whole frame yet
+    static int frameLength(ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES)
+            return -1;
+        int length = buffer.getInt(buffer.position()) + Integer.BYTES;
+        if (length < HEADER_SIZE || length > MAX_FRAME_SIZE)
+            throw new IllegalStateException("Malformed frame of length " + length);
+        return buffer.remaining() < length ? -1 : length;
+    }
+
+    // the transfer described by the payload of a SUBMIT frame
+    static final class Submitted {
+        final ComponentId component;
+        final DeviceId source;
+        final DeviceId destination;
+
+        Submitted(ByteBuffer payload) {
+            byte flags = payload.get();
+            this.component = ComponentId.of(payload.getInt());
+            this.source = (flags & HAS_SOURCE) != 0 ? DeviceId.of(payload.getInt()) : null;
+            this.destination = (flags & HAS_DESTINATION) != 0
+                    ? DeviceId.of(payload.getInt()) : null;
+        }
+    }
+}
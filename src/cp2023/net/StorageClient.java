@@ -0,0 +1,242 @@
+package cp2023.net;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.base.TransferResult;
+import cp2023.exceptions.TransferException;
+
+/**
+ * Storage system served by a remote {@link StorageServer}. Any number of
+ * threads can execute transfers over one connection at once; prepare() and
+ * perform() are called by the executing thread when the server allows them.
+ * Frames of all threads are sent by a single writer thread, which writes
+ * everything queued meanwhile with one system call, so small requests of
+ * many threads share writes and packets. Only the transfers of the
+ * assignment are supported (pools and sizes are not sent). A transfer the
+ * server has no free worker for fails with RejectedExecutionException, and
+ * every transfer in progress when the connection is lost fails with
+ * UncheckedIOException.
+ */
+public final class StorageClient implements StorageSystem, AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // type of the signal of a transfer whose connection has been lost
+    private static final byte DISCONNECTED = 0;
+
+    private final SocketChannel channel;
+    private final ConcurrentMap<Long, Pending> pending;
+    private final AtomicLong nextRequest;
+    private final BlockingQueue<ByteBuffer> outbound;
+    private final Thread reader;
+    private final Thread writer;
+    private volatile boolean closed;
+    // written by the writer thread only
+    private volatile long writes;
+    private volatile long frames;
+
+    // a transfer waiting for the next frame about it from the server
+    private static final class Pending {
+        private final Semaphore signal = new Semaphore(0);
+        private volatile byte type;
+        private TransferResult result;
+        private DeviceId placement;
+    }
+
+    public StorageClient(InetSocketAddress server) throws IOException {
+        this.channel = SocketChannel.open(server);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.pending = new ConcurrentHashMap<>();
+        this.nextRequest = new AtomicLong();
+        this.outbound = new LinkedBlockingQueue<>();
+        this.reader = new Thread(this::read, "storage-client-reader");
+        reader.setDaemon(true);
+        this.writer = new Thread(this::write, "storage-client-writer");
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    @Override
+    public void execute(ComponentTransfer transfer) throws TransferException {
+        long request = nextRequest.getAndIncrement();
+        Pending signals = submit(request, transfer);
+        if (signals.type == Protocol.REJECTED)
+            throw signals.result.toException(transfer, signals.placement);
+        run(request, signals, transfer);
+    }
+
+    @Override
+    public TransferResult tryExecute(ComponentTransfer transfer) {
+        long request = nextRequest.getAndIncrement();
+        Pending signals = submit(request, transfer);
+        if (signals.type == Protocol.REJECTED)
+            return signals.result;
+        run(request, signals, transfer);
+        return TransferResult.EXECUTED;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            channel.close();
+            reader.join();
+            writer.join();
+        } catch (IOException e) {
+            // the connection is being dropped anyway
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    // transfers submitted which have not returned yet
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    // mean number of frames sent with one write
+    public double getAverageBatchSize() {
+        long count = writes;
+        return count == 0 ? 0 : frames / (double) count;
+    }
+
+    // returns with the transfer either allowed to prepare or rejected
+    private Pending submit(long request, ComponentTransfer transfer) {
+        Pending signals = new Pending();
+        pending.put(request, signals);
+        try {
+            send(Protocol.submit(request, transfer));
+        } catch (UncheckedIOException e) {
+            pending.remove(request);
+            throw e;
+        }
+        byte type = await(signals, Protocol.PREPARE);
+        if (type != Protocol.PREPARE)
+            pending.remove(request);
+        if (type == Protocol.BUSY)
+            throw new RejectedExecutionException("Storage server has no free worker");
+        return signals;
+    }
+
+    private void run(long request, Pending signals, ComponentTransfer transfer) {
+        transfer.prepare();
+        send(Protocol.signal(Protocol.PREPARED, request));
+        await(signals, Protocol.PERFORM);
+        transfer.perform();
+        send(Protocol.signal(Protocol.PERFORMED, request));
+        // the server has to finish the transfer before the component can be
+        // operated on again
+        await(signals, Protocol.COMPLETED);
+        pending.remove(request);
+    }
+
+    private byte await(Pending signals, byte expected) {
+        try {
+            signals.signal.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        byte type = signals.type;
+        if (type == DISCONNECTED)
+            throw new UncheckedIOException(new IOException(
+                    "Connection to the storage server has been lost"));
+        if (type != expected && type != Protocol.REJECTED && type != Protocol.BUSY)
+            throw new IllegalStateException("Unexpected frame of type " + type);
+        return type;
+    }
+
+    private void send(ByteBuffer frame) {
+        if (closed)
+            throw new UncheckedIOException(new IOException(
+                    "Connection to the storage server has been closed"));
+        outbound.add(frame);
+    }
+
+    private void write() {
+        List<ByteBuffer> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(outbound.take());
+                outbound.drainTo(batch);
+                ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                long remaining = 0;
+                for (ByteBuffer buffer : buffers)
+                    remaining += buffer.remaining();
+                while (remaining > 0)
+                    remaining -= channel.write(buffers);
+                frames += buffers.length;
+                writes++;
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            if (!closed)
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+        } catch (IOException e) {
+            // the reader notices the broken connection as well
+        }
+    }
+
+    private void read() {
+        ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        try {
+            while (channel.read(input) >= 0) {
+                input.flip();
+                int length;
+                while ((length = Protocol.frameLength(input)) >= 0) {
+                    int end = input.position() + length;
+                    input.getInt();
+                    byte type = input.get();
+                    Pending signals = pending.get(input.getLong());
+                    if (signals == null)
+                        throw new IllegalStateException("Frame about an unknown request");
+                    if (type == Protocol.REJECTED) {
+                        signals.result = Protocol.result(input.get());
+                        if (input.get() == Protocol.HAS_PLACEMENT)
+                            signals.placement = DeviceId.of(input.getInt());
+                    }
+                    signals.type = type;
+                    signals.signal.release();
+                    input.position(end);
+                }
+                input.compact();
+            }
+        } catch (IOException e) {
+            // the connection is broken or has been closed
+        } catch (RuntimeException e) {
+            // malformed frame, the connection cannot be trusted any more
+            try {
+                channel.close();
+            } catch (IOException closing) {
+                // it is being dropped anyway
+            }
+        } finally {
+            // transfers submitted from now on fail in send()
+            closed = true;
+            writer.interrupt();
+            for (Long request : pending.keySet()) {
+                Pending signals = pending.remove(request);
+                if (signals != null) {
+                    signals.type = DISCONNECTED;
+                    signals.signal.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package cp2023.net;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.base.TransferResult;
+import cp2023.exceptions.ComponentAlreadyExists;
+import cp2023.exceptions.TransferException;
+
+/**
+ * Exposes a storage system to {@link StorageClient}s over TCP. A single
+ * selector thread reads and writes all connections. Every submitted transfer
+ * is executed by a pooled worker thread, whose prepare() and perform() ask
+ * the client to call its own ones and wait until it reports they have
+ * returned. Transfers of a client that disconnects are finished as if its
+ * calls had returned at once, so that they do not hold their slots forever.
+ * A worker is busy for the whole transfer, so a transfer submitted while
+ * all of them are busy is not queued (it could be the one the others wait
+ * for), but refused, and the client is told to try again later.
+ */
+public final class StorageServer implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int DEFAULT_MAX_WORKERS = 256;
+
+    private final StorageSystem system;
+    private final ServerSocketChannel serverChannel;
+    private final InetSocketAddress address;
+    private final Selector selector;
+    private final ThreadPoolExecutor workers;
+    private final AtomicLong refusedCount;
+    // connections with frames queued since they were last written
+    private final Queue<Connection> flushRequests;
+    private final Thread selectorThread;
+    private volatile boolean running;
+
+    public StorageServer(StorageSystem system, InetSocketAddress address) throws IOException {
+        this(system, address, DEFAULT_MAX_WORKERS);
+    }
+
+    // at most maxWorkers transfers are executed at once
+    public StorageServer(StorageSystem system, InetSocketAddress address, int maxWorkers)
+            throws IOException {
+        if (maxWorkers <= 0)
+            throw new IllegalArgumentException("Server needs at least one worker");
+        this.system = system;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.address = (InetSocketAddress) serverChannel.getLocalAddress();
+        this.workers = new ThreadPoolExecutor(0, maxWorkers, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread worker = new Thread(runnable, "storage-server-worker");
+                    worker.setDaemon(true);
+                    return worker;
+                });
+        this.refusedCount = new AtomicLong();
+        this.flushRequests = new ConcurrentLinkedQueue<>();
+        this.running = true;
+        this.selectorThread = new Thread(this::serve, "storage-server");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    // the actual address, with the port chosen if port 0 was given
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    // transfers refused because all workers were busy
+    public long getRefusedCount() {
+        return refusedCount.get();
+    }
+
+    /**
+     * Stops accepting frames and disconnects all clients; transfers being
+     * executed finish as if the clients had disconnected themselves.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        workers.shutdown();
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+                Connection flushed;
+                while ((flushed = flushRequests.poll()) != null)
+                    flushed.enableWriting();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable())
+                            connection.read();
+                        if (key.isValid() && key.isWritable())
+                            connection.write();
+                    } catch (IOException | RuntimeException e) {
+                        // broken connection or malformed frame
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("storage server failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection)
+                    ((Connection) key.attachment()).close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                // nothing more can be done when closing
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        // touched by the selector thread only; output is kept ready for put()
+        private final ByteBuffer input;
+        private final ByteBuffer output;
+        private final Queue<ByteBuffer> outbound;
+        private final AtomicBoolean flushScheduled;
+        private final ConcurrentMap<Long, RemoteTransfer> transfers;
+        private volatile boolean closed;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.input = ByteBuffer.allocate(BUFFER_SIZE);
+            this.output = ByteBuffer.allocate(BUFFER_SIZE);
+            this.outbound = new ConcurrentLinkedQueue<>();
+            this.flushScheduled = new AtomicBoolean();
+            this.transfers = new ConcurrentHashMap<>();
+        }
+
+        private void read() throws IOException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            input.flip();
+            int length;
+            while ((length = Protocol.frameLength(input)) >= 0) {
+                int end = input.position() + length;
+                input.getInt();
+                byte type = input.get();
+                long request = input.getLong();
+                handle(type, request);
+                input.position(end);
+            }
+            input.compact();
+        }
+
+        private void handle(byte type, long request) {
+            switch (type) {
+                case Protocol.SUBMIT:
+                    RemoteTransfer transfer =
+                            new RemoteTransfer(this, request, new Protocol.Submitted(input));
+                    if (transfers.putIfAbsent(request, transfer) != null)
+                        throw new IllegalStateException("Request " + request + " submitted twice");
+                    try {
+                        workers.execute(() -> execute(transfer));
+                    } catch (RejectedExecutionException e) {
+                        transfers.remove(request);
+                        refusedCount.incrementAndGet();
+                        send(Protocol.signal(Protocol.BUSY, request));
+                    }
+                    break;
+                case Protocol.PREPARED:
+                    transferOf(request).prepared.release();
+                    break;
+                case Protocol.PERFORMED:
+                    transferOf(request).performed.release();
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected frame of type " + type);
+            }
+        }
+
+        private RemoteTransfer transferOf(long request) {
+            RemoteTransfer transfer = transfers.get(request);
+            if (transfer == null)
+                throw new IllegalStateException("Unknown request " + request);
+            return transfer;
+        }
+
+        private void execute(RemoteTransfer transfer) {
+            ByteBuffer reply;
+            try {
+                system.execute(transfer);
+                reply = Protocol.signal(Protocol.COMPLETED, transfer.request);
+            } catch (TransferException e) {
+                DeviceId placement = e instanceof ComponentAlreadyExists
+                        ? ((ComponentAlreadyExists) e).getDeviceId() : null;
+                reply = Protocol.rejected(transfer.request, TransferResult.of(e, transfer),
+                        placement);
+            }
+            transfers.remove(transfer.request);
+            send(reply);
+        }
+
+        // called by the workers; frames queued meanwhile are written at once
+        private void send(ByteBuffer frame) {
+            if (closed)
+                return;
+            outbound.add(frame);
+            if (flushScheduled.compareAndSet(false, true)) {
+                flushRequests.add(this);
+                selector.wakeup();
+            }
+        }
+
+        private void enableWriting() {
+            if (key.isValid())
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        private void write() throws IOException {
+            // frames sent from now on schedule another write
+            flushScheduled.set(false);
+            ByteBuffer frame;
+            while (output.remaining() >= Protocol.MAX_FRAME_SIZE
+                    && (frame = outbound.poll()) != null)
+                output.put(frame);
+            output.flip();
+            channel.write(output);
+            output.compact();
+            if (output.position() == 0 && outbound.isEmpty())
+                key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void close() {
+            if (closed)
+                return;
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the client is gone anyway
+            }
+            for (RemoteTransfer transfer : transfers.values()) {
+                transfer.prepared.release();
+                transfer.performed.release();
+            }
+        }
+    }
+
+    // transfer executed on behalf of a client
+    private static final class RemoteTransfer implements ComponentTransfer {
+        private final Connection connection;
+        private final long request;
+        private final ComponentId component;
+        private final DeviceId source;
+        private final DeviceId destination;
+        private final Semaphore prepared;
+        private final Semaphore performed;
+
+        private RemoteTransfer(Connection connection, long request,
+                               Protocol.Submitted submitted) {
+            this.connection = connection;
+            this.request = request;
+            this.component = submitted.component;
+            this.source = submitted.source;
+            this.destination = submitted.destination;
+            this.prepared = new Semaphore(0);
+            this.performed = new Semaphore(0);
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return destination;
+        }
+
+        @Override
+        public void prepare() {
+            connection.send(Protocol.signal(Protocol.PREPARE, request));
+            try {
+                prepared.acquire();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+
+        @Override
+        public void perform() {
+            connection.send(Protocol.signal(Protocol.PERFORM, request));
+            try {
+                performed.acquire();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package cp2023.solution;
+
+import java.util.List;
+
+import cp2023.base.ComponentId;
+
+// passes the accesses recorded by the clients on to the tracker used for
+// tiering and to the eviction policies in use
+final class AccessRecorder {
+    private volatile AccessTracker tracker;
+    private volatile List<EvictionPolicy> policies;
+
+    AccessRecorder() {
+        this.policies = List.of();
+    }
+
+    void record(ComponentId component) {
+        AccessTracker current = tracker;
+        if (current != null)
+            current.recordAccess(component);
+        for (EvictionPolicy policy : policies)
+            policy.recordAccess(component);
+    }
+
+    void setTracker(AccessTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    AccessTracker tracker() {
+        return tracker;
+    }
+
+    // the distinct policies of all devices with eviction set up
+    void setPolicies(List<EvictionPolicy> policies) {
+        this.policies = policies;
+    }
+}
@@ -0,0 +1,104 @@
+package cp2023.solution;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cp2023.base.ComponentId;
+
+/**
+ * Approximate access frequencies of components in a count-min sketch of
+ * a fixed size, however many components there are. Estimates only rarely
+ * exceed the true count since the last decay by more than 3 / width of all
+ * accesses recorded since then. Recorded one at a time, accesses are never
+ * undercounted; accesses of a component recorded concurrently may raise
+ * its counters only once between them, so a hot component can be
+ * estimated below its true count. All counters are halved every
+ * sampleSize recorded accesses, so the estimates follow recent accesses
+ * rather than all time.
+ */
+public final class AccessTracker {
+    private static final int DEPTH = 4;
+
+    private final int mask;
+    private final AtomicIntegerArray counters;
+    private final long sampleSize;
+    private final AtomicLong sinceDecay;
+    private final AtomicLong decays;
+
+    // width is rounded up to a power of two; about ten times the number of
+    // components accessed within sampleSize accesses keeps estimates tight
+    public AccessTracker(int width, long sampleSize) {
+        if (width <= 0 || width > 1 << 28)
+            throw new IllegalArgumentException("Sketch cannot have width " + width);
+        if (sampleSize <= 0)
+            throw new IllegalArgumentException("Sample size has to be positive");
+        int roundedWidth = Integer.highestOneBit(width);
+        if (roundedWidth < width)
+            roundedWidth <<= 1;
+        this.mask = roundedWidth - 1;
+        this.counters = new AtomicIntegerArray(DEPTH * roundedWidth);
+        this.sampleSize = sampleSize;
+        this.sinceDecay = new AtomicLong();
+        this.decays = new AtomicLong();
+    }
+
+    public void recordAccess(ComponentId component) {
+        long hash = spread(component.hashCode());
+        // conservative update: only the counters at the minimum are raised,
+        // which halves the overestimation of plain count-min for skewed accesses;
+        // a failed CAS means a concurrent access has already raised the counter
+        // past the minimum seen here, and retrying would not make up for that
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++)
+            min = Math.min(min, counters.get(index(hash, row)));
+        for (int row = 0; row < DEPTH; row++) {
+            int i = index(hash, row);
+            int count = counters.get(i);
+            if (count == min && count < Integer.MAX_VALUE)
+                counters.compareAndSet(i, count, count + 1);
+        }
+        if (sinceDecay.incrementAndGet() == sampleSize) {
+            decay();
+            sinceDecay.addAndGet(-sampleSize);
+        }
+    }
+
+    public int estimate(ComponentId component) {
+        long hash = spread(component.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++)
+            min = Math.min(min, counters.get(index(hash, row)));
+        return min;
+    }
+
+    // accesses recorded concurrently may be halved or not
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            int count = counters.get(i);
+            while (count > 0 && !counters.compareAndSet(i, count, count >> 1))
+                count = counters.get(i);
+        }
+        decays.incrementAndGet();
+    }
+
+    public long getDecayCount() {
+        return decays.get();
+    }
+
+    // bytes taken by the counters
+    public long getFootprint() {
+        return 4L * counters.length();
+    }
+
+    private static long spread(int hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    // double hashing: row r uses h1 + r * h2 with an odd h2
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * (mask + 1) + ((h1 + row * h2) & mask);
+    }
+}
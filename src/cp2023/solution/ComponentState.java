@@ -0,0 +1,32 @@
+package cp2023.solution;
+
+import java.util.concurrent.Semaphore;
+
+// created for a component once and never removed, so that operating on it
+// does not allocate anything
+final class ComponentState {
+    // protects owner and the chaining structures of the component from
+    // simultaneous starting and ending of operations on it
+    private final Semaphore mutex;
+    Thread owner;
+    // there are at most two unfinished transfers of a component: the one
+    // operating on it and, with chaining, the previous one still performing
+    final TransferProgress[] progress;
+
+    ComponentState() {
+        this.mutex = new Semaphore(1, true);
+        this.progress = new TransferProgress[] {new TransferProgress(), new TransferProgress()};
+    }
+
+    void lock() {
+        try {
+            mutex.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    void unlock() {
+        mutex.release();
+    }
+}
@@ -0,0 +1,79 @@
+package cp2023.solution;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Background thread periodically calling {@link StorageSystemInstance#sweep()}
+ * or {@link SizedStorageSystem#sweep()}. Created by
+ * {@link StorageSystemInstance#startDeadlockSweeper} and
+ * {@link SizedStorageSystem#startDeadlockSweeper}.
+ */
+public final class DeadlockSweeper {
+
+    public interface Listener {
+        // sweepNanos includes the time spent waiting for the lock of the system
+        void sweepFinished(int unblocked, long sweepNanos);
+    }
+
+    // returns the number of transfers that stopped waiting
+    private final IntSupplier sweep;
+    private final long periodNanos;
+    private final Listener listener;
+    private final Semaphore stopSignal;
+    private final Thread thread;
+    private final AtomicLong sweeps;
+    private final AtomicLong unblocked;
+
+    DeadlockSweeper(IntSupplier sweep, long periodNanos, Listener listener) {
+        if (periodNanos <= 0)
+            throw new IllegalArgumentException("Sweep period has to be positive");
+        this.sweep = sweep;
+        this.periodNanos = periodNanos;
+        this.listener = listener;
+        this.stopSignal = new Semaphore(0);
+        this.sweeps = new AtomicLong();
+        this.unblocked = new AtomicLong();
+        this.thread = new Thread(this::run, "deadlock-sweeper");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (!stopSignal.tryAcquire(periodNanos, TimeUnit.NANOSECONDS)) {
+                long start = System.nanoTime();
+                int count = sweep.getAsInt();
+                long duration = System.nanoTime() - start;
+                sweeps.incrementAndGet();
+                unblocked.addAndGet(count);
+                if (listener != null)
+                    listener.sweepFinished(count, duration);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    public void shutdown() {
+        stopSignal.release();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    public long getSweepCount() {
+        return sweeps.get();
+    }
+
+    public long getUnblockedCount() {
+        return unblocked.get();
+    }
+}
@@ -0,0 +1,57 @@
+package cp2023.solution;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// token bucket of one device, kept as the time at which it would be empty
+// if nothing else was reserved (generic cell rate algorithm); a limit that
+// has been replaced or removed is retired, which ends all waits for it
+final class DeviceBandwidthLimit {
+    private final double nanosPerByte;
+    private final long burstNanos;
+    private final AtomicLong emptyAt;
+    private final CountDownLatch retired;
+
+    DeviceBandwidthLimit(long bytesPerSecond, long burstBytes) {
+        this.nanosPerByte = 1e9 / bytesPerSecond;
+        this.burstNanos = nanosFor(burstBytes);
+        this.emptyAt = new AtomicLong(System.nanoTime());
+        this.retired = new CountDownLatch(1);
+    }
+
+    // takes the bytes from the bucket, possibly into debt;
+    // returns how long the caller has to wait for them
+    long reserve(long bytes) {
+        long cost = nanosFor(bytes);
+        while (true) {
+            long now = System.nanoTime();
+            long previous = emptyAt.get();
+            // budget of an idle bucket carries over only up to the burst size
+            long next = Math.max(previous, now) + cost;
+            if (emptyAt.compareAndSet(previous, next))
+                return Math.max(0, next - now - burstNanos);
+        }
+    }
+
+    // waits until the given time, or until the limit is retired
+    void awaitUntil(long readyAt) {
+        long delay = readyAt - System.nanoTime();
+        if (delay <= 0)
+            return;
+        try {
+            retired.await(delay, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    void retire() {
+        retired.countDown();
+    }
+
+    private long nanosFor(long bytes) {
+        // saturates instead of overflowing for absurd sizes
+        return (long) Math.min(bytes * nanosPerByte, Long.MAX_VALUE / 4);
+    }
+}
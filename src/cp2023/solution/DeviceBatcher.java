@@ -0,0 +1,164 @@
+package cp2023.solution;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cp2023.base.BatchablePerformer;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+// collects transfers ready to perform on one device into batches; the thread
+// of the first transfer of a batch leads it: it waits for the window to pass
+// (or the batch to fill up), performs the batch and then appoints the first
+// transfer that came meanwhile to lead the next one, so that batches of one
+// device are performed one after another and grow while the device is busy
+final class DeviceBatcher {
+    private final DeviceId device;
+    private final BatchablePerformer performer;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Semaphore mutex;
+    // released when the batch being collected gets full
+    private final Semaphore full;
+    // guarded by mutex
+    private final ArrayDeque<Entry> ready;
+    private boolean led;
+    private final AtomicLong batches;
+    private final AtomicLong transfers;
+
+    private static final class Entry {
+        private final ComponentTransfer transfer;
+        private final Semaphore signal;
+        private final AtomicBoolean done;
+        // set before the signal is released
+        private boolean lead;
+        private Throwable failure;
+
+        private Entry(ComponentTransfer transfer) {
+            this.transfer = transfer;
+            this.signal = new Semaphore(0);
+            this.done = new AtomicBoolean();
+        }
+    }
+
+    DeviceBatcher(DeviceId device, BatchablePerformer performer, long windowNanos,
+                  int maxBatchSize) {
+        this.device = device;
+        this.performer = performer;
+        this.windowNanos = windowNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.mutex = new Semaphore(1);
+        this.full = new Semaphore(0);
+        this.ready = new ArrayDeque<>();
+        this.batches = new AtomicLong();
+        this.transfers = new AtomicLong();
+    }
+
+    // returns once the part of the batch of the transfer is done; the write
+    // slot of the device (if limited) is held by the leader for the batch
+    void perform(ComponentTransfer transfer, DeviceLimits limits) {
+        Entry entry = new Entry(transfer);
+        acquire(mutex);
+        ready.add(entry);
+        boolean leader = !led;
+        led = true;
+        if (ready.size() == maxBatchSize)
+            full.release();
+        mutex.release();
+        if (!leader) {
+            acquire(entry.signal);
+            if (!entry.lead) {
+                if (entry.failure != null)
+                    rethrow(entry.failure);
+                return;
+            }
+        }
+        lead(limits);
+    }
+
+    private void lead(DeviceLimits limits) {
+        try {
+            full.tryAcquire(windowNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        acquire(mutex);
+        List<Entry> batch = new ArrayList<>(Math.min(ready.size(), maxBatchSize));
+        while (batch.size() < maxBatchSize && !ready.isEmpty())
+            batch.add(ready.poll());
+        full.drainPermits();
+        if (ready.size() >= maxBatchSize)
+            full.release();
+        mutex.release();
+        // the leader is the first transfer of its batch
+        Entry own = batch.get(0);
+
+        List<ComponentTransfer> batchTransfers = new ArrayList<>(batch.size());
+        for (Entry entry : batch)
+            batchTransfers.add(entry.transfer);
+        Throwable failure = null;
+        DeviceConcurrencyLimit limit = limits.acquireWrite(device);
+        try {
+            performer.performBatch(device, batchTransfers, transfer -> {
+                for (Entry entry : batch) {
+                    if (entry.transfer == transfer && entry != own
+                            && entry.done.compareAndSet(false, true))
+                        entry.signal.release();
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            // members not done yet must not be left waiting, whatever is thrown
+            failure = e;
+        } finally {
+            if (limit != null)
+                limit.releaseWrite();
+        }
+        batches.incrementAndGet();
+        transfers.addAndGet(batch.size());
+        for (Entry entry : batch) {
+            if (entry != own && entry.done.compareAndSet(false, true)) {
+                entry.failure = failure;
+                entry.signal.release();
+            }
+        }
+
+        acquire(mutex);
+        Entry next = ready.peek();
+        if (next == null)
+            led = false;
+        mutex.release();
+        if (next != null) {
+            next.lead = true;
+            next.signal.release();
+        }
+        if (failure != null)
+            rethrow(failure);
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof Error)
+            throw (Error) failure;
+        throw (RuntimeException) failure;
+    }
+
+    long getBatchCount() {
+        return batches.get();
+    }
+
+    long getTransferCount() {
+        return transfers.get();
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package cp2023.solution;
+
+import java.util.concurrent.Semaphore;
+
+// slots of prepare() and perform() calls that can use one device at once;
+// a limit that has been replaced or removed is retired, which lets everyone
+// waiting for its slots through to try the current limit instead
+final class DeviceConcurrencyLimit {
+    // more than can ever be taken, so that nobody waits for a retired limit
+    private static final int RETIRED_PERMITS = Integer.MAX_VALUE / 4;
+
+    private final Semaphore readers;
+    private final Semaphore writers;
+    private volatile boolean retired;
+
+    DeviceConcurrencyLimit(int readers, int writers) {
+        this.readers = new Semaphore(readers, true);
+        this.writers = new Semaphore(writers, true);
+    }
+
+    // false if the limit has been retired, then the slot does not count
+    boolean acquireRead() {
+        acquire(readers);
+        return !retired;
+    }
+
+    void releaseRead() {
+        readers.release();
+    }
+
+    // false if the limit has been retired, then the slot does not count
+    boolean acquireWrite() {
+        acquire(writers);
+        return !retired;
+    }
+
+    void releaseWrite() {
+        writers.release();
+    }
+
+    void retire() {
+        retired = true;
+        readers.release(RETIRED_PERMITS);
+        writers.release(RETIRED_PERMITS);
+    }
+
+    private static void acquire(Semaphore slots) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+}
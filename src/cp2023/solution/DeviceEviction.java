@@ -0,0 +1,34 @@
+package cp2023.solution;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+// eviction set up for one device
+final class DeviceEviction {
+    final DeviceId spillDevice;
+    final EvictionPolicy policy;
+    final TransferFactory factory;
+    // components on the device, kept up to date as they are moved
+    final Set<ComponentId> candidates;
+    // evictions started and not finished yet, at most one per waiting transfer
+    final AtomicInteger pending;
+    // eviction transfers executing, counted as evicted once they leave the device
+    final Set<ComponentTransfer> inFlight;
+    final AtomicLong evicted;
+
+    DeviceEviction(DeviceId spillDevice, EvictionPolicy policy, TransferFactory factory) {
+        this.spillDevice = spillDevice;
+        this.policy = policy;
+        this.factory = factory;
+        this.candidates = ConcurrentHashMap.newKeySet();
+        this.pending = new AtomicInteger();
+        this.inFlight = ConcurrentHashMap.newKeySet();
+        this.evicted = new AtomicLong();
+    }
+}
@@ -0,0 +1,154 @@
+package cp2023.solution;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cp2023.base.BatchablePerformer;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.SizedComponentTransfer;
+
+// limits on the prepare() and perform() calls using each device: how many
+// can run at once, how fast they move bytes and whether performs are batched
+final class DeviceLimits {
+    private final ConcurrentMap<DeviceId, DeviceConcurrencyLimit> concurrencyLimits;
+    private final ConcurrentMap<DeviceId, DeviceBandwidthLimit> bandwidthLimits;
+    private final ConcurrentMap<DeviceId, DeviceBatcher> batchers;
+
+    DeviceLimits() {
+        this.concurrencyLimits = new ConcurrentHashMap<>();
+        this.bandwidthLimits = new ConcurrentHashMap<>();
+        this.batchers = new ConcurrentHashMap<>();
+    }
+
+    void setConcurrencyLimit(DeviceId device, int readers, int writers) {
+        retire(concurrencyLimits.put(device, new DeviceConcurrencyLimit(readers, writers)));
+    }
+
+    void removeConcurrencyLimit(DeviceId device) {
+        retire(concurrencyLimits.remove(device));
+    }
+
+    void setBandwidthLimit(DeviceId device, long bytesPerSecond, long burstBytes) {
+        retire(bandwidthLimits.put(device, new DeviceBandwidthLimit(bytesPerSecond, burstBytes)));
+    }
+
+    void removeBandwidthLimit(DeviceId device) {
+        retire(bandwidthLimits.remove(device));
+    }
+
+    void setBatchablePerformer(DeviceId device, BatchablePerformer performer,
+                               long windowNanos, int maxBatchSize) {
+        batchers.put(device, new DeviceBatcher(device, performer, windowNanos, maxBatchSize));
+    }
+
+    void removeBatchablePerformer(DeviceId device) {
+        batchers.remove(device);
+    }
+
+    double averageBatchSize(DeviceId device) {
+        DeviceBatcher batcher = batchers.get(device);
+        long batches = batcher == null ? 0 : batcher.getBatchCount();
+        return batches == 0 ? 0 : batcher.getTransferCount() / (double) batches;
+    }
+
+    void deviceRemoved(DeviceId device) {
+        retire(concurrencyLimits.remove(device));
+        retire(bandwidthLimits.remove(device));
+        batchers.remove(device);
+    }
+
+    private static void retire(DeviceConcurrencyLimit limit) {
+        if (limit != null)
+            limit.retire();
+    }
+
+    private static void retire(DeviceBandwidthLimit limit) {
+        if (limit != null)
+            limit.retire();
+    }
+
+    private DeviceConcurrencyLimit concurrencyLimitOf(DeviceId device) {
+        return device == null ? null : concurrencyLimits.get(device);
+    }
+
+    // the limit whose slot has been taken, null if the device is not limited;
+    // whoever waited for a limit retired meanwhile tries the current one
+    private DeviceConcurrencyLimit acquireRead(DeviceId device) {
+        while (true) {
+            DeviceConcurrencyLimit limit = concurrencyLimitOf(device);
+            if (limit == null || limit.acquireRead())
+                return limit;
+        }
+    }
+
+    DeviceConcurrencyLimit acquireWrite(DeviceId device) {
+        while (true) {
+            DeviceConcurrencyLimit limit = concurrencyLimitOf(device);
+            if (limit == null || limit.acquireWrite())
+                return limit;
+        }
+    }
+
+    void prepare(ComponentTransfer transfer) {
+        DeviceConcurrencyLimit source = acquireRead(transfer.getSourceDeviceId());
+        try {
+            transfer.prepare();
+        } finally {
+            if (source != null)
+                source.releaseRead();
+        }
+    }
+
+    void perform(ComponentTransfer transfer) {
+        // throttled before taking the slots, so that they are not held idle
+        if (transfer instanceof SizedComponentTransfer)
+            throttle((SizedComponentTransfer) transfer);
+        DeviceBatcher batcher = transfer.getDestinationDeviceId() == null
+                ? null : batchers.get(transfer.getDestinationDeviceId());
+        // nobody holding a write slot waits for anything, hence holding
+        // a read slot while waiting for a write slot is safe; a batch waits
+        // for its window before its leader takes the write slot
+        DeviceConcurrencyLimit source = acquireRead(transfer.getSourceDeviceId());
+        try {
+            if (batcher != null) {
+                batcher.perform(transfer, this);
+            }
+            else {
+                DeviceConcurrencyLimit destination =
+                        acquireWrite(transfer.getDestinationDeviceId());
+                try {
+                    transfer.perform();
+                } finally {
+                    if (destination != null)
+                        destination.releaseWrite();
+                }
+            }
+        } finally {
+            if (source != null)
+                source.releaseRead();
+        }
+    }
+
+    // both buckets are reserved before waiting, so that the waits overlap;
+    // the wait for a limit removed meanwhile ends early
+    private void throttle(SizedComponentTransfer transfer) {
+        long size = transfer.getSize();
+        if (size <= 0)
+            return;
+        DeviceBandwidthLimit source = bandwidthLimitOf(transfer.getSourceDeviceId());
+        DeviceBandwidthLimit destination =
+                bandwidthLimitOf(transfer.getDestinationDeviceId());
+        long now = System.nanoTime();
+        long sourceReadyAt = source == null ? now : now + source.reserve(size);
+        long destinationReadyAt = destination == null ? now : now + destination.reserve(size);
+        if (source != null)
+            source.awaitUntil(sourceReadyAt);
+        if (destination != null)
+            destination.awaitUntil(destinationReadyAt);
+    }
+
+    private DeviceBandwidthLimit bandwidthLimitOf(DeviceId device) {
+        return device == null ? null : bandwidthLimits.get(device);
+    }
+}
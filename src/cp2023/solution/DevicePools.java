@@ -0,0 +1,92 @@
+package cp2023.solution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.PooledComponentTransfer;
+
+// named groups of devices targeted by pool transfers, and the devices each
+// pool transfer not bound to a member yet is waiting for
+final class DevicePools {
+    private final ConcurrentMap<String, List<DeviceId>> pools;
+    // guarded by the graph lock
+    private final Map<ComponentTransfer, List<DeviceId>> awaitedDevices;
+
+    DevicePools() {
+        this.pools = new ConcurrentHashMap<>();
+        this.awaitedDevices = new HashMap<>();
+    }
+
+    static boolean isPoolTransfer(ComponentTransfer transfer) {
+        return transfer instanceof PooledComponentTransfer
+                && ((PooledComponentTransfer) transfer).getDestinationPool() != null;
+    }
+
+    void define(String name, Collection<DeviceId> members) {
+        pools.put(name, List.copyOf(new LinkedHashSet<>(members)));
+    }
+
+    void remove(String name) {
+        pools.remove(name);
+    }
+
+    // null if there is no such pool
+    List<DeviceId> members(String name) {
+        return pools.get(name);
+    }
+
+    // members the transfer could go to other than its source
+    List<DeviceId> candidates(PooledComponentTransfer transfer, Predicate<DeviceId> accepting) {
+        List<DeviceId> candidates = new ArrayList<>();
+        List<DeviceId> members = pools.get(transfer.getDestinationPool());
+        if (members != null) {
+            for (DeviceId device : members) {
+                if (accepting.test(device) && !device.equals(transfer.getSourceDeviceId()))
+                    candidates.add(device);
+            }
+        }
+        return candidates;
+    }
+
+    // all below must be called with the graph lock held
+
+    // devices on whose waiting lists the transfer is (or would be)
+    List<DeviceId> awaitedDevices(ComponentTransfer transfer) {
+        List<DeviceId> devices = awaitedDevices.get(transfer);
+        return devices != null ? devices : List.of(transfer.getDestinationDeviceId());
+    }
+
+    void awaitAny(ComponentTransfer transfer, List<DeviceId> devices) {
+        awaitedDevices.put(transfer, devices);
+    }
+
+    boolean isAwaitingAny(ComponentTransfer transfer) {
+        return awaitedDevices.containsKey(transfer);
+    }
+
+    // returns true if the transfer was waiting for any of the pool members
+    boolean stopAwaitingAny(ComponentTransfer transfer) {
+        return awaitedDevices.remove(transfer) != null;
+    }
+
+    // the transfer stops waiting for the device if it waits for others as
+    // well; returns false if it does not
+    boolean dropAwaitedDevice(ComponentTransfer transfer, DeviceId device) {
+        List<DeviceId> devices = awaitedDevices.get(transfer);
+        if (devices == null || devices.size() <= 1)
+            return false;
+        List<DeviceId> remaining = new ArrayList<>(devices);
+        remaining.remove(device);
+        awaitedDevices.put(transfer, remaining);
+        return true;
+    }
+}
@@ -0,0 +1,11 @@
+package cp2023.solution;
+
+/**
+ * Implementation of the storage system created by the factory.
+ */
+public enum Engine {
+    // StorageSystemInstance: callers run the scheduling themselves under a lock
+    LOCK_BASED,
+    // EventLoopStorageSystem: a single thread does all the scheduling
+    EVENT_LOOP
+}
@@ -0,0 +1,415 @@
+package cp2023.solution;
+
+import cp2023.base.*;
+import cp2023.exceptions.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Storage system whose whole state is owned by a single scheduler thread.
+ * Threads calling execute() only send it requests through a lock-free queue
+ * and park until they are allowed to prepare and then to perform, so they
+ * never contend for a lock. The scheduler takes all requests that have
+ * arrived since it last looked at the queue and handles them one by one.
+ * Only the transfers of the assignment are supported; device pools,
+ * chaining, limits, events and snapshots are offered by
+ * {@link StorageSystemInstance}.
+ */
+public final class EventLoopStorageSystem implements StorageSystem {
+    // added to the count of transfers being executed once shut down
+    private static final long SHUT_DOWN = 1L << 62;
+
+    // all fields but the queue and the counters are touched by the scheduler only
+    private final Map<DeviceId, int[]> deviceFreeSlots;
+    private final Map<ComponentId, DeviceId> componentPlacement;
+    private final Set<ComponentId> componentsOperatedOn;
+    // transfers waiting for a slot on the device, in the order they came
+    private final Map<DeviceId, ArrayDeque<Request>> awaitingTransfers;
+    // transfers leaving the device whose slots nobody has reserved yet
+    private final Map<DeviceId, LinkedHashSet<Request>> preparingFreeTransfers;
+    private final MpscQueue<Request> requests;
+    private final Thread scheduler;
+    private volatile boolean schedulerIdle;
+    private final AtomicLong executing;
+    private volatile long handledRequests;
+    private volatile long batches;
+
+    private enum Message { SUBMIT, PREPARED, PERFORMED }
+
+    private enum Stage { WAITING, PREPARE, PERFORM, REJECTED }
+
+    // a transfer being executed; it is in the queue at most once at a time,
+    // because its thread waits for an answer to every message but the last
+    private static final class Request {
+        private final ComponentTransfer transfer;
+        private final Thread thread;
+        // written by the thread before the request is queued
+        private Message message;
+        private volatile Stage stage;
+        private TransferResult result;
+        private DeviceId placement;
+        // transfer whose slot this one takes, so it has to prepare first
+        private Request dependsOn;
+        private Request takingMyPlace;
+        private boolean prepared;
+
+        private Request(ComponentTransfer transfer) {
+            this.transfer = transfer;
+            this.thread = Thread.currentThread();
+            this.stage = Stage.WAITING;
+        }
+    }
+
+    public EventLoopStorageSystem(Map<DeviceId, Integer> deviceTotalSlots,
+                                  Map<ComponentId, DeviceId> componentPlacement) {
+        if (deviceTotalSlots.isEmpty())
+            throw new IllegalArgumentException("No devices were given");
+        this.deviceFreeSlots = new HashMap<>();
+        this.awaitingTransfers = new HashMap<>();
+        this.preparingFreeTransfers = new HashMap<>();
+        deviceTotalSlots.forEach((devId, capacity) -> {
+            if (devId == null)
+                throw new IllegalArgumentException("Device with null ID declared");
+            if (capacity == null) // capacity is Integer, so it can be null
+                throw new IllegalArgumentException("Device with ID "
+                        + devId + "declared to have null capacity");
+            if (capacity <= 0)
+                throw new IllegalArgumentException("Device with ID " + devId
+                        + " declared to have capacity " + capacity + " <= 0");
+            deviceFreeSlots.put(devId, new int[] {capacity});
+            awaitingTransfers.put(devId, new ArrayDeque<>());
+            preparingFreeTransfers.put(devId, new LinkedHashSet<>());
+        });
+        this.componentPlacement = new HashMap<>();
+        componentPlacement.forEach((compId, devId) -> {
+            if (compId == null)
+                throw new IllegalArgumentException("Component with null ID declared");
+            if (devId == null || !deviceFreeSlots.containsKey(devId))
+                throw new IllegalArgumentException("Device with ID " +
+                        (devId == null ? "null" : devId) +
+                        " (for component " + compId + ") does not exist");
+            if (--deviceFreeSlots.get(devId)[0] < 0)
+                throw new IllegalArgumentException("Too many components " +
+                        "were assigned to device " + devId);
+            this.componentPlacement.put(compId, devId);
+        });
+        this.componentsOperatedOn = new HashSet<>();
+        this.requests = new MpscQueue<>();
+        this.executing = new AtomicLong();
+        // the state is handed over to the scheduler by starting it
+        this.scheduler = new Thread(this::schedule, "storage-scheduler");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    /**
+     * Throws IllegalStateException if the system has been shut down.
+     */
+    @Override
+    public void execute(ComponentTransfer transfer) throws TransferException {
+        enter();
+        try {
+            Request request = new Request(transfer);
+            send(request, Message.SUBMIT);
+            if (await(request, Stage.PREPARE) == Stage.REJECTED)
+                throw request.result.toException(request.transfer, request.placement);
+            run(request);
+        } finally {
+            leave();
+        }
+    }
+
+    /**
+     * Throws IllegalStateException if the system has been shut down.
+     */
+    @Override
+    public TransferResult tryExecute(ComponentTransfer transfer) {
+        enter();
+        try {
+            Request request = new Request(transfer);
+            send(request, Message.SUBMIT);
+            if (await(request, Stage.PREPARE) == Stage.REJECTED)
+                return request.result;
+            run(request);
+            return TransferResult.EXECUTED;
+        } finally {
+            leave();
+        }
+    }
+
+    /**
+     * Stops accepting transfers; the ones already being executed are finished
+     * and then the scheduler thread ends.
+     */
+    public void shutdown() {
+        long state;
+        do {
+            state = executing.get();
+            if ((state & SHUT_DOWN) != 0)
+                return;
+        } while (!executing.compareAndSet(state, state | SHUT_DOWN));
+        LockSupport.unpark(scheduler);
+    }
+
+    private void enter() {
+        if ((executing.incrementAndGet() & SHUT_DOWN) != 0) {
+            leave();
+            throw new IllegalStateException("The storage system has been shut down");
+        }
+    }
+
+    // every message of the transfer has been queued before
+    private void leave() {
+        if (executing.decrementAndGet() == SHUT_DOWN)
+            LockSupport.unpark(scheduler);
+    }
+
+    // mean number of requests handled by the scheduler per look at the queue
+    public double getAverageBatchSize() {
+        long count = batches;
+        return count == 0 ? 0 : handledRequests / (double) count;
+    }
+
+    private void run(Request request) {
+        request.transfer.prepare();
+        send(request, Message.PREPARED);
+        await(request, Stage.PERFORM);
+        request.transfer.perform();
+        // the next transfer of the component sent by anyone who knows that
+        // this one has returned is queued after this message
+        send(request, Message.PERFORMED);
+    }
+
+    private void send(Request request, Message message) {
+        request.message = message;
+        requests.offer(request);
+        // the scheduler checks the queue after declaring itself idle
+        if (schedulerIdle)
+            LockSupport.unpark(scheduler);
+    }
+
+    private Stage await(Request request, Stage stage) {
+        Stage current;
+        while ((current = request.stage) != stage && current != Stage.REJECTED) {
+            LockSupport.park(this);
+            if (Thread.interrupted())
+                throw new RuntimeException("panic: unexpected thread interruption",
+                        new InterruptedException());
+        }
+        return current;
+    }
+
+    private void signal(Request request, Stage stage) {
+        request.stage = stage;
+        LockSupport.unpark(request.thread);
+    }
+
+    private void schedule() {
+        while (true) {
+            long handled = 0;
+            Request request;
+            while ((request = requests.poll()) != null) {
+                handle(request);
+                handled++;
+            }
+            if (handled > 0) {
+                handledRequests += handled;
+                batches++;
+            }
+            // whoever ends the last transfer wakes the scheduler up
+            if (executing.get() == SHUT_DOWN)
+                return;
+            schedulerIdle = true;
+            if (requests.isEmpty())
+                LockSupport.park(this);
+            schedulerIdle = false;
+        }
+    }
+
+    private void handle(Request request) {
+        switch (request.message) {
+            case SUBMIT:
+                submit(request);
+                break;
+            case PREPARED:
+                prepared(request);
+                break;
+            case PERFORMED:
+                componentsOperatedOn.remove(request.transfer.getComponentId());
+                break;
+        }
+    }
+
+    private void submit(Request request) {
+        ComponentTransfer transfer = request.transfer;
+        TransferResult rejected = checkTransfer(transfer);
+        if (rejected != null) {
+            request.result = rejected;
+            request.placement = componentPlacement.get(transfer.getComponentId());
+            signal(request, Stage.REJECTED);
+            return;
+        }
+        componentsOperatedOn.add(transfer.getComponentId());
+        DeviceId destination = transfer.getDestinationDeviceId();
+        if (destination == null || takeFreeSlot(destination)) {
+            freeSpaceOnSource(request);
+            signal(request, Stage.PREPARE);
+        }
+        else if (!preparingFreeTransfers.get(destination).isEmpty()) {
+            // the slot is going to be freed by a transfer which is preparing
+            Iterator<Request> leaving = preparingFreeTransfers.get(destination).iterator();
+            depend(request, leaving.next());
+            leaving.remove();
+            freeSpaceOnSource(request);
+            signal(request, Stage.PREPARE);
+        }
+        else if (!closeCycle(request)) {
+            awaitingTransfers.get(destination).add(request);
+        }
+    }
+
+    // returns null if the transfer is correct
+    private TransferResult checkTransfer(ComponentTransfer transfer) {
+        ComponentId component = transfer.getComponentId();
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+        boolean pooled = transfer instanceof PooledComponentTransfer
+                && ((PooledComponentTransfer) transfer).getDestinationPool() != null;
+        if (componentsOperatedOn.contains(component))
+            return TransferResult.COMPONENT_IS_BEING_OPERATED_ON;
+        if (source == null && destination == null && !pooled)
+            return TransferResult.ILLEGAL_TRANSFER_TYPE;
+        if (source != null && !deviceFreeSlots.containsKey(source))
+            return TransferResult.SOURCE_DEVICE_DOES_NOT_EXIST;
+        // there are no pools here
+        if (pooled)
+            return TransferResult.DEVICE_POOL_DOES_NOT_EXIST;
+        if (destination != null && !deviceFreeSlots.containsKey(destination))
+            return TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST;
+        if (source == null) {
+            if (componentPlacement.containsKey(component))
+                return TransferResult.COMPONENT_ALREADY_EXISTS;
+        }
+        else {
+            if (!source.equals(componentPlacement.get(component)))
+                return TransferResult.COMPONENT_DOES_NOT_EXIST;
+            if (source.equals(destination))
+                return TransferResult.COMPONENT_DOES_NOT_NEED_TRANSFER;
+        }
+        return null;
+    }
+
+    private boolean takeFreeSlot(DeviceId device) {
+        int[] free = deviceFreeSlots.get(device);
+        if (free[0] == 0)
+            return false;
+        free[0]--;
+        return true;
+    }
+
+    private static void depend(Request request, Request leaving) {
+        request.dependsOn = leaving;
+        leaving.takingMyPlace = request;
+    }
+
+    // hands the source slot of the admitted transfer over to the first one
+    // waiting for it, whose source slot is in turn handed over and so on
+    private void freeSpaceOnSource(Request request) {
+        Request leaving = request;
+        DeviceId source = leaving.transfer.getSourceDeviceId();
+        while (source != null) {
+            Request waiting = awaitingTransfers.get(source).poll();
+            if (waiting == null) {
+                preparingFreeTransfers.get(source).add(leaving);
+                return;
+            }
+            depend(waiting, leaving);
+            signal(waiting, Stage.PREPARE);
+            leaving = waiting;
+            source = leaving.transfer.getSourceDeviceId();
+        }
+    }
+
+    // looks for the shortest cycle of waiting transfers leading from the source
+    // of the request to its destination; every transfer of a cycle found takes
+    // the slot of the one before it, and the request the slot of the last one
+    private boolean closeCycle(Request request) {
+        DeviceId start = request.transfer.getSourceDeviceId();
+        DeviceId target = request.transfer.getDestinationDeviceId();
+        if (start == null)
+            return false;
+        // waiting transfer by which a device has been reached (it leaves the device)
+        Map<DeviceId, Request> reachedBy = new HashMap<>();
+        ArrayDeque<DeviceId> devices = new ArrayDeque<>();
+        reachedBy.put(start, request);
+        devices.add(start);
+        while (!devices.isEmpty()) {
+            DeviceId device = devices.poll();
+            for (Request waiting : awaitingTransfers.get(device)) {
+                DeviceId source = waiting.transfer.getSourceDeviceId();
+                if (source == null || reachedBy.containsKey(source))
+                    continue;
+                reachedBy.put(source, waiting);
+                if (source.equals(target)) {
+                    admitCycle(request, reachedBy);
+                    return true;
+                }
+                devices.add(source);
+            }
+        }
+        return false;
+    }
+
+    private void admitCycle(Request request, Map<DeviceId, Request> reachedBy) {
+        Request taking = request;
+        Request leaving = reachedBy.get(request.transfer.getDestinationDeviceId());
+        while (leaving != request) {
+            depend(taking, leaving);
+            // the leaving transfer waits for a slot on the device it was reached from
+            DeviceId awaited = leaving.transfer.getDestinationDeviceId();
+            awaitingTransfers.get(awaited).remove(leaving);
+            signal(leaving, Stage.PREPARE);
+            taking = leaving;
+            leaving = reachedBy.get(awaited);
+        }
+        depend(taking, request);
+        signal(request, Stage.PREPARE);
+    }
+
+    private void prepared(Request request) {
+        ComponentTransfer transfer = request.transfer;
+        request.prepared = true;
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+        if (destination == null)
+            componentPlacement.remove(transfer.getComponentId());
+        else
+            componentPlacement.put(transfer.getComponentId(), destination);
+        if (source != null) {
+            if (preparingFreeTransfers.get(source).remove(request)) {
+                deviceFreeSlots.get(source)[0]++;
+                admitAwaiting(source);
+            }
+            else {
+                allowPerformance(request.takingMyPlace);
+            }
+        }
+        allowPerformance(request);
+    }
+
+    private void allowPerformance(Request request) {
+        if (request.prepared && (request.dependsOn == null || request.dependsOn.prepared))
+            signal(request, Stage.PERFORM);
+    }
+
+    private void admitAwaiting(DeviceId device) {
+        ArrayDeque<Request> awaiting = awaitingTransfers.get(device);
+        while (!awaiting.isEmpty() && takeFreeSlot(device)) {
+            Request request = awaiting.poll();
+            freeSpaceOnSource(request);
+            signal(request, Stage.PREPARE);
+        }
+    }
+}
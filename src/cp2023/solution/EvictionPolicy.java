@@ -0,0 +1,53 @@
+package cp2023.solution;
+
+import java.util.List;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+/**
+ * Chooses the component to be moved off a full device, so that a transfer
+ * waiting for a slot there can take it (see
+ * {@link StorageSystemInstance#setEviction}).
+ */
+public interface EvictionPolicy {
+
+    // candidates are the components on the device except those that could
+    // not be evicted in this attempt already; null if none should be evicted
+    ComponentId chooseVictim(DeviceId device, List<ComponentId> candidates);
+
+    // called for every access recorded by the systems using the policy
+    default void recordAccess(ComponentId component) {
+    }
+
+    // called when the component is placed on a device evicted with the
+    // policy, and when it leaves all of them or is removed, so that the
+    // policy needs to keep nothing about other components
+    default void componentArrived(ComponentId component) {
+    }
+
+    default void componentLeft(ComponentId component) {
+    }
+
+    // accesses are counted by the tracker, which has to be set in the system
+    static EvictionPolicy leastFrequentlyUsed(AccessTracker tracker) {
+        return (device, candidates) -> {
+            ComponentId victim = null;
+            int victimAccesses = Integer.MAX_VALUE;
+            for (ComponentId candidate : candidates) {
+                int accesses = tracker.estimate(candidate);
+                if (victim == null || accesses < victimAccesses) {
+                    victim = candidate;
+                    victimAccesses = accesses;
+                }
+            }
+            return victim;
+        };
+    }
+
+    // components not accessed since they were placed on the device are
+    // evicted first
+    static EvictionPolicy leastRecentlyUsed() {
+        return new LeastRecentlyUsed();
+    }
+}
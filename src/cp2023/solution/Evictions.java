@@ -0,0 +1,164 @@
+package cp2023.solution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+
+// evictions set up for the devices of the system, executed by helper threads
+// as transfers of the system itself
+final class Evictions {
+    private final StorageSystemInstance system;
+    private final AccessRecorder accesses;
+    private final ConcurrentMap<DeviceId, DeviceEviction> deviceEvictions;
+    private final ExecutorService helpers;
+
+    Evictions(StorageSystemInstance system, AccessRecorder accesses) {
+        this.system = system;
+        this.accesses = accesses;
+        this.deviceEvictions = new ConcurrentHashMap<>();
+        this.helpers = Executors.newCachedThreadPool(runnable -> {
+            Thread helper = new Thread(runnable, "eviction-helper");
+            helper.setDaemon(true);
+            return helper;
+        });
+    }
+
+    // the components are those placed on the device now
+    void set(DeviceId device, DeviceId spillDevice, EvictionPolicy policy,
+             TransferFactory factory, List<ComponentId> components) {
+        DeviceEviction eviction = new DeviceEviction(spillDevice, policy, factory);
+        // components moved meanwhile could be missed until they move again
+        for (ComponentId component : components) {
+            eviction.candidates.add(component);
+            policy.componentArrived(component);
+        }
+        DeviceEviction replaced = deviceEvictions.put(device, eviction);
+        if (replaced != null && replaced.policy != policy)
+            forgetCandidates(replaced);
+        updatePolicies();
+    }
+
+    void remove(DeviceId device) {
+        DeviceEviction removed = deviceEvictions.remove(device);
+        if (removed != null)
+            forgetCandidates(removed);
+        updatePolicies();
+    }
+
+    long count(DeviceId device) {
+        DeviceEviction eviction = deviceEvictions.get(device);
+        return eviction == null ? 0 : eviction.evicted.get();
+    }
+
+    void deviceRemoved(DeviceId device) {
+        if (deviceEvictions.remove(device) != null)
+            updatePolicies();
+    }
+
+    private synchronized void updatePolicies() {
+        List<EvictionPolicy> policies = new ArrayList<>();
+        for (DeviceEviction eviction : deviceEvictions.values()) {
+            boolean known = false;
+            for (EvictionPolicy policy : policies)
+                known |= policy == eviction.policy;
+            if (!known)
+                policies.add(eviction.policy);
+        }
+        accesses.setPolicies(policies);
+    }
+
+    // must be called with the graph lock held; keeps an eviction in progress
+    // for every transfer waiting for the device
+    void request(DeviceId device) {
+        DeviceEviction eviction = deviceEvictions.get(device);
+        if (eviction == null || system.isDraining(device)
+                || system.awaitingCount(device) <= eviction.pending.get())
+            return;
+        eviction.pending.incrementAndGet();
+        helpers.execute(() -> evict(device, eviction));
+    }
+
+    // called once the component of the transfer has been placed anew
+    void placementChanged(ComponentTransfer transfer) {
+        if (deviceEvictions.isEmpty())
+            return;
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+        ComponentId component = transfer.getComponentId();
+        DeviceEviction left = source == null ? null : deviceEvictions.get(source);
+        DeviceEviction arrived = destination == null ? null : deviceEvictions.get(destination);
+        if (left != null) {
+            left.candidates.remove(component);
+            // the victim has left, so its slot has been handed over
+            if (left.inFlight.remove(transfer))
+                left.evicted.incrementAndGet();
+        }
+        if (arrived != null)
+            arrived.candidates.add(component);
+        // a policy shared by both devices keeps what it knows of the component
+        EvictionPolicy leftPolicy = left == null ? null : left.policy;
+        EvictionPolicy arrivedPolicy = arrived == null ? null : arrived.policy;
+        if (leftPolicy == arrivedPolicy)
+            return;
+        if (arrivedPolicy != null)
+            arrivedPolicy.componentArrived(component);
+        if (leftPolicy != null)
+            leftPolicy.componentLeft(component);
+    }
+
+    private static void forgetCandidates(DeviceEviction eviction) {
+        for (ComponentId component : eviction.candidates)
+            eviction.policy.componentLeft(component);
+    }
+
+    // if nothing can be evicted, the transfers keep waiting until another
+    // one starts waiting and tries again
+    private void evict(DeviceId device, DeviceEviction eviction) {
+        if (!evictOne(device, eviction)) {
+            eviction.pending.decrementAndGet();
+            return;
+        }
+        // the slot was handed over as soon as the eviction was admitted, so
+        // transfers which started waiting since then may have requested none
+        system.acquireGraph();
+        eviction.pending.decrementAndGet();
+        if (!system.deviceDoesNotExist(device))
+            request(device);
+        system.releaseGraph();
+    }
+
+    private boolean evictOne(DeviceId device, DeviceEviction eviction) {
+        List<ComponentId> candidates = new ArrayList<>(eviction.candidates);
+        while (!candidates.isEmpty()) {
+            // the waiting transfers could have got slots meanwhile
+            if (system.awaitingCount(device) == 0)
+                return false;
+            ComponentId victim = eviction.policy.chooseVictim(device,
+                    Collections.unmodifiableList(candidates));
+            if (victim == null)
+                return false;
+            candidates.remove(victim);
+            ComponentTransfer transfer =
+                    eviction.factory.newTransfer(victim, device, eviction.spillDevice);
+            eviction.inFlight.add(transfer);
+            TransferResult result = system.tryExecute(transfer);
+            if (result == TransferResult.EXECUTED)
+                return true;
+            eviction.inFlight.remove(transfer);
+            if (result == TransferResult.SOURCE_DEVICE_DOES_NOT_EXIST
+                    || result == TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST)
+                return false;
+            // the victim is being operated on or has just been moved away
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package cp2023.solution;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+// admission of transfers without the graph lock: a transfer which can take
+// a free slot on its destination and leaves a source nobody waits for is not
+// a part of the waiting graph, so it neither waits nor wakes anybody up
+final class FastAdmission {
+    private final StorageSystemInstance system;
+    private final Tenants tenants;
+    private volatile boolean enabled;
+
+    FastAdmission(StorageSystemInstance system, Tenants tenants) {
+        this.system = system;
+        this.tenants = tenants;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // returns true if the transfer has been admitted
+    boolean tryAdmit(ComponentTransfer transfer) {
+        if (!enabled || DevicePools.isPoolTransfer(transfer))
+            return false;
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+        if (source != null) {
+            AtomicInteger awaiting = system.awaitingCounter(source);
+            if (awaiting == null || awaiting.get() > 0)
+                return false;
+        }
+        if (destination != null) {
+            // counter of a removed device cannot be reserved (see removeIfEmpty)
+            AtomicInteger free = system.freeSlotsCounter(destination);
+            if (free == null || !tenants.tryReserve(transfer, destination))
+                return false;
+            if (StorageSystemInstance.tryReserveSlot(free))
+                return true;
+            tenants.release(transfer, destination);
+            return false;
+        }
+        return true;
+    }
+
+    // counterpart of freePreparedSource for transfers admitted here
+    void freeSource(ComponentTransfer transfer) {
+        DeviceId source = transfer.getSourceDeviceId();
+        if (source == null)
+            return;
+        system.freeSlotsCounter(source).incrementAndGet();
+        // someone could have started waiting for the source meanwhile
+        if (system.awaitingCounter(source).get() > 0) {
+            system.acquireGraph();
+            system.admitAwaiting(source);
+            system.releaseGraph();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package cp2023.solution;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.TransferResult;
+
+// runs operations that need a lock: every thread publishes its operation in
+// its own slot, and whoever gets the lock applies all published operations
+// in one pass, so the others do not have to take the lock one by one;
+// everyone releasing the lock has to call wakeWaiting() afterwards
+final class FlatCombiner {
+    private final Semaphore lock;
+    private final Queue<Slot> slots;
+    private final ThreadLocal<Slot> threadSlot;
+    // written with the lock held
+    private volatile long passes;
+    private volatile long operations;
+
+    private static final class Slot {
+        private final Thread thread;
+        // set last by the owner, cleared by the combiner once applied
+        private volatile Function<ComponentTransfer, TransferResult> operation;
+        private ComponentTransfer transfer;
+        private TransferResult result;
+
+        private Slot(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    FlatCombiner(Semaphore lock) {
+        this.lock = lock;
+        this.slots = new ConcurrentLinkedQueue<>();
+        this.threadSlot = ThreadLocal.withInitial(() -> {
+            Slot slot = new Slot(Thread.currentThread());
+            slots.add(slot);
+            return slot;
+        });
+    }
+
+    TransferResult apply(Function<ComponentTransfer, TransferResult> operation,
+                         ComponentTransfer transfer) {
+        Slot slot = threadSlot.get();
+        slot.transfer = transfer;
+        slot.operation = operation;
+        while (slot.operation != null) {
+            // whoever holds the lock now sees the operation when releasing it
+            if (lock.tryAcquire()) {
+                combine();
+                lock.release();
+                wakeWaiting();
+            }
+            else {
+                LockSupport.park(this);
+            }
+        }
+        TransferResult result = slot.result;
+        slot.transfer = null;
+        slot.result = null;
+        return result;
+    }
+
+    // wakes up one thread with a pending operation, which is going to apply
+    // all of them if it gets the lock
+    void wakeWaiting() {
+        for (Slot slot : slots) {
+            if (slot.operation != null) {
+                LockSupport.unpark(slot.thread);
+                return;
+            }
+        }
+    }
+
+    long getPassCount() {
+        return passes;
+    }
+
+    long getOperationCount() {
+        return operations;
+    }
+
+    // must be called with the lock held
+    private void combine() {
+        passes++;
+        Iterator<Slot> iterator = slots.iterator();
+        while (iterator.hasNext()) {
+            Slot slot = iterator.next();
+            Function<ComponentTransfer, TransferResult> operation = slot.operation;
+            if (operation != null) {
+                slot.result = operation.apply(slot.transfer);
+                operations++;
+                slot.operation = null;
+                if (slot.thread != Thread.currentThread())
+                    LockSupport.unpark(slot.thread);
+            }
+            else if (!slot.thread.isAlive()) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package cp2023.solution;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+// keeps the time of the last access of the components on the devices
+// evicted with the policy only; accesses of other components are ignored
+final class LeastRecentlyUsed implements EvictionPolicy {
+    private final ConcurrentMap<ComponentId, Long> lastAccess = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordAccess(ComponentId component) {
+        // an access racing with the component leaving does not bring it back
+        lastAccess.replace(component, System.nanoTime());
+    }
+
+    @Override
+    public void componentArrived(ComponentId component) {
+        lastAccess.putIfAbsent(component, Long.MIN_VALUE);
+    }
+
+    @Override
+    public void componentLeft(ComponentId component) {
+        lastAccess.remove(component);
+    }
+
+    @Override
+    public ComponentId chooseVictim(DeviceId device, List<ComponentId> candidates) {
+        ComponentId victim = null;
+        long victimAccess = Long.MAX_VALUE;
+        for (ComponentId candidate : candidates) {
+            long access = lastAccess.getOrDefault(candidate, Long.MIN_VALUE);
+            if (victim == null || access < victimAccess) {
+                victim = candidate;
+                victimAccess = access;
+            }
+        }
+        return victim;
+    }
+}
@@ -0,0 +1,52 @@
+package cp2023.solution;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// unbounded queue with any number of producers and a single consumer;
+// offering is a single atomic swap, and elements are polled in the order
+// of the swaps, so the elements offered by one thread keep their order
+final class MpscQueue<T> {
+    private final AtomicReference<Node<T>> tail;
+    // touched by the consumer only
+    private Node<T> head;
+
+    private static final class Node<T> {
+        private T value;
+        private volatile Node<T> next;
+
+        private Node(T value) {
+            this.value = value;
+        }
+    }
+
+    MpscQueue() {
+        Node<T> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    void offer(T value) {
+        Node<T> node = new Node<>(value);
+        tail.getAndSet(node).next = node;
+    }
+
+    // returns null if the queue is empty
+    T poll() {
+        Node<T> next = head.next;
+        if (next == null) {
+            if (head == tail.get())
+                return null;
+            // a producer has swapped the tail, but not linked its node yet
+            while ((next = head.next) == null)
+                Thread.onSpinWait();
+        }
+        T value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    boolean isEmpty() {
+        return head == tail.get();
+    }
+}
@@ -0,0 +1,130 @@
+package cp2023.solution;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// permission for a transfer to start its next phase, acquired by the thread
+// executing the transfer and released by whoever allows it to go on
+abstract class PhaseGate {
+
+    abstract void acquire() throws InterruptedException;
+
+    abstract void release();
+
+    static final class Blocking extends PhaseGate {
+        private final Semaphore permits = new Semaphore(0, true);
+
+        @Override
+        void acquire() throws InterruptedException {
+            permits.acquire();
+        }
+
+        boolean tryAcquire(long timeoutNanos) throws InterruptedException {
+            return permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        void release() {
+            permits.release();
+        }
+    }
+
+    // The gate is acquired first to be admitted, then to perform once the
+    // transfer whose slot it takes has prepared. Admissions often wait for
+    // other transfers to end, handoffs only for a prepare() already running,
+    // so their waiting times are kept apart.
+    static final class SpinThenPark extends PhaseGate {
+        private final AtomicInteger permits = new AtomicInteger();
+        private final HandoffStatistics admissions;
+        private final HandoffStatistics handoffs;
+        // touched only by the thread executing the transfer
+        private boolean admitted;
+        private volatile Thread waiter;
+
+        SpinThenPark(HandoffStatistics admissions, HandoffStatistics handoffs) {
+            this.admissions = admissions;
+            this.handoffs = handoffs;
+        }
+
+        @Override
+        void acquire() throws InterruptedException {
+            HandoffStatistics statistics = admitted ? handoffs : admissions;
+            admitted = true;
+            if (tryTake())
+                return;
+            long start = System.nanoTime();
+            long spinUntil = start + statistics.spinNanos();
+            long yieldUntil = start + statistics.yieldNanos();
+            while (!tryTake()) {
+                long now = System.nanoTime();
+                if (now < spinUntil) {
+                    Thread.onSpinWait();
+                }
+                else if (now < yieldUntil) {
+                    Thread.yield();
+                }
+                else {
+                    // release() reads the waiter after adding the permit
+                    waiter = Thread.currentThread();
+                    if (!tryTake())
+                        LockSupport.park(this);
+                    else {
+                        waiter = null;
+                        break;
+                    }
+                    waiter = null;
+                }
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            statistics.record(System.nanoTime() - start);
+        }
+
+        @Override
+        void release() {
+            permits.incrementAndGet();
+            Thread parked = waiter;
+            if (parked != null)
+                LockSupport.unpark(parked);
+        }
+
+        private boolean tryTake() {
+            while (true) {
+                int available = permits.get();
+                if (available == 0)
+                    return false;
+                if (permits.compareAndSet(available, available - 1))
+                    return true;
+            }
+        }
+    }
+
+    // recent waiting times of one system, updated racily as it is only a hint
+    static final class HandoffStatistics {
+        // spinning longer than that is not worth it, parking is cheaper
+        private static final long MAX_SPIN_NANOS = 50_000;
+        private static final long MAX_YIELD_NANOS = 200_000;
+        // even when handoffs are slow, spin a bit to notice when they get fast
+        private static final long PROBE_SPIN_NANOS = 1_000;
+
+        private volatile long averageNanos = MAX_SPIN_NANOS / 2;
+
+        void record(long waitNanos) {
+            long average = averageNanos;
+            averageNanos = average + ((waitNanos - average) >> 3);
+        }
+
+        long spinNanos() {
+            long average = averageNanos;
+            return average <= MAX_SPIN_NANOS ? Math.max(2 * average, PROBE_SPIN_NANOS)
+                    : PROBE_SPIN_NANOS;
+        }
+
+        long yieldNanos() {
+            long average = averageNanos;
+            return average <= MAX_YIELD_NANOS ? 2 * average : spinNanos();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package cp2023.solution;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// durations of one phase on one device in power-of-two buckets, so that
+// recording one is a couple of atomic increments; counts are halved every
+// SAMPLE_SIZE durations, so percentiles follow recent behaviour
+final class PhaseHistogram {
+    private static final int SAMPLE_SIZE = 1 << 14;
+
+    // bucket i holds durations below 2^i nanoseconds and at least 2^(i - 1)
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    // equals the sum of the buckets whenever no record() is in progress
+    private final AtomicLong count = new AtomicLong();
+
+    void record(long nanos) {
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+        if (count.incrementAndGet() >= SAMPLE_SIZE)
+            halve();
+    }
+
+    // the count is lowered by exactly what the halving took off the buckets,
+    // odd counts rounded down included, so it never drifts from their sum;
+    // serialised, so that recorders crossing SAMPLE_SIZE together halve once
+    private synchronized void halve() {
+        if (count.get() < SAMPLE_SIZE)
+            return;
+        long removed = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            long n = buckets.get(i);
+            while (n > 0 && !buckets.compareAndSet(i, n, n >> 1))
+                n = buckets.get(i);
+            removed += n - (n >> 1);
+        }
+        count.addAndGet(-removed);
+    }
+
+    long count() {
+        long sum = 0;
+        for (int i = 0; i < buckets.length(); i++)
+            sum += buckets.get(i);
+        return sum;
+    }
+
+    // upper bound of the bucket holding the percentile, so at most twice
+    // the exact value; 0 if nothing has been recorded
+    long percentile(double p) {
+        long total = count();
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return i >= 63 ? Long.MAX_VALUE : 1L << i;
+        }
+        return Long.MAX_VALUE;
+    }
+}
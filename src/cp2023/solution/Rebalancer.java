@@ -0,0 +1,270 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves components between devices of a {@link StorageSystemInstance} until
+ * every device holds the requested number of components.
+ * <p>
+ * Moves are executed by a pool of maxConcurrency threads kept between calls,
+ * at most as many at once as the current limit. The limit is halved
+ * whenever the average time that the moves wait for admission exceeds the
+ * given bound and grows back by one with every faster move, so that the
+ * rebalancing gives way to the foreground traffic competing for the slots.
+ */
+public final class Rebalancer {
+
+    public static final class Move {
+        private final ComponentId component;
+        private final DeviceId source;
+        private final DeviceId destination;
+
+        public Move(ComponentId component, DeviceId source, DeviceId destination) {
+            this.component = component;
+            this.source = source;
+            this.destination = destination;
+        }
+
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        public DeviceId getDestinationDeviceId() {
+            return destination;
+        }
+
+        @Override
+        public String toString() {
+            return component + ": " + source + " -> " + destination;
+        }
+    }
+
+    // weight of the newest sample in the average admission wait
+    private static final double WAIT_SMOOTHING = 0.2;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+    private final StorageSystemInstance system;
+    private final TransferFactory factory;
+    private final int maxConcurrency;
+    private final long admissionWaitLimitNanos;
+    private final ExecutorService workers;
+    private final Semaphore stopSignal;
+    private final AtomicLong moves;
+    private final AtomicLong passes;
+    private int concurrencyLimit;
+    private int inFlight;
+    private double averageWaitNanos;
+    private Thread thread;
+
+    public Rebalancer(StorageSystemInstance system, TransferFactory factory,
+                      int maxConcurrency, long admissionWaitLimitNanos) {
+        if (maxConcurrency <= 0)
+            throw new IllegalArgumentException("Concurrency has to be positive");
+        this.system = system;
+        this.factory = factory;
+        this.maxConcurrency = maxConcurrency;
+        this.admissionWaitLimitNanos = admissionWaitLimitNanos;
+        this.concurrencyLimit = maxConcurrency;
+        // kept for as long as moves keep coming
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread worker = new Thread(runnable, "rebalancer-worker");
+                    worker.setDaemon(true);
+                    return worker;
+                });
+        workers.allowCoreThreadTimeOut(true);
+        this.workers = workers;
+        this.stopSignal = new Semaphore(0);
+        this.moves = new AtomicLong();
+        this.passes = new AtomicLong();
+    }
+
+    /**
+     * Computes the smallest set of moves bringing the devices to the target
+     * occupancy. Devices missing from the target keep their components.
+     */
+    public List<Move> plan(Map<DeviceId, Integer> targetOccupancy) {
+        Map<DeviceId, Integer> capacities = system.getDeviceCapacities();
+        Map<DeviceId, List<ComponentId>> placed = new HashMap<>();
+        system.getComponentPlacement().forEach((component, device) ->
+                placed.computeIfAbsent(device, d -> new ArrayList<>()).add(component));
+
+        List<Move> moves = new ArrayList<>();
+        List<ComponentId> surplus = new ArrayList<>();
+        List<DeviceId> surplusSource = new ArrayList<>();
+        // devices lacking the most components come first
+        PriorityQueue<Map.Entry<DeviceId, Integer>> deficits =
+                new PriorityQueue<>((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        targetOccupancy.forEach((device, target) -> {
+            Integer capacity = capacities.get(device);
+            if (capacity == null)
+                throw new IllegalArgumentException("Device with ID " + device
+                        + " does not exist");
+            if (target < 0 || target > capacity)
+                throw new IllegalArgumentException("Device with ID " + device
+                        + " cannot hold " + target + " components");
+            List<ComponentId> components = placed.getOrDefault(device, List.of());
+            for (int i = target; i < components.size(); i++) {
+                surplus.add(components.get(i));
+                surplusSource.add(device);
+            }
+            if (components.size() < target)
+                deficits.add(new AbstractMap.SimpleEntry<>(device, target - components.size()));
+        });
+        for (int i = 0; i < surplus.size() && !deficits.isEmpty(); i++) {
+            Map.Entry<DeviceId, Integer> deficit = deficits.poll();
+            moves.add(new Move(surplus.get(i), surplusSource.get(i), deficit.getKey()));
+            if (deficit.getValue() > 1) {
+                deficit.setValue(deficit.getValue() - 1);
+                deficits.add(deficit);
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Plans and executes the moves, returns the number of moves performed.
+     * Moves of components that are meanwhile operated on or moved elsewhere
+     * are skipped.
+     */
+    public int rebalance(Map<DeviceId, Integer> targetOccupancy) {
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (Move move : plan(targetOccupancy))
+            results.add(workers.submit(() -> execute(move)));
+        int performed = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                if (result.get())
+                    performed++;
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("rebalancing move failed", e.getCause());
+            }
+        }
+        moves.addAndGet(performed);
+        return performed;
+    }
+
+    /**
+     * Rebalances every period from a daemon thread until shutdown(), so that
+     * the devices are brought back to the target occupancy whenever other
+     * transfers move them away from it. Devices removed meanwhile are left
+     * out of the target and targets above a shrunk capacity are lowered.
+     */
+    public synchronized void start(Map<DeviceId, Integer> targetOccupancy, long period,
+                                   TimeUnit unit) {
+        if (thread != null)
+            throw new IllegalStateException("Rebalancing has already been started");
+        long periodNanos = unit.toNanos(period);
+        if (periodNanos <= 0)
+            throw new IllegalArgumentException("Rebalancing period has to be positive");
+        Map<DeviceId, Integer> target = Map.copyOf(targetOccupancy);
+        plan(target);
+        thread = new Thread(() -> {
+            try {
+                while (!stopSignal.tryAcquire(periodNanos, TimeUnit.NANOSECONDS)) {
+                    rebalance(feasible(target));
+                    passes.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }, "rebalancer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // the pass in progress is finished first
+    public synchronized void shutdown() {
+        if (thread == null)
+            return;
+        stopSignal.release();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        thread = null;
+    }
+
+    private Map<DeviceId, Integer> feasible(Map<DeviceId, Integer> target) {
+        Map<DeviceId, Integer> capacities = system.getDeviceCapacities();
+        Map<DeviceId, Integer> feasible = new HashMap<>();
+        target.forEach((device, occupancy) -> {
+            Integer capacity = capacities.get(device);
+            if (capacity != null)
+                feasible.put(device, Math.min(occupancy, capacity));
+        });
+        return feasible;
+    }
+
+    public synchronized int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    // moves performed since the rebalancer was created
+    public long getMoveCount() {
+        return moves.get();
+    }
+
+    // passes of the continuous rebalancing done so far
+    public long getPassCount() {
+        return passes.get();
+    }
+
+    // the transfer is executed as created by the factory, so that it keeps
+    // its size, tenant and any other interface the factory gives it
+    private boolean execute(Move move) {
+        enterLimit();
+        long[] admissionWait = {-1};
+        try {
+            TransferResult result = system.tryExecute(factory.newTransfer(move.getComponentId(),
+                    move.getSourceDeviceId(), move.getDestinationDeviceId()),
+                    wait -> admissionWait[0] = wait);
+            return result == TransferResult.EXECUTED;
+        } finally {
+            leaveLimit(admissionWait[0]);
+        }
+    }
+
+    private synchronized void enterLimit() {
+        while (inFlight >= concurrencyLimit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+        inFlight++;
+    }
+
+    private synchronized void leaveLimit(long admissionWaitNanos) {
+        inFlight--;
+        if (admissionWaitNanos >= 0) {
+            averageWaitNanos += WAIT_SMOOTHING * (admissionWaitNanos - averageWaitNanos);
+            if (averageWaitNanos > admissionWaitLimitNanos)
+                concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+            else if (concurrencyLimit < maxConcurrency)
+                concurrencyLimit++;
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,133 @@
+package cp2023.solution;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a {@link Simulator} run: totals and curves sampled at fixed
+ * intervals of the virtual time.
+ */
+public final class SimulationReport {
+
+    public static final class Sample {
+        private final long timeNanos;
+        private final double utilisation;
+        private final int queueDepth;
+        private final int performed;
+        private final long medianLatencyNanos;
+        private final long p99LatencyNanos;
+
+        Sample(long timeNanos, double utilisation, int queueDepth, int performed,
+               long medianLatencyNanos, long p99LatencyNanos) {
+            this.timeNanos = timeNanos;
+            this.utilisation = utilisation;
+            this.queueDepth = queueDepth;
+            this.performed = performed;
+            this.medianLatencyNanos = medianLatencyNanos;
+            this.p99LatencyNanos = p99LatencyNanos;
+        }
+
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        // fraction of all slots that are occupied or reserved
+        public double getUtilisation() {
+            return utilisation;
+        }
+
+        // transfers waiting for a slot
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        // transfers performed since the previous sample
+        public int getPerformed() {
+            return performed;
+        }
+
+        // from submission to the end of perform(), of the transfers performed
+        // since the previous sample (0 if there were none)
+        public long getMedianLatencyNanos() {
+            return medianLatencyNanos;
+        }
+
+        public long getP99LatencyNanos() {
+            return p99LatencyNanos;
+        }
+    }
+
+    private final List<Sample> samples;
+    private final long executed;
+    private final long rejected;
+    private final long stuck;
+    private final long virtualNanos;
+    private final long wallNanos;
+    private final long medianLatencyNanos;
+    private final long p99LatencyNanos;
+
+    SimulationReport(List<Sample> samples, long executed, long rejected, long stuck,
+                     long virtualNanos, long wallNanos, long medianLatencyNanos,
+                     long p99LatencyNanos) {
+        this.samples = Collections.unmodifiableList(samples);
+        this.executed = executed;
+        this.rejected = rejected;
+        this.stuck = stuck;
+        this.virtualNanos = virtualNanos;
+        this.wallNanos = wallNanos;
+        this.medianLatencyNanos = medianLatencyNanos;
+        this.p99LatencyNanos = p99LatencyNanos;
+    }
+
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    public long getExecuted() {
+        return executed;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    // transfers still waiting when nothing else was going to happen, e.g.
+    // for a slot on a device whose components were not going to move again
+    public long getStuck() {
+        return stuck;
+    }
+
+    // virtual time at which the last transfer ended
+    public long getVirtualNanos() {
+        return virtualNanos;
+    }
+
+    // real time the simulation took; the only part of the report that is
+    // not reproducible
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getMedianLatencyNanos() {
+        return medianLatencyNanos;
+    }
+
+    public long getP99LatencyNanos() {
+        return p99LatencyNanos;
+    }
+
+    // one line per sample, with a header
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder(
+                "time_ns,utilisation,queue_depth,performed,p50_latency_ns,p99_latency_ns\n");
+        for (Sample sample : samples) {
+            csv.append(sample.timeNanos).append(',')
+                    .append(String.format("%.4f", sample.utilisation)).append(',')
+                    .append(sample.queueDepth).append(',')
+                    .append(sample.performed).append(',')
+                    .append(sample.medianLatencyNanos).append(',')
+                    .append(sample.p99LatencyNanos).append('\n');
+        }
+        return csv.toString();
+    }
+}
@@ -0,0 +1,459 @@
+package cp2023.solution;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+
+/**
+ * Runs transfers through the scheduling of {@link StorageSystemInstance}
+ * (admission, freeing of sources, cycles) on a single thread and a virtual
+ * clock: prepare() and perform() are not called, but take the given virtual
+ * time. The same workload or trace and seed always give the same report.
+ */
+public final class Simulator {
+    private final Map<DeviceId, Integer> deviceTotalSlots;
+    private final Map<ComponentId, DeviceId> componentPlacement;
+    private final long sampleIntervalNanos;
+    private volatile boolean fastAdmission;
+
+    /**
+     * One transfer of a recorded trace. Times are in nanoseconds since the
+     * start of the trace; null source or destination adds or removes the
+     * component.
+     */
+    public static final class TraceEntry {
+        private final long arrivalNanos;
+        private final ComponentId component;
+        private final DeviceId source;
+        private final DeviceId destination;
+        private final long prepareNanos;
+        private final long performNanos;
+
+        public TraceEntry(long arrivalNanos, ComponentId component, DeviceId source,
+                          DeviceId destination, long prepareNanos, long performNanos) {
+            this.arrivalNanos = arrivalNanos;
+            this.component = component;
+            this.source = source;
+            this.destination = destination;
+            this.prepareNanos = prepareNanos;
+            this.performNanos = performNanos;
+        }
+
+        public long getArrivalNanos() {
+            return arrivalNanos;
+        }
+
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        public DeviceId getDestinationDeviceId() {
+            return destination;
+        }
+
+        public long getPrepareNanos() {
+            return prepareNanos;
+        }
+
+        public long getPerformNanos() {
+            return performNanos;
+        }
+    }
+
+    public Simulator(Map<DeviceId, Integer> deviceTotalSlots,
+                     Map<ComponentId, DeviceId> componentPlacement,
+                     long sampleIntervalNanos) {
+        if (sampleIntervalNanos <= 0)
+            throw new IllegalArgumentException("Sample interval " + sampleIntervalNanos
+                    + " ns is not positive");
+        this.deviceTotalSlots = Map.copyOf(deviceTotalSlots);
+        this.componentPlacement = Map.copyOf(componentPlacement);
+        this.sampleIntervalNanos = sampleIntervalNanos;
+    }
+
+    /**
+     * Runs started afterwards simulate the engine with fast admission enabled
+     * or disabled (the default), see
+     * {@link StorageSystemInstance#setFastAdmission(boolean)}.
+     */
+    public void setFastAdmission(boolean enabled) {
+        fastAdmission = enabled;
+    }
+
+    /**
+     * Reads a trace with one transfer per line: arrival, component, source,
+     * destination, prepare and perform time, separated by whitespace, with
+     * "-" for a missing device. Empty lines and lines starting with '#' are
+     * skipped.
+     */
+    public static List<TraceEntry> parseTrace(BufferedReader reader) throws IOException {
+        List<TraceEntry> trace = new ArrayList<>();
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] fields = line.split("\\s+");
+            if (fields.length != 6)
+                throw new IllegalArgumentException("Line " + number + " of the trace has "
+                        + fields.length + " fields instead of 6");
+            trace.add(new TraceEntry(Long.parseLong(fields[0]),
+                    ComponentId.of(Integer.parseInt(fields[1])), device(fields[2]),
+                    device(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5])));
+        }
+        return trace;
+    }
+
+    private static DeviceId device(String field) {
+        return field.equals("-") ? null : DeviceId.of(Integer.parseInt(field));
+    }
+
+    /**
+     * Submits the transfers of the trace at their arrival times. A transfer
+     * of a component that is still being transferred is submitted when the
+     * previous one ends.
+     */
+    public SimulationReport replay(List<TraceEntry> trace) {
+        Run run = new Run();
+        for (TraceEntry entry : trace) {
+            run.schedule(entry.arrivalNanos, EventType.ARRIVAL, new SimulatedTransfer(
+                    entry.component, entry.source, entry.destination,
+                    entry.prepareNanos, entry.performNanos));
+        }
+        return run.finish();
+    }
+
+    /**
+     * Moves every component over and over to a random other device, after an
+     * exponentially distributed think time, until the given number of
+     * transfers has been submitted. Prepare and perform times are
+     * exponentially distributed as well.
+     */
+    public SimulationReport runClosedLoop(long transfers, long meanThinkNanos,
+                                          long meanPrepareNanos, long meanPerformNanos,
+                                          long seed) {
+        if (deviceTotalSlots.size() < 2)
+            throw new IllegalArgumentException("Components cannot move between less than 2 devices");
+        Run run = new Run();
+        run.random = new SplittableRandom(seed);
+        run.remaining = transfers;
+        run.meanThinkNanos = meanThinkNanos;
+        run.meanPrepareNanos = meanPrepareNanos;
+        run.meanPerformNanos = meanPerformNanos;
+        // sorted, so that the run does not depend on the order of the maps
+        ComponentId[] components = componentPlacement.keySet().toArray(new ComponentId[0]);
+        Arrays.sort(components);
+        for (ComponentId component : components)
+            run.moveLater(component, componentPlacement.get(component));
+        return run.finish();
+    }
+
+    private enum EventType { ARRIVAL, PREPARED, PERFORMED, SAMPLE }
+
+    private enum Stage { WAITING, PREPARING, PREPARED, PERFORMING }
+
+    private static final class Event implements Comparable<Event> {
+        private final long time;
+        // events at the same time are handled in the order of scheduling
+        private final long sequence;
+        private final EventType type;
+        private final SimulatedTransfer transfer;
+
+        private Event(long time, long sequence, EventType type, SimulatedTransfer transfer) {
+            this.time = time;
+            this.sequence = sequence;
+            this.type = type;
+            this.transfer = transfer;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class SimulatedTransfer implements ComponentTransfer {
+        private final ComponentId component;
+        private final DeviceId source;
+        private final DeviceId destination;
+        private final long prepareNanos;
+        private final long performNanos;
+        private long submittedAt;
+        private Stage stage;
+        // releases of the gate not used yet
+        private int permits;
+
+        private SimulatedTransfer(ComponentId component, DeviceId source, DeviceId destination,
+                                  long prepareNanos, long performNanos) {
+            this.component = component;
+            this.source = source;
+            this.destination = destination;
+            this.prepareNanos = prepareNanos;
+            this.performNanos = performNanos;
+            this.stage = Stage.WAITING;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return destination;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+
+    // a transfer is allowed to prepare and then to perform by releases
+    // of its gate, which schedule the end of the phase instead of waking
+    // up a thread
+    private static final class SimulatedGate extends PhaseGate {
+        private final Run run;
+        private final SimulatedTransfer transfer;
+
+        private SimulatedGate(Run run, SimulatedTransfer transfer) {
+            this.run = run;
+            this.transfer = transfer;
+        }
+
+        @Override
+        void acquire() {
+            throw new IllegalStateException("Simulated transfers are never waited for");
+        }
+
+        @Override
+        void release() {
+            transfer.permits++;
+            run.startNextPhase(transfer);
+        }
+    }
+
+    private final class Run {
+        private final StorageSystemInstance system;
+        private final PriorityQueue<Event> events;
+        private final DeviceId[] devices;
+        private final int totalSlots;
+        // transfers of components being transferred, waiting for their turn
+        private final Map<ComponentId, ArrayDeque<SimulatedTransfer>> deferred;
+        private long now;
+        private long lastTransferEventAt;
+        private long sequence;
+        private int unfinished;
+        private boolean samplingScheduled;
+        private long submitted;
+        private long executed;
+        private long rejected;
+        private final List<SimulationReport.Sample> samples;
+        // of the transfers performed since the last sample and of all of them
+        private long[] latencies;
+        private int latencyCount;
+        private long[] allLatencies;
+        // closed-loop workload only
+        private SplittableRandom random;
+        private long remaining;
+        private long meanThinkNanos;
+        private long meanPrepareNanos;
+        private long meanPerformNanos;
+
+        private Run() {
+            this.system = new StorageSystemInstance(deviceTotalSlots, componentPlacement,
+                    WaitStrategy.BLOCKING,
+                    transfer -> new SimulatedGate(this, (SimulatedTransfer) transfer));
+            this.system.setFastAdmission(fastAdmission);
+            this.events = new PriorityQueue<>();
+            this.devices = deviceTotalSlots.keySet().toArray(new DeviceId[0]);
+            Arrays.sort(devices);
+            int total = 0;
+            for (DeviceId device : devices)
+                total += deviceTotalSlots.get(device);
+            this.totalSlots = total;
+            this.deferred = new HashMap<>();
+            this.samples = new ArrayList<>();
+            this.latencies = new long[64];
+            this.allLatencies = new long[64];
+        }
+
+        private void schedule(long time, EventType type, SimulatedTransfer transfer) {
+            if (type != EventType.SAMPLE)
+                unfinished++;
+            events.add(new Event(time, sequence++, type, transfer));
+            if (!samplingScheduled) {
+                samplingScheduled = true;
+                events.add(new Event(now + sampleIntervalNanos, sequence++,
+                        EventType.SAMPLE, null));
+            }
+        }
+
+        private SimulationReport finish() {
+            long wallStart = System.nanoTime();
+            Event event;
+            while ((event = events.poll()) != null) {
+                now = event.time;
+                if (event.type != EventType.SAMPLE) {
+                    unfinished--;
+                    lastTransferEventAt = now;
+                }
+                switch (event.type) {
+                    case ARRIVAL:
+                        arrive(event.transfer);
+                        break;
+                    case PREPARED:
+                        event.transfer.stage = Stage.PREPARED;
+                        system.finishPreparation(event.transfer);
+                        // the transfer could have been allowed to perform already
+                        startNextPhase(event.transfer);
+                        break;
+                    case PERFORMED:
+                        system.finishPerformance(event.transfer);
+                        performed(event.transfer);
+                        break;
+                    case SAMPLE:
+                        sample();
+                        break;
+                }
+            }
+            int count = (int) executed;
+            Arrays.sort(allLatencies, 0, count);
+            return new SimulationReport(samples, executed, rejected,
+                    submitted - executed - rejected, lastTransferEventAt,
+                    System.nanoTime() - wallStart, percentile(allLatencies, count, 0.5),
+                    percentile(allLatencies, count, 0.99));
+        }
+
+        private void arrive(SimulatedTransfer transfer) {
+            ArrayDeque<SimulatedTransfer> waiting = deferred.get(transfer.component);
+            if (waiting != null) {
+                waiting.add(transfer);
+                return;
+            }
+            deferred.put(transfer.component, new ArrayDeque<>());
+            submit(transfer);
+        }
+
+        private void submit(SimulatedTransfer transfer) {
+            transfer.submittedAt = now;
+            submitted++;
+            try {
+                if (system.submit(transfer)) {
+                    // admitted on the fast path, there is no gate to release
+                    transfer.permits += 2;
+                    startNextPhase(transfer);
+                }
+            } catch (TransferException e) {
+                rejected++;
+                next(transfer.component, transfer.source);
+            }
+        }
+
+        private void startNextPhase(SimulatedTransfer transfer) {
+            if (transfer.permits == 0)
+                return;
+            if (transfer.stage == Stage.WAITING) {
+                transfer.permits--;
+                transfer.stage = Stage.PREPARING;
+                schedule(now + transfer.prepareNanos, EventType.PREPARED, transfer);
+            }
+            else if (transfer.stage == Stage.PREPARED) {
+                transfer.permits--;
+                transfer.stage = Stage.PERFORMING;
+                schedule(now + transfer.performNanos, EventType.PERFORMED, transfer);
+            }
+        }
+
+        private void performed(SimulatedTransfer transfer) {
+            long latency = now - transfer.submittedAt;
+            if (latencyCount == latencies.length)
+                latencies = Arrays.copyOf(latencies, 2 * latencyCount);
+            latencies[latencyCount++] = latency;
+            if (executed == allLatencies.length)
+                allLatencies = Arrays.copyOf(allLatencies, 2 * allLatencies.length);
+            allLatencies[(int) executed++] = latency;
+            next(transfer.component, transfer.destination);
+        }
+
+        // the previous transfer of the component has ended (it is now on
+        // the given device), so the next one can be submitted
+        private void next(ComponentId component, DeviceId placement) {
+            SimulatedTransfer waiting = deferred.get(component).poll();
+            if (waiting != null) {
+                submit(waiting);
+                return;
+            }
+            deferred.remove(component);
+            if (random != null && placement != null)
+                moveLater(component, placement);
+        }
+
+        private void moveLater(ComponentId component, DeviceId source) {
+            if (remaining == 0)
+                return;
+            remaining--;
+            DeviceId destination = devices[random.nextInt(devices.length - 1)];
+            if (destination.equals(source))
+                destination = devices[devices.length - 1];
+            schedule(now + exponential(meanThinkNanos), EventType.ARRIVAL,
+                    new SimulatedTransfer(component, source, destination,
+                            exponential(meanPrepareNanos), exponential(meanPerformNanos)));
+        }
+
+        private long exponential(long mean) {
+            return (long) (-mean * Math.log(1 - random.nextDouble()));
+        }
+
+        private void sample() {
+            int free = 0;
+            for (DeviceId device : devices)
+                free += system.freeSlotsOf(device);
+            Arrays.sort(latencies, 0, latencyCount);
+            samples.add(new SimulationReport.Sample(now,
+                    (totalSlots - free) / (double) totalSlots, system.queuedTransferCount(),
+                    latencyCount, percentile(latencies, latencyCount, 0.5),
+                    percentile(latencies, latencyCount, 0.99)));
+            latencyCount = 0;
+            // sampling ends with the last transfer
+            samplingScheduled = unfinished > 0;
+            if (samplingScheduled)
+                events.add(new Event(now + sampleIntervalNanos, sequence++,
+                        EventType.SAMPLE, null));
+        }
+    }
+
+    // of the first count values, which are sorted; 0 if there are none
+    private static long percentile(long[] sorted, int count, double fraction) {
+        if (count == 0)
+            return 0;
+        return sorted[Math.min(count - 1, (int) Math.ceil(fraction * count) - 1)];
+    }
+}
@@ -0,0 +1,492 @@
+package cp2023.solution;
+
+import cp2023.base.*;
+import cp2023.exceptions.*;
+
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage system whose devices have a capacity in bytes instead of slots.
+ * Every component has a size: the one it was placed with initially or the
+ * one declared by the transfer adding it (see {@link SizedComponentTransfer}).
+ * A transfer is admitted once the free bytes of its destination together
+ * with the bytes of components leaving it cover its size. Bytes of a leaving
+ * component can be split among several arrivals, which perform only after
+ * every transfer whose bytes they use has prepared, and an arrival can
+ * combine bytes of several departures. Transfers wait for a device in the
+ * order they came, so small ones do not starve large ones. A cycle is
+ * looked for when a transfer starts waiting; one made possible only later,
+ * once bytes have been freed, is closed by {@link #sweep()}, so a deadlock
+ * sweeper has to be running for it.
+ * Only the transfers of the assignment are supported; device pools,
+ * chaining, limits, events and snapshots are offered by
+ * {@link StorageSystemInstance}.
+ */
+public final class SizedStorageSystem implements StorageSystem {
+    // all below are guarded by mutex
+    private final Semaphore mutex;
+    private final Map<DeviceId, Device> devices;
+    private final Map<ComponentId, DeviceId> componentPlacement;
+    private final Map<ComponentId, Long> componentSizes;
+    private final Set<ComponentId> componentsOperatedOn;
+
+    private static final class Device {
+        private final long capacity;
+        // bytes neither occupied nor reserved
+        private long free;
+        // bytes of leaving components that nobody has reserved yet
+        private long leaving;
+        // bytes of the components placed on the device
+        private long stored;
+        // transfers waiting for bytes on the device, in the order they came
+        private final LinkedList<Move> awaiting;
+        // transfers leaving the device with some of their bytes not reserved
+        private final LinkedHashSet<Move> leavingTransfers;
+
+        private Device(long capacity) {
+            this.capacity = capacity;
+            this.free = capacity;
+            this.awaiting = new LinkedList<>();
+            this.leavingTransfers = new LinkedHashSet<>();
+        }
+
+        private long available() {
+            return free + leaving;
+        }
+    }
+
+    private static final class Move {
+        private final ComponentTransfer transfer;
+        private final long size;
+        private final PhaseGate.Blocking gate;
+        // bytes on the source not reserved by anyone yet
+        private long unreserved;
+        // transfers using my bytes, which perform once I have prepared
+        private final List<Move> takingMyBytes;
+        // transfers whose bytes I use and which have not prepared yet
+        private int awaitedPreparations;
+        private boolean prepared;
+
+        private Move(ComponentTransfer transfer, long size) {
+            this.transfer = transfer;
+            this.size = size;
+            this.gate = new PhaseGate.Blocking();
+            this.takingMyBytes = new ArrayList<>();
+        }
+
+        private DeviceId source() {
+            return transfer.getSourceDeviceId();
+        }
+
+        private DeviceId destination() {
+            return transfer.getDestinationDeviceId();
+        }
+    }
+
+    public SizedStorageSystem(Map<DeviceId, Long> deviceCapacities,
+                              Map<ComponentId, DeviceId> componentPlacement,
+                              Map<ComponentId, Long> componentSizes) {
+        if (deviceCapacities.isEmpty())
+            throw new IllegalArgumentException("No devices were given");
+        this.devices = new HashMap<>();
+        deviceCapacities.forEach((devId, capacity) -> {
+            if (devId == null)
+                throw new IllegalArgumentException("Device with null ID declared");
+            if (capacity == null)
+                throw new IllegalArgumentException("Device with ID "
+                        + devId + " declared to have null capacity");
+            if (capacity <= 0)
+                throw new IllegalArgumentException("Device with ID " + devId
+                        + " declared to have capacity " + capacity + " <= 0");
+            devices.put(devId, new Device(capacity));
+        });
+        this.componentPlacement = new HashMap<>();
+        this.componentSizes = new HashMap<>();
+        componentPlacement.forEach((compId, devId) -> {
+            if (compId == null)
+                throw new IllegalArgumentException("Component with null ID declared");
+            Device device = devId == null ? null : devices.get(devId);
+            if (device == null)
+                throw new IllegalArgumentException("Device with ID " +
+                        (devId == null ? "null" : devId) +
+                        " (for component " + compId + ") does not exist");
+            Long size = componentSizes.get(compId);
+            if (size == null || size <= 0)
+                throw new IllegalArgumentException("Component " + compId
+                        + " declared to have size " + size);
+            device.free -= size;
+            device.stored += size;
+            if (device.free < 0)
+                throw new IllegalArgumentException("Components assigned to device "
+                        + devId + " do not fit into its " + device.capacity + " bytes");
+            this.componentPlacement.put(compId, devId);
+            this.componentSizes.put(compId, size);
+        });
+        this.componentsOperatedOn = new HashSet<>();
+        this.mutex = new Semaphore(1, true);
+    }
+
+    @Override
+    public void execute(ComponentTransfer transfer) throws TransferException {
+        TransferResult result = tryExecute(transfer);
+        if (result != TransferResult.EXECUTED) {
+            // the component is not operated on by the rejected transfer, so
+            // it may have been moved since; the placement is only a hint
+            acquireMutex();
+            DeviceId placement = componentPlacement.get(transfer.getComponentId());
+            mutex.release();
+            throw result.toException(transfer, placement);
+        }
+    }
+
+    @Override
+    public TransferResult tryExecute(ComponentTransfer transfer) {
+        acquireMutex();
+        TransferResult rejected = checkTransfer(transfer);
+        if (rejected != null) {
+            mutex.release();
+            return rejected;
+        }
+        componentsOperatedOn.add(transfer.getComponentId());
+        Move move = new Move(transfer, sizeOf(transfer));
+        demand(move);
+        mutex.release();
+
+        await(move);
+        transfer.prepare();
+        acquireMutex();
+        preparationFinished(move);
+        mutex.release();
+        await(move);
+        transfer.perform();
+        acquireMutex();
+        componentsOperatedOn.remove(transfer.getComponentId());
+        mutex.release();
+        return TransferResult.EXECUTED;
+    }
+
+    public Map<DeviceId, Long> getDeviceCapacities() {
+        Map<DeviceId, Long> capacities = new HashMap<>();
+        acquireMutex();
+        devices.forEach((devId, device) -> capacities.put(devId, device.capacity));
+        mutex.release();
+        return capacities;
+    }
+
+    // bytes of the components placed on each device, including those that
+    // are still being performed to it
+    public Map<DeviceId, Long> getStoredBytes() {
+        Map<DeviceId, Long> stored = new HashMap<>();
+        acquireMutex();
+        devices.forEach((devId, device) -> stored.put(devId, device.stored));
+        mutex.release();
+        return stored;
+    }
+
+    public Map<ComponentId, DeviceId> getComponentPlacement() {
+        acquireMutex();
+        Map<ComponentId, DeviceId> placement = new HashMap<>(componentPlacement);
+        mutex.release();
+        return placement;
+    }
+
+    /**
+     * Looks for a cycle closing each waiting transfer once more, as one may
+     * have become possible since it started waiting. Each search reaches
+     * a device at most once per size of a transfer leaving it, so a sweep
+     * takes time cubic in the number of waiting transfers at worst. Returns
+     * the number of transfers that stopped waiting.
+     */
+    public int sweep() {
+        acquireMutex();
+        int waitingBefore = countAwaiting();
+        for (Device device : devices.values()) {
+            for (Move move : new ArrayList<>(device.awaiting)) {
+                // skip transfers released by an earlier cycle
+                if (device.awaiting.contains(move))
+                    closeCycleOfWaiting(move, device);
+            }
+        }
+        int unblocked = waitingBefore - countAwaiting();
+        mutex.release();
+        return unblocked;
+    }
+
+    /**
+     * Starts a daemon thread calling {@link #sweep()} every period.
+     */
+    public DeadlockSweeper startDeadlockSweeper(long period, TimeUnit unit,
+                                                DeadlockSweeper.Listener listener) {
+        DeadlockSweeper sweeper = new DeadlockSweeper(this::sweep, unit.toNanos(period), listener);
+        sweeper.start();
+        return sweeper;
+    }
+
+    // number of transfers waiting to be admitted
+    public int getQueuedTransferCount() {
+        acquireMutex();
+        int count = countAwaiting();
+        mutex.release();
+        return count;
+    }
+
+    // must be called with mutex held
+    private int countAwaiting() {
+        int count = 0;
+        for (Device device : devices.values())
+            count += device.awaiting.size();
+        return count;
+    }
+
+    private void acquireMutex() {
+        try {
+            mutex.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private static void await(Move move) {
+        try {
+            move.gate.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    // must be called with mutex held; the size of an added component is
+    // declared by the transfer, others are known from their placement
+    private long sizeOf(ComponentTransfer transfer) {
+        Long known = componentSizes.get(transfer.getComponentId());
+        if (known != null)
+            return known;
+        return transfer instanceof SizedComponentTransfer
+                ? ((SizedComponentTransfer) transfer).getSize() : 0;
+    }
+
+    // must be called with mutex held; returns null if the transfer is correct
+    private TransferResult checkTransfer(ComponentTransfer transfer) {
+        ComponentId component = transfer.getComponentId();
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+        if (componentsOperatedOn.contains(component))
+            return TransferResult.COMPONENT_IS_BEING_OPERATED_ON;
+        if (source == null && destination == null)
+            return TransferResult.ILLEGAL_TRANSFER_TYPE;
+        if (source != null && !devices.containsKey(source))
+            return TransferResult.SOURCE_DEVICE_DOES_NOT_EXIST;
+        if (destination != null && !devices.containsKey(destination))
+            return TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST;
+        if (source == null) {
+            if (componentPlacement.containsKey(component))
+                return TransferResult.COMPONENT_ALREADY_EXISTS;
+        }
+        else {
+            if (!source.equals(componentPlacement.get(component)))
+                return TransferResult.COMPONENT_DOES_NOT_EXIST;
+            if (source.equals(destination))
+                return TransferResult.COMPONENT_DOES_NOT_NEED_TRANSFER;
+        }
+        // an added component without a size, or one that could never fit
+        // into its destination, would wait forever
+        long size = sizeOf(transfer);
+        if (size <= 0 || (destination != null && size > devices.get(destination).capacity))
+            return TransferResult.ILLEGAL_COMPONENT_SIZE;
+        return null;
+    }
+
+    // must be called with mutex held
+    private void demand(Move move) {
+        DeviceId destination = move.destination();
+        if (destination == null) {
+            allowPreparation(move);
+            admitAwaiting(startLeaving(move));
+            return;
+        }
+        Device device = devices.get(destination);
+        if (device.awaiting.isEmpty() && device.available() >= move.size) {
+            reserve(move, device);
+            allowPreparation(move);
+            admitAwaiting(startLeaving(move));
+        }
+        else if (!closeCycle(move)) {
+            device.awaiting.add(move);
+        }
+    }
+
+    // must be called with mutex held; takes the size of the transfer from
+    // the free bytes of the device first and then from the leaving transfers
+    private static void reserve(Move move, Device device) {
+        long needed = move.size;
+        long fromFree = Math.min(device.free, needed);
+        device.free -= fromFree;
+        needed -= fromFree;
+        Iterator<Move> leaving = device.leavingTransfers.iterator();
+        while (needed > 0) {
+            Move other = leaving.next();
+            long taken = Math.min(other.unreserved, needed);
+            other.unreserved -= taken;
+            device.leaving -= taken;
+            needed -= taken;
+            other.takingMyBytes.add(move);
+            move.awaitedPreparations++;
+            if (other.unreserved == 0)
+                leaving.remove();
+        }
+    }
+
+    // must be called with mutex held; offers the bytes of the transfer on
+    // its source to others and returns the source (null if there is none)
+    private Device startLeaving(Move move) {
+        DeviceId source = move.source();
+        if (source == null)
+            return null;
+        Device device = devices.get(source);
+        move.unreserved = move.size;
+        device.leaving += move.size;
+        device.leavingTransfers.add(move);
+        return device;
+    }
+
+    private static void allowPreparation(Move move) {
+        move.gate.release();
+    }
+
+    // must be called with mutex held; admits waiting transfers for as long
+    // as the first one fits, and goes on with the devices they leave, so
+    // one large departure may admit a whole tree of smaller arrivals
+    private void admitAwaiting(Device first) {
+        if (first == null)
+            return;
+        ArrayDeque<Device> changed = new ArrayDeque<>();
+        changed.add(first);
+        while (!changed.isEmpty()) {
+            Device device = changed.poll();
+            Move head;
+            while ((head = device.awaiting.peek()) != null
+                    && device.available() >= head.size) {
+                device.awaiting.poll();
+                reserve(head, device);
+                allowPreparation(head);
+                Device source = startLeaving(head);
+                if (source != null)
+                    changed.add(source);
+            }
+        }
+    }
+
+    // must be called with mutex held; the transfer keeps its place in the
+    // queue of its destination unless it closes a cycle
+    private void closeCycleOfWaiting(Move move, Device destination) {
+        int position = destination.awaiting.indexOf(move);
+        destination.awaiting.remove(position);
+        if (!closeCycle(move))
+            destination.awaiting.add(position, move);
+    }
+
+    // must be called with mutex held; looks for a cycle of waiting transfers
+    // leading from the source of the given one back to its destination in
+    // which every transfer fits into the available bytes of its destination
+    // together with the bytes of the transfer of the cycle leaving it; the
+    // larger that transfer, the more can come next, so a device is only
+    // visited again if it is reached with a larger departure than before
+    private boolean closeCycle(Move move) {
+        if (move.source() == null)
+            return false;
+        DeviceId target = move.destination();
+        // the largest departure each device has been reached with
+        Map<DeviceId, Long> bestDeparture = new HashMap<>();
+        Set<DeviceId> onPath = new HashSet<>();
+        // path.get(i) waits for the source of path.get(i - 1) (or of move)
+        List<Move> path = new ArrayList<>();
+        List<Iterator<Move>> candidates = new ArrayList<>();
+        onPath.add(move.source());
+        candidates.add(devices.get(move.source()).awaiting.iterator());
+        while (!candidates.isEmpty()) {
+            Iterator<Move> iterator = candidates.get(candidates.size() - 1);
+            if (!iterator.hasNext()) {
+                candidates.remove(candidates.size() - 1);
+                if (!path.isEmpty())
+                    onPath.remove(path.remove(path.size() - 1).source());
+                continue;
+            }
+            Move waiting = iterator.next();
+            Move leaving = path.isEmpty() ? move : path.get(path.size() - 1);
+            DeviceId source = waiting.source();
+            if (source == null
+                    || devices.get(leaving.source()).available() + leaving.size < waiting.size)
+                continue;
+            if (source.equals(target)) {
+                if (devices.get(target).available() + waiting.size >= move.size) {
+                    path.add(waiting);
+                    admitCycle(move, path);
+                    return true;
+                }
+            }
+            else if (!onPath.contains(source)
+                    && bestDeparture.getOrDefault(source, 0L) < waiting.size) {
+                bestDeparture.put(source, waiting.size);
+                onPath.add(source);
+                path.add(waiting);
+                candidates.add(devices.get(source).awaiting.iterator());
+            }
+        }
+        return false;
+    }
+
+    // every transfer of the cycle leaves first, so that each one can reserve
+    // the bytes of the one leaving its destination; bytes left over can then
+    // be taken by the transfers waiting for the devices of the cycle
+    private void admitCycle(Move move, List<Move> path) {
+        List<Move> cycle = new ArrayList<>(path.size() + 1);
+        cycle.add(move);
+        cycle.addAll(path);
+        for (Move member : path)
+            devices.get(member.destination()).awaiting.remove(member);
+        List<Device> sources = new ArrayList<>(cycle.size());
+        for (Move member : cycle)
+            sources.add(startLeaving(member));
+        for (Move member : cycle) {
+            reserve(member, devices.get(member.destination()));
+            allowPreparation(member);
+        }
+        for (Device source : sources)
+            admitAwaiting(source);
+    }
+
+    // must be called with mutex held
+    private void preparationFinished(Move move) {
+        move.prepared = true;
+        DeviceId source = move.source();
+        DeviceId destination = move.destination();
+        ComponentId component = move.transfer.getComponentId();
+        if (source != null) {
+            Device device = devices.get(source);
+            // bytes nobody has reserved are free from now on
+            if (device.leavingTransfers.remove(move)) {
+                device.leaving -= move.unreserved;
+                device.free += move.unreserved;
+                move.unreserved = 0;
+            }
+            device.stored -= move.size;
+            for (Move other : move.takingMyBytes) {
+                if (--other.awaitedPreparations == 0 && other.prepared)
+                    other.gate.release();
+            }
+            move.takingMyBytes.clear();
+        }
+        if (destination == null) {
+            componentPlacement.remove(component);
+            componentSizes.remove(component);
+        }
+        else {
+            devices.get(destination).stored += move.size;
+            componentPlacement.put(component, destination);
+            componentSizes.put(component, move.size);
+        }
+        if (move.awaitedPreparations == 0)
+            move.gate.release();
+    }
+}
@@ -0,0 +1,265 @@
+package cp2023.solution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+/**
+ * Background thread flagging transfers that have been preparing or
+ * performing for longer than multiplier times the p99 of that phase on
+ * their device (and at least minThreshold), together with the number of
+ * transfers waiting for them to prepare, directly or through others.
+ * Prepare times are attributed to the source device and perform times to
+ * the destination (to the other one for additions and removals). Created
+ * by {@link StorageSystemInstance#startStallDetector}.
+ */
+public final class StallDetector {
+
+    public interface Listener {
+        // called after every check that found stalled transfers
+        void stallsDetected(List<Stall> stalls);
+    }
+
+    public static final class Stall {
+        private final WaitForGraphSnapshot.TransferInfo transfer;
+        private final DeviceId device;
+        private final long thresholdNanos;
+        private final int blockedCount;
+
+        Stall(WaitForGraphSnapshot.TransferInfo transfer, DeviceId device, long thresholdNanos,
+              int blockedCount) {
+            this.transfer = transfer;
+            this.device = device;
+            this.thresholdNanos = thresholdNanos;
+            this.blockedCount = blockedCount;
+        }
+
+        // its phase is PREPARING or PERFORMING
+        public WaitForGraphSnapshot.TransferInfo getTransfer() {
+            return transfer;
+        }
+
+        // device whose threshold the phase has exceeded
+        public DeviceId getDeviceId() {
+            return device;
+        }
+
+        public long getThresholdNanos() {
+            return thresholdNanos;
+        }
+
+        // transfers waiting for this one to prepare, directly or transitively:
+        // those reserving its slot and those queued for its source device
+        public int getBlockedCount() {
+            return blockedCount;
+        }
+
+        @Override
+        public String toString() {
+            return transfer.getComponentId() + ": " + transfer.getSourceDeviceId() + " -> "
+                    + transfer.getDestinationDeviceId() + " " + transfer.getPhase() + " for "
+                    + transfer.getPhaseAgeNanos() / 1000 + " us (threshold "
+                    + thresholdNanos / 1000 + " us on " + device + "), blocking "
+                    + blockedCount;
+        }
+    }
+
+    // fewer samples say too little about a device, only minThreshold is used
+    private static final int MIN_SAMPLES = 32;
+
+    private final StorageSystemInstance system;
+    private final long periodNanos;
+    private final double multiplier;
+    private final long minThresholdNanos;
+    private final Listener listener;
+    private final ConcurrentMap<DeviceId, PhaseHistogram> prepareTimes;
+    private final ConcurrentMap<DeviceId, PhaseHistogram> performTimes;
+    private final Semaphore stopSignal;
+    private final Thread thread;
+    private final AtomicLong checks;
+    private final AtomicLong detected;
+    private volatile boolean steering;
+    private volatile List<Stall> stalls;
+
+    StallDetector(StorageSystemInstance system, long periodNanos, double multiplier,
+                  long minThresholdNanos, Listener listener) {
+        if (periodNanos <= 0 || multiplier <= 0 || minThresholdNanos < 0)
+            throw new IllegalArgumentException("Stalls cannot be checked every "
+                    + periodNanos + " ns with " + multiplier + " times p99 and at least "
+                    + minThresholdNanos + " ns");
+        this.system = system;
+        this.periodNanos = periodNanos;
+        this.multiplier = multiplier;
+        this.minThresholdNanos = minThresholdNanos;
+        this.listener = listener;
+        this.prepareTimes = new ConcurrentHashMap<>();
+        this.performTimes = new ConcurrentHashMap<>();
+        this.stopSignal = new Semaphore(0);
+        this.checks = new AtomicLong();
+        this.detected = new AtomicLong();
+        this.stalls = List.of();
+        this.thread = new Thread(this::run, "stall-detector");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    static DeviceId deviceOf(ComponentTransfer transfer, WaitForGraphSnapshot.Phase phase) {
+        return deviceOf(transfer.getSourceDeviceId(), transfer.getDestinationDeviceId(), phase);
+    }
+
+    private static DeviceId deviceOf(DeviceId source, DeviceId destination,
+                                     WaitForGraphSnapshot.Phase phase) {
+        if (phase == WaitForGraphSnapshot.Phase.PREPARING)
+            return source != null ? source : destination;
+        return destination != null ? destination : source;
+    }
+
+    // called by the system whenever a transfer finishes preparing or performing
+    void phaseFinished(DeviceId device, WaitForGraphSnapshot.Phase phase, long nanos) {
+        ConcurrentMap<DeviceId, PhaseHistogram> times =
+                phase == WaitForGraphSnapshot.Phase.PREPARING ? prepareTimes : performTimes;
+        PhaseHistogram histogram = times.get(device);
+        if (histogram == null)
+            histogram = times.computeIfAbsent(device, d -> new PhaseHistogram());
+        histogram.record(nanos);
+    }
+
+    public long getThresholdNanos(DeviceId device, WaitForGraphSnapshot.Phase phase) {
+        PhaseHistogram histogram = (phase == WaitForGraphSnapshot.Phase.PREPARING
+                ? prepareTimes : performTimes).get(device);
+        if (histogram == null || histogram.count() < MIN_SAMPLES)
+            return minThresholdNanos;
+        long p99 = histogram.percentile(0.99);
+        return Math.max(minThresholdNanos, (long) Math.min(multiplier * p99, Long.MAX_VALUE));
+    }
+
+    /**
+     * With steering, transfers are not admitted into slots that are going to
+     * be freed by transfers stalled in prepare() (they wait for another slot
+     * instead), so that fewer transfers get stuck behind them.
+     */
+    public void setAdmissionSteering(boolean enabled) {
+        steering = enabled;
+        if (!enabled)
+            system.setStalledTransfers(Set.of());
+    }
+
+    private void run() {
+        try {
+            while (!stopSignal.tryAcquire(periodNanos, TimeUnit.NANOSECONDS))
+                check();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    // one check of all unfinished transfers
+    private void check() {
+        WaitForGraphSnapshot snapshot = system.snapshotWaitForGraph();
+        List<WaitForGraphSnapshot.TransferInfo> transfers = snapshot.getTransfers();
+        List<List<Integer>> dependents = new ArrayList<>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++)
+            dependents.add(new ArrayList<>(0));
+        Map<DeviceId, List<Integer>> awaiting = new HashMap<>();
+        for (WaitForGraphSnapshot.DeviceInfo device : snapshot.getDevices())
+            awaiting.put(device.getDeviceId(), device.getAwaiting());
+        for (WaitForGraphSnapshot.TransferInfo transfer : transfers) {
+            if (transfer.getDependsOn() >= 0)
+                dependents.get(transfer.getDependsOn()).add(transfer.getId());
+            // until prepared, it holds the slot on its source that the
+            // transfers queued there wait for (unless another one frees first)
+            List<Integer> queued = transfer.getSourceDeviceId() == null ? null
+                    : awaiting.get(transfer.getSourceDeviceId());
+            if (queued != null && holdsSource(transfer.getPhase()))
+                dependents.get(transfer.getId()).addAll(queued);
+        }
+
+        List<Stall> found = new ArrayList<>();
+        Set<ComponentTransfer> stalledPreparing = new HashSet<>();
+        for (WaitForGraphSnapshot.TransferInfo transfer : transfers) {
+            WaitForGraphSnapshot.Phase phase = transfer.getPhase();
+            if (phase != WaitForGraphSnapshot.Phase.PREPARING
+                    && phase != WaitForGraphSnapshot.Phase.PERFORMING)
+                continue;
+            DeviceId device = deviceOf(transfer.getSourceDeviceId(),
+                    transfer.getDestinationDeviceId(), phase);
+            long threshold = getThresholdNanos(device, phase);
+            if (transfer.getPhaseAgeNanos() <= threshold)
+                continue;
+            found.add(new Stall(transfer, device, threshold,
+                    countBlocked(transfer.getId(), dependents)));
+            if (phase == WaitForGraphSnapshot.Phase.PREPARING)
+                stalledPreparing.add(transfer.transfer);
+        }
+        found.sort((a, b) -> Integer.compare(b.blockedCount, a.blockedCount));
+        stalls = Collections.unmodifiableList(found);
+        checks.incrementAndGet();
+        detected.addAndGet(found.size());
+        if (steering)
+            system.setStalledTransfers(stalledPreparing);
+        if (listener != null && !found.isEmpty())
+            listener.stallsDetected(stalls);
+    }
+
+    private static boolean holdsSource(WaitForGraphSnapshot.Phase phase) {
+        return phase == WaitForGraphSnapshot.Phase.SUBMITTED
+                || phase == WaitForGraphSnapshot.Phase.QUEUED
+                || phase == WaitForGraphSnapshot.Phase.PREPARING;
+    }
+
+    // transfers reachable backwards along the dependencies, each once
+    private static int countBlocked(int id, List<List<Integer>> dependents) {
+        boolean[] visited = new boolean[dependents.size()];
+        visited[id] = true;
+        List<Integer> stack = new ArrayList<>(dependents.get(id));
+        int count = 0;
+        while (!stack.isEmpty()) {
+            int next = stack.remove(stack.size() - 1);
+            if (visited[next])
+                continue;
+            visited[next] = true;
+            count++;
+            stack.addAll(dependents.get(next));
+        }
+        return count;
+    }
+
+    public void shutdown() {
+        stopSignal.release();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        system.stallDetectorStopped(this);
+    }
+
+    // stalled transfers found by the last check, the most blocking first
+    public List<Stall> getStalls() {
+        return stalls;
+    }
+
+    public long getCheckCount() {
+        return checks.get();
+    }
+
+    // sum over all checks, so a long stall is counted once per check
+    public long getDetectedCount() {
+        return detected.get();
+    }
+}
@@ -22,4 +22,29 @@ public final class StorageSystemFactory {
         return new StorageSystemInstance(deviceTotalSlots, componentPlacement);
     }
 
+    public static StorageSystem newSystem(
+            Map<DeviceId, Integer> deviceTotalSlots,
+            Map<ComponentId, DeviceId> componentPlacement,
+            WaitStrategy waitStrategy) {
+        return new StorageSystemInstance(deviceTotalSlots, componentPlacement,
+                waitStrategy);
+    }
+
+    public static StorageSystem newSystem(
+            Map<DeviceId, Integer> deviceTotalSlots,
+            Map<ComponentId, DeviceId> componentPlacement,
+            Engine engine) {
+        if (engine == Engine.EVENT_LOOP)
+            return new EventLoopStorageSystem(deviceTotalSlots, componentPlacement);
+        return new StorageSystemInstance(deviceTotalSlots, componentPlacement);
+    }
+
+    // devices with capacities in bytes, see SizedStorageSystem
+    public static StorageSystem newSizedSystem(
+            Map<DeviceId, Long> deviceCapacities,
+            Map<ComponentId, DeviceId> componentPlacement,
+            Map<ComponentId, Long> componentSizes) {
+        return new SizedStorageSystem(deviceCapacities, componentPlacement, componentSizes);
+    }
+
 }
@@ -6,23 +6,77 @@ import cp2023.exceptions.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+public class StorageSystemInstance implements ObservableStorageSystem {
+    private static final int EVENT_BUFFER_CAPACITY = 1 << 14;
 
-public class StorageSystemInstance implements StorageSystem {
     private final ConcurrentMap<DeviceId, AtomicInteger> deviceFreeSlots;
+    private final ConcurrentMap<DeviceId, Integer> deviceTotalSlots;
+    // number of transfers on awaitingTransfers lists, readable without mutexGraph
+    private final ConcurrentMap<DeviceId, AtomicInteger> deviceAwaitingCount;
+    private final Set<DeviceId> drainingDevices;
+    // counted down when a transfer from or to the draining device ends
+    private final ConcurrentMap<DeviceId, CountDownLatch> drainProgress;
     private final ConcurrentMap<ComponentId, DeviceId> componentPlacement;
-    private final ConcurrentMap<ComponentId, Semaphore> mutexComponentOperation;
-    private final ConcurrentMap<ComponentTransfer, Semaphore> transferSleep;
+    private final ConcurrentMap<ComponentId, ComponentState> componentStates;
+    // components with a transfer in progress, for snapshots of the waiting
+    // graph; a component is dropped by the snapshot that finds it idle, so
+    // its transfers do not allocate an entry each
+    private final Set<ComponentState> liveComponents;
+    private final ConcurrentMap<ComponentTransfer, PhaseGate> transferSleep;
+    private final WaitStrategy waitStrategy;
+    // replaces the gates of the wait strategy when simulating
+    private final Function<ComponentTransfer, PhaseGate> gateFactory;
+    private final PhaseGate.HandoffStatistics admissionStatistics;
+    private final PhaseGate.HandoffStatistics handoffStatistics;
     private final Semaphore mutexGraph;
-    private final ConcurrentMap<ComponentId, Thread> componentsOperatedOn;
+    private final FlatCombiner graphCombiner;
+    private final Function<ComponentTransfer, TransferResult> demandOperation;
+    private final Function<ComponentTransfer, TransferResult> freeSourceOperation;
+    private volatile boolean flatCombining;
     private final Map<DeviceId, List<ComponentTransfer>> awaitingTransfers;
     private final Map<DeviceId, List<ComponentTransfer>> preparingFreeTransfers;
     private final ConcurrentMap<ComponentTransfer, ComponentTransfer> transferIDependOn;
     private final ConcurrentMap<ComponentTransfer, ComponentTransfer> transferTakingMyPlace;
-
+    private final DevicePools devicePools;
+    private final TransferGroups groups;
+    // admitted transfers whose slot has been taken back by a rolled back
+    // group, waiting for another one on the device before they can perform
+    private final Map<DeviceId, Deque<ComponentTransfer>> slotlessTransfers;
+    private final TransferChaining chaining;
+    private volatile boolean inlineCycleDetection;
+    private final FastAdmission fastAdmission;
+    private final DeviceLimits deviceLimits;
+    private final TransferEventBuffer events;
+    private final AccessRecorder accesses;
+    private final Evictions evictions;
+    private final Tenants tenants;
+    private volatile StallDetector stallDetector;
+    // transfers stalled in prepare(), whose slots are not handed out
+    private volatile Set<ComponentTransfer> stalledTransfers;
     public StorageSystemInstance(Map<DeviceId, Integer> deviceTotalSlots,
                                  Map<ComponentId, DeviceId> componentPlacement) {
+        this(deviceTotalSlots, componentPlacement, WaitStrategy.BLOCKING);
+    }
+
+    public StorageSystemInstance(Map<DeviceId, Integer> deviceTotalSlots,
+                                 Map<ComponentId, DeviceId> componentPlacement,
+                                 WaitStrategy waitStrategy) {
+        this(deviceTotalSlots, componentPlacement, waitStrategy, null);
+    }
+
+    // transfers of a system with its own gates are driven by submit(),
+    // finishPreparation() and finishPerformance() as the gates are released
+    StorageSystemInstance(Map<DeviceId, Integer> deviceTotalSlots,
+                          Map<ComponentId, DeviceId> componentPlacement,
+                          WaitStrategy waitStrategy,
+                          Function<ComponentTransfer, PhaseGate> gateFactory) {
         if (deviceTotalSlots.isEmpty())
             throw new IllegalArgumentException("No devices were given");
         this.deviceFreeSlots = new ConcurrentHashMap<>();
@@ -38,10 +92,18 @@ public class StorageSystemInstance implements StorageSystem {
             else
                 deviceFreeSlots.put(devId, new AtomicInteger(capacity));
         });
+        this.deviceTotalSlots = new ConcurrentHashMap<>(deviceTotalSlots);
+        this.deviceAwaitingCount = new ConcurrentHashMap<>();
+        this.drainingDevices = ConcurrentHashMap.newKeySet();
+        this.drainProgress = new ConcurrentHashMap<>();
         this.componentPlacement = new ConcurrentHashMap<>();
-        this.mutexComponentOperation = new ConcurrentHashMap<>();
-        this.componentsOperatedOn = new ConcurrentHashMap<>();
+        this.componentStates = new ConcurrentHashMap<>();
+        this.liveComponents = ConcurrentHashMap.newKeySet();
         this.transferSleep = new ConcurrentHashMap<>();
+        this.waitStrategy = waitStrategy;
+        this.gateFactory = gateFactory;
+        this.admissionStatistics = new PhaseGate.HandoffStatistics();
+        this.handoffStatistics = new PhaseGate.HandoffStatistics();
         componentPlacement.forEach((compId, devId) -> {
             if (compId == null)
                 throw new IllegalArgumentException("Component with null ID declared");
@@ -58,189 +120,1679 @@ public class StorageSystemInstance implements StorageSystem {
         preparingFreeTransfers = new HashMap<>();
         transferIDependOn = new ConcurrentHashMap<>();
         transferTakingMyPlace = new ConcurrentHashMap<>();
+        devicePools = new DevicePools();
+        groups = new TransferGroups(this);
+        slotlessTransfers = new HashMap<>();
+        chaining = new TransferChaining();
+        deviceLimits = new DeviceLimits();
+        events = new TransferEventBuffer(EVENT_BUFFER_CAPACITY);
+        accesses = new AccessRecorder();
+        evictions = new Evictions(this, accesses);
+        tenants = new Tenants();
+        fastAdmission = new FastAdmission(this, tenants);
+        stalledTransfers = Set.of();
+        inlineCycleDetection = true;
         deviceFreeSlots.forEach((devId, capacity) -> {
             awaitingTransfers.put(devId, new LinkedList<>());
             preparingFreeTransfers.put(devId, new LinkedList<>());
+            deviceAwaitingCount.put(devId, new AtomicInteger());
         });
         mutexGraph = new Semaphore(1, true);
+        graphCombiner = new FlatCombiner(mutexGraph);
+        demandOperation = this::demandWithLockHeld;
+        freeSourceOperation = transfer -> {
+            freePreparedSource(transfer);
+            return null;
+        };
     }
 
     @Override
     public void execute(ComponentTransfer transfer) throws TransferException {
-        checkTransferCorrectness(transfer);
-        transferSleep.putIfAbsent(transfer, new Semaphore(0, true));
-        demandTransfer(transfer);
+        TransferResult result = tryExecute(transfer);
+        if (result != TransferResult.EXECUTED)
+            throw rejection(result, transfer);
+    }
+
+    /**
+     * Rejections are found without creating exceptions, so rejecting
+     * a transfer allocates nothing.
+     */
+    @Override
+    public TransferResult tryExecute(ComponentTransfer transfer) {
+        return tryExecute(transfer, null);
+    }
+
+    // how long the transfer waited to be allowed to prepare is passed to the
+    // given consumer, if any, before prepare() is called
+    TransferResult tryExecute(ComponentTransfer transfer, LongConsumer admissionWait) {
+        long submittedAt = System.nanoTime();
+        TransferResult rejected = admit(transfer, submittedAt);
+        if (rejected != null)
+            return rejected;
+        // transfers admitted by the fast path have no gate
+        PhaseGate gate = transferSleep.get(transfer);
+        if (gate != null)
+            awaitGate(gate);
+        long waited = System.nanoTime() - submittedAt;
+        Tenant tenant = tenants.of(transfer);
+        if (tenant != null)
+            tenant.admitted(waited);
+        if (admissionWait != null)
+            admissionWait.accept(waited);
+        deviceLimits.prepare(transfer);
+        preparationDone(transfer, gate == null);
+        if (gate != null)
+            awaitGate(gate);
+        enterPhase(transfer, WaitForGraphSnapshot.Phase.PERFORMING);
+        performWithinLimits(transfer);
+        performanceDone(transfer);
+        return TransferResult.EXECUTED;
+    }
+
+    private static void awaitGate(PhaseGate gate) {
         try {
-            transferSleep.get(transfer).acquire();
+            gate.acquire();
         } catch (InterruptedException e) {
             throw new RuntimeException("panic: unexpected thread interruption", e);
         }
-        transfer.prepare();
-        preparationFinished(transfer);
-        try {
-            transferSleep.get(transfer).acquire();
-        } catch (InterruptedException e) {
-            throw new RuntimeException("panic: unexpected thread interruption", e);
+    }
+
+    // the transfer is checked and either admitted on the fast path or given
+    // a gate and its slot demanded; returns why it was rejected, if it was
+    private TransferResult admit(ComponentTransfer transfer, long submittedAt) {
+        transferEvent(TransferEvent.Type.SUBMITTED, transfer);
+        TransferResult rejected = checkTransferCorrectness(transfer);
+        if (rejected != null) {
+            transferEvent(TransferEvent.Type.REJECTED, transfer);
+            return rejected;
+        }
+        trackProgress(transfer, submittedAt);
+        tenants.transferStarted(transfer);
+        CountDownLatch predecessor = chaining.takePredecessor(transfer);
+        // transfers admitted without the graph lock are not a part of
+        // the graph, so nobody is going to wake them up
+        if (predecessor == null && fastAdmission.tryAdmit(transfer)) {
+            transferEvent(TransferEvent.Type.ADMITTED, transfer,
+                    TransferEvent.AdmissionPath.FAST);
+            return null;
+        }
+        transferSleep.putIfAbsent(transfer, newGate(transfer));
+        rejected = predecessor == null ? demandTransfer(transfer)
+                : demandAfterPredecessor(transfer, predecessor);
+        if (rejected != null) {
+            // destination was removed after the transfer had been checked
+            transferEvent(TransferEvent.Type.REJECTED, transfer);
+            endTransfer(transfer);
+        }
+        return rejected;
+    }
+
+    private void preparationDone(ComponentTransfer transfer, boolean fast) {
+        transferEvent(TransferEvent.Type.PREPARED, transfer);
+        if (fast) {
+            fastAdmission.freeSource(transfer);
+            updatePlacement(transfer);
+        }
+        else {
+            preparationFinished(transfer);
         }
-        transfer.perform();
+    }
+
+    private void performanceDone(ComponentTransfer transfer) {
+        transferEvent(TransferEvent.Type.PERFORMED, transfer);
         endTransfer(transfer);
     }
 
-    private void checkTransferCorrectness(ComponentTransfer transfer)
-            throws TransferException {
+    // reads the placement only when the transfer has already been rejected,
+    // so a component that has just been removed is reported as being added
+    private TransferException rejection(TransferResult result, ComponentTransfer transfer) {
+        return result.toException(transfer, componentPlacement.get(transfer.getComponentId()));
+    }
+
+    // the steps of tryExecute() for callers which do not wait on the gates
+    // themselves, such as the simulator: the transfer is admitted as it would
+    // be by tryExecute(), but nobody waits for it to be allowed to prepare;
+    // returns true if it was admitted on the fast path, in which case it has
+    // no gate to be released and may prepare and perform right away
+    boolean submit(ComponentTransfer transfer) throws TransferException {
+        TransferResult rejected = admit(transfer, System.nanoTime());
+        if (rejected != null)
+            throw rejection(rejected, transfer);
+        return !transferSleep.containsKey(transfer);
+    }
+
+    // prepare() of the transfer allowed to prepare has returned
+    void finishPreparation(ComponentTransfer transfer) {
+        preparationDone(transfer, !transferSleep.containsKey(transfer));
+    }
+
+    // perform() of the transfer allowed to perform has returned
+    void finishPerformance(ComponentTransfer transfer) {
+        releaseQuota(transfer);
+        performanceDone(transfer);
+    }
+
+    // slots neither occupied nor reserved
+    int freeSlotsOf(DeviceId device) {
+        return deviceFreeSlots.get(device).get();
+    }
+
+    int queuedTransferCount() {
+        int count = 0;
+        for (AtomicInteger awaiting : deviceAwaitingCount.values())
+            count += awaiting.get();
+        return count;
+    }
+
+    /**
+     * Executes the transfers together: all of them are checked first (if any
+     * is incorrect, none is executed), then their destination slots are
+     * demanded under a single acquisition of the graph lock. Each transfer is
+     * prepared as soon as it is allowed to, the sources of the whole group are
+     * freed under another single lock acquisition once every prepare has
+     * returned, and then each transfer is performed as soon as it is allowed
+     * to. Calls of prepare() and perform() are made by the calling thread and
+     * pooled helper threads, one transfer per thread. If any prepare() throws,
+     * the transfers still waiting for a slot are withdrawn, the slots reserved
+     * by the group are given back once the others have prepared and nothing
+     * is performed; the exception is rethrown wrapped.
+     */
+    public void executeGroup(List<ComponentTransfer> transfers) throws TransferException {
+        groups.execute(transfers);
+    }
+
+    // the steps of executeGroup() below are called by TransferGroups; checks
+    // the transfers of the group and demands their slots at once
+    void demandGroup(List<ComponentTransfer> transfers) throws TransferException {
+        Set<ComponentId> components = new HashSet<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            ComponentTransfer transfer = transfers.get(i);
+            long submittedAt = System.nanoTime();
+            transferEvent(TransferEvent.Type.SUBMITTED, transfer);
+            TransferResult rejected = components.add(transfer.getComponentId())
+                    ? checkTransferCorrectness(transfer)
+                    : TransferResult.COMPONENT_IS_BEING_OPERATED_ON;
+            if (rejected != null) {
+                TransferException e = rejection(rejected, transfer);
+                transferEvent(TransferEvent.Type.REJECTED, transfer);
+                for (int j = 0; j < i; j++) {
+                    transferEvent(TransferEvent.Type.CANCELLED, transfers.get(j));
+                    endTransfer(transfers.get(j));
+                }
+                throw e;
+            }
+            trackProgress(transfer, submittedAt);
+            tenants.transferStarted(transfer);
+            transferSleep.putIfAbsent(transfer, newGate(transfer));
+        }
+        // groups do not pipeline with transfers chained before them
+        for (ComponentTransfer transfer : transfers) {
+            CountDownLatch predecessor = chaining.takePredecessor(transfer);
+            try {
+                if (predecessor != null)
+                    predecessor.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+
+        acquireGraph();
+        for (ComponentTransfer checked : transfers) {
+            TransferResult rejected = checkDestinationAvailable(checked);
+            if (rejected != null) {
+                releaseGraph();
+                TransferException e = rejection(rejected, checked);
+                for (ComponentTransfer transfer : transfers) {
+                    transferEvent(transfer == checked ? TransferEvent.Type.REJECTED
+                            : TransferEvent.Type.CANCELLED, transfer);
+                    endTransfer(transfer);
+                }
+                throw e;
+            }
+        }
+        for (ComponentTransfer transfer : transfers)
+            demandLocked(transfer);
+        releaseGraph();
+    }
+
+    void awaitGate(ComponentTransfer transfer) {
+        awaitGate(transferSleep.get(transfer));
+    }
+
+    void prepareGroupMember(ComponentTransfer transfer, long waited) {
+        Tenant tenant = tenants.of(transfer);
+        if (tenant != null)
+            tenant.admitted(waited);
+        deviceLimits.prepare(transfer);
+        transferEvent(TransferEvent.Type.PREPARED, transfer);
+    }
+
+    void performGroupMember(ComponentTransfer transfer) {
+        enterPhase(transfer, WaitForGraphSnapshot.Phase.PERFORMING);
+        performWithinLimits(transfer);
+        transferEvent(TransferEvent.Type.PERFORMED, transfer);
+    }
+
+    // the transfers of a group that failed are cancelled
+    void endGroup(List<ComponentTransfer> transfers, boolean failed) {
+        for (ComponentTransfer transfer : transfers) {
+            if (failed)
+                transferEvent(TransferEvent.Type.CANCELLED, transfer);
+            endTransfer(transfer);
+        }
+    }
+
+    void freeGroupSources(List<ComponentTransfer> transfers) {
+        acquireGraph();
+        for (ComponentTransfer transfer : transfers) {
+            if (transfer.getSourceDeviceId() != null)
+                freePreparedSource(transfer);
+        }
+        releaseGraph();
+        for (ComponentTransfer transfer : transfers)
+            updateAfterPreparation(transfer);
+    }
+
+    // must be called with mutexGraph held; the transfers still waiting for
+    // a slot stop waiting and are let through their gates, and are returned
+    Set<ComponentTransfer> withdrawAwaiting(List<ComponentTransfer> transfers) {
+        Set<ComponentTransfer> withdrawn = new HashSet<>();
+        for (ComponentTransfer transfer : transfers) {
+            if (isAwaiting(transfer)) {
+                for (DeviceId device : awaitedDevices(transfer))
+                    removeAwaiting(device, transfer);
+                devicePools.stopAwaitingAny(transfer);
+                withdrawn.add(transfer);
+                transferSleep.get(transfer).release();
+            }
+        }
+        return withdrawn;
+    }
+
+    // called once every transfer of the group has prepared, failed or skipped
+    // its preparation; the components stay where they were, the slots
+    // reserved by the group are given back and transfers outside the group
+    // that were to take the sources of the group wait for other slots there
+    void rollBackGroup(List<ComponentTransfer> transfers, Set<ComponentTransfer> withdrawn) {
+        acquireGraph();
+        Set<ComponentTransfer> members = new HashSet<>(transfers);
+        // found before anything is changed, as members may take each other's slots
+        Map<ComponentTransfer, ComponentTransfer> vacatedFor = new HashMap<>();
+        transferTakingMyPlace.forEach((vacating, taking) -> {
+            if (members.contains(taking))
+                vacatedFor.put(taking, vacating);
+        });
+        Set<DeviceId> released = new LinkedHashSet<>();
+        for (ComponentTransfer transfer : transfers) {
+            if (withdrawn.contains(transfer))
+                continue;
+            DeviceId source = transfer.getSourceDeviceId();
+            DeviceId destination = transfer.getDestinationDeviceId();
+            if (destination != null) {
+                tenants.release(transfer, destination);
+                ComponentTransfer vacating = vacatedFor.get(transfer);
+                if (removeSlotless(transfer, destination)) {
+                    // it had no slot to give back
+                }
+                else if (vacating == null) {
+                    deviceFreeSlots.get(destination).incrementAndGet();
+                    released.add(destination);
+                }
+                else {
+                    transferTakingMyPlace.remove(vacating, transfer);
+                    if (!members.contains(vacating)) {
+                        preparingFreeTransfers.get(destination).add(vacating);
+                        released.add(destination);
+                    }
+                }
+            }
+            transferIDependOn.remove(transfer);
+            if (source != null && !preparingFreeTransfers.get(source).remove(transfer)) {
+                ComponentTransfer taking = transferTakingMyPlace.remove(transfer);
+                if (taking != null && !members.contains(taking)) {
+                    addSlotless(source, taking);
+                    released.add(source);
+                }
+            }
+        }
+        for (DeviceId device : released)
+            admitAwaiting(device);
+        releaseGraph();
+    }
+
+    private PhaseGate newGate(ComponentTransfer transfer) {
+        if (gateFactory != null)
+            return gateFactory.apply(transfer);
+        if (waitStrategy == WaitStrategy.SPIN_THEN_PARK)
+            return new PhaseGate.SpinThenPark(admissionStatistics, handoffStatistics);
+        return new PhaseGate.Blocking();
+    }
+
+    private void performWithinLimits(ComponentTransfer transfer) {
+        try {
+            deviceLimits.perform(transfer);
+        } finally {
+            releaseQuota(transfer);
+        }
+    }
+
+    // returns null if the transfer is correct and the component is claimed,
+    // otherwise the reason of the rejection (with the component released)
+    private TransferResult checkTransferCorrectness(ComponentTransfer transfer) {
         ComponentId component = transfer.getComponentId();
-        mutexComponentOperation.putIfAbsent(component, new Semaphore(1, true));
-        // mutex is protecting the set componentsOperatedOn from simultaneous
+        ComponentState state = componentStates.computeIfAbsent(component,
+                c -> new ComponentState());
+        // mutex is protecting the owner of the component from simultaneous
         // starting and ending the operation on a component (in order to avoid
         // the time-of-check to time-to-use bug)
-        try {
-            mutexComponentOperation.get(component).acquire();
-        } catch (InterruptedException e) {
-            throw new RuntimeException("panic: unexpected thread interruption", e);
+        state.lock();
+        Thread owner = state.owner;
+        Semaphore handover = null;
+        if (owner == null) {
+            // nobody can move the component while we hold the mutex, so it is
+            // checked before being claimed and a rejection allocates nothing
+            TransferResult rejected = checkTransferDevices(transfer);
+            if (rejected == null)
+                chaining.claim(transfer, state);
+            state.unlock();
+            return rejected;
         }
-        componentsOperatedOn.putIfAbsent(component, Thread.currentThread());
-        try {
-            if (!componentsOperatedOn.get(component).equals(Thread.currentThread()))
-                throw new ComponentIsBeingOperatedOn(component);
-        } finally {
-            mutexComponentOperation.get(component).release();
+        else if (!owner.equals(Thread.currentThread())) {
+            if (!chaining.isEnabled()) {
+                state.unlock();
+                return TransferResult.COMPONENT_IS_BEING_OPERATED_ON;
+            }
+            handover = chaining.follow(transfer, state);
+        }
+        state.unlock();
+        if (handover != null) {
+            // we are checked against the placement the previous transfer made
+            try {
+                handover.acquire();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
         }
 
+        TransferResult rejected = checkTransferDevices(transfer);
+        if (rejected != null)
+            releaseComponent(transfer);
+        return rejected;
+    }
+
+    // returns null if the transfer is correct
+    private TransferResult checkTransferDevices(ComponentTransfer transfer) {
+        ComponentId component = transfer.getComponentId();
         DeviceId destination = transfer.getDestinationDeviceId();
         DeviceId source = transfer.getSourceDeviceId();
-        if (source == null && destination == null)
-            throw new IllegalTransferType(transfer.getComponentId());
+        boolean pooled = DevicePools.isPoolTransfer(transfer);
+        if (source == null && destination == null && !pooled)
+            return TransferResult.ILLEGAL_TRANSFER_TYPE;
         if (source != null && deviceDoesNotExist(source))
-            throw new DeviceDoesNotExist(source);
-        if (destination != null && deviceDoesNotExist(destination))
-            throw new DeviceDoesNotExist(destination);
+            return TransferResult.SOURCE_DEVICE_DOES_NOT_EXIST;
+        if (pooled) {
+            String pool = ((PooledComponentTransfer) transfer).getDestinationPool();
+            List<DeviceId> members = devicePools.members(pool);
+            if (members == null)
+                return TransferResult.DEVICE_POOL_DOES_NOT_EXIST;
+            if (source != null && members.size() == 1 && members.contains(source))
+                return TransferResult.COMPONENT_DOES_NOT_NEED_TRANSFER;
+        }
+        else if (destination != null && (deviceDoesNotExist(destination)
+                || drainingDevices.contains(destination)))
+            return TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST;
         if (source == null) {
-            assertComponentIsNew(component);
+            if (!componentIsNew(component))
+                return TransferResult.COMPONENT_ALREADY_EXISTS;
         }
         else {
-            assertComponentExists(component, source);
+            if (!componentExists(component, source))
+                return TransferResult.COMPONENT_DOES_NOT_EXIST;
             if (source.equals(destination))
-                throw new ComponentDoesNotNeedTransfer(component, source);
+                return TransferResult.COMPONENT_DOES_NOT_NEED_TRANSFER;
         }
+        return null;
     }
 
-    private boolean deviceDoesNotExist(DeviceId id) {
+    boolean deviceDoesNotExist(DeviceId id) {
         return !deviceFreeSlots.containsKey(id);
     }
 
-    private void assertComponentExists(ComponentId component, DeviceId device)
-            throws ComponentDoesNotExist {
+    private boolean componentExists(ComponentId component, DeviceId device) {
         // there is only one process operating on a component (checked earlier)
-        if (!device.equals(componentPlacement.get(component)))
-            throw new ComponentDoesNotExist(component, device);
+        return device.equals(componentPlacement.get(component));
     }
 
-    private void assertComponentIsNew(ComponentId component)
-            throws ComponentAlreadyExists {
+    private boolean componentIsNew(ComponentId component) {
         // there is only one process operating on a component (checked earlier)
-        if (componentPlacement.containsKey(component))
-            throw new ComponentAlreadyExists(component,
-                    componentPlacement.get(component));
+        return !componentPlacement.containsKey(component);
     }
 
     private void endTransfer(ComponentTransfer transfer) {
+        tenants.transferEnded(transfer);
+        releaseComponent(transfer);
+        if (!drainProgress.isEmpty()) {
+            drainProgressed(transfer.getSourceDeviceId());
+            drainProgressed(transfer.getDestinationDeviceId());
+        }
+    }
+
+    private void drainProgressed(DeviceId device) {
+        CountDownLatch progress = device == null ? null : drainProgress.get(device);
+        if (progress != null)
+            progress.countDown();
+    }
+
+    // the component is no longer operated on by the transfer
+    private void releaseComponent(ComponentTransfer transfer) {
         ComponentId component = transfer.getComponentId();
+        transferSleep.remove(transfer);
+        ComponentState state = componentStates.get(component);
+        state.lock();
+        chaining.released(transfer, state);
+        state.unlock();
+    }
+
+    /**
+     * In the chaining mode a transfer of a component that is being operated
+     * on does not fail with ComponentIsBeingOperatedOn, but waits for the
+     * transfers issued before it. Once the previous transfer has prepared
+     * (so the placement is updated) the next one is checked and may reserve
+     * a free slot on its destination while the previous one performs; it is
+     * prepared after the previous one has performed.
+     */
+    public void setTransferChaining(boolean enabled) {
+        chaining.setEnabled(enabled);
+    }
+
+    // the component is still being performed on by the previous transfer,
+    // so only a free slot on the destination can be reserved before it ends;
+    // the source is not offered to anyone until the component really is there
+    private TransferResult demandAfterPredecessor(ComponentTransfer transfer,
+                                                  CountDownLatch predecessor) {
+        DeviceId destination = transfer.getDestinationDeviceId();
+        boolean reserved = false;
+        if (destination != null && !DevicePools.isPoolTransfer(transfer)) {
+            acquireGraph();
+            if (!deviceDoesNotExist(destination) && tenants.tryReserve(transfer, destination)) {
+                reserved = tryReserveSlot(deviceFreeSlots.get(destination));
+                if (!reserved)
+                    tenants.release(transfer, destination);
+            }
+            releaseGraph();
+        }
         try {
-            mutexComponentOperation.get(component).acquire();
+            predecessor.await();
         } catch (InterruptedException e) {
             throw new RuntimeException("panic: unexpected thread interruption", e);
         }
-        componentsOperatedOn.remove(component);
-        mutexComponentOperation.get(component).release();
+        if (!reserved)
+            return demandTransfer(transfer);
+        acquireGraph();
+        freeSpaceOnSource(transfer);
+        allowPreparation(transfer, TransferEvent.AdmissionPath.CHAINED);
+        releaseGraph();
+        return null;
     }
 
-    private void demandTransfer(ComponentTransfer transfer) {
-        DeviceId destination = transfer.getDestinationDeviceId();
-        DeviceId source = transfer.getSourceDeviceId();
+    // returns null if the slot has been demanded, otherwise the reason of
+    // the rejection
+    private TransferResult demandTransfer(ComponentTransfer transfer) {
+        if (flatCombining)
+            return graphCombiner.apply(demandOperation, transfer);
+        acquireGraph();
+        TransferResult rejected = demandWithLockHeld(transfer);
+        releaseGraph();
+        return rejected;
+    }
+
+    // must be called with mutexGraph held
+    private TransferResult demandWithLockHeld(ComponentTransfer transfer) {
+        TransferResult rejected = checkDestinationAvailable(transfer);
+        if (rejected == null)
+            demandLocked(transfer);
+        return rejected;
+    }
+
+    void acquireGraph() {
         try {
             mutexGraph.acquire();
         } catch (InterruptedException e) {
             throw new RuntimeException("panic: unexpected thread interruption", e);
         }
-        if (destination == null) {
-            freeSpaceOnSource(transfer);
-            transferSleep.get(transfer).release();
+    }
+
+    boolean isDraining(DeviceId device) {
+        return drainingDevices.contains(device);
+    }
+
+    // number of transfers waiting for the device, 0 if it has been removed
+    int awaitingCount(DeviceId device) {
+        AtomicInteger awaiting = deviceAwaitingCount.get(device);
+        return awaiting == null ? 0 : awaiting.get();
+    }
+
+    // null if the device has been removed
+    AtomicInteger awaitingCounter(DeviceId device) {
+        return deviceAwaitingCount.get(device);
+    }
+
+    // null if the device has been removed
+    AtomicInteger freeSlotsCounter(DeviceId device) {
+        return deviceFreeSlots.get(device);
+    }
+
+    // must be used instead of mutexGraph.release(), so that operations
+    // published to the combiner meanwhile are not left waiting
+    void releaseGraph() {
+        mutexGraph.release();
+        graphCombiner.wakeWaiting();
+    }
+
+    /**
+     * With flat combining, demanding a slot and freeing the source of
+     * a prepared transfer are published to a per-thread slot, and the thread
+     * that gets the graph lock applies all operations published so far at
+     * once, instead of the lock being handed over from one thread to another.
+     * It is disabled by default.
+     */
+    public void setFlatCombining(boolean enabled) {
+        flatCombining = enabled;
+    }
+
+    // number of times a thread applied the published operations
+    public long getCombinerPassCount() {
+        return graphCombiner.getPassCount();
+    }
+
+    public long getCombinedOperationCount() {
+        return graphCombiner.getOperationCount();
+    }
+
+    // must be called with mutexGraph held; devices could have been removed
+    // since the transfer was checked; returns null if they were not
+    private TransferResult checkDestinationAvailable(ComponentTransfer transfer) {
+        DeviceId destination = transfer.getDestinationDeviceId();
+        List<DeviceId> awaited;
+        if (DevicePools.isPoolTransfer(transfer)) {
+            awaited = poolCandidates(transfer);
+            if (awaited.isEmpty())
+                return TransferResult.DEVICE_POOL_DOES_NOT_EXIST;
         }
-        // will not be done simultaneously by many processes thanks to the mutex
-        else if (deviceFreeSlots.get(destination).get() > 0) {
-            // reserve free slot on destination device
-            deviceFreeSlots.get(destination).decrementAndGet();
-            freeSpaceOnSource(transfer);
-            transferSleep.get(transfer).release();
+        else if (destination != null && deviceDoesNotExist(destination)) {
+            return TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST;
         }
-        // state of preparingFreeTransfers will not change thanks to mutex
-        else if (!preparingFreeTransfers.get(destination).isEmpty()) {
-            // reserve slot on destination device that will be freed by a transfer
-            // which is now preparing (so current transfer will have to wait with
-            // calling perform() until the other has finished its prepare())
-            ComponentTransfer other = preparingFreeTransfers.get(destination).get(0);
-            transferIDependOn.put(transfer, other);
-            transferTakingMyPlace.put(other, transfer);
-            preparingFreeTransfers.get(destination).remove(0);
-            freeSpaceOnSource(transfer);
-            transferSleep.get(transfer).release();
+        else {
+            awaited = destination == null ? List.of() : List.of(destination);
+        }
+        // rejected rather than left waiting, so quotas never block anyone
+        // outside the waiting graph
+        if (tenants.queueFull(transfer, awaited))
+            return TransferResult.TENANT_QUOTA_EXCEEDED;
+        return null;
+    }
+
+    // must be called with mutexGraph held
+    private void demandLocked(ComponentTransfer transfer) {
+        DeviceId source = transfer.getSourceDeviceId();
+        boolean admitted;
+        if (DevicePools.isPoolTransfer(transfer)) {
+            admitted = admitToPool((PooledComponentTransfer) transfer,
+                    poolCandidates(transfer));
         }
         else {
-            ComponentTransfer dfsResult = dfs(source, transfer, new HashSet<>());
+            admitted = admit(transfer);
+        }
+        if (!admitted) {
+            ComponentTransfer dfsResult = inlineCycleDetection ? dfs(source, transfer) : null;
             if (dfsResult == null) {
                 // no cycle found, we have to wait before being allowed to prepare
-                awaitingTransfers.get(destination).add(transfer);
+                List<DeviceId> devices = awaitedDevices(transfer);
+                for (DeviceId device : devices)
+                    addAwaiting(device, transfer);
+                transferEvent(TransferEvent.Type.QUEUED, transfer);
+                // a slot could have been freed without the lock since it was
+                // checked; it was done before the awaiting count got increased,
+                // so it is seen here (otherwise the one freeing will see us)
+                for (DeviceId device : devices)
+                    admitAwaiting(device);
+                // pool transfers wait for any of many devices, so nothing
+                // is evicted for them
+                if (devices.size() == 1)
+                    evictions.request(devices.get(0));
             }
             else {
                 transferIDependOn.put(dfsResult, transfer);
                 transferTakingMyPlace.put(transfer, dfsResult);
-                transferSleep.get(transfer).release();
+                allowPreparation(transfer, TransferEvent.AdmissionPath.CYCLE);
             }
         }
-        mutexGraph.release();
     }
 
-    private void freeSpaceOnSource(ComponentTransfer transfer) {
-        DeviceId source = transfer.getSourceDeviceId();
-        if (source != null) {
-            if (awaitingTransfers.get(source).isEmpty()) {
-                // add to list of transfers that nobody depends on
-                preparingFreeTransfers.get(source).add(transfer);
+    // must be called with mutexGraph held; returns false (without changing
+    // anything) if there is no place for the transfer on its destination
+    private boolean admit(ComponentTransfer transfer) {
+        DeviceId destination = transfer.getDestinationDeviceId();
+        if (destination == null) {
+            freeSpaceOnSource(transfer);
+            allowPreparation(transfer, TransferEvent.AdmissionPath.FREE_SLOT);
+            return true;
+        }
+        if (!tenants.tryReserve(transfer, destination))
+            return false;
+        // free slots can also be reserved without the mutex by the fast path
+        if (tryReserveSlot(deviceFreeSlots.get(destination))) {
+            // free slot on destination device is reserved
+            freeSpaceOnSource(transfer);
+            allowPreparation(transfer, TransferEvent.AdmissionPath.FREE_SLOT);
+        }
+        // state of preparingFreeTransfers will not change thanks to mutex
+        else if (vacatedSlotIndex(destination) >= 0) {
+            takeVacatedSlot(transfer, destination);
+        }
+        else {
+            tenants.release(transfer, destination);
+            return false;
+        }
+        return true;
+    }
+
+    // must be called with mutexGraph held and a transfer preparing to leave
+    // the destination
+    private void takeVacatedSlot(ComponentTransfer transfer, DeviceId destination) {
+        // reserve slot on destination device that will be freed by a transfer
+        // which is now preparing (so current transfer will have to wait with
+        // calling perform() until the other has finished its prepare())
+        int index = vacatedSlotIndex(destination);
+        ComponentTransfer other = preparingFreeTransfers.get(destination).remove(index);
+        transferIDependOn.put(transfer, other);
+        transferTakingMyPlace.put(other, transfer);
+        freeSpaceOnSource(transfer);
+        allowPreparation(transfer, TransferEvent.AdmissionPath.VACATED_SLOT);
+    }
+
+    // must be called with mutexGraph held; position of the first transfer
+    // preparing to leave the device which is not stalled, or -1
+    private int vacatedSlotIndex(DeviceId device) {
+        List<ComponentTransfer> leaving = preparingFreeTransfers.get(device);
+        if (leaving.isEmpty())
+            return -1;
+        Set<ComponentTransfer> stalled = stalledTransfers;
+        if (stalled.isEmpty())
+            return 0;
+        int index = 0;
+        for (ComponentTransfer transfer : leaving) {
+            if (!stalled.contains(transfer))
+                return index;
+            index++;
+        }
+        return -1;
+    }
+
+    // must be called with mutexGraph held; binds the transfer to the pool
+    // member with the most free slots or one that is being left, otherwise
+    // the transfer is going to wait for any of the candidates
+    private boolean admitToPool(PooledComponentTransfer transfer,
+                                List<DeviceId> candidates) {
+        while (true) {
+            DeviceId chosen = null;
+            int chosenFree = 0;
+            for (DeviceId device : candidates) {
+                int free = deviceFreeSlots.get(device).get();
+                if (free > chosenFree && tenants.mayReserve(transfer, device)) {
+                    chosen = device;
+                    chosenFree = free;
+                }
+            }
+            if (chosen == null)
+                break;
+            // the slot (or the quota) could have been taken by the fast path
+            // meanwhile
+            if (!tenants.tryReserve(transfer, chosen))
+                continue;
+            if (tryReserveSlot(deviceFreeSlots.get(chosen))) {
+                transfer.bindDestination(chosen);
+                freeSpaceOnSource(transfer);
+                allowPreparation(transfer, TransferEvent.AdmissionPath.FREE_SLOT);
+                return true;
+            }
+            tenants.release(transfer, chosen);
+        }
+        for (DeviceId device : candidates) {
+            if (vacatedSlotIndex(device) >= 0 && tenants.mayReserve(transfer, device)) {
+                transfer.bindDestination(device);
+                return admit(transfer);
+            }
+        }
+        devicePools.awaitAny(transfer, candidates);
+        return false;
+    }
+
+    private List<DeviceId> poolCandidates(ComponentTransfer transfer) {
+        return devicePools.candidates((PooledComponentTransfer) transfer,
+                device -> !deviceDoesNotExist(device) && !drainingDevices.contains(device));
+    }
+
+    // devices on whose awaitingTransfers lists the transfer is (or would be)
+    private List<DeviceId> awaitedDevices(ComponentTransfer transfer) {
+        return devicePools.awaitedDevices(transfer);
+    }
+
+    // must be called with mutexGraph held; the transfer is going to take
+    // a slot on the given device, so it no longer waits for any other one
+    private void stopAwaiting(ComponentTransfer transfer, DeviceId device) {
+        for (DeviceId awaited : awaitedDevices(transfer))
+            removeAwaiting(awaited, transfer);
+        if (devicePools.stopAwaitingAny(transfer))
+            ((PooledComponentTransfer) transfer).bindDestination(device);
+    }
+
+    // must be called with mutexGraph held
+    void admitAwaiting(DeviceId device) {
+        AtomicInteger free = deviceFreeSlots.get(device);
+        while (free.get() > 0 || vacatedSlotIndex(device) >= 0) {
+            if (slotlessTransfers.containsKey(device)) {
+                if (!regrantSlot(device))
+                    return;
+                continue;
+            }
+            ComponentTransfer transfer = pickAwaiting(device);
+            if (transfer == null)
+                return;
+            if (tryReserveSlot(free)) {
+                stopAwaiting(transfer, device);
+                freeSpaceOnSource(transfer);
+                allowPreparation(transfer, TransferEvent.AdmissionPath.FREE_SLOT);
+            }
+            else if (vacatedSlotIndex(device) >= 0) {
+                stopAwaiting(transfer, device);
+                takeVacatedSlot(transfer, device);
             }
             else {
-                ComponentTransfer waiting = awaitingTransfers.get(source).get(0);
-                awaitingTransfers.get(source).remove(0);
-                transferIDependOn.put(waiting, transfer);
-                transferTakingMyPlace.put(transfer, waiting);
-                freeSpaceOnSource(waiting);
-                transferSleep.get(waiting).release();
+                tenants.release(transfer, device);
+                return;
             }
         }
     }
 
-    private void preparationFinished(ComponentTransfer transfer) {
-        DeviceId source = transfer.getSourceDeviceId();
+    // must be called with mutexGraph held; the first transfer waiting for
+    // the device, or with tenants, the one picked by their queues
+    private ComponentTransfer pickAwaiting(DeviceId device) {
+        List<ComponentTransfer> awaiting = awaitingTransfers.get(device);
+        if (awaiting.isEmpty())
+            return null;
+        if (tenants.isEmpty())
+            return awaiting.get(0);
+        return tenants.pick(device);
+    }
+
+    // must be called with mutexGraph held
+    private void addAwaiting(DeviceId device, ComponentTransfer transfer) {
+        awaitingChanged(device, transfer, 1);
+        awaitingTransfers.get(device).add(transfer);
+        tenants.queued(device, transfer);
+    }
+
+    // must be called with mutexGraph held
+    private void removeAwaiting(DeviceId device, ComponentTransfer transfer) {
+        if (awaitingTransfers.get(device).remove(transfer)) {
+            awaitingChanged(device, transfer, -1);
+            tenants.dequeued(device, transfer);
+        }
+    }
+
+    // must be called with mutexGraph held
+    private boolean isAwaiting(ComponentTransfer transfer) {
+        if (devicePools.isAwaitingAny(transfer))
+            return true;
         DeviceId destination = transfer.getDestinationDeviceId();
-        ComponentId component = transfer.getComponentId();
-        if (source != null) {
-            try {
-                mutexGraph.acquire();
-            } catch (InterruptedException e) {
-                throw new RuntimeException("panic: unexpected thread interruption", e);
+        return destination != null && awaitingTransfers.containsKey(destination)
+                && awaitingTransfers.get(destination).contains(transfer);
+    }
+
+    // must be called with mutexGraph held; slotless transfers are counted
+    // as awaiting, so that slots freed without the lock are handed to them
+    private void addSlotless(DeviceId device, ComponentTransfer transfer) {
+        slotlessTransfers.computeIfAbsent(device, d -> new LinkedList<>()).add(transfer);
+        deviceAwaitingCount.get(device).incrementAndGet();
+    }
+
+    // must be called with mutexGraph held
+    private boolean removeSlotless(ComponentTransfer transfer, DeviceId device) {
+        Deque<ComponentTransfer> slotless = slotlessTransfers.get(device);
+        if (slotless == null || !slotless.remove(transfer))
+            return false;
+        if (slotless.isEmpty())
+            slotlessTransfers.remove(device);
+        deviceAwaitingCount.get(device).decrementAndGet();
+        return true;
+    }
+
+    // must be called with mutexGraph held; gives a free or vacated slot of the
+    // device to the first slotless transfer, which is allowed to perform at
+    // once or once the vacating transfer has prepared
+    private boolean regrantSlot(DeviceId device) {
+        ComponentTransfer transfer = slotlessTransfers.get(device).peek();
+        if (tryReserveSlot(deviceFreeSlots.get(device))) {
+            transferSleep.get(transfer).release();
+        }
+        else if (vacatedSlotIndex(device) >= 0) {
+            ComponentTransfer other =
+                    preparingFreeTransfers.get(device).remove(vacatedSlotIndex(device));
+            transferTakingMyPlace.put(other, transfer);
+        }
+        else {
+            return false;
+        }
+        removeSlotless(transfer, device);
+        return true;
+    }
+
+    private void awaitingChanged(DeviceId device, ComponentTransfer transfer, int delta) {
+        deviceAwaitingCount.get(device).addAndGet(delta);
+        tenants.queuedChanged(device, transfer, delta);
+    }
+
+    // the transfer has performed; transfers of its tenant could be waiting
+    // for the quota rather than for a slot, so they are admitted if they can
+    private void releaseQuota(ComponentTransfer transfer) {
+        Tenant tenant = tenants.of(transfer);
+        DeviceId destination = transfer.getDestinationDeviceId();
+        if (tenant == null || destination == null)
+            return;
+        tenant.release(destination);
+        if (tenant.queuedOn(destination) > 0) {
+            acquireGraph();
+            if (!deviceDoesNotExist(destination))
+                admitAwaiting(destination);
+            releaseGraph();
+        }
+    }
+
+    static boolean tryReserveSlot(AtomicInteger freeSlots) {
+        while (true) {
+            int free = freeSlots.get();
+            if (free <= 0)
+                return false;
+            if (freeSlots.compareAndSet(free, free - 1))
+                return true;
+        }
+    }
+
+    /**
+     * With fast admission enabled, a transfer which can take a free slot on its
+     * destination and leaves a source nobody waits for is admitted without
+     * the graph lock. It is disabled by default.
+     */
+    public void setFastAdmission(boolean enabled) {
+        fastAdmission.setEnabled(enabled);
+    }
+
+    /**
+     * Looks at the whole waiting graph at once and releases every transfer
+     * that can be admitted thanks to free capacity or closes a cycle.
+     * Returns the number of transfers that stopped waiting.
+     */
+    public int sweep() {
+        acquireGraph();
+        int waitingBefore = countAwaiting();
+        boolean progress = true;
+        while (progress) {
+            int waiting = countAwaiting();
+            for (DeviceId device : awaitingTransfers.keySet())
+                admitAwaiting(device);
+            for (DeviceId device : awaitingTransfers.keySet()) {
+                List<ComponentTransfer> awaiting = awaitingTransfers.get(device);
+                for (ComponentTransfer transfer : new ArrayList<>(awaiting)) {
+                    // skip transfers released by an earlier cycle and pool
+                    // transfers which are handled at their first device
+                    if (!awaiting.contains(transfer)
+                            || !awaitedDevices(transfer).get(0).equals(device))
+                        continue;
+                    List<DeviceId> devices = awaitedDevices(transfer);
+                    int[] positions = new int[devices.size()];
+                    for (int i = 0; i < positions.length; i++) {
+                        List<ComponentTransfer> list = awaitingTransfers.get(devices.get(i));
+                        positions[i] = list.indexOf(transfer);
+                        list.remove(positions[i]);
+                        awaitingChanged(devices.get(i), transfer, -1);
+                    }
+                    ComponentTransfer dfsResult =
+                            dfs(transfer.getSourceDeviceId(), transfer);
+                    if (dfsResult == null) {
+                        for (int i = 0; i < positions.length; i++) {
+                            awaitingTransfers.get(devices.get(i)).add(positions[i], transfer);
+                            awaitingChanged(devices.get(i), transfer, 1);
+                        }
+                    }
+                    else {
+                        // it has only been taken out of the lists for the search
+                        for (DeviceId awaited : devices)
+                            tenants.dequeued(awaited, transfer);
+                        transferIDependOn.put(dfsResult, transfer);
+                        transferTakingMyPlace.put(transfer, dfsResult);
+                        allowPreparation(transfer, TransferEvent.AdmissionPath.CYCLE);
+                    }
+                }
+            }
+            progress = countAwaiting() < waiting;
+        }
+        int unblocked = waitingBefore - countAwaiting();
+        releaseGraph();
+        return unblocked;
+    }
+
+    /**
+     * By default every transfer starting to wait looks for a cycle it closes,
+     * which takes time linear in the size of the waiting graph under the graph
+     * lock. With it disabled, cycles are only closed by {@link #sweep()}, so
+     * a deadlock sweeper has to be running.
+     */
+    public void setInlineCycleDetection(boolean enabled) {
+        inlineCycleDetection = enabled;
+    }
+
+    /**
+     * Starts a daemon thread calling {@link #sweep()} every period.
+     */
+    public DeadlockSweeper startDeadlockSweeper(long period, TimeUnit unit,
+                                                DeadlockSweeper.Listener listener) {
+        DeadlockSweeper sweeper = new DeadlockSweeper(this::sweep, unit.toNanos(period), listener);
+        sweeper.start();
+        return sweeper;
+    }
+
+    /**
+     * Starts a daemon thread checking every period for transfers preparing or
+     * performing for longer than p99Multiplier times the p99 of that phase on
+     * their device, and at least minThreshold. Only one can run at a time.
+     */
+    public StallDetector startStallDetector(long period, TimeUnit unit, double p99Multiplier,
+                                            long minThreshold, StallDetector.Listener listener) {
+        StallDetector detector = new StallDetector(this, unit.toNanos(period), p99Multiplier,
+                unit.toNanos(minThreshold), listener);
+        synchronized (this) {
+            if (stallDetector != null)
+                throw new IllegalStateException("Stall detector is already running");
+            stallDetector = detector;
+        }
+        detector.start();
+        return detector;
+    }
+
+    synchronized void stallDetectorStopped(StallDetector detector) {
+        if (stallDetector == detector) {
+            stallDetector = null;
+            stalledTransfers = Set.of();
+        }
+    }
+
+    // slots vacated by these transfers are handed out only when no other is
+    void setStalledTransfers(Set<ComponentTransfer> transfers) {
+        Set<ComponentTransfer> previous = stalledTransfers;
+        stalledTransfers = transfers;
+        if (previous.isEmpty() || transfers.containsAll(previous))
+            return;
+        // slots of transfers no longer stalled may be taken by waiting ones
+        acquireGraph();
+        for (ComponentTransfer transfer : previous) {
+            DeviceId source = transfer.getSourceDeviceId();
+            if (!transfers.contains(transfer) && source != null
+                    && preparingFreeTransfers.containsKey(source))
+                admitAwaiting(source);
+        }
+        releaseGraph();
+    }
+
+    public void addDevice(DeviceId device, int capacity) {
+        if (device == null)
+            throw new IllegalArgumentException("Device with null ID declared");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " declared to have capacity " + capacity + " <= 0");
+        acquireGraph();
+        if (deviceFreeSlots.containsKey(device)) {
+            releaseGraph();
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " already exists");
+        }
+        awaitingTransfers.put(device, new LinkedList<>());
+        preparingFreeTransfers.put(device, new LinkedList<>());
+        deviceAwaitingCount.put(device, new AtomicInteger());
+        deviceTotalSlots.put(device, capacity);
+        // added last, so that transfers are accepted only when all is ready
+        deviceFreeSlots.put(device, new AtomicInteger(capacity));
+        releaseGraph();
+    }
+
+    /**
+     * Changes the capacity of a device. It cannot get smaller than the number
+     * of slots that are currently occupied or reserved on the device.
+     */
+    public void resizeDevice(DeviceId device, int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " cannot have capacity " + capacity + " <= 0");
+        acquireGraph();
+        if (deviceDoesNotExist(device)) {
+            releaseGraph();
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " does not exist");
+        }
+        int total = deviceTotalSlots.get(device);
+        AtomicInteger freeSlots = deviceFreeSlots.get(device);
+        while (true) {
+            // free slots can be reserved by the fast path meanwhile
+            int free = freeSlots.get();
+            int occupied = total - free;
+            if (capacity < occupied) {
+                releaseGraph();
+                throw new IllegalArgumentException("Device with ID " + device
+                        + " cannot be shrunk to " + capacity + " as " + occupied
+                        + " of its slots are occupied or reserved");
+            }
+            if (freeSlots.compareAndSet(free, free + capacity - total))
+                break;
+        }
+        deviceTotalSlots.put(device, capacity);
+        if (capacity > total)
+            admitAwaiting(device);
+        releaseGraph();
+    }
+
+    /**
+     * Stops accepting transfers to the device, moves all components placed on
+     * it to the devices with the most free slots (using transfers created by
+     * the factory and executed by the calling thread) and finally removes it.
+     */
+    public void drainAndRemoveDevice(DeviceId device, TransferFactory factory) {
+        if (deviceDoesNotExist(device))
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " does not exist");
+        if (!drainingDevices.add(device))
+            throw new IllegalStateException("Device with ID " + device
+                    + " is already being drained");
+        while (!removeIfEmpty(device)) {
+            boolean retryNow = false;
+            for (ComponentId component : componentsPlacedOn(device)) {
+                DeviceId destination = deviceWithMostFreeSlots();
+                if (destination == null) {
+                    drainingDevices.remove(device);
+                    drainProgress.remove(device);
+                    throw new IllegalStateException("There is no device to "
+                            + "move the components of " + device + " to");
+                }
+                try {
+                    execute(factory.newTransfer(component, device, destination));
+                    retryNow = true;
+                } catch (DeviceDoesNotExist e) {
+                    // the chosen destination is being drained as well, so
+                    // another one is chosen right away
+                    retryNow = true;
+                } catch (TransferException e) {
+                    // component is being moved by someone else; try again
+                    // once that transfer ends
+                }
+            }
+            // nothing changes on the device until one of the transfers
+            // from or to it ends
+            if (!retryNow) {
+                try {
+                    drainProgress.get(device).await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("panic: unexpected thread interruption", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Defines (or redefines) a named group of devices that pool transfers
+     * (see {@link PooledComponentTransfer}) can target. A pool transfer is
+     * bound to the member with the most free slots or one that is being left.
+     * If there is none, it waits for all members at once and takes the slot
+     * that gets freed first.
+     */
+    public void defineDevicePool(String name, Collection<DeviceId> members) {
+        if (name == null)
+            throw new IllegalArgumentException("Device pool with null name declared");
+        if (members.isEmpty())
+            throw new IllegalArgumentException("Device pool " + name + " is empty");
+        for (DeviceId device : members) {
+            if (device == null)
+                throw new IllegalArgumentException("Device pool " + name
+                        + " contains a device with null ID");
+        }
+        devicePools.define(name, members);
+    }
+
+    public void removeDevicePool(String name) {
+        devicePools.remove(name);
+    }
+
+    /**
+     * Limits how many prepare() and perform() calls can use the device at
+     * once: prepare() holds a read slot of the source, perform() a read slot
+     * of the source and a write slot of the destination. Slots are taken only
+     * after the transfer has been allowed to go on (reads before writes) and
+     * are never held while waiting for other transfers, so limits cannot
+     * cause a deadlock. Calls already running keep the slots of the previous
+     * limit, while those waiting for its slots try the new one instead (or go
+     * on, once the limit is removed).
+     */
+    public void setDeviceConcurrencyLimit(DeviceId device, int readers, int writers) {
+        if (readers <= 0 || writers <= 0)
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " cannot have " + readers + " readers and " + writers
+                    + " writers, both have to be positive");
+        if (deviceDoesNotExist(device))
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " does not exist");
+        deviceLimits.setConcurrencyLimit(device, readers, writers);
+    }
+
+    public void removeDeviceConcurrencyLimit(DeviceId device) {
+        deviceLimits.removeConcurrencyLimit(device);
+    }
+
+    /**
+     * Limits the rate at which transfers declaring their size (see
+     * {@link SizedComponentTransfer}) move bytes from and to the device.
+     * Before perform() a transfer takes its size from the buckets of both its
+     * devices and waits until both can afford it. A device that has been idle
+     * lets up to burstBytes through at once. Replacing or removing the limit
+     * ends the waits for it.
+     */
+    public void setDeviceBandwidthLimit(DeviceId device, long bytesPerSecond,
+                                        long burstBytes) {
+        if (bytesPerSecond <= 0 || burstBytes < 0)
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " cannot have bandwidth " + bytesPerSecond
+                    + " B/s with burst of " + burstBytes + " B");
+        if (deviceDoesNotExist(device))
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " does not exist");
+        deviceLimits.setBandwidthLimit(device, bytesPerSecond, burstBytes);
+    }
+
+    public void removeDeviceBandwidthLimit(DeviceId device) {
+        deviceLimits.removeBandwidthLimit(device);
+    }
+
+    /**
+     * Hands transfers to the device over to the performer in batches instead
+     * of calling their perform(). A batch is collected for the given window
+     * from the moment its first transfer is allowed to perform, or until it
+     * has maxBatchSize transfers; transfers allowed to perform while a batch
+     * is being performed make up the next one. Each transfer joins a batch
+     * only once it is allowed to perform, so batching never lets a transfer
+     * perform before the one whose slot it takes has prepared.
+     */
+    public void setBatchablePerformer(DeviceId device, BatchablePerformer performer,
+                                      long window, TimeUnit unit, int maxBatchSize) {
+        if (performer == null)
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " cannot have a null performer");
+        if (window < 0 || maxBatchSize <= 0)
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " cannot have batches of " + maxBatchSize + " transfers collected for "
+                    + window + " " + unit);
+        if (deviceDoesNotExist(device))
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " does not exist");
+        deviceLimits.setBatchablePerformer(device, performer, unit.toNanos(window), maxBatchSize);
+    }
+
+    // transfers already collected into batches are still performed by them
+    public void removeBatchablePerformer(DeviceId device) {
+        deviceLimits.removeBatchablePerformer(device);
+    }
+
+    // mean number of transfers per batch performed on the device
+    public double getAverageBatchSize(DeviceId device) {
+        return deviceLimits.averageBatchSize(device);
+    }
+
+    /**
+     * Limits transfers of the tenant (see {@link TenantComponentTransfer}),
+     * separately on each device, to maxReservedSlots slots reserved by its
+     * admitted transfers which have not performed yet and maxQueuedTransfers
+     * transfers waiting for a slot; transfers beyond the latter are rejected
+     * with TENANT_QUOTA_EXCEEDED. A transfer closing a cycle is admitted
+     * regardless of the quota. Slots freed on a device are shared between
+     * waiting transfers of different tenants in proportion to their weights;
+     * transfers without a tenant share as a tenant of weight 1. Tenants which
+     * have not been set up have weight 1 and no quotas, and are forgotten
+     * whenever they have no transfers in flight.
+     */
+    public void setTenantQuota(String tenant, int weight, int maxReservedSlots,
+                               int maxQueuedTransfers) {
+        if (tenant == null)
+            throw new IllegalArgumentException("Tenant cannot be null");
+        if (weight <= 0 || maxReservedSlots <= 0 || maxQueuedTransfers < 0)
+            throw new IllegalArgumentException("Tenant " + tenant + " cannot have weight "
+                    + weight + ", " + maxReservedSlots + " reserved slots and "
+                    + maxQueuedTransfers + " queued transfers per device");
+        acquireGraph();
+        tenants.setQuota(tenant, weight, maxReservedSlots, maxQueuedTransfers);
+        // a raised quota could let waiting transfers take free slots
+        for (DeviceId device : awaitingTransfers.keySet())
+            admitAwaiting(device);
+        releaseGraph();
+    }
+
+    // back to weight 1 and no quotas; the tenant and its counters are
+    // forgotten once it has no transfers in flight
+    public void removeTenantQuota(String tenant) {
+        if (tenant == null)
+            throw new IllegalArgumentException("Tenant cannot be null");
+        acquireGraph();
+        tenants.removeQuota(tenant);
+        // a raised quota could let waiting transfers take free slots
+        for (DeviceId device : awaitingTransfers.keySet())
+            admitAwaiting(device);
+        releaseGraph();
+    }
+
+    // every tenant which has been set up or has transfers in flight
+    public Map<String, TenantMetrics> getTenantMetrics() {
+        return tenants.metrics();
+    }
+
+    /**
+     * Accesses of components recorded with {@link #recordAccess} are counted
+     * by the tracker (see {@link TieringController}); null stops counting.
+     */
+    public void setAccessTracker(AccessTracker tracker) {
+        accesses.setTracker(tracker);
+    }
+
+    public AccessTracker getAccessTracker() {
+        return accesses.tracker();
+    }
+
+    // called by the clients whenever they read or write the component
+    public void recordAccess(ComponentId component) {
+        accesses.record(component);
+    }
+
+    /**
+     * Instead of letting transfers wait for a slot on the full device
+     * indefinitely, moves a component chosen by the policy from the device
+     * to the spill device for every transfer starting to wait there, so that
+     * the transfer gets the slot as soon as the evicted component has been
+     * prepared. Evictions are executed by helper threads with transfers
+     * created by the factory; if the spill device is full, an eviction waits
+     * for a slot there (or is evicted further, if the spill device has
+     * eviction set up too). Components being operated on are not evicted.
+     * Choosing a victim takes time linear in the number of components on
+     * the device.
+     */
+    public void setEviction(DeviceId device, DeviceId spillDevice, EvictionPolicy policy,
+                            TransferFactory factory) {
+        if (policy == null || factory == null)
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " cannot have eviction without a policy and a factory");
+        if (deviceDoesNotExist(device))
+            throw new IllegalArgumentException("Device with ID " + device
+                    + " does not exist");
+        if (deviceDoesNotExist(spillDevice) || spillDevice.equals(device))
+            throw new IllegalArgumentException("Device with ID " + spillDevice
+                    + " cannot be the spill device of " + device);
+        evictions.set(device, spillDevice, policy, factory, componentsPlacedOn(device));
+    }
+
+    // evictions already started are finished
+    public void removeEviction(DeviceId device) {
+        evictions.remove(device);
+    }
+
+    public long getEvictionCount(DeviceId device) {
+        return evictions.count(device);
+    }
+
+    /**
+     * Listeners are called by a single thread of the system. If they fall
+     * behind, events are dropped (and counted) instead of slowing transfers.
+     */
+    @Override
+    public void addTransferListener(TransferListener listener) {
+        events.addListener(listener);
+    }
+
+    @Override
+    public void removeTransferListener(TransferListener listener) {
+        events.removeListener(listener);
+    }
+
+    public long getDroppedTransferEventCount() {
+        return events.getDroppedCount();
+    }
+
+    /**
+     * Captures the devices and unfinished transfers with their phases and
+     * dependencies. Only copying the waiting lists and dependencies is done
+     * under the graph lock, so it is cheap enough to be polled periodically
+     * (the phases are collected from all components ever operated on).
+     */
+    public WaitForGraphSnapshot snapshotWaitForGraph() {
+        Map<DeviceId, List<ComponentTransfer>> awaiting = new HashMap<>();
+        Map<DeviceId, List<ComponentTransfer>> leaving = new HashMap<>();
+        Map<DeviceId, int[]> slots = new HashMap<>();
+        Map<ComponentTransfer, ComponentTransfer> dependencies;
+        Map<ComponentTransfer, List<DeviceId>> awaited = new HashMap<>();
+        acquireGraph();
+        awaitingTransfers.forEach((device, list) -> {
+            awaiting.put(device, new ArrayList<>(list));
+            for (ComponentTransfer transfer : list)
+                awaited.computeIfAbsent(transfer, t -> new ArrayList<>()).add(device);
+        });
+        preparingFreeTransfers.forEach((device, list) -> leaving.put(device, new ArrayList<>(list)));
+        deviceTotalSlots.forEach((device, total) -> slots.put(device,
+                new int[] {total, deviceFreeSlots.get(device).get()}));
+        // an entry of transferIDependOn is dropped when the dependent prepares,
+        // even if it still has to wait, and is kept after the transfer
+        // depended on has prepared; transferTakingMyPlace is exact
+        dependencies = new HashMap<>();
+        transferTakingMyPlace.forEach((vacating, taking) -> dependencies.put(taking, vacating));
+        releaseGraph();
+        long now = System.nanoTime();
+
+        Map<ComponentTransfer, TransferProgress> tracked = new HashMap<>();
+        for (ComponentState state : liveComponents) {
+            if (!copyProgress(state, tracked)) {
+                liveComponents.remove(state);
+                // a transfer may have started before the removal
+                if (copyProgress(state, tracked))
+                    liveComponents.add(state);
+            }
+        }
+
+        // transfers finished meanwhile are left out, but those that are
+        // a part of the copied graph always show up
+        Map<ComponentTransfer, Integer> ids = new LinkedHashMap<>();
+        tracked.keySet().forEach(transfer -> ids.putIfAbsent(transfer, ids.size()));
+        awaited.keySet().forEach(transfer -> ids.putIfAbsent(transfer, ids.size()));
+        leaving.values().forEach(list ->
+                list.forEach(transfer -> ids.putIfAbsent(transfer, ids.size())));
+        dependencies.forEach((transfer, other) -> {
+            ids.putIfAbsent(transfer, ids.size());
+            ids.putIfAbsent(other, ids.size());
+        });
+        List<WaitForGraphSnapshot.TransferInfo> transfers = new ArrayList<>(ids.size());
+        ids.forEach((transfer, id) -> {
+            TransferProgress progress = tracked.get(transfer);
+            long submittedAt = progress == null ? now : progress.submittedAt;
+            long phaseSince = progress == null ? now : progress.phaseSince;
+            WaitForGraphSnapshot.Phase phase = awaited.containsKey(transfer)
+                    ? WaitForGraphSnapshot.Phase.QUEUED
+                    : progress == null ? WaitForGraphSnapshot.Phase.PREPARED : progress.phase;
+            ComponentTransfer other = dependencies.get(transfer);
+            transfers.add(new WaitForGraphSnapshot.TransferInfo(id,
+                    transfer, transfer.getSourceDeviceId(),
+                    transfer.getDestinationDeviceId(), phase, now - submittedAt,
+                    now - phaseSince, awaited.getOrDefault(transfer, List.of()),
+                    other == null ? -1 : ids.get(other)));
+        });
+        List<WaitForGraphSnapshot.DeviceInfo> devices = new ArrayList<>(slots.size());
+        slots.forEach((device, totalAndFree) -> {
+            List<Integer> awaitingIds = new ArrayList<>();
+            for (ComponentTransfer transfer : awaiting.get(device))
+                awaitingIds.add(ids.get(transfer));
+            List<Integer> leavingIds = new ArrayList<>();
+            for (ComponentTransfer transfer : leaving.get(device))
+                leavingIds.add(ids.get(transfer));
+            devices.add(new WaitForGraphSnapshot.DeviceInfo(device, totalAndFree[0],
+                    totalAndFree[1], awaitingIds, leavingIds));
+        });
+        return new WaitForGraphSnapshot(transfers, devices);
+    }
+
+    public Map<ComponentId, DeviceId> getComponentPlacement() {
+        return new HashMap<>(componentPlacement);
+    }
+
+    public Map<DeviceId, Integer> getDeviceCapacities() {
+        return new HashMap<>(deviceTotalSlots);
+    }
+
+    // called by the thread draining the device; unless the device is empty,
+    // a fresh latch of drainProgress is set before the drain moves anything
+    private boolean removeIfEmpty(DeviceId device) {
+        acquireGraph();
+        // pool transfers may as well wait for the other devices of the pool
+        for (ComponentTransfer waiting : new ArrayList<>(awaitingTransfers.get(device))) {
+            if (devicePools.dropAwaitedDevice(waiting, device))
+                removeAwaiting(device, waiting);
+        }
+        // a component can only be moved onto the device by a transfer holding
+        // a slot, so free == total means that no component is about to arrive
+        // the counter of free slots is invalidated last and atomically, so that
+        // the fast path cannot reserve a slot on the device being removed
+        boolean empty = awaitingTransfers.get(device).isEmpty()
+                && !slotlessTransfers.containsKey(device)
+                && preparingFreeTransfers.get(device).isEmpty()
+                && componentsPlacedOn(device).isEmpty()
+                && deviceFreeSlots.get(device).compareAndSet(
+                        deviceTotalSlots.get(device), Integer.MIN_VALUE);
+        if (empty) {
+            deviceFreeSlots.remove(device);
+            deviceAwaitingCount.remove(device);
+            deviceTotalSlots.remove(device);
+            awaitingTransfers.remove(device);
+            preparingFreeTransfers.remove(device);
+            drainingDevices.remove(device);
+            drainProgress.remove(device);
+            deviceLimits.deviceRemoved(device);
+            evictions.deviceRemoved(device);
+        }
+        else {
+            drainProgress.put(device, new CountDownLatch(1));
+        }
+        releaseGraph();
+        return empty;
+    }
+
+    List<ComponentId> componentsPlacedOn(DeviceId device) {
+        List<ComponentId> components = new ArrayList<>();
+        componentPlacement.forEach((component, placement) -> {
+            if (placement.equals(device))
+                components.add(component);
+        });
+        return components;
+    }
+
+    private DeviceId deviceWithMostFreeSlots() {
+        DeviceId best = null;
+        int bestFree = Integer.MIN_VALUE;
+        for (Map.Entry<DeviceId, AtomicInteger> entry : deviceFreeSlots.entrySet()) {
+            int free = entry.getValue().get();
+            if (!drainingDevices.contains(entry.getKey()) && free > bestFree) {
+                best = entry.getKey();
+                bestFree = free;
+            }
+        }
+        return best;
+    }
+
+    private int countAwaiting() {
+        int count = 0;
+        for (Map.Entry<DeviceId, List<ComponentTransfer>> entry
+                : awaitingTransfers.entrySet()) {
+            // a pool transfer waits on many lists, but is counted once
+            for (ComponentTransfer transfer : entry.getValue())
+                if (awaitedDevices(transfer).get(0).equals(entry.getKey()))
+                    count++;
+        }
+        return count;
+    }
+
+    private void transferEvent(TransferEvent.Type type, ComponentTransfer transfer) {
+        transferEvent(type, transfer, null);
+    }
+
+    private void transferEvent(TransferEvent.Type type, ComponentTransfer transfer,
+                               TransferEvent.AdmissionPath path) {
+        events.publish(type, transfer, path);
+        switch (type) {
+            case SUBMITTED:
+                // tracked only once accepted, so that rejections are cheap
+                break;
+            case QUEUED:
+                enterPhase(transfer, WaitForGraphSnapshot.Phase.QUEUED);
+                break;
+            case ADMITTED:
+                enterPhase(transfer, WaitForGraphSnapshot.Phase.PREPARING);
+                break;
+            case PREPARED:
+                phaseFinished(transfer, WaitForGraphSnapshot.Phase.PREPARING);
+                enterPhase(transfer, WaitForGraphSnapshot.Phase.PREPARED);
+                break;
+            default:
+                if (type == TransferEvent.Type.PERFORMED)
+                    phaseFinished(transfer, WaitForGraphSnapshot.Phase.PERFORMING);
+                TransferProgress progress = progressOf(transfer, transfer);
+                if (progress != null)
+                    progress.transfer = null;
+        }
+    }
+
+    // finds the progress record of the given transfer, or a free one if null
+    private TransferProgress progressOf(ComponentTransfer of, ComponentTransfer transfer) {
+        ComponentState state = componentStates.get(transfer.getComponentId());
+        if (state != null) {
+            for (TransferProgress progress : state.progress) {
+                if (progress.transfer == of)
+                    return progress;
+            }
+        }
+        return null;
+    }
+
+    private void trackProgress(ComponentTransfer transfer, long submittedAt) {
+        TransferProgress progress = progressOf(null, transfer);
+        if (progress != null) {
+            progress.submittedAt = submittedAt;
+            progress.phase = WaitForGraphSnapshot.Phase.SUBMITTED;
+            progress.phaseSince = submittedAt;
+            progress.transfer = transfer;
+            // does not allocate if the component is listed already
+            liveComponents.add(componentStates.get(transfer.getComponentId()));
+        }
+    }
+
+    // copies the progress of the unfinished transfers of the component,
+    // returns false if it has none
+    private static boolean copyProgress(ComponentState state,
+                                        Map<ComponentTransfer, TransferProgress> tracked) {
+        boolean live = false;
+        for (TransferProgress progress : state.progress) {
+            ComponentTransfer transfer = progress.transfer;
+            if (transfer == null)
+                continue;
+            live = true;
+            TransferProgress copy = new TransferProgress();
+            copy.submittedAt = progress.submittedAt;
+            copy.phase = progress.phase;
+            copy.phaseSince = progress.phaseSince;
+            if (progress.transfer == transfer)
+                tracked.put(transfer, copy);
+        }
+        return live;
+    }
+
+    // tells the stall detector, if any, how long the ending phase has taken
+    private void phaseFinished(ComponentTransfer transfer, WaitForGraphSnapshot.Phase phase) {
+        StallDetector detector = stallDetector;
+        if (detector == null)
+            return;
+        TransferProgress progress = progressOf(transfer, transfer);
+        if (progress != null && progress.phase == phase)
+            detector.phaseFinished(StallDetector.deviceOf(transfer, phase), phase,
+                    System.nanoTime() - progress.phaseSince);
+    }
+
+    private void enterPhase(ComponentTransfer transfer, WaitForGraphSnapshot.Phase phase) {
+        TransferProgress progress = progressOf(transfer, transfer);
+        if (progress != null) {
+            progress.phaseSince = System.nanoTime();
+            progress.phase = phase;
+        }
+    }
+
+    private void allowPreparation(ComponentTransfer transfer,
+                                  TransferEvent.AdmissionPath path) {
+        // a cycle only moves slots around, so holding it back for a quota
+        // could only deadlock it
+        if (path == TransferEvent.AdmissionPath.CYCLE) {
+            Tenant tenant = tenants.of(transfer);
+            if (tenant != null && transfer.getDestinationDeviceId() != null)
+                tenant.reserve(transfer.getDestinationDeviceId());
+        }
+        transferEvent(TransferEvent.Type.ADMITTED, transfer, path);
+        transferSleep.get(transfer).release();
+    }
+
+    // must be called with mutexGraph held; hands the source slot of the
+    // transfer over to the first waiting one, whose source slot is in turn
+    // handed over and so on, so it runs in time linear in the chain length
+    private void freeSpaceOnSource(ComponentTransfer transfer) {
+        ComponentTransfer leaving = transfer;
+        DeviceId source = leaving.getSourceDeviceId();
+        while (source != null) {
+            if (!slotlessTransfers.isEmpty() && slotlessTransfers.containsKey(source)) {
+                // transfers that have lost their slot come first
+                preparingFreeTransfers.get(source).add(leaving);
+                admitAwaiting(source);
+                return;
             }
-            if (preparingFreeTransfers.get(source).contains(transfer)) {
-                // free slot on the source device
-                deviceFreeSlots.get(source).incrementAndGet();
-                preparingFreeTransfers.get(source).remove(transfer);
+            ComponentTransfer waiting = pickAwaiting(source);
+            if (waiting == null) {
+                // add to list of transfers that nobody depends on
+                preparingFreeTransfers.get(source).add(leaving);
+                return;
+            }
+            stopAwaiting(waiting, source);
+            transferIDependOn.put(waiting, leaving);
+            transferTakingMyPlace.put(leaving, waiting);
+            allowPreparation(waiting, TransferEvent.AdmissionPath.VACATED_SLOT);
+            leaving = waiting;
+            source = leaving.getSourceDeviceId();
+        }
+    }
+
+    private void preparationFinished(ComponentTransfer transfer) {
+        if (transfer.getSourceDeviceId() != null) {
+            if (flatCombining) {
+                graphCombiner.apply(freeSourceOperation, transfer);
             }
             else {
-                // a transfer wants to take the place I've freed, so I allow it
-                ComponentTransfer other = transferTakingMyPlace.get(transfer);
-                transferTakingMyPlace.remove(transfer);
-                transferSleep.get(other).release();
+                acquireGraph();
+                freePreparedSource(transfer);
+                releaseGraph();
             }
-            mutexGraph.release();
         }
+        updateAfterPreparation(transfer);
+    }
+
+    // must be called with mutexGraph held
+    private void freePreparedSource(ComponentTransfer transfer) {
+        DeviceId source = transfer.getSourceDeviceId();
+        if (preparingFreeTransfers.get(source).contains(transfer)) {
+            // free slot on the source device
+            deviceFreeSlots.get(source).incrementAndGet();
+            preparingFreeTransfers.get(source).remove(transfer);
+            admitAwaiting(source);
+        }
+        else {
+            // a transfer wants to take the place I've freed, so I allow it
+            ComponentTransfer other = transferTakingMyPlace.get(transfer);
+            transferTakingMyPlace.remove(transfer);
+            transferSleep.get(other).release();
+        }
+    }
+
+    private void updateAfterPreparation(ComponentTransfer transfer) {
         if (!transferIDependOn.containsKey(transfer)) {
             // transfer can be performed
             transferSleep.get(transfer).release();
@@ -249,38 +1801,82 @@ public class StorageSystemInstance implements StorageSystem {
             // my transferSleep will be released by the transfer I depend on
             transferIDependOn.remove(transfer);
         }
+        updatePlacement(transfer);
+    }
 
+    private void updatePlacement(ComponentTransfer transfer) {
+        DeviceId destination = transfer.getDestinationDeviceId();
+        ComponentId component = transfer.getComponentId();
         if (destination == null)
             componentPlacement.remove(component);
         else
             componentPlacement.put(component, destination);
+        evictions.placementChanged(transfer);
+
+        chaining.prepared(transfer, componentStates.get(component));
     }
 
-    private ComponentTransfer dfs(DeviceId device, ComponentTransfer transfer,
-                                  Set<DeviceId> visited) {
-        if (device == null || visited.contains(device))
+    // must be called with mutexGraph held; looks for a cycle of waiting
+    // transfers leading from the given device back to one awaited by the
+    // transfer, visiting every device and waiting transfer at most once;
+    // returns the transfer that is going to take the slot of the given one
+    private ComponentTransfer dfs(DeviceId device, ComponentTransfer transfer) {
+        if (device == null)
             return null;
+        List<DeviceId> targets = awaitedDevices(transfer);
+        Set<DeviceId> visited = new HashSet<>();
+        // path.get(i) waits for a slot on devices.get(i) and leaves devices.get(i + 1)
+        List<DeviceId> devices = new ArrayList<>();
+        List<Iterator<ComponentTransfer>> candidates = new ArrayList<>();
+        List<ComponentTransfer> path = new ArrayList<>();
         visited.add(device);
-        for (ComponentTransfer t : awaitingTransfers.get(device)) {
+        devices.add(device);
+        candidates.add(awaitingTransfers.get(device).iterator());
+        while (!candidates.isEmpty()) {
+            Iterator<ComponentTransfer> iterator = candidates.get(candidates.size() - 1);
+            if (!iterator.hasNext()) {
+                candidates.remove(candidates.size() - 1);
+                devices.remove(devices.size() - 1);
+                if (!path.isEmpty())
+                    path.remove(path.size() - 1);
+                continue;
+            }
+            ComponentTransfer t = iterator.next();
             DeviceId source = t.getSourceDeviceId();
-            if (source != null) {
-                if (source.equals(transfer.getDestinationDeviceId())) {
-                    transferIDependOn.put(transfer, t);
-                    transferTakingMyPlace.put(t, transfer);
-                    transferSleep.get(t).release();
-                    awaitingTransfers.get(device).remove(t);
-                    return t;
-                }
-                ComponentTransfer ans = dfs(t.getSourceDeviceId(), transfer, visited);
-                if (ans != null) {
-                    awaitingTransfers.get(device).remove(t);
-                    transferIDependOn.put(ans, t);
-                    transferTakingMyPlace.put(t, ans);
-                    transferSleep.get(t).release();
-                    return t;
-                }
+            if (source == null)
+                continue;
+            if (targets.contains(source)) {
+                path.add(t);
+                closeCycle(transfer, path, devices);
+                return path.get(0);
+            }
+            if (visited.add(source)) {
+                path.add(t);
+                devices.add(source);
+                candidates.add(awaitingTransfers.get(source).iterator());
             }
         }
         return null;
     }
+
+    // the last transfer of the path is going to take the slot of the given
+    // transfer and each other one the slot of the transfer after it
+    private void closeCycle(ComponentTransfer transfer, List<ComponentTransfer> path,
+                            List<DeviceId> devices) {
+        int last = path.size() - 1;
+        ComponentTransfer t = path.get(last);
+        stopAwaiting(transfer, t.getSourceDeviceId());
+        transferIDependOn.put(transfer, t);
+        transferTakingMyPlace.put(t, transfer);
+        stopAwaiting(t, devices.get(last));
+        allowPreparation(t, TransferEvent.AdmissionPath.CYCLE);
+        for (int i = last - 1; i >= 0; i--) {
+            ComponentTransfer next = path.get(i + 1);
+            t = path.get(i);
+            stopAwaiting(t, devices.get(i));
+            transferIDependOn.put(next, t);
+            transferTakingMyPlace.put(t, next);
+            allowPreparation(t, TransferEvent.AdmissionPath.CYCLE);
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package cp2023.solution;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cp2023.base.DeviceId;
+
+// quotas, per-device counters and share of freed slots of one tenant
+final class Tenant {
+    static final int UNLIMITED = Integer.MAX_VALUE;
+    // pass added per freed slot is STRIDE / weight (stride scheduling)
+    private static final long STRIDE = 1L << 20;
+
+    private final String name;
+    private volatile int weight;
+    private volatile int maxReservedSlots;
+    private volatile int maxQueuedTransfers;
+    // slots reserved by admitted transfers which have not performed yet
+    private final ConcurrentMap<DeviceId, AtomicInteger> reserved;
+    private final ConcurrentMap<DeviceId, AtomicInteger> queued;
+    private final AtomicLong admitted;
+    private final AtomicLong admissionWaitNanos;
+    private final AtomicLong quotaRejections;
+    // guarded by the graph lock
+    private long pass;
+    // guarded by the entry of the tenant in the map of tenants
+    private boolean configured;
+    private int transfers;
+
+    Tenant(String name) {
+        this.name = name;
+        this.weight = 1;
+        this.maxReservedSlots = UNLIMITED;
+        this.maxQueuedTransfers = UNLIMITED;
+        this.reserved = new ConcurrentHashMap<>();
+        this.queued = new ConcurrentHashMap<>();
+        this.admitted = new AtomicLong();
+        this.admissionWaitNanos = new AtomicLong();
+        this.quotaRejections = new AtomicLong();
+    }
+
+    void setQuota(int weight, int maxReservedSlots, int maxQueuedTransfers) {
+        this.weight = weight;
+        this.maxReservedSlots = maxReservedSlots;
+        this.maxQueuedTransfers = maxQueuedTransfers;
+        this.configured = true;
+    }
+
+    // returns whether the tenant is still to be kept, i.e. it has transfers
+    // in flight
+    boolean removeQuota() {
+        this.weight = 1;
+        this.maxReservedSlots = UNLIMITED;
+        this.maxQueuedTransfers = UNLIMITED;
+        this.configured = false;
+        return transfers > 0;
+    }
+
+    Tenant transferStarted() {
+        transfers++;
+        return this;
+    }
+
+    // returns whether the tenant is still to be kept
+    boolean transferEnded() {
+        transfers--;
+        return configured || transfers > 0;
+    }
+
+    private static AtomicInteger counter(ConcurrentMap<DeviceId, AtomicInteger> counters,
+                                         DeviceId device) {
+        AtomicInteger counter = counters.get(device);
+        return counter != null ? counter
+                : counters.computeIfAbsent(device, d -> new AtomicInteger());
+    }
+
+    boolean mayReserve(DeviceId device) {
+        return counter(reserved, device).get() < maxReservedSlots;
+    }
+
+    boolean tryReserve(DeviceId device) {
+        AtomicInteger counter = counter(reserved, device);
+        while (true) {
+            int count = counter.get();
+            if (count >= maxReservedSlots)
+                return false;
+            if (counter.compareAndSet(count, count + 1))
+                return true;
+        }
+    }
+
+    // for transfers closing cycles, which must not be held back by quotas
+    void reserve(DeviceId device) {
+        counter(reserved, device).incrementAndGet();
+    }
+
+    void release(DeviceId device) {
+        counter(reserved, device).decrementAndGet();
+    }
+
+    boolean queueFull(DeviceId device) {
+        return counter(queued, device).get() >= maxQueuedTransfers;
+    }
+
+    int queuedOn(DeviceId device) {
+        return counter(queued, device).get();
+    }
+
+    void queuedChanged(DeviceId device, int delta) {
+        counter(queued, device).addAndGet(delta);
+    }
+
+    void admitted(long waitNanos) {
+        admitted.incrementAndGet();
+        admissionWaitNanos.addAndGet(waitNanos);
+    }
+
+    void rejected() {
+        quotaRejections.incrementAndGet();
+    }
+
+    // must be called with the graph lock held
+    long pass() {
+        return pass;
+    }
+
+    // must be called with the graph lock held
+    long passAt(long virtualTime) {
+        return Math.max(pass, virtualTime);
+    }
+
+    // must be called with the graph lock held
+    void catchUp(long virtualTime) {
+        pass = passAt(virtualTime);
+    }
+
+    // must be called with the graph lock held
+    void advance(long virtualTime) {
+        pass = passAt(virtualTime) + STRIDE / weight;
+    }
+
+    TenantMetrics metrics() {
+        return new TenantMetrics(name, weight, maxReservedSlots, maxQueuedTransfers,
+                sum(reserved), sum(queued), admitted.get(), admissionWaitNanos.get(),
+                quotaRejections.get());
+    }
+
+    private static int sum(Map<DeviceId, AtomicInteger> counters) {
+        int sum = 0;
+        for (AtomicInteger counter : counters.values())
+            sum += counter.get();
+        return sum;
+    }
+}
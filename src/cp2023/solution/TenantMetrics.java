@@ -0,0 +1,79 @@
+package cp2023.solution;
+
+/**
+ * Quotas and counters of one tenant at one moment, taken by
+ * {@link StorageSystemInstance#getTenantMetrics()}. Reserved slots and queued
+ * transfers are summed over all devices.
+ */
+public final class TenantMetrics {
+    private final String tenant;
+    private final int weight;
+    private final int maxReservedSlots;
+    private final int maxQueuedTransfers;
+    private final int reservedSlots;
+    private final int queuedTransfers;
+    private final long admittedCount;
+    private final long admissionWaitNanos;
+    private final long quotaRejectionCount;
+
+    TenantMetrics(String tenant, int weight, int maxReservedSlots, int maxQueuedTransfers,
+                  int reservedSlots, int queuedTransfers, long admittedCount,
+                  long admissionWaitNanos, long quotaRejectionCount) {
+        this.tenant = tenant;
+        this.weight = weight;
+        this.maxReservedSlots = maxReservedSlots;
+        this.maxQueuedTransfers = maxQueuedTransfers;
+        this.reservedSlots = reservedSlots;
+        this.queuedTransfers = queuedTransfers;
+        this.admittedCount = admittedCount;
+        this.admissionWaitNanos = admissionWaitNanos;
+        this.quotaRejectionCount = quotaRejectionCount;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    // per device, Integer.MAX_VALUE if unlimited
+    public int getMaxReservedSlots() {
+        return maxReservedSlots;
+    }
+
+    // per device, Integer.MAX_VALUE if unlimited
+    public int getMaxQueuedTransfers() {
+        return maxQueuedTransfers;
+    }
+
+    public int getReservedSlots() {
+        return reservedSlots;
+    }
+
+    public int getQueuedTransfers() {
+        return queuedTransfers;
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    // from submission until being allowed to prepare
+    public double getMeanAdmissionWaitNanos() {
+        return admittedCount == 0 ? 0 : admissionWaitNanos / (double) admittedCount;
+    }
+
+    public long getQuotaRejectionCount() {
+        return quotaRejectionCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: weight %d, %d reserved, %d queued, %d admitted "
+                        + "after %.0f ns on average, %d rejected", tenant, weight, reservedSlots,
+                queuedTransfers, admittedCount, getMeanAdmissionWaitNanos(),
+                quotaRejectionCount);
+    }
+}
@@ -0,0 +1,130 @@
+package cp2023.solution;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+// transfers waiting for each device, split into queues of the tenants they
+// share freed slots as (transfers without a tenant share as one tenant of
+// weight 1); the queues of a device are ordered by the passes of their
+// tenants, so the tenant furthest behind its weighted share is found without
+// looking at every waiting transfer; guarded by the graph lock
+final class TenantQueues {
+    private final Tenant untenanted;
+    private final Map<DeviceId, TreeSet<Queue>> byDevice;
+    private final Map<Tenant, Map<DeviceId, Queue>> byTenant;
+    // pass of the tenant which got the last freed slot
+    private long virtualTime;
+    private long sequence;
+
+    private static final class Queue implements Comparable<Queue> {
+        private final Tenant tenant;
+        private final DeviceId device;
+        // the values are the sequence numbers the transfers were queued with
+        private final LinkedHashMap<ComponentTransfer, Long> transfers;
+
+        private Queue(Tenant tenant, DeviceId device) {
+            this.tenant = tenant;
+            this.device = device;
+            this.transfers = new LinkedHashMap<>();
+        }
+
+        private Map.Entry<ComponentTransfer, Long> head() {
+            return transfers.entrySet().iterator().next();
+        }
+
+        // of tenants with the same pass, the one waiting longest comes first
+        @Override
+        public int compareTo(Queue other) {
+            int byPass = Long.compare(tenant.pass(), other.tenant.pass());
+            return byPass != 0 ? byPass : Long.compare(head().getValue(), other.head().getValue());
+        }
+    }
+
+    TenantQueues() {
+        this.untenanted = new Tenant(null);
+        this.byDevice = new HashMap<>();
+        this.byTenant = new HashMap<>();
+    }
+
+    // the tenant is null for transfers without one
+    void add(DeviceId device, Tenant tenant, ComponentTransfer transfer) {
+        Tenant sharing = tenant == null ? untenanted : tenant;
+        Map<DeviceId, Queue> queues = byTenant.get(sharing);
+        if (queues == null) {
+            // the pass of a tenant that has not been waiting is caught up with
+            // the virtual time, so it cannot take a burst of slots for the time
+            // it was idle
+            sharing.catchUp(virtualTime);
+            queues = new HashMap<>();
+            byTenant.put(sharing, queues);
+        }
+        Queue queue = queues.get(device);
+        if (queue == null) {
+            queue = new Queue(sharing, device);
+            queues.put(device, queue);
+        }
+        queue.transfers.put(transfer, sequence++);
+        if (queue.transfers.size() == 1)
+            byDevice.computeIfAbsent(device, d -> new TreeSet<>()).add(queue);
+    }
+
+    void remove(DeviceId device, Tenant tenant, ComponentTransfer transfer) {
+        Tenant sharing = tenant == null ? untenanted : tenant;
+        Map<DeviceId, Queue> queues = byTenant.get(sharing);
+        Queue queue = queues.get(device);
+        boolean head = queue.head().getKey() == transfer;
+        TreeSet<Queue> ordered = byDevice.get(device);
+        // the position of the queue depends on its head
+        if (head)
+            ordered.remove(queue);
+        queue.transfers.remove(transfer);
+        if (!queue.transfers.isEmpty()) {
+            if (head)
+                ordered.add(queue);
+            return;
+        }
+        if (ordered.isEmpty())
+            byDevice.remove(device);
+        queues.remove(device);
+        if (queues.isEmpty())
+            byTenant.remove(sharing);
+    }
+
+    // the first transfer of the tenant furthest behind its weighted share of
+    // freed slots among those within their quota on the device, which gets
+    // reserved; null if there is no such transfer
+    ComponentTransfer pick(DeviceId device) {
+        TreeSet<Queue> ordered = byDevice.get(device);
+        if (ordered == null)
+            return null;
+        Iterator<Queue> queues = ordered.iterator();
+        while (queues.hasNext()) {
+            Tenant tenant = queues.next().tenant;
+            // otherwise the quota is used up, maybe by the fast path meanwhile
+            if (tenant != untenanted && !tenant.tryReserve(device))
+                continue;
+            ComponentTransfer chosen = byTenant.get(tenant).get(device).head().getKey();
+            long chosenPass = tenant.passAt(virtualTime);
+            advance(tenant);
+            virtualTime = chosenPass;
+            return chosen;
+        }
+        return null;
+    }
+
+    // the queues of the tenant are placed anew on every device it waits for
+    private void advance(Tenant tenant) {
+        Map<DeviceId, Queue> queues = byTenant.get(tenant);
+        for (Queue queue : queues.values())
+            byDevice.get(queue.device).remove(queue);
+        tenant.advance(virtualTime);
+        for (Queue queue : queues.values())
+            byDevice.get(queue.device).add(queue);
+    }
+}
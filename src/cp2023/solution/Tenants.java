@@ -0,0 +1,130 @@
+package cp2023.solution;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TenantComponentTransfer;
+
+// tenants which have been set up or have transfers in flight, with their
+// quotas and the queues sharing freed slots between them; a transfer without
+// a tenant has no quota to reserve
+final class Tenants {
+    private final ConcurrentMap<String, Tenant> tenants;
+    // guarded by the graph lock
+    private final TenantQueues queues;
+
+    Tenants() {
+        this.tenants = new ConcurrentHashMap<>();
+        this.queues = new TenantQueues();
+    }
+
+    // tenant of the transfer, null if it has none (and is not limited); the
+    // tenant of a transfer in flight is known until the transfer ends
+    Tenant of(ComponentTransfer transfer) {
+        String name = nameOf(transfer);
+        return name == null ? null : tenants.get(name);
+    }
+
+    private static String nameOf(ComponentTransfer transfer) {
+        return transfer instanceof TenantComponentTransfer
+                ? ((TenantComponentTransfer) transfer).getTenant() : null;
+    }
+
+    // tenants which have not been set up are kept only while they have
+    // transfers in flight, so that the names seen once do not pile up
+    void transferStarted(ComponentTransfer transfer) {
+        String name = nameOf(transfer);
+        if (name != null)
+            tenants.compute(name, (n, tenant) ->
+                    (tenant != null ? tenant : new Tenant(n)).transferStarted());
+    }
+
+    void transferEnded(ComponentTransfer transfer) {
+        String name = nameOf(transfer);
+        if (name != null)
+            tenants.computeIfPresent(name, (n, tenant) -> tenant.transferEnded() ? tenant : null);
+    }
+
+    void setQuota(String tenant, int weight, int maxReservedSlots, int maxQueuedTransfers) {
+        tenants.compute(tenant, (name, known) -> {
+            Tenant configured = known != null ? known : new Tenant(name);
+            configured.setQuota(weight, maxReservedSlots, maxQueuedTransfers);
+            return configured;
+        });
+    }
+
+    void removeQuota(String tenant) {
+        tenants.computeIfPresent(tenant, (name, known) -> known.removeQuota() ? known : null);
+    }
+
+    Map<String, TenantMetrics> metrics() {
+        Map<String, TenantMetrics> metrics = new HashMap<>();
+        tenants.forEach((name, tenant) -> metrics.put(name, tenant.metrics()));
+        return metrics;
+    }
+
+    boolean mayReserve(ComponentTransfer transfer, DeviceId device) {
+        Tenant tenant = of(transfer);
+        return tenant == null || tenant.mayReserve(device);
+    }
+
+    // every admitted transfer with a destination holds one unit of its
+    // tenant's quota on the destination until it has performed
+    boolean tryReserve(ComponentTransfer transfer, DeviceId device) {
+        Tenant tenant = of(transfer);
+        return tenant == null || tenant.tryReserve(device);
+    }
+
+    void release(ComponentTransfer transfer, DeviceId device) {
+        Tenant tenant = of(transfer);
+        if (tenant != null)
+            tenant.release(device);
+    }
+
+    // counted as rejected if the transfer would wait beyond the quota of its
+    // tenant on any of the devices
+    boolean queueFull(ComponentTransfer transfer, List<DeviceId> devices) {
+        Tenant tenant = of(transfer);
+        if (tenant == null)
+            return false;
+        for (DeviceId device : devices) {
+            if (tenant.queueFull(device)) {
+                tenant.rejected();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // all below must be called with the graph lock held
+
+    void queued(DeviceId device, ComponentTransfer transfer) {
+        queues.add(device, of(transfer), transfer);
+    }
+
+    void dequeued(DeviceId device, ComponentTransfer transfer) {
+        queues.remove(device, of(transfer), transfer);
+    }
+
+    void queuedChanged(DeviceId device, ComponentTransfer transfer, int delta) {
+        Tenant tenant = of(transfer);
+        if (tenant != null)
+            tenant.queuedChanged(device, delta);
+    }
+
+    // the transfer waiting for the device that gets the freed slot, or null
+    // if no transfer waiting there is within its quota; without any tenants
+    // the transfers are taken in the order of arrival by the caller instead
+    ComponentTransfer pick(DeviceId device) {
+        return queues.pick(device);
+    }
+
+    boolean isEmpty() {
+        return tenants.isEmpty();
+    }
+}
@@ -0,0 +1,199 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the components accessed most often (according to the access tracker
+ * of the system) on the fast devices. A hot component on a slow device is
+ * swapped with a cold one on a fast device: both moves are executed as one
+ * group, so they close a cycle and need no free slot on either device. Only
+ * once no colder component is left on the fast devices are hot components
+ * moved into their free slots.
+ */
+public final class TieringController {
+    private final StorageSystemInstance system;
+    private final AccessTracker tracker;
+    private final TransferFactory factory;
+    private final Set<DeviceId> fastDevices;
+    private final int maxMovesPerPass;
+    private final int minAccessGap;
+    private final Semaphore stopSignal;
+    private final AtomicLong swaps;
+    private final AtomicLong promotions;
+    private Thread thread;
+
+    // a swap is only done if the hot component has had at least minAccessGap
+    // more accesses than the cold one, so that components of similar heat do
+    // not keep trading places
+    public TieringController(StorageSystemInstance system, TransferFactory factory,
+                             Collection<DeviceId> fastDevices, int maxMovesPerPass,
+                             int minAccessGap) {
+        if (system.getAccessTracker() == null)
+            throw new IllegalArgumentException("System does not track accesses");
+        if (maxMovesPerPass <= 0 || minAccessGap < 0)
+            throw new IllegalArgumentException("Tiering cannot do " + maxMovesPerPass
+                    + " moves per pass with an access gap of " + minAccessGap);
+        this.system = system;
+        this.tracker = system.getAccessTracker();
+        this.factory = factory;
+        this.fastDevices = new HashSet<>(fastDevices);
+        this.maxMovesPerPass = maxMovesPerPass;
+        this.minAccessGap = minAccessGap;
+        this.stopSignal = new Semaphore(0);
+        this.swaps = new AtomicLong();
+        this.promotions = new AtomicLong();
+    }
+
+    private static final class Candidate {
+        private final ComponentId component;
+        private final DeviceId device;
+        private final int accesses;
+
+        private Candidate(ComponentId component, DeviceId device, int accesses) {
+            this.component = component;
+            this.device = device;
+            this.accesses = accesses;
+        }
+    }
+
+    /**
+     * Computes the moves of one pass: each element is executed as a group,
+     * a swap of a hot and a cold component or a single promotion. Takes time
+     * linear in the number of components, but keeps only the maxMovesPerPass
+     * hottest slow and coldest fast components.
+     */
+    public List<List<Rebalancer.Move>> plan() {
+        Map<DeviceId, Integer> free = new HashMap<>();
+        system.getDeviceCapacities().forEach((device, capacity) -> {
+            if (fastDevices.contains(device))
+                free.put(device, capacity);
+        });
+        PriorityQueue<Candidate> hottest =
+                new PriorityQueue<>(Comparator.comparingInt(c -> c.accesses));
+        PriorityQueue<Candidate> coldest =
+                new PriorityQueue<>((a, b) -> Integer.compare(b.accesses, a.accesses));
+        system.getComponentPlacement().forEach((component, device) -> {
+            int accesses = tracker.estimate(component);
+            if (free.containsKey(device)) {
+                free.merge(device, -1, Integer::sum);
+                if (coldest.size() < maxMovesPerPass || accesses < coldest.peek().accesses)
+                    keep(coldest, new Candidate(component, device, accesses));
+            }
+            else if (hottest.size() < maxMovesPerPass || accesses > hottest.peek().accesses) {
+                keep(hottest, new Candidate(component, device, accesses));
+            }
+        });
+
+        List<Candidate> hot = new ArrayList<>(hottest);
+        hot.sort((a, b) -> Integer.compare(b.accesses, a.accesses));
+        List<Candidate> cold = new ArrayList<>(coldest);
+        cold.sort(Comparator.comparingInt(c -> c.accesses));
+        List<List<Rebalancer.Move>> moves = new ArrayList<>();
+        int budget = maxMovesPerPass;
+        int h = 0;
+        for (int c = 0; c < cold.size() && h < hot.size() && budget >= 2; c++, h++) {
+            Candidate promoted = hot.get(h);
+            Candidate demoted = cold.get(c);
+            if (promoted.accesses < demoted.accesses + minAccessGap)
+                break;
+            moves.add(List.of(
+                    new Rebalancer.Move(promoted.component, promoted.device, demoted.device),
+                    new Rebalancer.Move(demoted.component, demoted.device, promoted.device)));
+            budget -= 2;
+        }
+        for (; h < hot.size() && budget > 0; h++, budget--) {
+            DeviceId destination = null;
+            for (Map.Entry<DeviceId, Integer> entry : free.entrySet()) {
+                if (entry.getValue() > 0
+                        && (destination == null || entry.getValue() > free.get(destination)))
+                    destination = entry.getKey();
+            }
+            Candidate promoted = hot.get(h);
+            if (destination == null || promoted.accesses < minAccessGap)
+                break;
+            free.merge(destination, -1, Integer::sum);
+            moves.add(List.of(
+                    new Rebalancer.Move(promoted.component, promoted.device, destination)));
+        }
+        return moves;
+    }
+
+    private void keep(PriorityQueue<Candidate> best, Candidate candidate) {
+        best.add(candidate);
+        if (best.size() > maxMovesPerPass)
+            best.poll();
+    }
+
+    /**
+     * Plans and executes one pass, returns the number of components moved.
+     * Groups of components that are meanwhile operated on or moved elsewhere
+     * are skipped.
+     */
+    public int tier() {
+        int moved = 0;
+        for (List<Rebalancer.Move> group : plan()) {
+            List<ComponentTransfer> transfers = new ArrayList<>(group.size());
+            for (Rebalancer.Move move : group)
+                transfers.add(factory.newTransfer(move.getComponentId(),
+                        move.getSourceDeviceId(), move.getDestinationDeviceId()));
+            try {
+                system.executeGroup(transfers);
+            } catch (TransferException e) {
+                continue;
+            }
+            moved += group.size();
+            if (group.size() == 2)
+                swaps.incrementAndGet();
+            else
+                promotions.incrementAndGet();
+        }
+        return moved;
+    }
+
+    // calls tier() every period from a daemon thread until shutdown()
+    public synchronized void start(long period, TimeUnit unit) {
+        if (thread != null)
+            throw new IllegalStateException("Tiering has already been started");
+        long periodNanos = unit.toNanos(period);
+        if (periodNanos <= 0)
+            throw new IllegalArgumentException("Tiering period has to be positive");
+        thread = new Thread(() -> {
+            try {
+                while (!stopSignal.tryAcquire(periodNanos, TimeUnit.NANOSECONDS))
+                    tier();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }, "tiering-controller");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        if (thread == null)
+            return;
+        stopSignal.release();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        thread = null;
+    }
+
+    public long getSwapCount() {
+        return swaps.get();
+    }
+
+    public long getPromotionCount() {
+        return promotions.get();
+    }
+}
@@ -0,0 +1,136 @@
+package cp2023.solution;
+
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+
+// in the chaining mode, transfers of a component being operated on wait for
+// the ones issued before them, and each is handed the component as soon as
+// the previous one has prepared; a transfer handed the component before
+// the previous one has performed is given the latch the previous one counts
+// down when it ends
+final class TransferChaining {
+    private volatile boolean enabled;
+    // all below are guarded by the mutex of the component
+    private final ConcurrentMap<ComponentId, Deque<ChainedTransfer>> chainedTransfers;
+    private final ConcurrentMap<ComponentId, CountDownLatch> componentHandovers;
+    private final ConcurrentMap<ComponentTransfer, CountDownLatch> transferPerformDone;
+    private final ConcurrentMap<ComponentTransfer, CountDownLatch> transferPredecessor;
+
+    // transfer waiting for the component to be handed over by the one before
+    private static final class ChainedTransfer {
+        private final ComponentTransfer transfer;
+        private final Thread thread;
+        private final Semaphore handover;
+
+        private ChainedTransfer(ComponentTransfer transfer, Thread thread) {
+            this.transfer = transfer;
+            this.thread = thread;
+            this.handover = new Semaphore(0);
+        }
+    }
+
+    TransferChaining() {
+        this.chainedTransfers = new ConcurrentHashMap<>();
+        this.componentHandovers = new ConcurrentHashMap<>();
+        this.transferPerformDone = new ConcurrentHashMap<>();
+        this.transferPredecessor = new ConcurrentHashMap<>();
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // must be called with the mutex of the component held; the checked
+    // transfer claims the component nobody operates on
+    void claim(ComponentTransfer transfer, ComponentState state) {
+        state.owner = Thread.currentThread();
+        // the previous transfer may still be performing
+        CountDownLatch performing = componentHandovers.remove(transfer.getComponentId());
+        if (performing != null)
+            transferPredecessor.put(transfer, performing);
+    }
+
+    // must be called with the mutex of the component held, while another
+    // thread operates on it; returns null if the transfer follows the owner
+    // at once, otherwise the semaphore released when it is handed over
+    Semaphore follow(ComponentTransfer transfer, ComponentState state) {
+        ComponentId component = transfer.getComponentId();
+        CountDownLatch performing = componentHandovers.remove(component);
+        if (performing != null) {
+            // the owner has already prepared, so we can follow it at once
+            state.owner = Thread.currentThread();
+            transferPredecessor.put(transfer, performing);
+            return null;
+        }
+        ChainedTransfer chained = new ChainedTransfer(transfer, Thread.currentThread());
+        chainedTransfers.computeIfAbsent(component, c -> new LinkedList<>()).add(chained);
+        return chained.handover;
+    }
+
+    // counted down when the transfer before the given one has performed,
+    // null if there is no such transfer
+    CountDownLatch takePredecessor(ComponentTransfer transfer) {
+        return transferPredecessor.remove(transfer);
+    }
+
+    // the placement has been updated by the transfer, so the next one can
+    // be checked while it performs
+    void prepared(ComponentTransfer transfer, ComponentState state) {
+        if (!enabled)
+            return;
+        state.lock();
+        CountDownLatch performing = new CountDownLatch(1);
+        transferPerformDone.put(transfer, performing);
+        if (!handOver(transfer.getComponentId(), state, performing))
+            componentHandovers.put(transfer.getComponentId(), performing);
+        state.unlock();
+    }
+
+    // must be called with the mutex of the component held; the component is
+    // no longer operated on by the transfer
+    void released(ComponentTransfer transfer, ComponentState state) {
+        ComponentId component = transfer.getComponentId();
+        CountDownLatch performing = transferPerformDone.remove(transfer);
+        if (performing != null)
+            performing.countDown();
+        // claim could have been handed over when the transfer had prepared
+        boolean handedOver = performing != null
+                && !componentHandovers.remove(component, performing);
+        if (handedOver)
+            return;
+        // a transfer rejected while its predecessor still performs passes
+        // the predecessor on
+        CountDownLatch predecessor = transferPredecessor.remove(transfer);
+        if (predecessor != null && predecessor.getCount() == 0)
+            predecessor = null;
+        if (!handOver(component, state, predecessor)) {
+            state.owner = null;
+            if (predecessor != null)
+                componentHandovers.put(component, predecessor);
+        }
+    }
+
+    private boolean handOver(ComponentId component, ComponentState state,
+                             CountDownLatch performing) {
+        Deque<ChainedTransfer> chained = chainedTransfers.get(component);
+        ChainedTransfer next = chained == null ? null : chained.poll();
+        if (next == null)
+            return false;
+        state.owner = next.thread;
+        if (performing != null)
+            transferPredecessor.put(next.transfer, performing);
+        next.handover.release();
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+package cp2023.solution;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferEvent;
+import cp2023.base.TransferListener;
+
+// bounded ring of preallocated events, filled by any number of threads and
+// drained by a single consumer thread that calls the listeners; when the
+// consumer falls behind, new events are dropped instead of waiting for it;
+// the consumer runs only while there are listeners
+final class TransferEventBuffer {
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail;
+    private final AtomicLong dropped;
+    private final List<TransferListener> listeners;
+    // guarded by this, handed over from a consumer to the next one
+    private Thread consumer;
+    private long head;
+    private volatile Thread idleConsumer;
+
+    // a slot can be written when its sequence equals the position being
+    // claimed and read when it is one more than the position
+    private static final class Slot implements TransferEvent {
+        private volatile long sequence;
+        private Type type;
+        private ComponentId component;
+        private DeviceId source;
+        private DeviceId destination;
+        private long timestamp;
+        private AdmissionPath admissionPath;
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return destination;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public AdmissionPath getAdmissionPath() {
+            return admissionPath;
+        }
+    }
+
+    TransferEventBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    void addListener(TransferListener listener) {
+        listeners.add(listener);
+        synchronized (this) {
+            // a consumer which has not left yet sees the listener when it
+            // re-checks under the lock
+            if (consumer == null) {
+                Thread thread = new Thread(this::consume, "transfer-events");
+                thread.setDaemon(true);
+                consumer = thread;
+                thread.start();
+            }
+        }
+    }
+
+    void removeListener(TransferListener listener) {
+        listeners.remove(listener);
+        // lets an idle consumer notice there is nobody left to call
+        Thread idle = idleConsumer;
+        if (idle != null)
+            LockSupport.unpark(idle);
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    void publish(TransferEvent.Type type, ComponentTransfer transfer) {
+        publish(type, transfer, null);
+    }
+
+    void publish(TransferEvent.Type type, ComponentTransfer transfer,
+                 TransferEvent.AdmissionPath admissionPath) {
+        if (listeners.isEmpty())
+            return;
+        long timestamp = System.nanoTime();
+        Slot slot;
+        long position;
+        while (true) {
+            position = tail.get();
+            slot = slots[(int) position & mask];
+            long sequence = slot.sequence;
+            if (sequence < position) {
+                // not consumed yet since the previous lap
+                dropped.incrementAndGet();
+                return;
+            }
+            if (sequence == position && tail.compareAndSet(position, position + 1))
+                break;
+        }
+        slot.type = type;
+        slot.component = transfer.getComponentId();
+        slot.source = transfer.getSourceDeviceId();
+        slot.destination = transfer.getDestinationDeviceId();
+        slot.timestamp = timestamp;
+        slot.admissionPath = admissionPath;
+        slot.sequence = position + 1;
+        Thread idle = idleConsumer;
+        if (idle != null)
+            LockSupport.unpark(idle);
+    }
+
+    private void consume() {
+        long head;
+        synchronized (this) {
+            head = this.head;
+        }
+        while (true) {
+            Slot slot = slots[(int) head & mask];
+            if (slot.sequence == head + 1) {
+                // events published before the last listener was removed
+                // are skipped, not kept for the next one
+                for (TransferListener listener : listeners)
+                    listener.transferEvent(slot);
+                slot.sequence = head + slots.length;
+                head++;
+            }
+            else if (tail.get() == head) {
+                if (listeners.isEmpty()) {
+                    synchronized (this) {
+                        if (listeners.isEmpty()) {
+                            this.head = head;
+                            consumer = null;
+                            return;
+                        }
+                    }
+                }
+                // publishers check the field after publishing
+                idleConsumer = Thread.currentThread();
+                if (tail.get() == head && !listeners.isEmpty())
+                    LockSupport.park(this);
+                idleConsumer = null;
+            }
+            else {
+                // an event has been claimed, but is still being written
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
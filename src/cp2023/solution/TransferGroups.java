@@ -0,0 +1,140 @@
+package cp2023.solution;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.exceptions.TransferException;
+
+// groups of transfers executed together, see executeGroup(); calls of
+// prepare() and perform() are made by the calling thread and pooled helpers
+final class TransferGroups {
+    private final StorageSystemInstance system;
+    private final ExecutorService helpers;
+
+    private static final class TransferGroup {
+        private final List<ComponentTransfer> transfers;
+        // transfers which have not finished or skipped their preparation yet
+        private final AtomicInteger preparing;
+        private final CountDownLatch prepared;
+        // thrown by the first prepare() that failed, then nothing is performed
+        private volatile Throwable failure;
+        // waiting for a slot when the group failed, guarded by the graph lock
+        private final Set<ComponentTransfer> withdrawn;
+
+        private TransferGroup(List<ComponentTransfer> transfers) {
+            this.transfers = transfers;
+            this.preparing = new AtomicInteger(transfers.size());
+            this.prepared = new CountDownLatch(1);
+            this.withdrawn = new HashSet<>();
+        }
+    }
+
+    TransferGroups(StorageSystemInstance system) {
+        this.system = system;
+        this.helpers = Executors.newCachedThreadPool(runnable -> {
+            Thread helper = new Thread(runnable, "group-transfer-helper");
+            helper.setDaemon(true);
+            return helper;
+        });
+    }
+
+    void execute(List<ComponentTransfer> transfers) throws TransferException {
+        system.demandGroup(transfers);
+
+        // every transfer is prepared as soon as it is allowed to, the last one
+        // to finish its preparation frees the sources of the whole group, or
+        // rolls the group back if any prepare() has thrown
+        TransferGroup group = new TransferGroup(transfers);
+        long demandedAt = System.nanoTime();
+        Throwable failure;
+        try {
+            failure = runInParallel(transfers, transfer -> {
+                system.awaitGate(transfer);
+                if (group.failure == null) {
+                    try {
+                        system.prepareGroupMember(transfer, System.nanoTime() - demandedAt);
+                    } catch (RuntimeException | Error e) {
+                        failed(group, e);
+                    }
+                }
+                if (group.preparing.decrementAndGet() == 0) {
+                    if (group.failure == null)
+                        system.freeGroupSources(transfers);
+                    else
+                        system.rollBackGroup(transfers, group.withdrawn);
+                    group.prepared.countDown();
+                }
+                try {
+                    group.prepared.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("panic: unexpected thread interruption", e);
+                }
+                if (group.failure != null)
+                    return;
+                system.awaitGate(transfer);
+                system.performGroupMember(transfer);
+            });
+        } finally {
+            // also after a perform() has thrown, so that no component stays claimed
+            system.endGroup(transfers, group.failure != null);
+        }
+        if (group.failure != null)
+            failure = group.failure;
+        if (failure != null)
+            throw new RuntimeException("transfer of a group failed", failure);
+    }
+
+    // the transfers still waiting for a slot are withdrawn, so that the group
+    // does not wait for them before it is rolled back
+    private void failed(TransferGroup group, Throwable failure) {
+        system.acquireGraph();
+        if (group.failure == null) {
+            group.failure = failure;
+            group.withdrawn.addAll(system.withdrawAwaiting(group.transfers));
+        }
+        system.releaseGraph();
+    }
+
+    // the first transfer is handled by the calling thread; all of them are
+    // handled and waited for even if some fail, the first failure is returned
+    // with the others added to it as suppressed
+    private Throwable runInParallel(List<ComponentTransfer> transfers,
+                                    Consumer<ComponentTransfer> action) {
+        List<Future<?>> submitted = new ArrayList<>();
+        for (int i = 1; i < transfers.size(); i++) {
+            ComponentTransfer transfer = transfers.get(i);
+            submitted.add(helpers.submit(() -> action.accept(transfer)));
+        }
+        Throwable failure = null;
+        if (!transfers.isEmpty()) {
+            try {
+                action.accept(transfers.get(0));
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+        }
+        for (Future<?> helper : submitted) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            } catch (ExecutionException e) {
+                if (failure == null)
+                    failure = e.getCause();
+                else
+                    failure.addSuppressed(e.getCause());
+            }
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,13 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentTransfer;
+
+// phase of an unfinished transfer, for snapshots of the waiting graph;
+// the transfer is set last and cleared when it finishes, so a reader
+// seeing the same transfer before and after reading the rest is fine
+final class TransferProgress {
+    volatile ComponentTransfer transfer;
+    volatile long submittedAt;
+    volatile WaitForGraphSnapshot.Phase phase;
+    volatile long phaseSince;
+}
@@ -0,0 +1,280 @@
+package cp2023.solution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+/**
+ * State of the devices and the unfinished transfers of a system at one
+ * moment, taken by {@link StorageSystemInstance#snapshotWaitForGraph()}.
+ * Transfers are identified by their index in {@link #getTransfers()}.
+ */
+public final class WaitForGraphSnapshot {
+
+    public enum Phase {
+        // checked, demanding a slot or waiting for the previous transfer
+        // of the component to perform
+        SUBMITTED,
+        // waiting for a slot on its destination
+        QUEUED,
+        PREPARING,
+        // prepared, waiting for the transfer it depends on or performing soon
+        PREPARED,
+        PERFORMING
+    }
+
+    public static final class TransferInfo {
+        private final int id;
+        private final ComponentId component;
+        private final DeviceId source;
+        private final DeviceId destination;
+        private final Phase phase;
+        private final long ageNanos;
+        private final long phaseAgeNanos;
+        private final List<DeviceId> awaitedDevices;
+        private final int dependsOn;
+        // for the stall detector to point the engine at
+        final ComponentTransfer transfer;
+
+        TransferInfo(int id, ComponentTransfer transfer, DeviceId source, DeviceId destination,
+                     Phase phase, long ageNanos, long phaseAgeNanos,
+                     List<DeviceId> awaitedDevices, int dependsOn) {
+            this.id = id;
+            this.transfer = transfer;
+            this.component = transfer.getComponentId();
+            this.source = source;
+            this.destination = destination;
+            this.phase = phase;
+            this.ageNanos = ageNanos;
+            this.phaseAgeNanos = phaseAgeNanos;
+            this.awaitedDevices = awaitedDevices;
+            this.dependsOn = dependsOn;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        public DeviceId getDestinationDeviceId() {
+            return destination;
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+
+        // time since the transfer was submitted
+        public long getAgeNanos() {
+            return ageNanos;
+        }
+
+        public long getPhaseAgeNanos() {
+            return phaseAgeNanos;
+        }
+
+        // devices on whose slots a queued transfer waits
+        public List<DeviceId> getAwaitedDevices() {
+            return awaitedDevices;
+        }
+
+        // transfer that has to prepare before this one can perform, or -1
+        public int getDependsOn() {
+            return dependsOn;
+        }
+    }
+
+    public static final class DeviceInfo {
+        private final DeviceId device;
+        private final int totalSlots;
+        private final int freeSlots;
+        private final List<Integer> awaiting;
+        private final List<Integer> leaving;
+
+        DeviceInfo(DeviceId device, int totalSlots, int freeSlots,
+                   List<Integer> awaiting, List<Integer> leaving) {
+            this.device = device;
+            this.totalSlots = totalSlots;
+            this.freeSlots = freeSlots;
+            this.awaiting = awaiting;
+            this.leaving = leaving;
+        }
+
+        public DeviceId getDeviceId() {
+            return device;
+        }
+
+        public int getTotalSlots() {
+            return totalSlots;
+        }
+
+        public int getFreeSlots() {
+            return freeSlots;
+        }
+
+        // transfers queued for a slot, in the order they are going to get one
+        public List<Integer> getAwaiting() {
+            return awaiting;
+        }
+
+        // transfers leaving the device whose slots nobody has reserved yet
+        public List<Integer> getLeaving() {
+            return leaving;
+        }
+    }
+
+    private final List<TransferInfo> transfers;
+    private final List<DeviceInfo> devices;
+    private final List<List<Integer>> longestChains;
+
+    WaitForGraphSnapshot(List<TransferInfo> transfers, List<DeviceInfo> devices) {
+        this.transfers = Collections.unmodifiableList(transfers);
+        this.devices = Collections.unmodifiableList(devices);
+        this.longestChains = Collections.unmodifiableList(findLongestChains());
+    }
+
+    public List<TransferInfo> getTransfers() {
+        return transfers;
+    }
+
+    public List<DeviceInfo> getDevices() {
+        return devices;
+    }
+
+    /**
+     * Longest sequences of transfers each of which depends on the next one
+     * (the last one of a cycle depends on the first one). Empty if no
+     * transfer depends on another.
+     */
+    public List<List<Integer>> getLongestChains() {
+        return longestChains;
+    }
+
+    // queued transfers, the longest waiting first
+    public List<TransferInfo> getOldestWaiters(int limit) {
+        List<TransferInfo> waiters = new ArrayList<>();
+        for (TransferInfo transfer : transfers) {
+            if (transfer.phase == Phase.QUEUED)
+                waiters.add(transfer);
+        }
+        waiters.sort(Comparator.comparingLong(TransferInfo::getPhaseAgeNanos).reversed());
+        return waiters.subList(0, Math.min(limit, waiters.size()));
+    }
+
+    private List<List<Integer>> findLongestChains() {
+        boolean[] dependedOn = new boolean[transfers.size()];
+        for (TransferInfo transfer : transfers) {
+            if (transfer.dependsOn >= 0)
+                dependedOn[transfer.dependsOn] = true;
+        }
+        List<List<Integer>> longest = new ArrayList<>();
+        Set<Integer> visited = new HashSet<>();
+        // chains start at transfers nobody depends on, what is left are cycles
+        for (int pass = 0; pass < 2; pass++) {
+            for (TransferInfo start : transfers) {
+                if (visited.contains(start.id) || (pass == 0 && dependedOn[start.id]))
+                    continue;
+                List<Integer> chain = new ArrayList<>();
+                for (int id = start.id; id >= 0 && visited.add(id);
+                     id = transfers.get(id).dependsOn)
+                    chain.add(id);
+                if (chain.size() < 2)
+                    continue;
+                if (!longest.isEmpty() && chain.size() > longest.get(0).size())
+                    longest.clear();
+                if (longest.isEmpty() || chain.size() == longest.get(0).size())
+                    longest.add(Collections.unmodifiableList(chain));
+            }
+        }
+        return longest;
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"devices\":[");
+        for (int i = 0; i < devices.size(); i++) {
+            DeviceInfo device = devices.get(i);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"id\":\"").append(device.device)
+                    .append("\",\"totalSlots\":").append(device.totalSlots)
+                    .append(",\"freeSlots\":").append(device.freeSlots)
+                    .append(",\"awaiting\":").append(device.awaiting.toString().replace(" ", ""))
+                    .append(",\"leaving\":").append(device.leaving.toString().replace(" ", ""))
+                    .append('}');
+        }
+        json.append("],\"transfers\":[");
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferInfo transfer = transfers.get(i);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"id\":").append(transfer.id)
+                    .append(",\"component\":\"").append(transfer.component)
+                    .append("\",\"source\":").append(quoted(transfer.source))
+                    .append(",\"destination\":").append(quoted(transfer.destination))
+                    .append(",\"phase\":\"").append(transfer.phase)
+                    .append("\",\"ageNanos\":").append(transfer.ageNanos)
+                    .append(",\"phaseAgeNanos\":").append(transfer.phaseAgeNanos)
+                    .append(",\"dependsOn\":")
+                    .append(transfer.dependsOn < 0 ? "null" : transfer.dependsOn)
+                    .append('}');
+        }
+        json.append("],\"longestChains\":")
+                .append(longestChains.toString().replace(" ", ""))
+                .append(",\"oldestWaiters\":[");
+        List<TransferInfo> oldest = getOldestWaiters(10);
+        for (int i = 0; i < oldest.size(); i++)
+            json.append(i == 0 ? "" : ",").append(oldest.get(i).id);
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Devices are boxes, transfers are ellipses: dashed edges lead from queued
+     * transfers to the devices they wait for, solid ones from transfers to
+     * the transfers they depend on. The longest chains and the oldest waiter
+     * are red.
+     */
+    public String toDot() {
+        Set<Integer> flagged = new HashSet<>();
+        longestChains.forEach(flagged::addAll);
+        getOldestWaiters(1).forEach(transfer -> flagged.add(transfer.id));
+
+        StringBuilder dot = new StringBuilder("digraph waitfor {\n");
+        for (DeviceInfo device : devices) {
+            dot.append("  \"").append(device.device).append("\" [shape=box,label=\"")
+                    .append(device.device).append("\\n").append(device.freeSlots)
+                    .append('/').append(device.totalSlots).append(" free\"];\n");
+        }
+        for (TransferInfo transfer : transfers) {
+            dot.append("  T").append(transfer.id).append(" [label=\"")
+                    .append(transfer.component).append("\\n").append(transfer.source)
+                    .append(" -> ").append(transfer.destination).append("\\n")
+                    .append(transfer.phase).append(' ')
+                    .append(transfer.phaseAgeNanos / 1_000_000).append(" ms\"")
+                    .append(flagged.contains(transfer.id) ? ",color=red" : "")
+                    .append("];\n");
+            for (DeviceId device : transfer.awaitedDevices)
+                dot.append("  T").append(transfer.id).append(" -> \"").append(device)
+                        .append("\" [style=dashed];\n");
+            if (transfer.dependsOn >= 0)
+                dot.append("  T").append(transfer.id).append(" -> T")
+                        .append(transfer.dependsOn).append(";\n");
+        }
+        return dot.append("}\n").toString();
+    }
+
+    private static String quoted(DeviceId device) {
+        return device == null ? "null" : "\"" + device + "\"";
+    }
+}
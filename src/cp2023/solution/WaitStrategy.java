@@ -0,0 +1,13 @@
+package cp2023.solution;
+
+/**
+ * How a transfer waits for being allowed to prepare or perform.
+ */
+public enum WaitStrategy {
+    // parks on a fair semaphore at once
+    BLOCKING,
+    // spins, then yields and only then parks, with the spinning and yielding
+    // times adjusted to the recently observed waiting times; trades CPU time
+    // for lower latency of handoffs that take microseconds
+    SPIN_THEN_PARK
+}
@@ -11,7 +11,11 @@ public class BasicTests extends Generators {
         // https://discord.com/channels/999695571575119902/1164480906371813426/1173215886493106296
         // Jak ktoś się o to zapytał to można od razu przetestować
     void Path3() throws InterruptedException {
-        StorageSystem system = basicSystem3(2);
+        path3(basicSystem3(2));
+    }
+
+    // the scenario of Path3, run on other engines and settings too
+    static void path3(StorageSystem system) throws InterruptedException {
         UniqueCount count1 = new UniqueCount();
         UniqueCount count2 = new UniqueCount();
         ComponentTransfer transfer1 = transfer4(101, 1, 2, count1);
@@ -0,0 +1,165 @@
+package cp2023.testing;
+
+import cp2023.base.BatchablePerformer;
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class BatchingTests extends Generators {
+
+    private static final class Batch {
+        private final DeviceId device;
+        private final List<ComponentTransfer> transfers;
+
+        private Batch(DeviceId device, List<ComponentTransfer> transfers) {
+            this.device = device;
+            this.transfers = new ArrayList<>(transfers);
+        }
+    }
+
+    // records the batches; the first one fails with the given failure, if
+    // any, after the last transfer of the batch has been reported done
+    private static final class Recorder implements BatchablePerformer {
+        private final List<Batch> batches = new ArrayList<>();
+        private final Set<ComponentTransfer> done = ConcurrentHashMap.newKeySet();
+        private Throwable failure;
+
+        Recorder(Throwable failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public void performBatch(DeviceId device, List<ComponentTransfer> transfers,
+                                 Consumer<ComponentTransfer> done) {
+            Throwable failure;
+            synchronized (this) {
+                batches.add(new Batch(device, transfers));
+                failure = this.failure;
+                this.failure = null;
+            }
+            if (failure == null)
+                return;
+            ComponentTransfer last = transfers.get(transfers.size() - 1);
+            this.done.add(last);
+            done.accept(last);
+            if (failure instanceof Error)
+                throw (Error) failure;
+            throw (RuntimeException) failure;
+        }
+
+        synchronized List<Batch> batches() {
+            return new ArrayList<>(batches);
+        }
+    }
+
+    // what tryExecute() of each transfer returned or threw
+    private static Map<ComponentTransfer, Object> executeConcurrently(
+            StorageSystemInstance system, List<ComponentTransfer> transfers)
+            throws InterruptedException {
+        Map<ComponentTransfer, Object> outcomes = new ConcurrentHashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        for (ComponentTransfer transfer : transfers) {
+            threads.add(new Thread(() -> {
+                try {
+                    outcomes.put(transfer, system.tryExecute(transfer));
+                } catch (RuntimeException | Error e) {
+                    outcomes.put(transfer, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assert (!thread.isAlive());
+        }
+        return outcomes;
+    }
+
+    // device 3 holds the given number of components, devices 1 and 2 have
+    // room for all of them and one more
+    private static StorageSystemInstance system(int components) {
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        for (int comp = 0; comp < components; comp++)
+            placement.put(component(100 + comp), device(3));
+        return new StorageSystemInstance(Map.of(device(1), components + 1,
+                device(2), components + 1, device(3), components), placement);
+    }
+
+    @Test
+    void batchesNeverMixDevices() throws InterruptedException {
+        int components = 32;
+        StorageSystemInstance system = system(components);
+        Recorder recorder = new Recorder(null);
+        system.setBatchablePerformer(device(1), recorder, 20, TimeUnit.MILLISECONDS, 4);
+        system.setBatchablePerformer(device(2), recorder, 20, TimeUnit.MILLISECONDS, 4);
+        List<ComponentTransfer> transfers = new ArrayList<>();
+        for (int comp = 0; comp < components; comp++)
+            transfers.add(transfer(100 + comp, 3, 1 + comp % 2));
+
+        Map<ComponentTransfer, Object> outcomes = executeConcurrently(system, transfers);
+        for (ComponentTransfer transfer : transfers)
+            assert (outcomes.get(transfer) == TransferResult.EXECUTED);
+        Set<ComponentTransfer> batched = new HashSet<>();
+        for (Batch batch : recorder.batches()) {
+            assert (!batch.transfers.isEmpty() && batch.transfers.size() <= 4);
+            for (ComponentTransfer transfer : batch.transfers) {
+                assert (transfer.getDestinationDeviceId().equals(batch.device));
+                assert (batched.add(transfer));
+            }
+        }
+        assert (batched.equals(new HashSet<>(transfers)));
+        assert (system.getAverageBatchSize(device(1)) > 0);
+        assert (system.getAverageBatchSize(device(2)) > 0);
+    }
+
+    @Test
+    void failedBatchReleasesEveryMember() throws InterruptedException {
+        failedBatchReleasesEveryMember(new RuntimeException("write failed"));
+    }
+
+    @Test
+    void batchFailedWithErrorReleasesEveryMember() throws InterruptedException {
+        failedBatchReleasesEveryMember(new Error("device lost"));
+    }
+
+    private static void failedBatchReleasesEveryMember(Throwable failure)
+            throws InterruptedException {
+        int components = 4;
+        StorageSystemInstance system = system(components);
+        Recorder recorder = new Recorder(failure);
+        // the batch is performed once full, long before the window passes
+        system.setBatchablePerformer(device(1), recorder, 1, TimeUnit.SECONDS, components);
+        List<ComponentTransfer> transfers = new ArrayList<>();
+        for (int comp = 0; comp < components; comp++)
+            transfers.add(transfer(100 + comp, 3, 1));
+
+        Map<ComponentTransfer, Object> outcomes = executeConcurrently(system, transfers);
+        List<Batch> batches = recorder.batches();
+        assert (batches.get(0).transfers.size() == components);
+        // a transfer reported done before the failure has been executed
+        for (ComponentTransfer transfer : transfers) {
+            if (recorder.done.contains(transfer))
+                assert (outcomes.get(transfer) == TransferResult.EXECUTED);
+            else
+                assert (outcomes.get(transfer) == failure) : outcomes.get(transfer);
+        }
+        assert (recorder.done.size() == 1);
+
+        // the device goes on batching with another leader
+        assert (system.tryExecute(transfer(200, -1, 1)) == TransferResult.EXECUTED);
+        assert (recorder.batches().size() == 2);
+    }
+}
@@ -0,0 +1,172 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.WaitStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ChainingTests extends Generators {
+
+    // logs its phases; prepare() returns only once released
+    private static final class LoggedTransfer extends HeldPrepare {
+        private final String name;
+        private final List<String> log;
+
+        LoggedTransfer(String name, List<String> log, int comp, int source, int dest) {
+            super(component(comp), device(source), device(dest));
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void prepare() {
+            super.prepare();
+            log.add(name + " prepared");
+        }
+
+        @Override
+        public void perform() {
+            log.add(name + " performed");
+        }
+    }
+
+    private static Thread start(StorageSystemInstance system, ComponentTransfer transfer,
+                                AtomicReference<TransferResult> result) {
+        Thread thread = new Thread(() -> result.set(system.tryExecute(transfer)));
+        thread.start();
+        return thread;
+    }
+
+    private static StorageSystemInstance chainingSystem(Map<DeviceId, Integer> capacities,
+                                                        Map<ComponentId, DeviceId> placement,
+                                                        WaitStrategy strategy) {
+        StorageSystemInstance system = (StorageSystemInstance) StorageSystemFactory.newSystem(
+                capacities, placement, strategy);
+        system.setTransferChaining(true);
+        return system;
+    }
+
+    @Test
+    void chainedTransferFollowsPrevious() throws InterruptedException {
+        chainedTransferFollowsPrevious(WaitStrategy.BLOCKING);
+    }
+
+    // the scenarios below are run with other wait strategies too
+    static void chainedTransferFollowsPrevious(WaitStrategy strategy)
+            throws InterruptedException {
+        StorageSystemInstance system = chainingSystem(
+                Map.of(device(1), 1, device(2), 1, device(3), 1),
+                Map.of(component(101), device(1)), strategy);
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        LoggedTransfer first = new LoggedTransfer("first", log, 101, 1, 2);
+        LoggedTransfer second = new LoggedTransfer("second", log, 101, 2, 3);
+        second.release();
+        AtomicReference<TransferResult> firstResult = new AtomicReference<>();
+        AtomicReference<TransferResult> secondResult = new AtomicReference<>();
+        Thread t1 = start(system, first, firstResult);
+        assert (first.awaitPrepareStarted());
+        // would fail with ComponentIsBeingOperatedOn without chaining
+        Thread t2 = start(system, second, secondResult);
+        Thread.sleep(100);
+        assert (t2.isAlive());
+        assert (log.isEmpty());
+
+        first.release();
+        t1.join(5000);
+        t2.join(5000);
+        assert (!t1.isAlive() && !t2.isAlive());
+        assert (firstResult.get() == TransferResult.EXECUTED);
+        assert (secondResult.get() == TransferResult.EXECUTED);
+        assert (log.equals(List.of("first prepared", "first performed",
+                "second prepared", "second performed")));
+        assert (system.getComponentPlacement().get(component(101)).equals(device(3)));
+    }
+
+    @Test
+    void chainedTransferIsCheckedAgainstPreviousPlacement() throws InterruptedException {
+        chainedTransferIsCheckedAgainstPreviousPlacement(WaitStrategy.BLOCKING);
+    }
+
+    static void chainedTransferIsCheckedAgainstPreviousPlacement(WaitStrategy strategy)
+            throws InterruptedException {
+        StorageSystemInstance system = chainingSystem(
+                Map.of(device(1), 1, device(2), 1, device(3), 1),
+                Map.of(component(101), device(1)), strategy);
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        LoggedTransfer first = new LoggedTransfer("first", log, 101, 1, 2);
+        // issued as if the component was still on device 1
+        LoggedTransfer second = new LoggedTransfer("second", log, 101, 1, 3);
+        second.release();
+        AtomicReference<TransferResult> firstResult = new AtomicReference<>();
+        AtomicReference<TransferResult> secondResult = new AtomicReference<>();
+        Thread t1 = start(system, first, firstResult);
+        assert (first.awaitPrepareStarted());
+        Thread t2 = start(system, second, secondResult);
+        Thread.sleep(100);
+        assert (t2.isAlive());
+
+        first.release();
+        t1.join(5000);
+        t2.join(5000);
+        assert (!t1.isAlive() && !t2.isAlive());
+        assert (firstResult.get() == TransferResult.EXECUTED);
+        assert (secondResult.get() == TransferResult.COMPONENT_DOES_NOT_EXIST);
+        assert (!log.contains("second prepared"));
+        assert (system.getComponentPlacement().get(component(101)).equals(device(2)));
+        // the component is no longer claimed
+        assert (system.tryExecute(transfer(101, 2, 3)) == TransferResult.EXECUTED);
+    }
+
+    @Test
+    void chainedTransferClosesCycle() throws InterruptedException {
+        chainedTransferClosesCycle(WaitStrategy.BLOCKING);
+    }
+
+    static void chainedTransferClosesCycle(WaitStrategy strategy)
+            throws InterruptedException {
+        StorageSystemInstance system = chainingSystem(
+                Map.of(device(1), 1, device(2), 1, device(3), 1),
+                Map.of(component(101), device(1), component(201), device(2)), strategy);
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        LoggedTransfer first = new LoggedTransfer("first", log, 101, 1, 3);
+        LoggedTransfer second = new LoggedTransfer("second", log, 101, 3, 2);
+        LoggedTransfer other = new LoggedTransfer("other", log, 201, 2, 3);
+        second.release();
+        other.release();
+        AtomicReference<TransferResult> firstResult = new AtomicReference<>();
+        AtomicReference<TransferResult> secondResult = new AtomicReference<>();
+        AtomicReference<TransferResult> otherResult = new AtomicReference<>();
+        Thread t1 = start(system, first, firstResult);
+        assert (first.awaitPrepareStarted());
+        Thread t2 = start(system, second, secondResult);
+        Thread.sleep(50);
+        // the slot of device 3 is reserved by the first transfer
+        Thread t3 = start(system, other, otherResult);
+        Thread.sleep(100);
+        assert (t2.isAlive() && t3.isAlive());
+        assert (log.isEmpty());
+
+        // once 101 is on device 3, the second transfer and 201 swap places
+        first.release();
+        for (Thread thread : new Thread[] {t1, t2, t3}) {
+            thread.join(5000);
+            assert (!thread.isAlive());
+        }
+        assert (firstResult.get() == TransferResult.EXECUTED);
+        assert (secondResult.get() == TransferResult.EXECUTED);
+        assert (otherResult.get() == TransferResult.EXECUTED);
+        assert (log.indexOf("first performed") < log.indexOf("second prepared"));
+        assert (system.getComponentPlacement().get(component(101)).equals(device(2)));
+        assert (system.getComponentPlacement().get(component(201)).equals(device(3)));
+    }
+}
@@ -0,0 +1,79 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.solution.DeadlockSweeper;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.WaitStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeadlockSweeperTests extends Generators {
+
+    // two full devices, each with one component
+    private static StorageSystemInstance fullSystem(WaitStrategy strategy) {
+        return (StorageSystemInstance) StorageSystemFactory.newSystem(
+                Map.of(device(1), 1, device(2), 1),
+                Map.of(component(101), device(1), component(102), device(2)), strategy);
+    }
+
+    @Test
+    void sweeperClosesCycleMissedWithoutInlineDetection() throws InterruptedException {
+        sweeperClosesCycleMissedWithoutInlineDetection(WaitStrategy.BLOCKING);
+    }
+
+    // run with other wait strategies too
+    static void sweeperClosesCycleMissedWithoutInlineDetection(WaitStrategy strategy)
+            throws InterruptedException {
+        StorageSystemInstance system = fullSystem(strategy);
+        system.setInlineCycleDetection(false);
+        UniqueCount count = new UniqueCount();
+        Thread t1 = new Thread(() -> execTransfer(system, transfer4(101, 1, 2, count)));
+        Thread t2 = new Thread(() -> execTransfer(system, transfer4(102, 2, 1, count)));
+        t1.start();
+        Thread.sleep(100);
+        t2.start();
+        Thread.sleep(100);
+
+        // nobody looked for the cycle, so both are still waiting
+        assert (count.result() == 0);
+        assert (t1.isAlive() && t2.isAlive());
+
+        AtomicInteger reported = new AtomicInteger();
+        DeadlockSweeper sweeper = system.startDeadlockSweeper(10, TimeUnit.MILLISECONDS,
+                (unblocked, sweepNanos) -> reported.addAndGet(unblocked));
+        t1.join(5000);
+        t2.join(5000);
+        sweeper.shutdown();
+
+        assert (!t1.isAlive() && !t2.isAlive());
+        assert (count.result() == 4);
+        assert (reported.get() == 2);
+        assert (sweeper.getUnblockedCount() == 2);
+        Map<ComponentId, DeviceId> placement = system.getComponentPlacement();
+        assert (placement.get(component(101)).equals(device(2)));
+        assert (placement.get(component(102)).equals(device(1)));
+    }
+
+    @Test
+    void sweepWithoutCyclesUnblocksNothing() throws InterruptedException {
+        StorageSystemInstance system = fullSystem(WaitStrategy.BLOCKING);
+        system.setInlineCycleDetection(false);
+        Thread t1 = new Thread(() -> execTransfer(system, transfer(101, 1, 2)));
+        t1.start();
+        Thread.sleep(100);
+
+        assert (system.sweep() == 0);
+        assert (t1.isAlive());
+
+        // removing the component lets the waiting one through
+        execTransfer(system, transfer(102, 2, -1));
+        t1.join(5000);
+        assert (!t1.isAlive());
+        assert (system.getComponentPlacement().get(component(101)).equals(device(2)));
+    }
+}
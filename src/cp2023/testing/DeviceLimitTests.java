@@ -0,0 +1,263 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.SizedComponentTransfer;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeviceLimitTests extends Generators {
+
+    // perform() returns only once released
+    private static final class HeldPerform extends SimpleTransfer {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        HeldPerform(int comp, int source, int dest) {
+            super(component(comp), device(source), device(dest));
+        }
+
+        @Override
+        public void perform() {
+            started.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+
+        boolean awaitPerformStarted() throws InterruptedException {
+            return started.await(5, TimeUnit.SECONDS);
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+
+    // calls in flight, together with the most there have been at once
+    private static final class InFlight {
+        private final AtomicInteger current = new AtomicInteger();
+        private final AtomicInteger most = new AtomicInteger();
+
+        void enter() {
+            int now = current.incrementAndGet();
+            most.accumulateAndGet(now, Math::max);
+        }
+
+        void leave() {
+            current.decrementAndGet();
+        }
+    }
+
+    // counts prepare() and perform() calls reading from the source and
+    // perform() calls writing to the destination
+    private static final class CountedTransfer extends SimpleTransfer {
+        private final InFlight reading;
+        private final InFlight writing;
+
+        CountedTransfer(int comp, int source, int dest, InFlight reading, InFlight writing) {
+            super(component(comp), device(source), device(dest));
+            this.reading = reading;
+            this.writing = writing;
+        }
+
+        @Override
+        public void prepare() {
+            reading.enter();
+            sleep();
+            reading.leave();
+        }
+
+        @Override
+        public void perform() {
+            reading.enter();
+            writing.enter();
+            sleep();
+            writing.leave();
+            reading.leave();
+        }
+
+        private static void sleep() {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+    }
+
+    // remembers when its perform() was called
+    private static final class SizedTransfer extends SimpleTransfer
+            implements SizedComponentTransfer {
+        private final long size;
+        private volatile long performedAt;
+
+        SizedTransfer(int comp, long size) {
+            super(component(comp), device(1), device(2));
+            this.size = size;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public void perform() {
+            performedAt = System.nanoTime();
+        }
+    }
+
+    private static Thread start(StorageSystemInstance system, ComponentTransfer transfer) {
+        Thread thread = new Thread(() -> {
+            TransferResult result = system.tryExecute(transfer);
+            assert (result == TransferResult.EXECUTED) : result;
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assert (!thread.isAlive());
+        }
+    }
+
+    // components 101, 102, ... on device 1, device 2 is empty
+    private static StorageSystemInstance system(int components) {
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        for (int comp = 0; comp < components; comp++)
+            placement.put(component(101 + comp), device(1));
+        return new StorageSystemInstance(Map.of(device(1), components, device(2), components),
+                placement);
+    }
+
+    @Test
+    void callsInFlightStayWithinLimit() throws InterruptedException {
+        StorageSystemInstance system = system(12);
+        system.setDeviceConcurrencyLimit(device(1), 3, 1);
+        system.setDeviceConcurrencyLimit(device(2), 1, 2);
+        InFlight reading = new InFlight();
+        InFlight writing = new InFlight();
+        List<Thread> threads = new ArrayList<>();
+        for (int comp = 101; comp <= 112; comp++)
+            threads.add(start(system, new CountedTransfer(comp, 1, 2, reading, writing)));
+        join(threads);
+        assert (reading.most.get() <= 3 && reading.most.get() >= 2) : reading.most;
+        assert (writing.most.get() == 2) : writing.most;
+    }
+
+    @Test
+    void cyclesThroughLimitedDevicesDoNotDeadlock() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                PermutationRounds.capacities(), PermutationRounds.placement());
+        for (DeviceId device : PermutationRounds.capacities().keySet())
+            system.setDeviceConcurrencyLimit(device, 1, 1);
+        PermutationRounds.run(system, 8);
+    }
+
+    @Test
+    void removingLimitReleasesWaiting() throws InterruptedException {
+        StorageSystemInstance system = system(2);
+        system.setDeviceConcurrencyLimit(device(2), 1, 1);
+        HeldPerform holding = new HeldPerform(101, 1, 2);
+        Thread holder = start(system, holding);
+        assert (holding.awaitPerformStarted());
+        Thread waiting = start(system, transfer(102, 1, 2));
+        waiting.join(100);
+        assert (waiting.isAlive());
+
+        system.removeDeviceConcurrencyLimit(device(2));
+        join(List.of(waiting));
+        assert (holder.isAlive());
+        holding.release();
+        join(List.of(holder));
+    }
+
+    @Test
+    void loweringLimitReleasesWaiting() throws InterruptedException {
+        StorageSystemInstance system = system(5);
+        system.setDeviceConcurrencyLimit(device(2), 1, 2);
+        List<HeldPerform> holding = List.of(new HeldPerform(101, 1, 2),
+                new HeldPerform(102, 1, 2));
+        List<Thread> holders = new ArrayList<>();
+        for (HeldPerform transfer : holding) {
+            holders.add(start(system, transfer));
+            assert (transfer.awaitPerformStarted());
+        }
+        Thread waiting = start(system, transfer(103, 1, 2));
+        waiting.join(100);
+        assert (waiting.isAlive());
+
+        // the calls running keep their slots, the waiting one takes a new one
+        system.setDeviceConcurrencyLimit(device(2), 1, 1);
+        join(List.of(waiting));
+        // and the new limit holds for those coming later
+        HeldPerform next = new HeldPerform(104, 1, 2);
+        holders.add(start(system, next));
+        assert (next.awaitPerformStarted());
+        Thread later = start(system, transfer(105, 1, 2));
+        later.join(100);
+        assert (later.isAlive());
+        next.release();
+        join(List.of(later));
+
+        holding.forEach(HeldPerform::release);
+        join(holders);
+    }
+
+    @Test
+    void bandwidthLimitSpacesTransfersAfterBurst() {
+        // 4 transfers fit in the burst, then one goes every 100 ms
+        StorageSystemInstance system = system(8);
+        system.setDeviceBandwidthLimit(device(2), 1000, 400);
+        long start = System.nanoTime();
+        List<SizedTransfer> transfers = new ArrayList<>();
+        for (int comp = 101; comp <= 108; comp++) {
+            SizedTransfer transfer = new SizedTransfer(comp, 100);
+            assert (system.tryExecute(transfer) == TransferResult.EXECUTED);
+            transfers.add(transfer);
+        }
+        long millis = TimeUnit.MILLISECONDS.toNanos(1);
+        assert (transfers.get(3).performedAt - start < 50 * millis);
+        for (int i = 4; i < transfers.size(); i++) {
+            long gap = transfers.get(i).performedAt - transfers.get(i - 1).performedAt;
+            assert (gap >= 80 * millis && gap < 500 * millis) : gap;
+        }
+        long total = transfers.get(7).performedAt - start;
+        assert (total >= 380 * millis && total < 1500 * millis) : total;
+    }
+
+    @Test
+    void removingBandwidthLimitLetsQueuedThrough() throws InterruptedException {
+        // each transfer would wait for 10 s
+        StorageSystemInstance system = system(3);
+        system.setDeviceBandwidthLimit(device(2), 10, 0);
+        List<SizedTransfer> transfers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int comp = 101; comp <= 103; comp++) {
+            SizedTransfer transfer = new SizedTransfer(comp, 100);
+            transfers.add(transfer);
+            threads.add(start(system, transfer));
+        }
+        Thread.sleep(100);
+        for (SizedTransfer transfer : transfers)
+            assert (transfer.performedAt == 0);
+
+        system.removeDeviceBandwidthLimit(device(2));
+        join(threads);
+    }
+}
@@ -0,0 +1,170 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class DeviceManagementTests extends Generators {
+
+    private static Thread start(StorageSystemInstance system, ComponentTransfer transfer) {
+        Thread thread = new Thread(() -> execTransfer(system, transfer));
+        thread.start();
+        return thread;
+    }
+
+    private static int placedOn(StorageSystemInstance system, int device) {
+        int count = 0;
+        for (DeviceId placement : system.getComponentPlacement().values())
+            if (placement.equals(device(device)))
+                count++;
+        return count;
+    }
+
+    private static boolean shrinkFails(StorageSystemInstance system, int device, int capacity) {
+        try {
+            system.resizeDevice(device(device), capacity);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    @Test
+    void shrinkCountsReservedSlotsAndKeepsWaiters() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 2, device(2), 2),
+                Map.of(component(101), device(1), component(102), device(1),
+                        component(201), device(2)));
+        // reserves the last free slot of device 2 and holds it
+        HeldPrepare held = new HeldPrepare(component(101), device(1), device(2));
+        Thread t1 = start(system, held);
+        assert (held.awaitPrepareStarted());
+        Thread t2 = start(system, transfer(102, 1, 2));
+        Thread.sleep(100);
+
+        assert (shrinkFails(system, 2, 1));
+        assert (t2.isAlive());
+
+        held.release();
+        t1.join(5000);
+        assert (!t1.isAlive());
+        assert (t2.isAlive());
+
+        // the slot freed by removing a component goes to the waiting one
+        assert (system.tryExecute(transfer(201, 2, -1)) == TransferResult.EXECUTED);
+        t2.join(5000);
+        assert (!t2.isAlive());
+        assert (placedOn(system, 2) == 2);
+        assert (shrinkFails(system, 2, 1));
+    }
+
+    @Test
+    void shrunkDeviceMakesTransfersWait() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 2, device(2), 3),
+                Map.of(component(101), device(1), component(201), device(2)));
+        system.resizeDevice(device(2), 1);
+        assert (system.getDeviceCapacities().get(device(2)) == 1);
+
+        Thread t1 = start(system, transfer(101, 1, 2));
+        Thread.sleep(100);
+        assert (t1.isAlive());
+
+        assert (system.tryExecute(transfer(201, 2, -1)) == TransferResult.EXECUTED);
+        t1.join(5000);
+        assert (!t1.isAlive());
+        assert (placedOn(system, 2) == 1);
+    }
+
+    @Test
+    void growingWakesWaiters() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 2, device(2), 1),
+                Map.of(component(101), device(1), component(102), device(1),
+                        component(201), device(2)));
+        Thread t1 = start(system, transfer(101, 1, 2));
+        Thread.sleep(50);
+        Thread t2 = start(system, transfer(102, 1, 2));
+        Thread.sleep(100);
+        assert (t1.isAlive() && t2.isAlive());
+
+        system.resizeDevice(device(2), 2);
+        t1.join(5000);
+        assert (!t1.isAlive());
+        Thread.sleep(100);
+        assert (t2.isAlive());
+
+        system.resizeDevice(device(2), 3);
+        t2.join(5000);
+        assert (!t2.isAlive());
+        assert (placedOn(system, 2) == 3);
+    }
+
+    @Test
+    void addedDeviceAcceptsTransfers() {
+        StorageSystemInstance system = new StorageSystemInstance(Map.of(device(1), 1),
+                Map.of(component(101), device(1)));
+        assert (system.tryExecute(transfer(101, 1, 2))
+                == TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST);
+        system.addDevice(device(2), 1);
+        assert (system.tryExecute(transfer(101, 1, 2)) == TransferResult.EXECUTED);
+        try {
+            system.addDevice(device(2), 1);
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    void drainMovesComponentsQueuedToAndLeavingDevice() throws InterruptedException {
+        Map<DeviceId, Integer> capacities = new HashMap<>();
+        capacities.put(device(1), 2);
+        capacities.put(device(2), 2);
+        capacities.put(device(3), 3);
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        placement.put(component(101), device(1));
+        placement.put(component(102), device(1));
+        placement.put(component(201), device(2));
+        placement.put(component(202), device(2));
+        StorageSystemInstance system = new StorageSystemInstance(capacities, placement);
+
+        // both wait for device 1, then one of them takes the slot of 102
+        Thread t1 = start(system, transfer(201, 2, 1));
+        Thread.sleep(50);
+        Thread t2 = start(system, transfer(202, 2, 1));
+        Thread.sleep(50);
+        HeldPrepare leaving = new HeldPrepare(component(102), device(1), device(3));
+        Thread t3 = start(system, leaving);
+        assert (leaving.awaitPrepareStarted());
+
+        Thread drain = new Thread(() -> system.drainAndRemoveDevice(device(1),
+                SimpleTransfer::new));
+        drain.start();
+        Thread.sleep(100);
+        // the device is not accepting transfers any more
+        assert (system.tryExecute(transfer(301, -1, 1))
+                == TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST);
+        // and cannot be removed while 102 is leaving it, which the drain
+        // waits for without polling
+        assert (drain.getState() == Thread.State.WAITING);
+        assert (system.getDeviceCapacities().containsKey(device(1)));
+
+        leaving.release();
+        for (Thread thread : new Thread[] {t1, t2, t3, drain}) {
+            thread.join(5000);
+            assert (!thread.isAlive());
+        }
+        assert (!system.getDeviceCapacities().containsKey(device(1)));
+        assert (placedOn(system, 1) == 0);
+        assert (placedOn(system, 2) + placedOn(system, 3) == 4);
+        assert (placedOn(system, 2) <= 2 && placedOn(system, 3) <= 3);
+        assert (system.getComponentPlacement().get(component(102)).equals(device(3)));
+    }
+}
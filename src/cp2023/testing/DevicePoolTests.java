@@ -0,0 +1,110 @@
+package cp2023.testing;
+
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.WaitForGraphSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class DevicePoolTests extends Generators {
+
+    private static PooledTransfer pooled(int comp, int source, String pool) {
+        return new PooledTransfer(component(comp), source == -1 ? null : device(source), pool);
+    }
+
+    // devices 1, 2 and 3 with one slot and one component each, pool of 2 and 3
+    private static StorageSystemInstance fullPool() {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 1, device(3), 1),
+                Map.of(component(101), device(1), component(201), device(2),
+                        component(301), device(3)));
+        system.defineDevicePool("pool", List.of(device(2), device(3)));
+        return system;
+    }
+
+    @Test
+    void memberWithMostFreeSlotsIsChosen() {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 3, device(3), 3),
+                Map.of(component(101), device(1), component(201), device(2),
+                        component(202), device(2), component(301), device(3)));
+        system.defineDevicePool("pool", List.of(device(2), device(3)));
+
+        PooledTransfer first = pooled(101, 1, "pool");
+        assert (system.tryExecute(first) == TransferResult.EXECUTED);
+        assert (first.getDestinationDeviceId().equals(device(3)));
+        assert (system.getComponentPlacement().get(component(101)).equals(device(3)));
+
+        PooledTransfer second = pooled(401, -1, "pool");
+        assert (system.tryExecute(second) == TransferResult.EXECUTED);
+        assert (second.getDestinationDeviceId().equals(device(2)));
+    }
+
+    @Test
+    void sourceIsNotAmongCandidates() throws InterruptedException {
+        StorageSystemInstance system = fullPool();
+        system.defineDevicePool("single", List.of(device(2)));
+        assert (system.tryExecute(pooled(201, 2, "single"))
+                == TransferResult.COMPONENT_DOES_NOT_NEED_TRANSFER);
+        assert (system.tryExecute(pooled(201, 2, "missing"))
+                == TransferResult.DEVICE_POOL_DOES_NOT_EXIST);
+        // 3 is the only candidate, so the transfer swaps with 301
+        Thread swap = new Thread(() -> execTransfer(system, transfer(301, 3, 2)));
+        swap.start();
+        PooledTransfer pooled = pooled(201, 2, "pool");
+        assert (system.tryExecute(pooled) == TransferResult.EXECUTED);
+        assert (pooled.getDestinationDeviceId().equals(device(3)));
+        swap.join(5000);
+        assert (!swap.isAlive());
+        assert (system.getComponentPlacement().get(component(301)).equals(device(2)));
+    }
+
+    @Test
+    void waiterIsWokenBySlotFreedOnAnyMember() throws InterruptedException {
+        for (int freed : new int[] {2, 3}) {
+            StorageSystemInstance system = fullPool();
+            PooledTransfer pooled = pooled(101, 1, "pool");
+            Thread waiting = new Thread(() -> execTransfer(system, pooled));
+            waiting.start();
+            Thread.sleep(100);
+            assert (waiting.isAlive());
+            assert (pooled.getDestinationDeviceId() == null);
+
+            assert (system.tryExecute(transfer(freed * 100 + 1, freed, -1))
+                    == TransferResult.EXECUTED);
+            waiting.join(5000);
+            assert (!waiting.isAlive());
+            assert (pooled.getDestinationDeviceId().equals(device(freed)));
+            assert (system.getComponentPlacement().get(component(101)).equals(device(freed)));
+            // the transfer no longer waits for the other member
+            for (WaitForGraphSnapshot.DeviceInfo device : system.snapshotWaitForGraph().getDevices())
+                assert (device.getAwaiting().isEmpty());
+        }
+    }
+
+    @Test
+    void waiterTakesSlotBeingVacatedOnAnyMember() throws InterruptedException {
+        StorageSystemInstance system = fullPool();
+        PooledTransfer pooled = pooled(101, 1, "pool");
+        Thread waiting = new Thread(() -> execTransfer(system, pooled));
+        waiting.start();
+        Thread.sleep(100);
+
+        HeldPrepare leaving = new HeldPrepare(component(301), device(3), null);
+        Thread removal = new Thread(() -> execTransfer(system, leaving));
+        removal.start();
+        assert (leaving.awaitPrepareStarted());
+        // bound as soon as 301 started leaving, performed once it has prepared
+        Thread.sleep(100);
+        assert (device(3).equals(pooled.getDestinationDeviceId()));
+        assert (waiting.isAlive());
+
+        leaving.release();
+        waiting.join(5000);
+        removal.join(5000);
+        assert (!waiting.isAlive() && !removal.isAlive());
+        assert (system.getComponentPlacement().get(component(101)).equals(device(3)));
+    }
+}
@@ -0,0 +1,113 @@
+package cp2023.testing;
+
+import cp2023.base.TransferResult;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.Engine;
+import cp2023.solution.EventLoopStorageSystem;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EventLoopTests extends Generators {
+
+    private static Set<Thread> schedulerThreads() {
+        Set<Thread> schedulers = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if (thread.getName().equals("storage-scheduler") && thread.isAlive())
+                schedulers.add(thread);
+        return schedulers;
+    }
+
+    // schedulers of systems of other tests may still be exiting, so the one
+    // started since is told apart by identity rather than by count
+    private static Thread startedScheduler(Set<Thread> before) {
+        Set<Thread> started = schedulerThreads();
+        started.removeAll(before);
+        assert (started.size() == 1) : started;
+        return started.iterator().next();
+    }
+
+    private static boolean exits(Thread scheduler) throws InterruptedException {
+        scheduler.join(5000);
+        return !scheduler.isAlive();
+    }
+
+    private static boolean rejectedAsShutDown(EventLoopStorageSystem system) {
+        try {
+            system.execute(transfer(101, 1, 2));
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        } catch (TransferException e) {
+            return false;
+        }
+    }
+
+    @Test
+    void path3() throws InterruptedException {
+        BasicTests.path3(basicSystem3(2, Engine.EVENT_LOOP));
+    }
+
+    @Test
+    void permutationRounds() throws InterruptedException {
+        EventLoopStorageSystem system = new EventLoopStorageSystem(
+                PermutationRounds.capacities(), PermutationRounds.placement());
+        PermutationRounds.run(system, 3);
+        system.shutdown();
+    }
+
+    @Test
+    void transfersAfterShutdownFail() throws InterruptedException {
+        Set<Thread> before = schedulerThreads();
+        EventLoopStorageSystem system = new EventLoopStorageSystem(
+                Map.of(device(1), 1, device(2), 1), Map.of(component(101), device(1)));
+        Thread scheduler = startedScheduler(before);
+        system.shutdown();
+        assert (exits(scheduler));
+        assert (rejectedAsShutDown(system));
+        try {
+            system.tryExecute(transfer(101, 1, 2));
+            assert (false);
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // shutting down again changes nothing
+        system.shutdown();
+        assert (rejectedAsShutDown(system));
+    }
+
+    @Test
+    void shutdownLetsTransfersInFlightFinish() throws InterruptedException {
+        Set<Thread> before = schedulerThreads();
+        EventLoopStorageSystem system = new EventLoopStorageSystem(
+                Map.of(device(1), 1, device(2), 1, device(3), 1),
+                Map.of(component(101), device(1), component(201), device(2)));
+        Thread scheduler = startedScheduler(before);
+        HeldPrepare held = new HeldPrepare(component(101), device(1), device(3));
+        AtomicReference<TransferResult> heldResult = new AtomicReference<>();
+        AtomicReference<TransferResult> queuedResult = new AtomicReference<>();
+        Thread t1 = new Thread(() -> heldResult.set(system.tryExecute(held)));
+        // takes the slot of 101, but cannot perform before 101 has prepared
+        Thread t2 = new Thread(() -> queuedResult.set(system.tryExecute(transfer(201, 2, 1))));
+        t1.start();
+        assert (held.awaitPrepareStarted());
+        t2.start();
+        Thread.sleep(100);
+
+        system.shutdown();
+        assert (rejectedAsShutDown(system));
+        Thread.sleep(100);
+        assert (scheduler.isAlive());
+
+        held.release();
+        t1.join(5000);
+        t2.join(5000);
+        assert (!t1.isAlive() && !t2.isAlive());
+        assert (heldResult.get() == TransferResult.EXECUTED);
+        assert (queuedResult.get() == TransferResult.EXECUTED);
+        assert (exits(scheduler));
+    }
+}
@@ -0,0 +1,96 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferEvent;
+import cp2023.base.TransferListener;
+import cp2023.base.TransferResult;
+import cp2023.solution.AccessTracker;
+import cp2023.solution.EvictionPolicy;
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EvictionTests {
+
+    // counts down once the component evicted from device 0 to device 1 has
+    // been performed there, and so has been counted and placed
+    private static final class EvictionDone implements TransferListener {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void transferEvent(TransferEvent event) {
+            if (event.getType() == TransferEvent.Type.PERFORMED
+                    && DeviceId.of(0).equals(event.getSourceDeviceId())
+                    && DeviceId.of(1).equals(event.getDestinationDeviceId()))
+                done.countDown();
+        }
+    }
+
+    // device 0 is full with components 0 and 1, device 1 is the empty spill
+    // device and component 2 on device 2 is moved to device 0
+    private static void evictOne(StorageSystemInstance system, ComponentId expectedVictim)
+            throws InterruptedException {
+        EvictionDone eviction = new EvictionDone();
+        system.addTransferListener(eviction);
+        assert (system.tryExecute(new SimpleTransfer(ComponentId.of(2), DeviceId.of(2),
+                DeviceId.of(0))) == TransferResult.EXECUTED);
+        // the eviction finishes on its own, maybe after the transfer it made room for
+        assert (eviction.done.await(5, TimeUnit.SECONDS));
+        system.removeTransferListener(eviction);
+        assert (system.getEvictionCount(DeviceId.of(0)) == 1);
+        Map<ComponentId, DeviceId> placement = system.getComponentPlacement();
+        assert (placement.get(ComponentId.of(2)).equals(DeviceId.of(0)));
+        assert (placement.get(expectedVictim).equals(DeviceId.of(1)));
+    }
+
+    private static StorageSystemInstance system() {
+        return new StorageSystemInstance(
+                Map.of(DeviceId.of(0), 2, DeviceId.of(1), 2, DeviceId.of(2), 1),
+                Map.of(ComponentId.of(0), DeviceId.of(0), ComponentId.of(1), DeviceId.of(0),
+                        ComponentId.of(2), DeviceId.of(2)));
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() throws InterruptedException {
+        StorageSystemInstance system = system();
+        system.setEviction(DeviceId.of(0), DeviceId.of(1), EvictionPolicy.leastRecentlyUsed(),
+                SimpleTransfer::new);
+        system.recordAccess(ComponentId.of(0));
+        system.recordAccess(ComponentId.of(1));
+        system.recordAccess(ComponentId.of(0));
+        evictOne(system, ComponentId.of(1));
+    }
+
+    @Test
+    void leastFrequentlyUsedIsEvicted() throws InterruptedException {
+        StorageSystemInstance system = system();
+        AccessTracker tracker = new AccessTracker(1 << 10, Long.MAX_VALUE);
+        system.setAccessTracker(tracker);
+        system.setEviction(DeviceId.of(0), DeviceId.of(1),
+                EvictionPolicy.leastFrequentlyUsed(tracker), SimpleTransfer::new);
+        system.recordAccess(ComponentId.of(1));
+        system.recordAccess(ComponentId.of(1));
+        system.recordAccess(ComponentId.of(0));
+        evictOne(system, ComponentId.of(0));
+    }
+
+    // the policy forgets a component as it leaves the device, so it comes
+    // back as never accessed
+    @Test
+    void leastRecentlyUsedForgetsComponentsLeavingTheDevice() throws InterruptedException {
+        StorageSystemInstance system = system();
+        system.setEviction(DeviceId.of(0), DeviceId.of(1), EvictionPolicy.leastRecentlyUsed(),
+                SimpleTransfer::new);
+        system.recordAccess(ComponentId.of(0));
+        system.recordAccess(ComponentId.of(1));
+        assert (system.tryExecute(new SimpleTransfer(ComponentId.of(1), DeviceId.of(0),
+                DeviceId.of(1))) == TransferResult.EXECUTED);
+        assert (system.tryExecute(new SimpleTransfer(ComponentId.of(1), DeviceId.of(1),
+                DeviceId.of(0))) == TransferResult.EXECUTED);
+        evictOne(system, ComponentId.of(1));
+    }
+}
@@ -0,0 +1,85 @@
+package cp2023.testing;
+
+import cp2023.base.TransferEvent;
+import cp2023.base.TransferListener;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FastAdmissionTests extends Generators {
+
+    private static final class AdmissionCount implements TransferListener {
+        private final AtomicInteger[] counts =
+                new AtomicInteger[TransferEvent.AdmissionPath.values().length];
+
+        AdmissionCount() {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = new AtomicInteger();
+        }
+
+        @Override
+        public void transferEvent(TransferEvent event) {
+            if (event.getType() == TransferEvent.Type.ADMITTED)
+                counts[event.getAdmissionPath().ordinal()].incrementAndGet();
+        }
+
+        int of(TransferEvent.AdmissionPath path) {
+            return counts[path.ordinal()].get();
+        }
+
+        // events are delivered asynchronously
+        boolean await(TransferEvent.AdmissionPath path) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (of(path) == 0 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            return of(path) > 0;
+        }
+    }
+
+    @Test
+    void fastAdmissionIsOffByDefault() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 1),
+                Map.of(component(101), device(1)));
+        AdmissionCount admissions = new AdmissionCount();
+        system.addTransferListener(admissions);
+        assert (system.tryExecute(transfer(101, 1, 2)) == TransferResult.EXECUTED);
+        assert (admissions.await(TransferEvent.AdmissionPath.FREE_SLOT));
+        assert (admissions.of(TransferEvent.AdmissionPath.FAST) == 0);
+
+        system.setFastAdmission(true);
+        assert (system.tryExecute(transfer(101, 2, 1)) == TransferResult.EXECUTED);
+        assert (admissions.await(TransferEvent.AdmissionPath.FAST));
+        system.removeTransferListener(admissions);
+    }
+
+    // fast, queued and cyclic admissions mixed on the same devices
+    @Test
+    void mixedAdmissionsWithFastPath() throws InterruptedException {
+        AdmissionCount admissions = permutationRounds(true, 1);
+        assert (admissions.await(TransferEvent.AdmissionPath.FAST));
+        assert (admissions.await(TransferEvent.AdmissionPath.CYCLE));
+    }
+
+    @Test
+    void mixedAdmissionsWithoutFastPath() throws InterruptedException {
+        AdmissionCount admissions = permutationRounds(false, 2);
+        assert (admissions.await(TransferEvent.AdmissionPath.CYCLE));
+        assert (admissions.of(TransferEvent.AdmissionPath.FAST) == 0);
+    }
+
+    private static AdmissionCount permutationRounds(boolean fastAdmission, long seed)
+            throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                PermutationRounds.capacities(), PermutationRounds.placement());
+        system.setFastAdmission(fastAdmission);
+        AdmissionCount admissions = new AdmissionCount();
+        system.addTransferListener(admissions);
+        PermutationRounds.run(system, seed);
+        return admissions;
+    }
+}
@@ -0,0 +1,46 @@
+package cp2023.testing;
+
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+public class FlatCombiningTests extends Generators {
+
+    private static StorageSystemInstance roundsSystem() {
+        return new StorageSystemInstance(PermutationRounds.capacities(),
+                PermutationRounds.placement());
+    }
+
+    @Test
+    void combiningIsOffByDefault() throws InterruptedException {
+        StorageSystemInstance system = roundsSystem();
+        PermutationRounds.run(system, 4);
+        assert (system.getCombinerPassCount() == 0);
+        assert (system.getCombinedOperationCount() == 0);
+    }
+
+    @Test
+    void path3WithCombining() throws InterruptedException {
+        StorageSystemInstance system = (StorageSystemInstance) basicSystem3(2);
+        system.setFlatCombining(true);
+        BasicTests.path3(system);
+        assert (system.getCombinerPassCount() > 0);
+    }
+
+    @Test
+    void permutationRoundsWithCombining() throws InterruptedException {
+        StorageSystemInstance system = roundsSystem();
+        system.setFlatCombining(true);
+        PermutationRounds.run(system, 5);
+        assert (system.getCombinerPassCount() > 0);
+        assert (system.getCombinedOperationCount() >= system.getCombinerPassCount());
+    }
+
+    @Test
+    void permutationRoundsWithCombiningAndFastAdmission() throws InterruptedException {
+        StorageSystemInstance system = roundsSystem();
+        system.setFlatCombining(true);
+        system.setFastAdmission(true);
+        PermutationRounds.run(system, 6);
+        assert (system.getCombinerPassCount() > 0);
+    }
+}
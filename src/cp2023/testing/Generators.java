@@ -5,19 +5,22 @@ import cp2023.base.ComponentTransfer;
 import cp2023.base.DeviceId;
 import cp2023.base.StorageSystem;
 import cp2023.exceptions.TransferException;
+import cp2023.solution.Engine;
 import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.WaitForGraphSnapshot;
 
 import java.util.HashMap;
 import java.util.Objects;
 
 public class Generators {
     static StorageSystem basicSystem1() {
-        DeviceId dev1 = new DeviceId(1);
-        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev1 = DeviceId.of(1);
+        DeviceId dev2 = DeviceId.of(2);
 
-        ComponentId comp1 = new ComponentId(101);
-        ComponentId comp2 = new ComponentId(102);
-        ComponentId comp3 = new ComponentId(103);
+        ComponentId comp1 = ComponentId.of(101);
+        ComponentId comp2 = ComponentId.of(102);
+        ComponentId comp3 = ComponentId.of(103);
 
         HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
         deviceCapacities.put(dev1, 2);
@@ -33,12 +36,12 @@ public class Generators {
     }
 
     static StorageSystem basicSystem2() {
-        DeviceId dev1 = new DeviceId(1);
-        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev1 = DeviceId.of(1);
+        DeviceId dev2 = DeviceId.of(2);
 
-        ComponentId comp1 = new ComponentId(101);
-        ComponentId comp2 = new ComponentId(102);
-        ComponentId comp3 = new ComponentId(103);
+        ComponentId comp1 = ComponentId.of(101);
+        ComponentId comp2 = ComponentId.of(102);
+        ComponentId comp3 = ComponentId.of(103);
 
         HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
         deviceCapacities.put(dev1, 2);
@@ -54,27 +57,31 @@ public class Generators {
     }
 
     static StorageSystem basicSystem3(int size) {
+        return basicSystem3(size, Engine.LOCK_BASED);
+    }
+
+    static StorageSystem basicSystem3(int size, Engine engine) {
         HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>();
         HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>();
 
         for (int i = 1; i <= size; i++) {
-            DeviceId dev = new DeviceId(i);
-            ComponentId comp1 = new ComponentId(100 + i);
-            ComponentId comp2 = new ComponentId(200 + i);
+            DeviceId dev = DeviceId.of(i);
+            ComponentId comp1 = ComponentId.of(100 + i);
+            ComponentId comp2 = ComponentId.of(200 + i);
             deviceCapacities.put(dev, 2);
             initialComponentMapping.put(comp1, dev);
             initialComponentMapping.put(comp2, dev);
         }
 
-        return StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+        return StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping, engine);
     }
 
     static DeviceId device(int id) {
-        return new DeviceId(id);
+        return DeviceId.of(id);
     }
 
     static ComponentId component(int id) {
-        return new ComponentId(id);
+        return ComponentId.of(id);
     }
 
     static ComponentTransfer transfer(int comp, int source, int dest) {
@@ -101,6 +108,13 @@ public class Generators {
                 (dest == -1) ? null : Generators.device(dest), callback);
     }
 
+    // transfers waiting for a slot in a snapshot of the waiting graph
+    static long queuedTransfers(StorageSystemInstance system) {
+        return system.snapshotWaitForGraph().getTransfers().stream()
+                .filter(transfer -> transfer.getPhase() == WaitForGraphSnapshot.Phase.QUEUED)
+                .count();
+    }
+
     static void execTransfer(StorageSystem system, ComponentTransfer transfer) {
         try {
             system.execute(transfer);
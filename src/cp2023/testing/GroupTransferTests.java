@@ -0,0 +1,183 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.exceptions.ComponentDoesNotExist;
+import cp2023.exceptions.ComponentIsBeingOperatedOn;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.WaitForGraphSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class GroupTransferTests extends Generators {
+
+    private static final class FailingPrepare extends SimpleTransfer {
+        FailingPrepare(ComponentId componentId, DeviceId source, DeviceId target) {
+            super(componentId, source, target);
+        }
+
+        @Override
+        public void prepare() {
+            throw new IllegalStateException("prepare failed");
+        }
+    }
+
+    private static final class FailingPerform extends SimpleTransfer {
+        FailingPerform(ComponentId componentId, DeviceId source, DeviceId target) {
+            super(componentId, source, target);
+        }
+
+        @Override
+        public void perform() {
+            throw new IllegalStateException("perform failed");
+        }
+    }
+
+    // executes the group in another thread, so that a group that never
+    // finishes fails the test; returns what the group has thrown, if anything
+    private static Throwable executeGroup(StorageSystemInstance system,
+                                          List<ComponentTransfer> transfers)
+            throws InterruptedException {
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                system.executeGroup(transfers);
+            } catch (TransferException | RuntimeException e) {
+                thrown.set(e);
+            }
+        });
+        thread.start();
+        thread.join(5000);
+        assert (!thread.isAlive());
+        return thrown.get();
+    }
+
+    private static DeviceId placement(StorageSystemInstance system, int component) {
+        return system.getComponentPlacement().get(component(component));
+    }
+
+    private static int freeSlots(StorageSystemInstance system, int device) {
+        for (WaitForGraphSnapshot.DeviceInfo info : system.snapshotWaitForGraph().getDevices())
+            if (info.getDeviceId().equals(device(device)))
+                return info.getFreeSlots();
+        throw new IllegalArgumentException("no device " + device);
+    }
+
+    @Test
+    void groupSwapsComponentsOfFullDevices() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 1),
+                Map.of(component(101), device(1), component(201), device(2)));
+        UniqueCount count = new UniqueCount();
+        Throwable thrown = executeGroup(system,
+                List.of(transfer4(101, 1, 2, count), transfer4(201, 2, 1, count)));
+        assert (thrown == null);
+        assert (count.result() == 4);
+        assert (placement(system, 101).equals(device(2)));
+        assert (placement(system, 201).equals(device(1)));
+    }
+
+    @Test
+    void rejectedTransferCancelsGroup() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 2, device(2), 2),
+                Map.of(component(101), device(1), component(201), device(2)));
+        UniqueCount count = new UniqueCount();
+        Throwable thrown = executeGroup(system,
+                List.of(transfer4(101, 1, 2, count), transfer4(999, 1, 2, count)));
+        assert (thrown instanceof ComponentDoesNotExist);
+        thrown = executeGroup(system,
+                List.of(transfer4(101, 1, 2, count), transfer4(101, 1, -1, count)));
+        assert (thrown instanceof ComponentIsBeingOperatedOn);
+        assert (count.result() == 0);
+
+        // nothing is left claimed or reserved
+        assert (freeSlots(system, 2) == 1);
+        assert (system.tryExecute(transfer(101, 1, 2)) == TransferResult.EXECUTED);
+        assert (placement(system, 101).equals(device(2)));
+    }
+
+    @Test
+    void failedPrepareRollsGroupBack() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 1, device(3), 3),
+                Map.of(component(101), device(1), component(201), device(2),
+                        component(301), device(3)));
+        // waits for device 2 and is given the slot of 201 by the group
+        Thread outsider = new Thread(() -> execTransfer(system, transfer(301, 3, 2)));
+        outsider.start();
+        Thread.sleep(100);
+
+        // 201 takes the slot of 101, but fails to prepare
+        Throwable thrown = executeGroup(system, List.of(transfer(101, 1, 3),
+                new FailingPrepare(component(201), device(2), device(1))));
+        assert (thrown instanceof RuntimeException);
+        assert (thrown.getCause() instanceof IllegalStateException);
+        assert (placement(system, 101).equals(device(1)));
+        assert (placement(system, 201).equals(device(2)));
+        // the slot reserved by 101 is back, 301 has left device 3 ...
+        assert (freeSlots(system, 3) == 3);
+        // ... but has to wait until there is room on device 2 again
+        Thread.sleep(100);
+        assert (outsider.isAlive());
+
+        assert (system.tryExecute(transfer(201, 2, -1)) == TransferResult.EXECUTED);
+        outsider.join(5000);
+        assert (!outsider.isAlive());
+        assert (placement(system, 301).equals(device(2)));
+        assert (system.tryExecute(transfer(101, 1, 3)) == TransferResult.EXECUTED);
+    }
+
+    @Test
+    void failedPrepareWithdrawsWaitingTransfers() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 1, device(3), 1),
+                Map.of(component(101), device(1), component(201), device(2)));
+        // 101 waits for device 2 when 301 fails
+        Throwable thrown = executeGroup(system, List.of(transfer(101, 1, 2),
+                new FailingPrepare(component(301), null, device(3))));
+        assert (thrown instanceof RuntimeException);
+        assert (thrown.getCause() instanceof IllegalStateException);
+        for (WaitForGraphSnapshot.DeviceInfo info : system.snapshotWaitForGraph().getDevices())
+            assert (info.getAwaiting().isEmpty() && info.getLeaving().isEmpty());
+        assert (freeSlots(system, 3) == 1);
+
+        // the freed slot is not taken by the withdrawn transfer
+        assert (system.tryExecute(transfer(201, 2, -1)) == TransferResult.EXECUTED);
+        assert (placement(system, 101).equals(device(1)));
+        assert (!system.getComponentPlacement().containsKey(component(301)));
+        assert (system.tryExecute(transfer(101, 1, 2)) == TransferResult.EXECUTED);
+    }
+
+    // the first transfer of a group is performed by the calling thread, the
+    // others by helpers; the group ends whichever of them throws
+    @Test
+    void failedPerformEndsGroup() throws InterruptedException {
+        for (int failing = 0; failing < 3; failing++) {
+            StorageSystemInstance system = new StorageSystemInstance(
+                    Map.of(device(1), 1, device(2), 1, device(3), 2),
+                    Map.of(component(101), device(1), component(201), device(2)));
+            List<ComponentTransfer> transfers = List.of(
+                    failing != 1 ? new FailingPerform(component(101), device(1), device(3))
+                            : transfer(101, 1, 3),
+                    failing != 0 ? new FailingPerform(component(201), device(2), device(3))
+                            : transfer(201, 2, 3));
+            Throwable thrown = executeGroup(system, transfers);
+            assert (thrown instanceof RuntimeException);
+            assert (thrown.getCause() instanceof IllegalStateException);
+            assert (thrown.getCause().getSuppressed().length == (failing == 2 ? 1 : 0));
+
+            // the components are no longer operated on
+            assert (placement(system, 101).equals(device(3)));
+            assert (placement(system, 201).equals(device(3)));
+            assert (system.tryExecute(transfer(101, 3, 1)) == TransferResult.EXECUTED);
+            assert (system.tryExecute(transfer(201, 3, 2)) == TransferResult.EXECUTED);
+        }
+    }
+}
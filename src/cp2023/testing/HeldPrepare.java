@@ -0,0 +1,35 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// prepare() returns only once released
+public class HeldPrepare extends SimpleTransfer {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    public HeldPrepare(ComponentId componentId, DeviceId source, DeviceId target) {
+        super(componentId, source, target);
+    }
+
+    @Override
+    public void prepare() {
+        started.countDown();
+        try {
+            released.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    public boolean awaitPrepareStarted() throws InterruptedException {
+        return started.await(5, TimeUnit.SECONDS);
+    }
+
+    public void release() {
+        released.countDown();
+    }
+}
@@ -0,0 +1,62 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.solution.SimulationReport;
+import cp2023.solution.Simulator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// waiting graphs this large would need a thread per transfer with execute(),
+// so they are replayed by the simulator
+public class LongChainTests {
+    private static final int LENGTH = 100_000;
+    private static final long PREPARE = 10;
+    private static final long PERFORM = 20;
+
+    // devices 0..LENGTH with one slot, component i on device i
+    private static Simulator fullDevices() {
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(LENGTH + 1);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(LENGTH + 1);
+        for (int i = 0; i <= LENGTH; i++) {
+            deviceCapacities.put(DeviceId.of(i), 1);
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i));
+        }
+        return new Simulator(deviceCapacities, initialComponentMapping, 1_000_000);
+    }
+
+    // transfer of component i to device i - 1 waiting for each i > 0, then
+    // the given transfer of component 0 a nanosecond later
+    private static List<Simulator.TraceEntry> waitingChainThen(DeviceId destination) {
+        List<Simulator.TraceEntry> trace = new ArrayList<>(LENGTH + 1);
+        for (int i = 1; i <= LENGTH; i++)
+            trace.add(new Simulator.TraceEntry(0, ComponentId.of(i), DeviceId.of(i),
+                    DeviceId.of(i - 1), PREPARE, PERFORM));
+        trace.add(new Simulator.TraceEntry(1, ComponentId.of(0), DeviceId.of(0),
+                destination, PREPARE, PERFORM));
+        return trace;
+    }
+
+    // every transfer is admitted as soon as component 0 moves, so they all
+    // prepare at once and perform once their predecessors have prepared
+    private static void assertAllAdmittedAtOnce(SimulationReport report) {
+        assert (report.getExecuted() == LENGTH + 1) : report.getExecuted();
+        assert (report.getStuck() == 0);
+        assert (report.getVirtualNanos() == 1 + PREPARE + PERFORM) : report.getVirtualNanos();
+    }
+
+    @Test
+    void freeingChain() {
+        // removing component 0 frees a slot for every waiting transfer in turn
+        assertAllAdmittedAtOnce(fullDevices().replay(waitingChainThen(null)));
+    }
+
+    @Test
+    void cycleThroughChain() {
+        // moving component 0 to the last device closes a cycle of all transfers
+        assertAllAdmittedAtOnce(fullDevices().replay(waitingChainThen(DeviceId.of(LENGTH))));
+    }
+}
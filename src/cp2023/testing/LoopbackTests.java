@@ -0,0 +1,325 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.exceptions.ComponentAlreadyExists;
+import cp2023.exceptions.ComponentDoesNotExist;
+import cp2023.exceptions.TransferException;
+import cp2023.net.StorageClient;
+import cp2023.net.StorageServer;
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LoopbackTests extends Generators {
+
+    // types of the frames of the wire format
+    private static final byte SUBMIT = 1;
+    private static final byte REJECTED = 14;
+
+    // devices 0..devices-1 with the given capacity, component i on device i
+    private static StorageSystemInstance system(int devices, int capacity) {
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(devices);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(devices);
+        for (int i = 0; i < devices; i++) {
+            deviceCapacities.put(device(i), capacity);
+            initialComponentMapping.put(component(i), device(i));
+        }
+        return new StorageSystemInstance(deviceCapacities, initialComponentMapping);
+    }
+
+    private static StorageServer server(StorageSystemInstance system) throws IOException {
+        return new StorageServer(system,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    // the next whole frame sent over the channel
+    private static ByteBuffer readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, length);
+        ByteBuffer frame = ByteBuffer.allocate(length.getInt(0));
+        readFully(channel, frame);
+        return frame.flip();
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0)
+                throw new IOException("Connection closed in the middle of a frame");
+    }
+
+    // a server which answers the transfers in turn with rejections of the
+    // given codes; the frames are built by hand, as the wire format must
+    // not change
+    private static Thread fakeServer(ServerSocketChannel fake, byte... codes) {
+        Thread server = new Thread(() -> {
+            try (SocketChannel channel = fake.accept()) {
+                for (byte code : codes) {
+                    ByteBuffer submit = readFrame(channel);
+                    assert (submit.get() == SUBMIT);
+                    long request = submit.getLong();
+                    ByteBuffer reply = ByteBuffer.allocate(Integer.BYTES + 11);
+                    reply.putInt(11).put(REJECTED).putLong(request).put(code).put((byte) 0);
+                    channel.write(reply.flip());
+                }
+                // keeps the connection open until the client drops it
+                channel.read(ByteBuffer.allocate(1));
+            } catch (IOException e) {
+                // the client has dropped the connection
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    // what tryExecute() returned or threw
+    private static Thread start(StorageClient client, ComponentTransfer transfer,
+                                AtomicReference<Object> outcome) {
+        Thread thread = new Thread(() -> {
+            try {
+                outcome.set(client.tryExecute(transfer));
+            } catch (RuntimeException e) {
+                outcome.set(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    void callsPrepareAndPerformOnClient() throws IOException, TransferException {
+        StorageSystemInstance system = system(2, 2);
+        try (StorageServer server = server(system);
+             StorageClient client = new StorageClient(server.getAddress())) {
+            List<String> calls = new ArrayList<>();
+            client.execute(new SimpleTransfer(component(0), device(0),
+                    device(1)) {
+                @Override
+                public void prepare() {
+                    calls.add("prepare");
+                }
+
+                @Override
+                public void perform() {
+                    calls.add("perform");
+                }
+            });
+            assert (calls.equals(List.of("prepare", "perform")));
+            assert (system.getComponentPlacement().get(component(0)).equals(device(1)));
+        }
+    }
+
+    @Test
+    void rejectionsAreReported() throws IOException {
+        try (StorageServer server = server(system(2, 2));
+             StorageClient client = new StorageClient(server.getAddress())) {
+            try {
+                client.execute(new SimpleTransfer(component(0), device(1),
+                        device(0)));
+                assert (false);
+            } catch (ComponentDoesNotExist e) {
+                assert (e.getDeviceId().equals(device(1)));
+            } catch (TransferException e) {
+                assert (false);
+            }
+            try {
+                client.execute(new SimpleTransfer(component(1), null, device(0)));
+                assert (false);
+            } catch (ComponentAlreadyExists e) {
+                assert (e.getDeviceId().equals(device(1)));
+            } catch (TransferException e) {
+                assert (false);
+            }
+        }
+    }
+
+    // a cycle over full devices can only be executed if the transfers of all
+    // threads are outstanding on the connection at once
+    @Test
+    void pipelinedCycle() throws IOException, InterruptedException {
+        int devices = 16;
+        try (StorageServer server = server(system(devices, 1));
+             StorageClient client = new StorageClient(server.getAddress())) {
+            AtomicInteger executed = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < devices; i++) {
+                ComponentTransfer transfer = new SimpleTransfer(component(i),
+                        device(i), device((i + 1) % devices));
+                threads.add(new Thread(() -> {
+                    try {
+                        client.execute(transfer);
+                        executed.incrementAndGet();
+                    } catch (TransferException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads)
+                thread.join();
+            assert (executed.get() == devices);
+        }
+    }
+
+    // codes of the results on the wire must never change
+    private static final TransferResult[] RESULT_CODES = {null,
+            TransferResult.ILLEGAL_TRANSFER_TYPE,
+            TransferResult.SOURCE_DEVICE_DOES_NOT_EXIST,
+            TransferResult.DESTINATION_DEVICE_DOES_NOT_EXIST,
+            TransferResult.DEVICE_POOL_DOES_NOT_EXIST,
+            TransferResult.COMPONENT_ALREADY_EXISTS,
+            TransferResult.COMPONENT_DOES_NOT_EXIST,
+            TransferResult.COMPONENT_DOES_NOT_NEED_TRANSFER,
+            TransferResult.COMPONENT_IS_BEING_OPERATED_ON,
+            TransferResult.TENANT_QUOTA_EXCEEDED,
+            TransferResult.ILLEGAL_COMPONENT_SIZE};
+
+    @Test
+    void clientDecodesStableResultCodes() throws IOException, InterruptedException {
+        try (ServerSocketChannel fake = ServerSocketChannel.open()) {
+            fake.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            byte[] codes = new byte[RESULT_CODES.length - 1];
+            for (int code = 1; code < RESULT_CODES.length; code++)
+                codes[code - 1] = (byte) code;
+            Thread server = fakeServer(fake, codes);
+            try (StorageClient client = new StorageClient(
+                    (InetSocketAddress) fake.getLocalAddress())) {
+                for (int code = 1; code < RESULT_CODES.length; code++) {
+                    TransferResult result = client.tryExecute(
+                            new SimpleTransfer(component(0), device(0), device(1)));
+                    assert (result == RESULT_CODES[code]) : code + " " + result;
+                }
+            }
+            server.join(5000);
+            assert (!server.isAlive());
+        }
+    }
+
+    @Test
+    void serverEncodesStableResultCodes() throws IOException {
+        try (StorageServer server = server(system(2, 1));
+             SocketChannel channel = SocketChannel.open(server.getAddress())) {
+            // neither a source nor a destination, then a component not on device 0
+            ByteBuffer submits = ByteBuffer.allocate(2 * Integer.BYTES + 14 + 18);
+            submits.putInt(14).put(SUBMIT).putLong(1).put((byte) 0).putInt(5);
+            submits.putInt(18).put(SUBMIT).putLong(2).put((byte) 1).putInt(1).putInt(0);
+            channel.write(submits.flip());
+            for (int i = 0; i < 2; i++) {
+                ByteBuffer reply = readFrame(channel);
+                assert (reply.get() == REJECTED);
+                long request = reply.getLong();
+                TransferResult expected = request == 1 ? TransferResult.ILLEGAL_TRANSFER_TYPE
+                        : TransferResult.COMPONENT_DOES_NOT_EXIST;
+                assert (RESULT_CODES[reply.get()] == expected) : request;
+            }
+        }
+    }
+
+    @Test
+    void unknownResultCodeDropsConnection() throws IOException, InterruptedException {
+        try (ServerSocketChannel fake = ServerSocketChannel.open()) {
+            fake.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Thread server = fakeServer(fake, (byte) 99);
+            try (StorageClient client = new StorageClient(
+                    (InetSocketAddress) fake.getLocalAddress())) {
+                try {
+                    client.tryExecute(new SimpleTransfer(component(0), device(0), device(1)));
+                    assert (false);
+                } catch (UncheckedIOException e) {
+                    // expected
+                }
+                assert (client.getPendingCount() == 0);
+                try {
+                    client.tryExecute(new SimpleTransfer(component(0), device(0), device(1)));
+                    assert (false);
+                } catch (UncheckedIOException e) {
+                    // expected
+                }
+                assert (client.getPendingCount() == 0);
+            }
+            server.join(5000);
+            assert (!server.isAlive());
+        }
+    }
+
+    @Test
+    void lostConnectionFailsPendingTransfers() throws IOException, InterruptedException {
+        StorageServer server = server(system(3, 1));
+        try (StorageClient client = new StorageClient(server.getAddress())) {
+            HeldPrepare held = new HeldPrepare(component(0), device(0), null);
+            AtomicReference<Object> heldOutcome = new AtomicReference<>();
+            AtomicReference<Object> queuedOutcome = new AtomicReference<>();
+            Thread t1 = start(client, held, heldOutcome);
+            assert (held.awaitPrepareStarted());
+            // waits for a slot on the full device 2
+            Thread t2 = start(client, new SimpleTransfer(component(1), device(1),
+                    device(2)), queuedOutcome);
+            Thread.sleep(100);
+            assert (client.getPendingCount() == 2);
+
+            server.close();
+            t2.join(5000);
+            assert (!t2.isAlive());
+            assert (queuedOutcome.get() instanceof UncheckedIOException);
+            assert (client.getPendingCount() == 0);
+            held.release();
+            t1.join(5000);
+            assert (!t1.isAlive());
+            assert (heldOutcome.get() instanceof UncheckedIOException);
+            assert (client.getPendingCount() == 0);
+        }
+    }
+
+    @Test
+    void busyServerRefusesTransfers() throws IOException, InterruptedException {
+        try (StorageServer server = new StorageServer(system(3, 1),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+             StorageClient client = new StorageClient(server.getAddress())) {
+            HeldPrepare held = new HeldPrepare(component(0), device(0), null);
+            AtomicReference<Object> heldOutcome = new AtomicReference<>();
+            Thread t1 = start(client, held, heldOutcome);
+            assert (held.awaitPrepareStarted());
+
+            try {
+                client.tryExecute(new SimpleTransfer(component(1), device(1), null));
+                assert (false);
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            assert (server.getRefusedCount() == 1);
+            assert (client.getPendingCount() == 1);
+
+            held.release();
+            t1.join(5000);
+            assert (heldOutcome.get() == TransferResult.EXECUTED);
+            // the worker is free again, unless it is still returning
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            TransferResult result = null;
+            while (result == null && System.nanoTime() < deadline) {
+                try {
+                    result = client.tryExecute(new SimpleTransfer(component(1),
+                            device(1), null));
+                } catch (RejectedExecutionException e) {
+                    Thread.sleep(1);
+                }
+            }
+            assert (result == TransferResult.EXECUTED);
+        }
+    }
+}
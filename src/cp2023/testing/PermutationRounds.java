@@ -0,0 +1,158 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.base.TransferResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// In every round the components of each device move together to the device
+// given by a random permutation, one thread per component. Transfers to
+// devices with a free slot are admitted at once, while the others queue for
+// vacated slots or are released as a part of a cycle. A lost wake-up shows
+// up as a round that never ends.
+final class PermutationRounds extends Generators {
+    private static final int DEVICES = 8;
+    private static final int CAPACITY = 3;
+    // half of the devices are full, the others have one free slot each
+    private static final int COMPONENTS = DEVICES * CAPACITY - DEVICES / 2;
+    private static final int ROUNDS = 300;
+
+    // counts the components on every device as the transfers see them: a
+    // component leaves its source at the end of prepare() and arrives at its
+    // destination in perform(), which must not happen before there is room
+    private static final class CountingTransfer extends SimpleTransfer {
+        private final int sourceIndex, destIndex;
+        private final AtomicInteger[] occupancy;
+        private final AtomicReference<Throwable> failure;
+        final AtomicInteger prepared = new AtomicInteger();
+        final AtomicInteger performed = new AtomicInteger();
+
+        CountingTransfer(int comp, int source, int dest, AtomicInteger[] occupancy,
+                         AtomicReference<Throwable> failure) {
+            super(component(comp), device(source), device(dest));
+            this.sourceIndex = source;
+            this.destIndex = dest;
+            this.occupancy = occupancy;
+            this.failure = failure;
+        }
+
+        @Override
+        public void prepare() {
+            prepared.incrementAndGet();
+            occupancy[sourceIndex].decrementAndGet();
+        }
+
+        @Override
+        public void perform() {
+            performed.incrementAndGet();
+            if (occupancy[destIndex].incrementAndGet() > CAPACITY)
+                failure.compareAndSet(null, new AssertionError(
+                        "device " + target + " over capacity in perform() of " + componentId));
+        }
+    }
+
+    static Map<DeviceId, Integer> capacities() {
+        Map<DeviceId, Integer> capacities = new HashMap<>();
+        for (int dev = 1; dev <= DEVICES; dev++)
+            capacities.put(device(dev), CAPACITY);
+        return capacities;
+    }
+
+    static Map<ComponentId, DeviceId> placement() {
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        for (int comp = 0; comp < COMPONENTS; comp++)
+            placement.put(component(100 + comp), device(initialDevice(comp)));
+        return placement;
+    }
+
+    private static int initialDevice(int comp) {
+        return comp % DEVICES + 1;
+    }
+
+    // runs the rounds on a system created with capacities() and placement()
+    static void run(StorageSystem system, long seed) throws InterruptedException {
+        AtomicInteger[] occupancy = new AtomicInteger[DEVICES + 1];
+        for (int dev = 1; dev <= DEVICES; dev++)
+            occupancy[dev] = new AtomicInteger();
+        int[] position = new int[COMPONENTS];
+        for (int comp = 0; comp < COMPONENTS; comp++) {
+            position[comp] = initialDevice(comp);
+            occupancy[position[comp]].incrementAndGet();
+        }
+
+        Random random = new Random(seed);
+        List<int[]> permutations = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            List<Integer> devices = new ArrayList<>();
+            for (int dev = 1; dev <= DEVICES; dev++)
+                devices.add(dev);
+            Collections.shuffle(devices, random);
+            int[] permutation = new int[DEVICES + 1];
+            for (int dev = 1; dev <= DEVICES; dev++)
+                permutation[dev] = devices.get(dev - 1);
+            permutations.add(permutation);
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CyclicBarrier roundEnd = new CyclicBarrier(COMPONENTS, () -> {
+            for (int dev = 1; dev <= DEVICES; dev++)
+                if (occupancy[dev].get() < 0 || occupancy[dev].get() > CAPACITY)
+                    failure.compareAndSet(null, new AssertionError(
+                            "device " + dev + " holds " + occupancy[dev].get()));
+        });
+        Thread[] threads = new Thread[COMPONENTS];
+        for (int comp = 0; comp < COMPONENTS; comp++) {
+            int component = comp;
+            threads[comp] = new Thread(() -> {
+                try {
+                    for (int[] permutation : permutations) {
+                        int source = position[component];
+                        int dest = permutation[source];
+                        if (source != dest) {
+                            CountingTransfer transfer = new CountingTransfer(100 + component,
+                                    source, dest, occupancy, failure);
+                            TransferResult result = system.tryExecute(transfer);
+                            if (result != TransferResult.EXECUTED
+                                    || transfer.prepared.get() != 1
+                                    || transfer.performed.get() != 1)
+                                throw new AssertionError(transfer.getComponentId() + " "
+                                        + source + "->" + dest + ": " + result + ", prepared "
+                                        + transfer.prepared + ", performed " + transfer.performed);
+                            position[component] = dest;
+                        }
+                        roundEnd.await(5, TimeUnit.SECONDS);
+                    }
+                } catch (AssertionError | InterruptedException | BrokenBarrierException
+                         | TimeoutException e) {
+                    failure.compareAndSet(null, e);
+                    roundEnd.reset();
+                }
+            });
+            threads[comp].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(60_000);
+            assert (!thread.isAlive());
+        }
+        Throwable failed = failure.get();
+        assert (failed == null) : failed;
+
+        // only a component on the device does not need a transfer to it
+        for (int comp = 0; comp < COMPONENTS; comp++)
+            assert (system.tryExecute(transfer(100 + comp, position[comp], position[comp]))
+                    == TransferResult.COMPONENT_DOES_NOT_NEED_TRANSFER);
+    }
+}
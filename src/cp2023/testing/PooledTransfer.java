@@ -0,0 +1,25 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.PooledComponentTransfer;
+
+public class PooledTransfer extends SimpleTransfer implements PooledComponentTransfer {
+
+    private final String pool;
+
+    @Override
+    public String getDestinationPool() {
+        return pool;
+    }
+
+    @Override
+    public void bindDestination(DeviceId destination) {
+        target = destination;
+    }
+
+    public PooledTransfer(ComponentId componentId, DeviceId source, String pool) {
+        super(componentId, source, null);
+        this.pool = pool;
+    }
+}
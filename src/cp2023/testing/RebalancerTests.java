@@ -0,0 +1,136 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.Rebalancer;
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class RebalancerTests extends Generators {
+
+    // devices 1 to 4 with 4 slots, components 101-104 on 1 and 201-204 on 2
+    private static StorageSystemInstance unbalancedSystem() {
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        for (int i = 1; i <= 4; i++) {
+            placement.put(component(100 + i), device(1));
+            placement.put(component(200 + i), device(2));
+        }
+        return new StorageSystemInstance(
+                Map.of(device(1), 4, device(2), 4, device(3), 4, device(4), 4), placement);
+    }
+
+    private static Map<DeviceId, Integer> evenTarget() {
+        return Map.of(device(1), 2, device(2), 2, device(3), 2, device(4), 2);
+    }
+
+    // difference between the most and the least occupied device, checking
+    // that none holds more than its capacity
+    private static int imbalance(StorageSystemInstance system) {
+        Map<DeviceId, Integer> occupancy = new HashMap<>();
+        Map<DeviceId, Integer> capacities = system.getDeviceCapacities();
+        capacities.keySet().forEach(device -> occupancy.put(device, 0));
+        system.getComponentPlacement().values().forEach(device ->
+                occupancy.merge(device, 1, Integer::sum));
+        occupancy.forEach((device, count) -> {
+            assert (count <= capacities.get(device));
+        });
+        int max = 0;
+        int min = Integer.MAX_VALUE;
+        for (int count : occupancy.values()) {
+            max = Math.max(max, count);
+            min = Math.min(min, count);
+        }
+        return max - min;
+    }
+
+    @Test
+    void rebalanceReachesTarget() {
+        StorageSystemInstance system = unbalancedSystem();
+        Rebalancer rebalancer = new Rebalancer(system, SimpleTransfer::new, 2,
+                TimeUnit.SECONDS.toNanos(1));
+        assert (imbalance(system) == 4);
+        assert (rebalancer.plan(evenTarget()).size() == 4);
+
+        assert (rebalancer.rebalance(evenTarget()) == 4);
+        assert (imbalance(system) == 0);
+        assert (rebalancer.plan(evenTarget()).isEmpty());
+        assert (rebalancer.rebalance(evenTarget()) == 0);
+        assert (rebalancer.getMoveCount() == 4);
+    }
+
+    @Test
+    void movesAreTransfersOfTheFactory() {
+        StorageSystemInstance system = unbalancedSystem();
+        system.setTenantQuota("rebalancing", 1, 1, 4);
+        Rebalancer rebalancer = new Rebalancer(system,
+                (component, source, destination) ->
+                        new TenantTransfer("rebalancing", component, source, destination),
+                4, TimeUnit.SECONDS.toNanos(1));
+        assert (rebalancer.rebalance(evenTarget()) == 4);
+        assert (system.getTenantMetrics().get("rebalancing").getAdmittedCount() == 4);
+        assert (system.getTenantMetrics().get("rebalancing").getReservedSlots() == 0);
+    }
+
+    @Test
+    void continuousRebalancingUndoesOtherMoves() throws InterruptedException {
+        StorageSystemInstance system = unbalancedSystem();
+        Rebalancer rebalancer = new Rebalancer(system, SimpleTransfer::new, 2,
+                TimeUnit.SECONDS.toNanos(1));
+        rebalancer.start(evenTarget(), 10, TimeUnit.MILLISECONDS);
+        awaitPasses(rebalancer, 2);
+        assert (imbalance(system) == 0);
+
+        // everything that rebalancing moved to 3 and 4 is moved back
+        Map<DeviceId, DeviceId> back = Map.of(device(3), device(1), device(4), device(2));
+        for (Map.Entry<ComponentId, DeviceId> entry
+                : system.getComponentPlacement().entrySet()) {
+            if (!back.containsKey(entry.getValue()))
+                continue;
+            TransferResult result = system.tryExecute(new SimpleTransfer(entry.getKey(),
+                    entry.getValue(), back.get(entry.getValue())));
+            // or the rebalancer has just moved it
+            assert (result == TransferResult.EXECUTED
+                    || result == TransferResult.COMPONENT_IS_BEING_OPERATED_ON
+                    || result == TransferResult.COMPONENT_DOES_NOT_EXIST);
+        }
+        awaitPasses(rebalancer, 2);
+        rebalancer.shutdown();
+        assert (imbalance(system) == 0);
+        assert (rebalancer.getMoveCount() >= 4);
+    }
+
+    @Test
+    void targetIsValidated() {
+        Rebalancer rebalancer = new Rebalancer(unbalancedSystem(), SimpleTransfer::new, 1,
+                TimeUnit.SECONDS.toNanos(1));
+        try {
+            rebalancer.start(Map.of(device(1), 5), 10, TimeUnit.MILLISECONDS);
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        rebalancer.start(evenTarget(), 10, TimeUnit.MILLISECONDS);
+        try {
+            rebalancer.start(evenTarget(), 10, TimeUnit.MILLISECONDS);
+            assert (false);
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        rebalancer.shutdown();
+    }
+
+    // waits until the given number of passes have started and finished
+    private static void awaitPasses(Rebalancer rebalancer, int passes)
+            throws InterruptedException {
+        long until = rebalancer.getPassCount() + passes;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (rebalancer.getPassCount() < until && System.nanoTime() < deadline)
+            Thread.sleep(5);
+        assert (rebalancer.getPassCount() >= until);
+    }
+}
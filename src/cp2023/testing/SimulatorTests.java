@@ -0,0 +1,86 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.solution.SimulationReport;
+import cp2023.solution.Simulator;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+public class SimulatorTests {
+
+    // devices 0..devices-1 with one slot, component i on device i
+    private static Simulator fullDevices(int devices) {
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(devices);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(devices);
+        for (int i = 0; i < devices; i++) {
+            deviceCapacities.put(DeviceId.of(i), 1);
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i));
+        }
+        return new Simulator(deviceCapacities, initialComponentMapping, 1000);
+    }
+
+    @Test
+    void swapPerformsAfterBothPrepared() {
+        SimulationReport report = fullDevices(2).replay(List.of(
+                new Simulator.TraceEntry(0, ComponentId.of(0), DeviceId.of(0), DeviceId.of(1), 10, 20),
+                new Simulator.TraceEntry(0, ComponentId.of(1), DeviceId.of(1), DeviceId.of(0), 10, 20)));
+        assert (report.getExecuted() == 2);
+        assert (report.getVirtualNanos() == 30);
+        assert (report.getP99LatencyNanos() == 30);
+    }
+
+    @Test
+    void vacatedSlotIsTakenAfterPreparation() {
+        // component 0 is removed slowly, component 1 takes its slot
+        SimulationReport report = fullDevices(2).replay(List.of(
+                new Simulator.TraceEntry(0, ComponentId.of(1), DeviceId.of(1), DeviceId.of(0), 10, 20),
+                new Simulator.TraceEntry(5, ComponentId.of(0), DeviceId.of(0), null, 100, 0)));
+        assert (report.getExecuted() == 2);
+        // prepared at 15, but performs only after the removal prepares at 105
+        assert (report.getVirtualNanos() == 125);
+        assert (report.getP99LatencyNanos() == 125);
+    }
+
+    @Test
+    void runsAreReproducible() {
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>();
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>();
+        for (int i = 0; i < 8; i++)
+            deviceCapacities.put(DeviceId.of(i), 4);
+        for (int i = 0; i < 30; i++)
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i % 8));
+        Simulator simulator = new Simulator(deviceCapacities, initialComponentMapping, 100_000);
+        SimulationReport first = simulator.runClosedLoop(20_000, 1_000, 5_000, 10_000, 42);
+        SimulationReport second = simulator.runClosedLoop(20_000, 1_000, 5_000, 10_000, 42);
+        assert (first.getExecuted() + first.getStuck() == 20_000);
+        assert (first.getVirtualNanos() == second.getVirtualNanos());
+        assert (first.toCsv().equals(second.toCsv()));
+        assert (!first.toCsv().equals(
+                simulator.runClosedLoop(20_000, 1_000, 5_000, 10_000, 43).toCsv()));
+    }
+
+    @Test
+    void fastAdmissionIsSimulated() {
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>();
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>();
+        for (int i = 0; i < 8; i++)
+            deviceCapacities.put(DeviceId.of(i), 4);
+        for (int i = 0; i < 20; i++)
+            initialComponentMapping.put(ComponentId.of(i), DeviceId.of(i % 8));
+        Simulator simulator = new Simulator(deviceCapacities, initialComponentMapping, 100_000);
+        simulator.setFastAdmission(true);
+        // the destination has a free slot, the source frees one nobody waits for
+        SimulationReport single = simulator.replay(List.of(new Simulator.TraceEntry(0,
+                ComponentId.of(0), DeviceId.of(0), DeviceId.of(1), 10, 20)));
+        assert (single.getExecuted() == 1);
+        assert (single.getVirtualNanos() == 30);
+
+        SimulationReport first = simulator.runClosedLoop(20_000, 1_000, 5_000, 10_000, 42);
+        SimulationReport second = simulator.runClosedLoop(20_000, 1_000, 5_000, 10_000, 42);
+        assert (first.getExecuted() + first.getStuck() == 20_000);
+        assert (first.toCsv().equals(second.toCsv()));
+    }
+}
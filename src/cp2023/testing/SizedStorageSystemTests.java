@@ -0,0 +1,197 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.SizedComponentTransfer;
+import cp2023.base.TransferResult;
+import cp2023.exceptions.IllegalComponentSize;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.DeadlockSweeper;
+import cp2023.solution.SizedStorageSystem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class SizedStorageSystemTests {
+
+    private static final class SizedTransfer extends SimpleTransfer
+            implements SizedComponentTransfer {
+        private final long size;
+
+        SizedTransfer(ComponentId componentId, DeviceId source, DeviceId target, long size) {
+            super(componentId, source, target);
+            this.size = size;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+    }
+
+    // devices of the given capacities (device i has capacities[i]) with
+    // component j of sizes[j] placed on placement[j]
+    private static SizedStorageSystem system(long[] capacities, long[] sizes, int[] placement) {
+        Map<DeviceId, Long> deviceCapacities = new HashMap<>();
+        for (int i = 0; i < capacities.length; i++)
+            deviceCapacities.put(DeviceId.of(i), capacities[i]);
+        Map<ComponentId, DeviceId> componentPlacement = new HashMap<>();
+        Map<ComponentId, Long> componentSizes = new HashMap<>();
+        for (int j = 0; j < sizes.length; j++) {
+            componentPlacement.put(ComponentId.of(j), DeviceId.of(placement[j]));
+            componentSizes.put(ComponentId.of(j), sizes[j]);
+        }
+        return new SizedStorageSystem(deviceCapacities, componentPlacement, componentSizes);
+    }
+
+    private static Thread start(SizedStorageSystem system, SimpleTransfer transfer) {
+        Thread thread = new Thread(() -> {
+            TransferResult result = system.tryExecute(transfer);
+            assert (result == TransferResult.EXECUTED) : result;
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(SizedStorageSystem system, int count)
+            throws InterruptedException {
+        while (system.getQueuedTransferCount() < count)
+            Thread.sleep(1);
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assert (!thread.isAlive());
+        }
+    }
+
+    @Test
+    void largeDepartureAdmitsSeveralSmallArrivals() throws InterruptedException {
+        // device 0 is full with component 0, components 1..3 wait to come
+        SizedStorageSystem system = system(new long[] {100, 100},
+                new long[] {100, 30, 30, 30}, new int[] {0, 1, 1, 1});
+        List<Thread> threads = new ArrayList<>();
+        for (int j = 1; j <= 3; j++)
+            threads.add(start(system, new SimpleTransfer(ComponentId.of(j),
+                    DeviceId.of(1), DeviceId.of(0))));
+        awaitQueued(system, 3);
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(0), DeviceId.of(0), null)));
+        join(threads);
+        assert (system.getStoredBytes().get(DeviceId.of(0)) == 90);
+        assert (system.getStoredBytes().get(DeviceId.of(1)) == 0);
+    }
+
+    @Test
+    void cycleAccountsInBytes() throws InterruptedException {
+        // 70 bytes move from device 0 (30 free) to device 1 (10 free) and
+        // 60 bytes the other way; neither fits without the other leaving
+        SizedStorageSystem system = system(new long[] {100, 100},
+                new long[] {70, 60, 30}, new int[] {0, 1, 1});
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(0),
+                DeviceId.of(0), DeviceId.of(1))));
+        awaitQueued(system, 1);
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(1),
+                DeviceId.of(1), DeviceId.of(0))));
+        join(threads);
+        assert (system.getStoredBytes().get(DeviceId.of(0)) == 60);
+        assert (system.getStoredBytes().get(DeviceId.of(1)) == 100);
+    }
+
+    @Test
+    void componentsThatCannotFitAreRejected() {
+        SizedStorageSystem system = system(new long[] {100}, new long[] {}, new int[] {});
+        assert (system.tryExecute(new SimpleTransfer(ComponentId.of(0), null, DeviceId.of(0)))
+                == TransferResult.ILLEGAL_COMPONENT_SIZE);
+        assert (system.tryExecute(new SizedTransfer(ComponentId.of(0), null, DeviceId.of(0), 101))
+                == TransferResult.ILLEGAL_COMPONENT_SIZE);
+        try {
+            system.execute(new SizedTransfer(ComponentId.of(0), null, DeviceId.of(0), 101));
+            assert (false);
+        } catch (IllegalComponentSize e) {
+            assert (e.getComponentId().equals(ComponentId.of(0)));
+            assert (e.getDeviceId().equals(DeviceId.of(0)));
+        } catch (TransferException e) {
+            assert (false) : e;
+        }
+        assert (system.tryExecute(new SizedTransfer(ComponentId.of(0), null, DeviceId.of(0), 100))
+                == TransferResult.EXECUTED);
+        assert (system.getStoredBytes().get(DeviceId.of(0)) == 100);
+    }
+
+    // The cycle 1 -> 0 -> 2 -> 3 -> 1 of components 1, 0, 3 and 4 closes once
+    // component 1 starts waiting, although its search reaches device 2 first
+    // through component 2, which is too small to make room there for
+    // component 0, and only then through component 3.
+    @Test
+    void cycleReachedThroughSmallDepartureFirstIsClosed() throws InterruptedException {
+        SizedStorageSystem system = system(new long[] {10, 10, 11, 10},
+                new long[] {10, 10, 1, 10, 10}, new int[] {0, 1, 2, 2, 3});
+        List<Thread> threads = new ArrayList<>();
+        int[][] moves = {{0, 0, 2}, {2, 2, 1}, {3, 2, 3}, {4, 3, 1}, {1, 1, 0}};
+        for (int[] move : moves) {
+            threads.add(start(system, new SimpleTransfer(ComponentId.of(move[0]),
+                    DeviceId.of(move[1]), DeviceId.of(move[2]))));
+            if (threads.size() < moves.length)
+                awaitQueued(system, threads.size());
+        }
+        // component 2 waits for device 1 until component 4, which has come
+        // in with the cycle, leaves it
+        join(threads.subList(2, 5));
+        join(threads.subList(0, 1));
+        assert (system.getQueuedTransferCount() == 1);
+        assert (system.tryExecute(new SimpleTransfer(ComponentId.of(4), DeviceId.of(1), null))
+                == TransferResult.EXECUTED);
+        join(threads);
+        assert (system.getStoredBytes().equals(Map.of(DeviceId.of(0), 10L,
+                DeviceId.of(1), 1L, DeviceId.of(2), 10L, DeviceId.of(3), 10L)));
+    }
+
+    // Component 0 of 10 bytes waits for device 1 and component 1 of 6 bytes
+    // for device 0, which are both full. They cannot swap places until
+    // component 2 of 4 bytes leaves device 1, and nothing is admitted then,
+    // as component 0 does not fit into the bytes freed.
+    private static SizedStorageSystem cycleMadePossibleLater(List<Thread> threads)
+            throws InterruptedException {
+        SizedStorageSystem system = system(new long[] {10, 10},
+                new long[] {10, 6, 4}, new int[] {0, 1, 1});
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(0),
+                DeviceId.of(0), DeviceId.of(1))));
+        awaitQueued(system, 1);
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(1),
+                DeviceId.of(1), DeviceId.of(0))));
+        awaitQueued(system, 2);
+        assert (system.tryExecute(new SimpleTransfer(ComponentId.of(2), DeviceId.of(1), null))
+                == TransferResult.EXECUTED);
+        return system;
+    }
+
+    @Test
+    void sweepClosesCycleMadePossibleLater() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        SizedStorageSystem system = cycleMadePossibleLater(threads);
+        Thread.sleep(50);
+        assert (system.getQueuedTransferCount() == 2);
+        assert (system.sweep() == 2);
+        join(threads);
+        assert (system.getStoredBytes().equals(Map.of(DeviceId.of(0), 6L, DeviceId.of(1), 10L)));
+    }
+
+    @Test
+    void deadlockSweeperClosesCycleMadePossibleLater() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        SizedStorageSystem system = cycleMadePossibleLater(threads);
+        DeadlockSweeper sweeper = system.startDeadlockSweeper(10, TimeUnit.MILLISECONDS, null);
+        try {
+            join(threads);
+        } finally {
+            sweeper.shutdown();
+        }
+        assert (sweeper.getUnblockedCount() == 2);
+    }
+}
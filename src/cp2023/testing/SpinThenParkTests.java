@@ -0,0 +1,36 @@
+package cp2023.testing;
+
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.WaitStrategy;
+import org.junit.jupiter.api.Test;
+
+// scenarios of other tests, with transfers spinning before they park
+public class SpinThenParkTests extends Generators {
+    private static final WaitStrategy SPIN = WaitStrategy.SPIN_THEN_PARK;
+
+    @Test
+    void chainedTransferFollowsPrevious() throws InterruptedException {
+        ChainingTests.chainedTransferFollowsPrevious(SPIN);
+    }
+
+    @Test
+    void chainedTransferIsCheckedAgainstPreviousPlacement() throws InterruptedException {
+        ChainingTests.chainedTransferIsCheckedAgainstPreviousPlacement(SPIN);
+    }
+
+    @Test
+    void chainedTransferClosesCycle() throws InterruptedException {
+        ChainingTests.chainedTransferClosesCycle(SPIN);
+    }
+
+    @Test
+    void sweeperClosesCycleMissedWithoutInlineDetection() throws InterruptedException {
+        DeadlockSweeperTests.sweeperClosesCycleMissedWithoutInlineDetection(SPIN);
+    }
+
+    @Test
+    void permutationRounds() throws InterruptedException {
+        PermutationRounds.run(StorageSystemFactory.newSystem(PermutationRounds.capacities(),
+                PermutationRounds.placement(), SPIN), 7);
+    }
+}
@@ -0,0 +1,160 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferResult;
+import cp2023.solution.StallDetector;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.WaitForGraphSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class StallDetectorTests extends Generators {
+
+    // prepare() returns only once released
+    private static final class HeldTransfer extends SimpleTransfer {
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        HeldTransfer(ComponentId componentId, DeviceId source, DeviceId target) {
+            super(componentId, source, target);
+        }
+
+        @Override
+        public void prepare() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+    }
+
+    private static Thread start(StorageSystemInstance system, SimpleTransfer transfer) {
+        Thread thread = new Thread(() -> {
+            TransferResult result = system.tryExecute(transfer);
+            assert (result == TransferResult.EXECUTED) : result;
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assert (!thread.isAlive());
+        }
+    }
+
+    // stalls of the first check finding one blocking at least the given count
+    private static List<StallDetector.Stall> awaitStalls(StallDetector detector, int blocked)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while ((detector.getStalls().isEmpty()
+                || detector.getStalls().get(0).getBlockedCount() < blocked)
+                && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        return detector.getStalls();
+    }
+
+    private static boolean dependsOnAnother(StorageSystemInstance system, ComponentId component) {
+        List<WaitForGraphSnapshot.TransferInfo> transfers =
+                system.snapshotWaitForGraph().getTransfers();
+        for (WaitForGraphSnapshot.TransferInfo transfer : transfers)
+            if (transfer.getComponentId().equals(component) && transfer.getDependsOn() >= 0)
+                return true;
+        return false;
+    }
+
+    // component j is on device j, device 4 is empty
+    private static StorageSystemInstance system() {
+        return new StorageSystemInstance(
+                Map.of(DeviceId.of(0), 1, DeviceId.of(1), 1, DeviceId.of(2), 1,
+                        DeviceId.of(3), 1, DeviceId.of(4), 1),
+                Map.of(ComponentId.of(0), DeviceId.of(0), ComponentId.of(1), DeviceId.of(1),
+                        ComponentId.of(2), DeviceId.of(2), ComponentId.of(3), DeviceId.of(3)));
+    }
+
+    @Test
+    void stalledPrepareIsReportedWithTransfersBehindIt() throws InterruptedException {
+        StorageSystemInstance system = system();
+        StallDetector detector = system.startStallDetector(5, TimeUnit.MILLISECONDS, 10, 50, null);
+        HeldTransfer held = new HeldTransfer(ComponentId.of(0), DeviceId.of(0), DeviceId.of(4));
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start(system, held));
+        while (system.snapshotWaitForGraph().getTransfers().isEmpty())
+            Thread.sleep(1);
+        // 1 takes the slot of 0 but cannot perform, 2 waits for device 0 too
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(1),
+                DeviceId.of(1), DeviceId.of(0))));
+        while (!dependsOnAnother(system, ComponentId.of(1)))
+            Thread.sleep(1);
+        Thread queued = start(system, new SimpleTransfer(ComponentId.of(2),
+                DeviceId.of(2), DeviceId.of(0)));
+
+        List<StallDetector.Stall> stalls = awaitStalls(detector, 2);
+        assert (stalls.size() == 1) : stalls;
+        assert (stalls.get(0).getBlockedCount() == 2) : stalls;
+        assert (stalls.get(0).getTransfer().getComponentId().equals(ComponentId.of(0)));
+        assert (stalls.get(0).getDeviceId().equals(DeviceId.of(0)));
+        held.release.countDown();
+        join(threads);
+        // 1 has taken the only slot of device 0
+        assert (system.tryExecute(new SimpleTransfer(ComponentId.of(1), DeviceId.of(0), null))
+                == TransferResult.EXECUTED);
+        join(List.of(queued));
+        detector.shutdown();
+    }
+
+    @Test
+    void steeringKeepsNewTransfersOffStalledSlots() throws InterruptedException {
+        StorageSystemInstance system = system();
+        StallDetector detector = system.startStallDetector(5, TimeUnit.MILLISECONDS, 10, 50, null);
+        detector.setAdmissionSteering(true);
+        // 0 waits for 3 to be removed, so its slot on device 0 is offered
+        // to the transfers coming later
+        HeldTransfer held = new HeldTransfer(ComponentId.of(0), DeviceId.of(0), DeviceId.of(3));
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start(system, held));
+        while (queuedTransfers(system) < 1)
+            Thread.sleep(1);
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(3), DeviceId.of(3), null)));
+        assert (awaitStalls(detector, 0).size() == 1);
+
+        // would have taken the slot of 0 and got stuck behind it
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(1),
+                DeviceId.of(1), DeviceId.of(0))));
+        while (queuedTransfers(system) < 1)
+            Thread.sleep(1);
+        held.release.countDown();
+        join(threads);
+        assert (system.getComponentPlacement().get(ComponentId.of(1)).equals(DeviceId.of(0)));
+        detector.shutdown();
+    }
+
+    @Test
+    void withoutSteeringTransfersReserveStalledSlots() throws InterruptedException {
+        StorageSystemInstance system = system();
+        StallDetector detector = system.startStallDetector(5, TimeUnit.MILLISECONDS, 10, 50, null);
+        HeldTransfer held = new HeldTransfer(ComponentId.of(0), DeviceId.of(0), DeviceId.of(3));
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start(system, held));
+        while (queuedTransfers(system) < 1)
+            Thread.sleep(1);
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(3), DeviceId.of(3), null)));
+        assert (awaitStalls(detector, 0).size() == 1);
+
+        threads.add(start(system, new SimpleTransfer(ComponentId.of(1),
+                DeviceId.of(1), DeviceId.of(0))));
+        List<StallDetector.Stall> stalls = awaitStalls(detector, 1);
+        assert (stalls.get(0).getBlockedCount() == 1) : stalls;
+        assert (queuedTransfers(system) == 0);
+        held.release.countDown();
+        join(threads);
+        detector.shutdown();
+    }
+}
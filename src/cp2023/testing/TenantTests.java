@@ -0,0 +1,253 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.TenantComponentTransfer;
+import cp2023.base.TransferEvent;
+import cp2023.base.TransferListener;
+import cp2023.base.TransferResult;
+import cp2023.exceptions.TenantQuotaExceeded;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.TenantMetrics;
+import cp2023.solution.WaitForGraphSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+// transfers of tenants are held in prepare(), so whatever gets admitted keeps
+// its slot until they are all released at the end
+public class TenantTests extends Generators {
+
+    private static final class HeldTenantTransfer extends HeldPrepare
+            implements TenantComponentTransfer {
+        private final String tenant;
+
+        HeldTenantTransfer(String tenant, int component, Integer source, Integer target) {
+            super(component(component), source == null ? null : device(source),
+                    target == null ? null : device(target));
+            this.tenant = tenant;
+        }
+
+        @Override
+        public String getTenant() {
+            return tenant;
+        }
+    }
+
+    // started transfers, each waited for until admitted or queued
+    private static final class HeldTransfers implements TransferListener {
+        private final StorageSystemInstance system;
+        private final ConcurrentMap<ComponentId, TransferEvent.Type> outcomes;
+        private final List<HeldPrepare> held;
+        private final List<Thread> threads;
+
+        HeldTransfers(StorageSystemInstance system) {
+            this.system = system;
+            this.outcomes = new ConcurrentHashMap<>();
+            this.held = new ArrayList<>();
+            this.threads = new ArrayList<>();
+            system.addTransferListener(this);
+        }
+
+        @Override
+        public void transferEvent(TransferEvent event) {
+            if (event.getType() == TransferEvent.Type.ADMITTED
+                    || event.getType() == TransferEvent.Type.QUEUED)
+                outcomes.put(event.getComponentId(), event.getType());
+        }
+
+        void start(String tenant, int component, Integer source, Integer target,
+                   TransferEvent.Type expected) throws InterruptedException {
+            HeldTenantTransfer transfer =
+                    new HeldTenantTransfer(tenant, component, source, target);
+            Thread thread = new Thread(() -> execTransfer(system, transfer));
+            held.add(transfer);
+            threads.add(thread);
+            thread.start();
+            assert (await(component, expected)) : outcomes.get(component(component));
+        }
+
+        boolean await(int component, TransferEvent.Type type) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (outcomes.get(component(component)) != type && System.nanoTime() < deadline)
+                Thread.sleep(1);
+            return outcomes.get(component(component)) == type;
+        }
+
+        int admitted() {
+            int count = 0;
+            for (TransferEvent.Type type : outcomes.values())
+                count += type == TransferEvent.Type.ADMITTED ? 1 : 0;
+            return count;
+        }
+
+        // the transfers still waiting get slots freed by removing every
+        // component which has arrived, so that all of them end
+        void releaseAll() throws InterruptedException {
+            for (HeldPrepare transfer : held)
+                transfer.release();
+            Set<HeldPrepare> removed = new HashSet<>();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (removed.size() < held.size() && System.nanoTime() < deadline) {
+                for (int i = 0; i < held.size(); i++) {
+                    HeldPrepare transfer = held.get(i);
+                    if (threads.get(i).isAlive() || !removed.add(transfer))
+                        continue;
+                    assert (system.tryExecute(new SimpleTransfer(transfer.getComponentId(),
+                            transfer.getDestinationDeviceId(), null)) == TransferResult.EXECUTED);
+                }
+                Thread.sleep(1);
+            }
+            assert (removed.size() == held.size());
+            system.removeTransferListener(this);
+        }
+    }
+
+    // device i has capacities[i] slots, component j is on placement[j]
+    private static StorageSystemInstance system(int[] capacities, int[] placement) {
+        Map<DeviceId, Integer> deviceCapacities = new HashMap<>();
+        for (int i = 0; i < capacities.length; i++)
+            deviceCapacities.put(device(i), capacities[i]);
+        Map<ComponentId, DeviceId> componentPlacement = new HashMap<>();
+        for (int j = 0; j < placement.length; j++)
+            componentPlacement.put(component(j), device(placement[j]));
+        return new StorageSystemInstance(deviceCapacities, componentPlacement);
+    }
+
+    private static int freeSlots(StorageSystemInstance system, int device) {
+        for (WaitForGraphSnapshot.DeviceInfo info : system.snapshotWaitForGraph().getDevices()) {
+            if (info.getDeviceId().equals(device(device)))
+                return info.getFreeSlots();
+        }
+        throw new IllegalArgumentException("Device " + device + " does not exist");
+    }
+
+    private static final TransferEvent.Type ADMITTED = TransferEvent.Type.ADMITTED;
+    private static final TransferEvent.Type QUEUED = TransferEvent.Type.QUEUED;
+
+    @Test
+    void quotasHoldBackAndReject() throws TransferException, InterruptedException {
+        StorageSystemInstance system = system(new int[] {10}, new int[] {});
+        system.setTenantQuota("bulk", 1, 1, 1);
+        HeldTransfers held = new HeldTransfers(system);
+        held.start("bulk", 0, null, 0, ADMITTED);
+        // the device has free slots, but the tenant has none left
+        held.start("bulk", 1, null, 0, QUEUED);
+        assert (queuedTransfers(system) == 1);
+        try {
+            system.execute(new HeldTenantTransfer("bulk", 2, null, 0));
+            assert false;
+        } catch (TenantQuotaExceeded e) {
+            assert (e.getTenant().equals("bulk"));
+        }
+        // others are not limited by the quota of the tenant
+        held.start("other", 3, null, 0, ADMITTED);
+        assert (system.tryExecute(transfer(4, -1, 0)) == TransferResult.EXECUTED);
+        assert (freeSlots(system, 0) == 7);
+        TenantMetrics bulk = system.getTenantMetrics().get("bulk");
+        assert (bulk.getReservedSlots() == 1);
+        assert (bulk.getQueuedTransfers() == 1);
+        assert (bulk.getQuotaRejectionCount() == 1);
+        held.releaseAll();
+    }
+
+    @Test
+    void freedSlotsAreSharedByWeight() throws InterruptedException {
+        // device 0 is full, components 2..7 wait to move there from device 1
+        StorageSystemInstance system = system(new int[] {2, 10},
+                new int[] {0, 0, 1, 1, 1, 1, 1, 1});
+        system.setTenantQuota("bulk", 1, 100, 100);
+        system.setTenantQuota("interactive", 2, 100, 100);
+        HeldTransfers held = new HeldTransfers(system);
+        for (int j = 2; j <= 5; j++)
+            held.start("bulk", j, 1, 0, QUEUED);
+        held.start("interactive", 6, 1, 0, QUEUED);
+        held.start("interactive", 7, 1, 0, QUEUED);
+        assert (system.tryExecute(transfer(0, 0, -1)) == TransferResult.EXECUTED);
+        assert (system.tryExecute(transfer(1, 0, -1)) == TransferResult.EXECUTED);
+        while (held.admitted() < 2)
+            Thread.sleep(1);
+        // in the order of arrival both slots would go to bulk
+        Map<String, TenantMetrics> metrics = system.getTenantMetrics();
+        assert (metrics.get("bulk").getQueuedTransfers() == 3);
+        assert (metrics.get("interactive").getQueuedTransfers() == 1);
+        held.releaseAll();
+    }
+
+    @Test
+    void cyclesIgnoreQuotas() throws InterruptedException {
+        // component 0 on device 0 with a free slot, component 1 on device 1
+        StorageSystemInstance system = system(new int[] {3, 1}, new int[] {0, 1});
+        system.setTenantQuota("bulk", 1, 1, 10);
+        HeldTransfers held = new HeldTransfers(system);
+        held.start("bulk", 2, null, 0, ADMITTED);
+        held.start("bulk", 1, 1, 0, QUEUED);
+        assert (queuedTransfers(system) == 1);
+        // closes a cycle with the transfer held back by the quota
+        held.start(null, 0, 0, 1, ADMITTED);
+        assert (held.await(1, ADMITTED));
+        assert (queuedTransfers(system) == 0);
+        assert (system.getTenantMetrics().get("bulk").getReservedSlots() == 2);
+        held.releaseAll();
+    }
+
+    @Test
+    void freedSlotsFollowPassesOfManyTenants() throws InterruptedException {
+        // device 0 is full with components 0..7, tenants a, b and c each have
+        // 8 transfers waiting to move there from device 1
+        int[] placement = new int[32];
+        for (int j = 8; j < 32; j++)
+            placement[j] = 1;
+        StorageSystemInstance system = system(new int[] {8, 32}, placement);
+        system.setTenantQuota("a", 1, 100, 100);
+        system.setTenantQuota("b", 1, 100, 100);
+        system.setTenantQuota("c", 2, 100, 100);
+        HeldTransfers held = new HeldTransfers(system);
+        String[] tenants = {"a", "b", "c"};
+        for (int t = 0; t < 3; t++)
+            for (int j = 0; j < 8; j++)
+                held.start(tenants[t], 8 + 8 * t + j, 1, 0, QUEUED);
+        for (int j = 0; j < 8; j++)
+            assert (system.tryExecute(transfer(j, 0, -1)) == TransferResult.EXECUTED);
+        while (held.admitted() < 8)
+            Thread.sleep(1);
+        Map<String, TenantMetrics> metrics = system.getTenantMetrics();
+        assert (metrics.get("a").getQueuedTransfers() == 6);
+        assert (metrics.get("b").getQueuedTransfers() == 6);
+        assert (metrics.get("c").getQueuedTransfers() == 4);
+        held.releaseAll();
+    }
+
+    @Test
+    void idleTenantsAreForgotten() throws InterruptedException {
+        StorageSystemInstance system = system(new int[] {10, 1}, new int[] {});
+        system.setTenantQuota("configured", 1, 10, 10);
+        for (int j = 0; j < 100; j++) {
+            assert (system.tryExecute(new TenantTransfer("tenant-" + j, component(j), null,
+                    device(0))) == TransferResult.EXECUTED);
+            assert (system.tryExecute(new TenantTransfer("tenant-" + j, component(j), device(0),
+                    null)) == TransferResult.EXECUTED);
+        }
+        assert (system.tryExecute(new TenantTransfer("configured", component(0), null,
+                device(0))) == TransferResult.EXECUTED);
+        assert (system.getTenantMetrics().keySet().equals(Set.of("configured")));
+
+        // known while it has a transfer in flight, which keeps waiting here
+        HeldTransfers held = new HeldTransfers(system);
+        held.start("waiting", 1, null, 1, ADMITTED);
+        held.start("waiting", 2, null, 1, QUEUED);
+        assert (system.getTenantMetrics().get("waiting").getQueuedTransfers() == 1);
+        system.removeTenantQuota("configured");
+        assert (system.getTenantMetrics().keySet().equals(Set.of("waiting")));
+        held.releaseAll();
+    }
+}
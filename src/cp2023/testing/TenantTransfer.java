@@ -0,0 +1,21 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.TenantComponentTransfer;
+
+public class TenantTransfer extends SimpleTransfer implements TenantComponentTransfer {
+
+    private final String tenant;
+
+    @Override
+    public String getTenant() {
+        return tenant;
+    }
+
+    public TenantTransfer(String tenant, ComponentId componentId, DeviceId source,
+                          DeviceId target) {
+        super(componentId, source, target);
+        this.tenant = tenant;
+    }
+}
@@ -0,0 +1,72 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.solution.AccessTracker;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.TieringController;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TieringTests {
+
+    @Test
+    void sketchNeverUnderestimatesAndDecays() {
+        AccessTracker tracker = new AccessTracker(1 << 10, Long.MAX_VALUE);
+        for (int j = 0; j < 200; j++) {
+            for (int k = 0; k < j % 10; k++)
+                tracker.recordAccess(ComponentId.of(j));
+        }
+        for (int j = 0; j < 200; j++)
+            assert (tracker.estimate(ComponentId.of(j)) >= j % 10);
+        tracker.decay();
+        assert (tracker.estimate(ComponentId.of(9)) <= 9 / 2 + 1);
+    }
+
+    @Test
+    void hotComponentsSwapWithoutFreeSlots() {
+        // device 0 (fast) and device 1 (slow) are both full
+        Map<DeviceId, Integer> capacities = Map.of(DeviceId.of(0), 2, DeviceId.of(1), 2);
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        for (int j = 0; j < 4; j++)
+            placement.put(ComponentId.of(j), DeviceId.of(j / 2));
+        StorageSystemInstance system = new StorageSystemInstance(capacities, placement);
+        system.setAccessTracker(new AccessTracker(1 << 10, Long.MAX_VALUE));
+        for (int k = 0; k < 10; k++) {
+            system.recordAccess(ComponentId.of(3));
+            if (k < 5)
+                system.recordAccess(ComponentId.of(0));
+        }
+        TieringController tiering = new TieringController(system, SimpleTransfer::new,
+                List.of(DeviceId.of(0)), 10, 2);
+        assert (tiering.tier() == 2);
+        assert (system.getComponentPlacement().get(ComponentId.of(3)).equals(DeviceId.of(0)));
+        // component 1 was never accessed, so it is the one demoted
+        assert (system.getComponentPlacement().get(ComponentId.of(1)).equals(DeviceId.of(1)));
+        assert (tiering.getSwapCount() == 1);
+        // the remaining slow component is not hot enough to swap with 0
+        assert (tiering.tier() == 0);
+    }
+
+    @Test
+    void startingTwiceIsAStateError() {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(DeviceId.of(0), 1), Map.of(ComponentId.of(0), DeviceId.of(0)));
+        system.setAccessTracker(new AccessTracker(1 << 4, Long.MAX_VALUE));
+        TieringController tiering = new TieringController(system, SimpleTransfer::new,
+                List.of(DeviceId.of(0)), 1, 0);
+        tiering.start(1, TimeUnit.HOURS);
+        try {
+            tiering.start(1, TimeUnit.HOURS);
+            assert (false);
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            tiering.shutdown();
+        }
+    }
+}
@@ -28,12 +28,12 @@ public final class TransferBurst {
     }
 
     private final static StorageSystem setupSystem() {
-        DeviceId dev1 = new DeviceId(1);
-        DeviceId dev2 = new DeviceId(2);
-        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev1 = DeviceId.of(1);
+        DeviceId dev2 = DeviceId.of(2);
+        DeviceId dev3 = DeviceId.of(3);
 
-        ComponentId comp1 = new ComponentId(101);
-        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp1 = ComponentId.of(101);
+        ComponentId comp2 = ComponentId.of(102);
         
         HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
         deviceCapacities.put(dev1, 1);
@@ -97,9 +97,9 @@ public final class TransferBurst {
     ) {
         CompTransfImpl transfer =
                 new CompTransfImpl(
-                        new ComponentId(compId),
-                        srcDevId > 0 ? new DeviceId(srcDevId) : null,
-                        dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                        ComponentId.of(compId),
+                        srcDevId > 0 ? DeviceId.of(srcDevId) : null,
+                        dstDevId > 0 ? DeviceId.of(dstDevId) : null,
                         duration
                 );
         try {
@@ -0,0 +1,203 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.TransferEvent;
+import cp2023.base.TransferListener;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransferEventTests extends Generators {
+
+    // copies the events, which are reused by the system
+    private static final class Recorder implements TransferListener {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        private final List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void transferEvent(TransferEvent event) {
+            events.add(describe(event.getType(), event.getComponentId(),
+                    event.getSourceDeviceId(), event.getDestinationDeviceId()));
+            timestamps.add(event.getTimestamp());
+        }
+
+        boolean await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.size() < count && System.nanoTime() < deadline)
+                Thread.sleep(1);
+            return events.size() == count;
+        }
+    }
+
+    private static String describe(TransferEvent.Type type, ComponentId component,
+                                   DeviceId source, DeviceId destination) {
+        return type + " " + component + " " + source + " -> " + destination;
+    }
+
+    // events of a successful transfer admitted to a free slot
+    private static List<String> executed(int comp, int source, int dest) {
+        List<String> events = new ArrayList<>();
+        for (TransferEvent.Type type : new TransferEvent.Type[] {TransferEvent.Type.SUBMITTED,
+                TransferEvent.Type.ADMITTED, TransferEvent.Type.PREPARED,
+                TransferEvent.Type.PERFORMED})
+            events.add(describe(type, component(comp), device(source), device(dest)));
+        return events;
+    }
+
+    private static Set<Thread> consumerThreads() {
+        Set<Thread> consumers = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if (thread.getName().equals("transfer-events") && thread.isAlive())
+                consumers.add(thread);
+        return consumers;
+    }
+
+    // consumers of systems of other tests may still be exiting, so the one
+    // started since is told apart by identity rather than by count
+    private static Thread startedConsumer(Set<Thread> before) {
+        Set<Thread> started = consumerThreads();
+        started.removeAll(before);
+        assert (started.size() == 1) : started;
+        return started.iterator().next();
+    }
+
+    private static boolean exits(Thread consumer) throws InterruptedException {
+        consumer.join(5000);
+        return !consumer.isAlive();
+    }
+
+    private static StorageSystemInstance system() {
+        return new StorageSystemInstance(Map.of(device(1), 1, device(2), 1),
+                Map.of(component(101), device(1)));
+    }
+
+    @Test
+    void eventsAreDeliveredInOrder() throws InterruptedException {
+        StorageSystemInstance system = system();
+        Recorder recorder = new Recorder();
+        system.addTransferListener(recorder);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int source = i % 2 == 0 ? 1 : 2;
+            assert (system.tryExecute(transfer(101, source, 3 - source))
+                    == TransferResult.EXECUTED);
+            expected.addAll(executed(101, source, 3 - source));
+        }
+        // 101 is back on device 1
+        assert (system.tryExecute(transfer(101, 2, 1))
+                == TransferResult.COMPONENT_DOES_NOT_EXIST);
+        expected.add(describe(TransferEvent.Type.SUBMITTED, component(101), device(2), device(1)));
+        expected.add(describe(TransferEvent.Type.REJECTED, component(101), device(2), device(1)));
+
+        assert (recorder.await(expected.size()));
+        assert (recorder.events.equals(expected)) : recorder.events;
+        for (int i = 1; i < recorder.timestamps.size(); i++)
+            assert (recorder.timestamps.get(i - 1) <= recorder.timestamps.get(i));
+        assert (system.getDroppedTransferEventCount() == 0);
+        system.removeTransferListener(recorder);
+    }
+
+    @Test
+    void eventsOfQueuedTransferKeepItsOrder() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 1),
+                Map.of(component(101), device(1), component(201), device(2)));
+        Recorder recorder = new Recorder();
+        system.addTransferListener(recorder);
+        Thread queued = new Thread(() -> execTransfer(system, transfer(101, 1, 2)));
+        queued.start();
+        Thread.sleep(100);
+        assert (system.tryExecute(transfer(201, 2, -1)) == TransferResult.EXECUTED);
+        queued.join(5000);
+        assert (!queued.isAlive());
+
+        assert (recorder.await(9));
+        List<String> ofQueued = new ArrayList<>();
+        for (String event : recorder.events)
+            if (event.contains(component(101).toString()))
+                ofQueued.add(event.substring(0, event.indexOf(' ')));
+        assert (ofQueued.equals(List.of("SUBMITTED", "QUEUED", "ADMITTED", "PREPARED",
+                "PERFORMED"))) : ofQueued;
+        system.removeTransferListener(recorder);
+    }
+
+    @Test
+    void slowListenerMakesEventsDropped() throws InterruptedException {
+        StorageSystemInstance system = system();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong delivered = new AtomicLong();
+        TransferListener slow = event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+            delivered.incrementAndGet();
+        };
+        system.addTransferListener(slow);
+        // more events than the buffer holds, while the listener is stuck
+        // on the first one
+        int transfers = 10_000;
+        for (int i = 0; i < transfers; i++) {
+            int source = i % 2 == 0 ? 1 : 2;
+            assert (system.tryExecute(transfer(101, source, 3 - source))
+                    == TransferResult.EXECUTED);
+        }
+        long dropped = system.getDroppedTransferEventCount();
+        assert (dropped > 0);
+
+        // every event is either delivered or counted as dropped
+        release.countDown();
+        long published = 4L * transfers;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.get() < published - dropped && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assert (delivered.get() == published - dropped);
+        system.removeTransferListener(slow);
+
+        // once drained, the buffer takes events again
+        Recorder recorder = new Recorder();
+        system.addTransferListener(recorder);
+        assert (system.tryExecute(transfer(101, 1, 2)) == TransferResult.EXECUTED);
+        assert (recorder.await(4));
+        assert (recorder.events.equals(executed(101, 1, 2)));
+        assert (system.getDroppedTransferEventCount() == dropped);
+        system.removeTransferListener(recorder);
+    }
+
+    @Test
+    void consumerRunsOnlyWhileThereAreListeners() throws InterruptedException {
+        StorageSystemInstance system = system();
+        Set<Thread> before = consumerThreads();
+        Recorder first = new Recorder();
+        system.addTransferListener(first);
+        Thread consumer = startedConsumer(before);
+        assert (system.tryExecute(transfer(101, 1, 2)) == TransferResult.EXECUTED);
+        assert (first.await(4));
+        system.removeTransferListener(first);
+        assert (exits(consumer));
+
+        // nobody hears about transfers without listeners
+        assert (system.tryExecute(transfer(101, 2, 1)) == TransferResult.EXECUTED);
+        Recorder second = new Recorder();
+        system.addTransferListener(second);
+        consumer = startedConsumer(before);
+        assert (system.tryExecute(transfer(101, 1, 2)) == TransferResult.EXECUTED);
+        assert (second.await(4));
+        assert (second.events.equals(executed(101, 1, 2)));
+        assert (first.events.size() == 4);
+        system.removeTransferListener(second);
+        assert (exits(consumer));
+    }
+}
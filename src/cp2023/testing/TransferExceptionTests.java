@@ -0,0 +1,44 @@
+package cp2023.testing;
+
+import cp2023.base.StorageSystem;
+import cp2023.exceptions.ComponentDoesNotExist;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class TransferExceptionTests extends Generators {
+
+    // removes a component which is not in the system
+    private static TransferException rejection() {
+        StorageSystem system = StorageSystemFactory.newSystem(
+                Map.of(device(1), 1), Map.of());
+        try {
+            system.execute(transfer(101, 1, -1));
+        } catch (ComponentDoesNotExist e) {
+            return e;
+        } catch (TransferException e) {
+            assert false : e;
+        }
+        throw new AssertionError("the transfer was not rejected");
+    }
+
+    @Test
+    void stackTracesCanBeTurnedOff() {
+        // the setting is shared by the whole process
+        try {
+            TransferException.setStackTraces(false);
+            assert (rejection().getStackTrace().length == 0);
+            TransferException.setStackTraces(true);
+            StackTraceElement[] trace = rejection().getStackTrace();
+            assert (trace.length > 0);
+            boolean throughTest = false;
+            for (StackTraceElement element : trace)
+                throughTest |= element.getClassName().equals(TransferExceptionTests.class.getName());
+            assert throughTest;
+        } finally {
+            TransferException.setStackTraces(true);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package cp2023.testing;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.TransferResult;
+import cp2023.solution.StorageSystemInstance;
+import cp2023.solution.WaitForGraphSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+public class WaitForGraphSnapshotTests extends Generators {
+
+    private static Thread start(StorageSystemInstance system, ComponentTransfer transfer) {
+        Thread thread = new Thread(() -> {
+            TransferResult result = system.tryExecute(transfer);
+            assert (result == TransferResult.EXECUTED) : result;
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assert (!thread.isAlive());
+        }
+    }
+
+    // the first snapshot satisfying the condition
+    private static WaitForGraphSnapshot await(StorageSystemInstance system,
+                                              Predicate<WaitForGraphSnapshot> condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        WaitForGraphSnapshot snapshot = system.snapshotWaitForGraph();
+        while (!condition.test(snapshot) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+            snapshot = system.snapshotWaitForGraph();
+        }
+        assert (condition.test(snapshot));
+        return snapshot;
+    }
+
+    private static WaitForGraphSnapshot.TransferInfo of(WaitForGraphSnapshot snapshot,
+                                                        int component) {
+        for (WaitForGraphSnapshot.TransferInfo transfer : snapshot.getTransfers())
+            if (transfer.getComponentId().equals(component(component)))
+                return transfer;
+        return null;
+    }
+
+    private static boolean dependsOn(WaitForGraphSnapshot snapshot, int component, int other) {
+        WaitForGraphSnapshot.TransferInfo transfer = of(snapshot, component);
+        return transfer != null && of(snapshot, other) != null
+                && transfer.getDependsOn() == of(snapshot, other).getId();
+    }
+
+    private static boolean queued(WaitForGraphSnapshot snapshot, int component) {
+        WaitForGraphSnapshot.TransferInfo transfer = of(snapshot, component);
+        return transfer != null && transfer.getPhase() == WaitForGraphSnapshot.Phase.QUEUED;
+    }
+
+    private static String node(String dot, int id) {
+        for (String line : dot.split("\n"))
+            if (line.startsWith("  T" + id + " [label="))
+                return line;
+        return null;
+    }
+
+    @Test
+    void chainAndWaiters() throws InterruptedException {
+        // device 4 is empty, every other one holds a single component
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 1, device(3), 1, device(4), 1, device(5), 1),
+                Map.of(component(101), device(1), component(201), device(2),
+                        component(301), device(3), component(401), device(5)));
+        List<Thread> threads = new ArrayList<>();
+        // 301 takes the slot of 201, which takes the slot of 101
+        HeldPrepare first = new HeldPrepare(component(101), device(1), device(4));
+        threads.add(start(system, first));
+        assert (first.awaitPrepareStarted());
+        HeldPrepare second = new HeldPrepare(component(201), device(2), device(1));
+        threads.add(start(system, second));
+        assert (second.awaitPrepareStarted());
+        threads.add(start(system, transfer(301, 3, 2)));
+        await(system, snapshot -> dependsOn(snapshot, 301, 201) && dependsOn(snapshot, 201, 101));
+        // both wait for the slot reserved by 101
+        Thread firstWaiter = start(system, transfer(401, 5, 4));
+        await(system, snapshot -> queued(snapshot, 401));
+        Thread.sleep(10);
+        Thread secondWaiter = start(system, transfer(501, -1, 4));
+        WaitForGraphSnapshot snapshot = await(system, s -> queued(s, 501));
+
+        assert (snapshot.getTransfers().size() == 5);
+        int a = of(snapshot, 101).getId();
+        int b = of(snapshot, 201).getId();
+        int c = of(snapshot, 301).getId();
+        int w1 = of(snapshot, 401).getId();
+        int w2 = of(snapshot, 501).getId();
+        assert (snapshot.getLongestChains().equals(List.of(List.of(c, b, a))));
+        List<Integer> oldest = new ArrayList<>();
+        snapshot.getOldestWaiters(10).forEach(transfer -> oldest.add(transfer.getId()));
+        assert (oldest.equals(List.of(w1, w2)));
+        assert (snapshot.getOldestWaiters(1).get(0).getId() == w1);
+
+        String json = snapshot.toJson();
+        assert (json.contains("{\"id\":\"DEV-4\",\"totalSlots\":1,\"freeSlots\":0,\"awaiting\":["
+                + w1 + "," + w2 + "],\"leaving\":[]}"));
+        assert (json.contains("{\"id\":" + c + ",\"component\":\"COMP-301\",\"source\":\"DEV-3\","
+                + "\"destination\":\"DEV-2\",\"phase\":\""));
+        assert (json.contains(",\"dependsOn\":" + b + "}"));
+        assert (json.contains(",\"dependsOn\":" + a + "}"));
+        assert (json.contains("{\"id\":" + w2 + ",\"component\":\"COMP-501\",\"source\":null,"
+                + "\"destination\":\"DEV-4\",\"phase\":\"QUEUED\""));
+        assert (json.endsWith("\"longestChains\":[[" + c + "," + b + "," + a + "]],"
+                + "\"oldestWaiters\":[" + w1 + "," + w2 + "]}"));
+
+        String dot = snapshot.toDot();
+        assert (dot.contains("  T" + c + " -> T" + b + ";\n"));
+        assert (dot.contains("  T" + b + " -> T" + a + ";\n"));
+        assert (!dot.contains("  T" + a + " -> T"));
+        assert (dot.contains("  T" + w1 + " -> \"DEV-4\" [style=dashed];\n"));
+        assert (dot.contains("  T" + w2 + " -> \"DEV-4\" [style=dashed];\n"));
+        for (int id : new int[] {a, b, c, w1})
+            assert (node(dot, id).contains("color=red"));
+        assert (!node(dot, w2).contains("color=red"));
+
+        first.release();
+        second.release();
+        join(threads);
+        // the waiters get device 4 one after another
+        assert (system.tryExecute(transfer(101, 4, -1)) == TransferResult.EXECUTED);
+        join(List.of(firstWaiter));
+        assert (system.tryExecute(transfer(401, 4, -1)) == TransferResult.EXECUTED);
+        join(List.of(secondWaiter));
+        // transfers which have ended are not a part of the graph any more
+        assert (system.snapshotWaitForGraph().getTransfers().isEmpty());
+    }
+
+    @Test
+    void cycle() throws InterruptedException {
+        StorageSystemInstance system = new StorageSystemInstance(
+                Map.of(device(1), 1, device(2), 1),
+                Map.of(component(101), device(1), component(201), device(2)));
+        HeldPrepare there = new HeldPrepare(component(101), device(1), device(2));
+        HeldPrepare back = new HeldPrepare(component(201), device(2), device(1));
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start(system, there));
+        await(system, snapshot -> queued(snapshot, 101));
+        threads.add(start(system, back));
+        assert (there.awaitPrepareStarted() && back.awaitPrepareStarted());
+        WaitForGraphSnapshot snapshot = await(system, s -> dependsOn(s, 101, 201)
+                && dependsOn(s, 201, 101));
+
+        int x = of(snapshot, 101).getId();
+        int y = of(snapshot, 201).getId();
+        List<List<Integer>> chains = snapshot.getLongestChains();
+        assert (chains.equals(List.of(List.of(x, y))) || chains.equals(List.of(List.of(y, x))));
+        assert (snapshot.getOldestWaiters(10).isEmpty());
+
+        String json = snapshot.toJson();
+        assert (json.contains("\"longestChains\":[[" + x + "," + y + "]]")
+                || json.contains("\"longestChains\":[[" + y + "," + x + "]]"));
+        assert (json.endsWith(",\"oldestWaiters\":[]}"));
+
+        String dot = snapshot.toDot();
+        assert (dot.contains("  T" + x + " -> T" + y + ";\n"));
+        assert (dot.contains("  T" + y + " -> T" + x + ";\n"));
+        assert (!dot.contains("style=dashed"));
+        assert (node(dot, x).contains("color=red") && node(dot, y).contains("color=red"));
+
+        there.release();
+        back.release();
+        join(threads);
+        assert (system.snapshotWaitForGraph().getTransfers().isEmpty());
+    }
+}